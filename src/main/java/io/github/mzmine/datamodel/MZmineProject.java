@@ -165,6 +165,34 @@ public interface MZmineProject {
 
   void setStandalone(Boolean standalone);
 
+  /**
+   * Changes of the raw data files and feature lists themselves are tracked by
+   * {@link RawDataFile#isModified()} and {@link FeatureList#isModified()}.
+   *
+   * @return true if raw data files, feature lists or parameters were added or removed since the
+   * project was last saved or loaded.
+   */
+  boolean isModified();
+
+  /**
+   * @param modified false after the project was saved or loaded.
+   */
+  void setModified(boolean modified);
+
+  /**
+   * Resets the modified state of the project, its raw data files and feature lists after the
+   * project was saved or loaded.
+   */
+  default void clearModified() {
+    setModified(false);
+    for (RawDataFile file : getCurrentRawDataFiles()) {
+      file.setModified(false);
+    }
+    for (FeatureList flist : getCurrentFeatureLists()) {
+      flist.setModified(false);
+    }
+  }
+
   /**
    * Enables/disables usage of {@link CachedIMSRawDataFile}s for {@link IMSRawDataFile}s in the
    * project. Cached files are used during feature list import to avoid multiple copies of {@link
@@ -111,15 +111,16 @@ public interface RawDataFile {
   /**
    * @param rt      The rt
    * @param mslevel The ms level
-   * @return Returns the scan closest to the given rt in the given ms level. -1 if the rt exceeds
-   * the rt range of this file.
+   * @return Returns the scan closest to the given rt in the given ms level, the later scan if two
+   * scans are equally close. Null if the rt exceeds the rt range of this ms level or if there is no
+   * scan within {@link ScanIndex#MAX_RT_DIFFERENCE}.
    */
   Scan getScanNumberAtRT(float rt, int mslevel);
 
   /**
    * @param rt The rt
-   * @return Returns the scan closest to the given rt in the given ms level. -1 if the rt exceeds
-   * the rt range of this file.
+   * @return Returns the scan closest to the given rt, the later scan if two scans are equally
+   * close. Null if the rt exceeds the rt range of this file or if there are no scans.
    */
   Scan getScanNumberAtRT(float rt);
 
@@ -198,6 +199,16 @@ public interface RawDataFile {
 
   @NotNull ObservableList<Scan> getScans();
 
+  /**
+   * Index of all scans by MS level and retention time. Implementations should cache the index
+   * until scans are added.
+   *
+   * @return the scan index of the current scans
+   */
+  default @NotNull ScanIndex getScanIndex() {
+    return new ScanIndex(getScans());
+  }
+
   default @NotNull Stream<Scan> stream() {
     return getScans().stream();
   }
@@ -234,6 +245,17 @@ public interface RawDataFile {
 
   @NotNull ObservableList<FeatureListAppliedMethod> getAppliedMethods();
 
+  /**
+   * @return true if the scans, applied methods or the name of this file changed since the project
+   * was last saved or loaded.
+   */
+  boolean isModified();
+
+  /**
+   * @param modified false after the project was saved or loaded.
+   */
+  void setModified(boolean modified);
+
   /**
    * JavaFX safe copy of the name
    */
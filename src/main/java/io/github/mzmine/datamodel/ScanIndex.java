@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.msms.PrecursorIndex;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable index of the scans of a {@link RawDataFile}. Holds the scans per MS level with their
+ * retention times in primitive arrays for binary search, the cached retention time ranges and an
+ * index of MS2 scans by precursor m/z.
+ * Lookups do not allocate, except for the array returned by
+ * {@link #getScans(int, Range)}. Created by {@link RawDataFile#getScanIndex()} and replaced once
+ * scans are added.
+ */
+public final class ScanIndex {
+
+  /**
+   * Maximum retention time difference for {@link #getScanAtRT(float, int)}
+   */
+  public static final float MAX_RT_DIFFERENCE = 2f;
+
+  private final Level all;
+  private final Int2ObjectOpenHashMap<Level> levels;
+  private final int[] msLevels;
+  // built on first use
+  private volatile PrecursorIndex<Scan> ms2PrecursorIndex;
+
+  public ScanIndex(@NotNull List<? extends Scan> scans) {
+    final Scan[] allScans = scans.toArray(Scan[]::new);
+    all = new Level(allScans);
+
+    final Int2ObjectOpenHashMap<List<Scan>> byLevel = new Int2ObjectOpenHashMap<>(4);
+    for (Scan scan : allScans) {
+      byLevel.computeIfAbsent(scan.getMSLevel(), key -> new ArrayList<>()).add(scan);
+    }
+    levels = new Int2ObjectOpenHashMap<>(byLevel.size());
+    byLevel.forEach((level, list) -> levels.put((int) level, new Level(list.toArray(Scan[]::new))));
+    msLevels = byLevel.keySet().toIntArray();
+    Arrays.sort(msLevels);
+  }
+
+  /**
+   * @return sorted MS levels of all scans
+   */
+  public int[] getMSLevels() {
+    return msLevels;
+  }
+
+  /**
+   * @return all scans of this MS level in the original order (unmodifiable)
+   */
+  @NotNull
+  public List<Scan> getScans(int msLevel) {
+    Level level = levels.get(msLevel);
+    return level == null ? List.of() : level.list;
+  }
+
+  /**
+   * @return the number of scans of this MS level
+   */
+  public int getNumberOfScans(int msLevel) {
+    Level level = levels.get(msLevel);
+    return level == null ? 0 : level.scans.length;
+  }
+
+  /**
+   * @return all scans of this MS level within the retention time range in the original order
+   */
+  @NotNull
+  public Scan[] getScans(int msLevel, @NotNull Range<Float> rtRange) {
+    Level level = levels.get(msLevel);
+    return level == null ? new Scan[0] : level.getScans(rtRange);
+  }
+
+  /**
+   * @param msLevel the MS level or 0 for all scans
+   * @return the retention time range or null if there are no scans
+   */
+  @Nullable
+  public Range<Float> getRTRange(int msLevel) {
+    Level level = msLevel == 0 ? all : levels.get(msLevel);
+    return level == null ? null : level.rtRange;
+  }
+
+  /**
+   * @return the scan closest to the retention time, the later scan on equal distance (also for
+   * equal retention times). Null if there are no scans
+   */
+  @Nullable
+  public Scan getScanAtRT(float rt) {
+    return all.getClosest(rt, Float.POSITIVE_INFINITY);
+  }
+
+  /**
+   * @return the scan of this MS level closest to the retention time within
+   * {@link #MAX_RT_DIFFERENCE}, the later scan on equal distance. Null if there is none
+   */
+  @Nullable
+  public Scan getScanAtRT(float rt, int msLevel) {
+    Level level = levels.get(msLevel);
+    return level == null ? null : level.getClosest(rt, MAX_RT_DIFFERENCE);
+  }
+
+  /**
+   * @return index of all MS2 scans by their {@link Scan#getPrecursorMz()}
+   */
+  @NotNull
+  public PrecursorIndex<Scan> getMs2PrecursorIndex() {
+    PrecursorIndex<Scan> index = ms2PrecursorIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = ms2PrecursorIndex;
+        if (index == null) {
+          index = PrecursorIndex.ofScans(getScans(2));
+          ms2PrecursorIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Scans of one MS level. Binary search is used if the retention times are sorted, which is the
+   * case for almost all data files.
+   */
+  private static final class Level {
+
+    private final Scan[] scans;
+    private final List<Scan> list;
+    private final float[] rts;
+    private final boolean sorted;
+    private final Range<Float> rtRange;
+
+    private Level(Scan[] scans) {
+      this.scans = scans;
+      list = Collections.unmodifiableList(Arrays.asList(scans));
+      rts = new float[scans.length];
+      boolean sorted = true;
+      float min = Float.POSITIVE_INFINITY;
+      float max = Float.NEGATIVE_INFINITY;
+      for (int i = 0; i < scans.length; i++) {
+        rts[i] = scans[i].getRetentionTime();
+        if (i > 0 && rts[i] < rts[i - 1]) {
+          sorted = false;
+        }
+        min = Math.min(min, rts[i]);
+        max = Math.max(max, rts[i]);
+      }
+      this.sorted = sorted;
+      rtRange = scans.length == 0 ? null : Range.closed(min, max);
+    }
+
+    private Scan[] getScans(Range<Float> rtRange) {
+      if (!sorted) {
+        return Arrays.stream(scans).filter(s -> rtRange.contains(s.getRetentionTime()))
+            .toArray(Scan[]::new);
+      }
+      int from = 0;
+      int to = rts.length;
+      if (rtRange.hasLowerBound()) {
+        from = lowerBound(rtRange.lowerEndpoint());
+      }
+      if (rtRange.hasUpperBound()) {
+        to = upperBound(rtRange.upperEndpoint());
+      }
+      // open bounds
+      while (from < to && !rtRange.contains(rts[from])) {
+        from++;
+      }
+      while (to > from && !rtRange.contains(rts[to - 1])) {
+        to--;
+      }
+      return from >= to ? new Scan[0] : Arrays.copyOfRange(scans, from, to);
+    }
+
+    /**
+     * @return the closest scan, the later one on equal distance
+     */
+    private Scan getClosest(float rt, float maxDiff) {
+      int best = -1;
+      if (sorted) {
+        final int upper = upperBound(rt);
+        if (upper < rts.length) {
+          // last scan with this retention time
+          best = upperBound(rts[upper]) - 1;
+        }
+        if (upper > 0 && (best == -1 || rt - rts[upper - 1] < rts[upper] - rt)) {
+          best = upper - 1;
+        }
+      } else {
+        float minDiff = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < rts.length; i++) {
+          float diff = Math.abs(rt - rts[i]);
+          if (diff <= minDiff) {
+            minDiff = diff;
+            best = i;
+          }
+        }
+      }
+      return best == -1 || Math.abs(rt - rts[best]) > maxDiff ? null : scans[best];
+    }
+
+    /**
+     * @return the first index with rts[i] >= rt
+     */
+    private int lowerBound(float rt) {
+      int low = 0;
+      int high = rts.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (rts[mid] < rt) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the first index with rts[i] > rt
+     */
+    private int upperBound(float rt) {
+      int low = 0;
+      int high = rts.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (rts[mid] <= rt) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
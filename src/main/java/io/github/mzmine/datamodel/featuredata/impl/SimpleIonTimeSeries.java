@@ -86,6 +86,24 @@ public class SimpleIonTimeSeries implements IonTimeSeries<Scan> {
     this.intensityValues = StorageUtils.storeValuesToDoubleBuffer(storage, intensityValues);
   }
 
+  /**
+   * Uses the given buffers without copying them, e.g., buffers of a memory mapped project file.
+   *
+   * @param mzValues        the m/z values, positioned at 0.
+   * @param intensityValues the intensities, positioned at 0.
+   * @param scans           the scans sorted by retention time.
+   */
+  public SimpleIonTimeSeries(@NotNull DoubleBuffer mzValues, @NotNull DoubleBuffer intensityValues,
+      @NotNull List<Scan> scans) {
+    if (mzValues.limit() != intensityValues.limit() || mzValues.limit() != scans.size()) {
+      throw new IllegalArgumentException("Length of mz, intensity and/or scans does not match.");
+    }
+
+    this.scans = scans;
+    this.mzValues = mzValues;
+    this.intensityValues = intensityValues;
+  }
+
   public static SimpleIonTimeSeries loadFromXML(XMLStreamReader reader, MemoryMapStorage storage,
       RawDataFile file) throws XMLStreamException {
 
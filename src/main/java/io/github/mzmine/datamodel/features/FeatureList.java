@@ -333,6 +333,17 @@ public interface FeatureList {
    */
   public ObservableList<FeatureListAppliedMethod> getAppliedMethods();
 
+  /**
+   * @return true if rows, values, applied methods or the name of this feature list changed since
+   * the project was last saved or loaded.
+   */
+  boolean isModified();
+
+  /**
+   * @param modified false after the project was saved or loaded.
+   */
+  void setModified(boolean modified);
+
   /**
    * Returns the whole m/z range of the feature list
    */
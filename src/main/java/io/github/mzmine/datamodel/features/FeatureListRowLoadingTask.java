@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.datamodel.features;
+
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.time.Instant;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Loads the rows of a lazily loaded feature list in the background, so the JavaFX thread does not
+ * wait for the loading. See {@link ModularFeatureList#loadRowsInBackground()}.
+ */
+public class FeatureListRowLoadingTask extends AbstractTask {
+
+  private final ModularFeatureList flist;
+  private final FutureTask<Void> loading;
+
+  FeatureListRowLoadingTask(ModularFeatureList flist, FutureTask<Void> loading) {
+    super(null, Instant.now()); // rows are stored in the storage of the feature list
+    this.flist = flist;
+    this.loading = loading;
+  }
+
+  @Override
+  public String getTaskDescription() {
+    return "Loading rows of feature list " + flist.getName();
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    return loading.isDone() ? 1d : 0d;
+  }
+
+  @Override
+  public void run() {
+    setStatus(TaskStatus.PROCESSING);
+    // no op if another thread already loaded the rows
+    loading.run();
+    if (flist.isRowLoadingFailed()) {
+      setErrorMessage("Cannot load rows of feature list " + flist.getName());
+      setStatus(TaskStatus.ERROR);
+      return;
+    }
+    setStatus(TaskStatus.FINISHED);
+  }
+}
@@ -55,6 +55,16 @@ public interface ModularDataModel {
    */
   public ObservableMap<DataType, Object> getMap();
 
+  /**
+   * The map that actually stores the values. Defaults to {@link #getMap()}. Implementations may
+   * use a more compact storage and only create the observable map on demand.
+   *
+   * @return the backing value map
+   */
+  default Map<DataType, Object> getValueMap() {
+    return getMap();
+  }
+
   /**
    * Get DataType column of this DataModel
    *
@@ -124,7 +134,7 @@ public interface ModularDataModel {
    */
   @Nullable
   default <T extends Object> T get(DataType<T> type) {
-    return (T) getMap().get(type);
+    return (T) getValueMap().get(type);
   }
 
   /**
@@ -133,7 +143,7 @@ public interface ModularDataModel {
    */
   @Nullable
   default <T extends Object> boolean hasValueFor(DataType<T> type) {
-    return getMap().get(type) != null;
+    return getValueMap().get(type) != null;
   }
 
   /**
@@ -186,7 +196,7 @@ public interface ModularDataModel {
     }
 
     DataType<T> realType = getTypeColumn(tclass);
-    Object old = getMap().put(realType, value);
+    Object old = getValueMap().put(realType, value);
     // send changes to all listeners for this data type
     List<DataTypeValueChangeListener<?>> listeners = getValueChangeListeners().get(realType);
     if (!Objects.equals(old, value)) {
@@ -208,7 +218,7 @@ public interface ModularDataModel {
   default <T> void remove(Class<? extends DataType<T>> tclass) {
     DataType type = getTypeColumn(tclass);
     if (type != null) {
-      Object old = getMap().remove(type);
+      Object old = getValueMap().remove(type);
       if (old != null) {
         List<DataTypeValueChangeListener<?>> listeners = getValueChangeListeners().get(type);
         if (listeners != null) {
@@ -233,7 +243,7 @@ public interface ModularDataModel {
    * @return
    */
   default Stream<Entry<DataType, Object>> stream() {
-    return getMap().entrySet().stream();
+    return getValueMap().entrySet().stream();
   }
 
 }
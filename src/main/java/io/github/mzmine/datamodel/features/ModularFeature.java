@@ -37,6 +37,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
 import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
 import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.columnar.ColumnarValueMap;
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.DetectionType;
 import io.github.mzmine.datamodel.features.types.FeatureDataType;
@@ -87,9 +88,14 @@ import org.jetbrains.annotations.Nullable;
 public class ModularFeature implements Feature, ModularDataModel {
 
   private static final Logger logger = Logger.getLogger(ModularFeature.class.getName());
-  private final ObservableMap<DataType, Object> map = FXCollections.observableMap(new HashMap<>());
-  // buffert col charts and nodes
-  private final Map<String, Node> buffertColCharts = new HashMap<>();
+  /**
+   * Stores all values. Either the observable map or a {@link ColumnarValueMap} if the feature list
+   * uses columnar storage. Then the observable map is only created on demand.
+   */
+  private final Map<DataType, Object> valueMap;
+  private volatile ObservableMap<DataType, Object> map;
+  // buffert col charts and nodes, only created for the GUI
+  private Map<String, Node> buffertColCharts;
   @NotNull
   private ModularFeatureList flist;
 
@@ -98,17 +104,24 @@ public class ModularFeature implements Feature, ModularDataModel {
   public ModularFeature(@NotNull ModularFeatureList flist) {
     this.flist = flist;
 
-    // register listener to types map to automatically generate default properties for new DataTypes
-    flist.getFeatureTypes().addListener(
-        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
-          if (change.wasAdded()) {
-            // do nothing for now
-          } else if (change.wasRemoved()) {
-            // remove type columns to maps
-            DataType type = change.getValueRemoved();
-            this.remove((Class) type.getClass());
-          }
-        });
+    if (flist.isColumnarStorage()) {
+      // removed types are handled by the feature list
+      valueMap = new ColumnarValueMap(flist.getFeatureColumns());
+    } else {
+      map = FXCollections.observableMap(new HashMap<>());
+      valueMap = map;
+      // register listener to types map to automatically generate default properties for new DataTypes
+      flist.getFeatureTypes().addListener(
+          (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
+            if (change.wasAdded()) {
+              // do nothing for now
+            } else if (change.wasRemoved()) {
+              // remove type columns to maps
+              DataType type = change.getValueRemoved();
+              this.remove((Class) type.getClass());
+            }
+          });
+    }
   }
 
   // NOT TESTED
@@ -217,6 +230,8 @@ public class ModularFeature implements Feature, ModularDataModel {
   public ModularFeature(@NotNull ModularFeatureList flist, Feature f) {
     this(flist);
     if (f instanceof ModularFeature) {
+      // the copy shares the stored data of the original feature
+      flist.retainStoragesOf(f.getFeatureList());
       ((ModularFeature) f).stream().forEach(entry -> this.set(entry.getKey(), entry.getValue()));
     } else {
       // add values to feature
@@ -263,14 +278,20 @@ public class ModularFeature implements Feature, ModularDataModel {
   }
 
   public Node getBufferedColChart(String colname) {
-    return buffertColCharts.get(colname);
+    return buffertColCharts == null ? null : buffertColCharts.get(colname);
   }
 
   public void addBufferedColChart(String colname, Node node) {
+    if (buffertColCharts == null) {
+      buffertColCharts = new HashMap<>();
+    }
     buffertColCharts.put(colname, node);
   }
 
   public void clearBufferedColCharts() {
+    if (buffertColCharts == null) {
+      return;
+    }
     buffertColCharts.forEach((k, v) -> {
       if (v instanceof Pane p && p.getParent() instanceof Pane pane) {
         // remove the node from the parent so there is no more reference and it can be GC'ed
@@ -294,7 +315,11 @@ public class ModularFeature implements Feature, ModularDataModel {
       }
     }
     // access default method
-    return ModularDataModel.super.set(tclass, value);
+    final boolean changed = ModularDataModel.super.set(tclass, value);
+    if (changed && flist != null) {
+      flist.setModified(true);
+    }
+    return changed;
   }
 
   /**
@@ -313,7 +338,46 @@ public class ModularFeature implements Feature, ModularDataModel {
   // todo make this private?
   @Override
   public ObservableMap<DataType, Object> getMap() {
-    return map;
+    ObservableMap<DataType, Object> observable = map;
+    if (observable == null) {
+      synchronized (this) {
+        if (map == null) {
+          // only created when needed, e.g., by the GUI
+          map = FXCollections.observableMap(valueMap);
+        }
+        observable = map;
+      }
+    }
+    return observable;
+  }
+
+  /**
+   * Writes go through the observable map once it was created by {@link #getMap()}, so that its
+   * listeners are notified of all changes.
+   */
+  @Override
+  public Map<DataType, Object> getValueMap() {
+    final ObservableMap<DataType, Object> observable = map;
+    return observable != null ? observable : valueMap;
+  }
+
+  /**
+   * Moves numeric values out of the shared columns of the feature list and releases the index in
+   * columnar mode, when this feature is removed from the feature list. Values are kept.
+   */
+  void detachColumns() {
+    if (valueMap instanceof ColumnarValueMap columnar) {
+      columnar.detach();
+    }
+  }
+
+  /**
+   * Reverts {@link #detachColumns()} when this feature is added to the feature list again
+   */
+  void attachColumns() {
+    if (valueMap instanceof ColumnarValueMap columnar) {
+      columnar.attach();
+    }
   }
 
   /**
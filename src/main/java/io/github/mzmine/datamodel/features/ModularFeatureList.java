@@ -31,6 +31,7 @@ import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.columnar.DataTypeColumns;
 import io.github.mzmine.datamodel.features.correlation.R2RMap;
 import io.github.mzmine.datamodel.features.correlation.RowsRelationship;
 import io.github.mzmine.datamodel.features.correlation.RowsRelationship.Type;
@@ -42,6 +43,8 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
 import io.github.mzmine.modules.io.projectload.CachedIMSRawDataFile;
 import io.github.mzmine.project.impl.ProjectChangeEvent;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.util.CorrelationGroupingUtils;
 import io.github.mzmine.util.DataTypeUtils;
 import io.github.mzmine.util.FeatureListRowSorter;
@@ -61,11 +64,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import org.jetbrains.annotations.NotNull;
@@ -83,6 +93,12 @@ public class ModularFeatureList implements FeatureList {
    */
   @Nullable
   private final MemoryMapStorage memoryMapStorage;
+  /**
+   * All storages that hold data referenced by this feature list, e.g., the storage of this list,
+   * the storages of copied features and the storages of the raw data files. Each storage is
+   * retained once and released by {@link #dispose()}.
+   */
+  private final Set<MemoryMapStorage> retainedStorages = ConcurrentHashMap.newKeySet();
   // bindings for values
   private final Map<DataType<?>, List<DataTypeValueChangeListener<?>>> featureTypeListeners = new HashMap<>();
   private final Map<DataType<?>, List<DataTypeValueChangeListener<?>>> rowTypeListeners = new HashMap<>();
@@ -107,6 +123,41 @@ public class ModularFeatureList implements FeatureList {
   private String dateCreated;
   // grouping
   private List<RowGroup> groups;
+  // changed since the project was saved or loaded
+  private volatile boolean modified = true;
+  /**
+   * Loads the rows on first access, if the feature list was loaded lazily from a project. Runs at
+   * most once, without holding the monitor of this list. Null after the rows were loaded.
+   */
+  @Nullable
+  private volatile FutureTask<Void> rowLoading;
+  @Nullable
+  private volatile Thread rowLoaderThread;
+  /**
+   * Completed when the rows were loaded or loading failed.
+   */
+  private volatile CompletableFuture<Void> rowsLoaded = CompletableFuture.completedFuture(null);
+  private final AtomicBoolean backgroundRowLoadingStarted = new AtomicBoolean(false);
+  /**
+   * The rows added by the loader thread. They are published to {@link #featureListRows} at once
+   * after loading, so the UI never sees a partially loaded list. Only accessed by the loader
+   * thread.
+   */
+  private ObservableList<FeatureListRow> loadingRows;
+  /**
+   * The error of the row loader. The rows of this list stay unloaded and every access fails.
+   */
+  @Nullable
+  private volatile RuntimeException rowLoadingError;
+  private final AtomicBoolean rowLoadingErrorThrown = new AtomicBoolean(false);
+  /**
+   * Numeric values of rows and features are stored in primitive columns in headless mode. Null if
+   * values are stored in an observable map per row and feature.
+   */
+  @Nullable
+  private final DataTypeColumns rowColumns;
+  @Nullable
+  private final DataTypeColumns featureColumns;
 
 
   public ModularFeatureList(String name, @Nullable MemoryMapStorage storage,
@@ -123,11 +174,239 @@ public class ModularFeatureList implements FeatureList {
     dateCreated = DATA_FORMAT.format(new Date());
     selectedScans = FXCollections.observableMap(new HashMap<>());
     this.memoryMapStorage = storage;
+    retainStorage(storage);
+    for (RawDataFile file : dataFiles) {
+      retainStoragesOf(file);
+    }
+
+    if (MZmineCore.isHeadLessMode()) {
+      rowColumns = new DataTypeColumns();
+      featureColumns = new DataTypeColumns();
+      addColumnarTypeListeners();
+    } else {
+      rowColumns = null;
+      featureColumns = null;
+    }
 
     // only a few standard types
     addRowType(new IDType());
     addRowType(new ManualAnnotationType());
     addDefaultListeners();
+    addModificationListeners();
+  }
+
+  /**
+   * Marks this list as modified on changes of rows, types, raw data files and applied methods.
+   * Value changes are reported by the rows and features.
+   */
+  private void addModificationListeners() {
+    featureListRows.addListener((ListChangeListener<FeatureListRow>) c -> setModified(true));
+    descriptionOfAppliedTasks.addListener(
+        (ListChangeListener<FeatureListAppliedMethod>) c -> setModified(true));
+    dataFiles.addListener((ListChangeListener<RawDataFile>) c -> setModified(true));
+    selectedScans.addListener(
+        (MapChangeListener<RawDataFile, List<? extends Scan>>) c -> setModified(true));
+    rowTypes.addListener(
+        (MapChangeListener<Class<? extends DataType>, DataType>) c -> setModified(true));
+    featureTypes.addListener(
+        (MapChangeListener<Class<? extends DataType>, DataType>) c -> setModified(true));
+  }
+
+  /**
+   * Rows and their values are only loaded on first access of the rows or types of this list. The
+   * loader may add rows and types to this list. Other threads wait until the loader finished. The
+   * JavaFX thread never waits, it starts loading in a background task and sees the list without
+   * rows until loading finished, see {@link #loadRowsInBackground()}. If the loader fails, the list
+   * stays unloaded and each access of the rows throws the error.
+   *
+   * @param rowLoader loads and adds all rows to this list.
+   */
+  public void setRowLoader(@Nullable Runnable rowLoader) {
+    rowLoadingError = null;
+    rowLoadingErrorThrown.set(false);
+    backgroundRowLoadingStarted.set(false);
+    if (rowLoader == null) {
+      rowsLoaded = CompletableFuture.completedFuture(null);
+      rowLoading = null;
+    } else {
+      rowsLoaded = new CompletableFuture<>();
+      rowLoading = new FutureTask<>(() -> loadRows(rowLoader), null);
+    }
+  }
+
+  /**
+   * @return true if the rows were not yet loaded from the project or if loading them failed
+   */
+  public boolean isRowLoadingPending() {
+    return rowLoading != null;
+  }
+
+  /**
+   * @return true if the rows could not be loaded from the project
+   */
+  public boolean isRowLoadingFailed() {
+    return rowLoadingError != null;
+  }
+
+  /**
+   * Starts loading the rows in a background task, if they are not loaded yet. Returns immediately
+   * and can be called on the JavaFX thread.
+   *
+   * @return completes when the rows were added to this list or exceptionally if loading failed.
+   */
+  public CompletableFuture<Void> loadRowsInBackground() {
+    final FutureTask<Void> loading = rowLoading;
+    final CompletableFuture<Void> loaded = rowsLoaded;
+    if (loading != null && !loading.isDone() && backgroundRowLoadingStarted.compareAndSet(false,
+        true)) {
+      MZmineCore.getTaskController()
+          .addTask(new FeatureListRowLoadingTask(this, loading), TaskPriority.HIGH);
+    }
+    return loaded;
+  }
+
+  private void ensureRowsLoaded() {
+    final FutureTask<Void> loading = rowLoading;
+    // the loader thread itself accesses the rows while loading
+    if (loading == null || rowLoaderThread == Thread.currentThread()) {
+      return;
+    }
+    if (!MZmineCore.isHeadLessMode() && Platform.isFxApplicationThread()) {
+      // never block the UI, the rows are published to the list after loading
+      loadRowsInBackground();
+      return;
+    }
+
+    // loads in this thread or waits for the thread that is already loading
+    loading.run();
+    try {
+      loading.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(
+          "Interrupted while loading the rows of feature list " + getName(), e);
+    } catch (ExecutionException e) {
+      // the first access throws the error of the loader, later accesses wrap it
+      if (e.getCause() instanceof RuntimeException cause && rowLoadingErrorThrown.compareAndSet(
+          false, true)) {
+        throw cause;
+      }
+      throw new IllegalStateException("Rows of feature list " + getName() + " could not be loaded.",
+          e.getCause());
+    }
+  }
+
+  /**
+   * Runs the loader and publishes the loaded rows. Columnar lists only exist in headless mode,
+   * where no UI reads the rows while loading, so their rows are added directly.
+   */
+  private void loadRows(Runnable loader) {
+    final boolean stageRows = !isColumnarStorage();
+    loadingRows = stageRows ? FXCollections.observableArrayList() : featureListRows;
+    rowLoaderThread = Thread.currentThread();
+    try {
+      loader.run();
+      if (stageRows) {
+        // publishing the rows must not change the modified state set by the loader
+        final boolean modifiedAfterLoad = isModified();
+        final List<FeatureListRow> rows = loadingRows;
+        MZmineCore.runOnFxThreadAndWait(() -> featureListRows.setAll(rows));
+        setModified(modifiedAfterLoad);
+      }
+      rowLoading = null;
+      rowsLoaded.complete(null);
+    } catch (RuntimeException e) {
+      // remove partially loaded rows, the list stays unloaded
+      if (!stageRows) {
+        featureListRows.clear();
+      }
+      rowLoadingError = e;
+      rowsLoaded.completeExceptionally(e);
+      throw e;
+    } finally {
+      rowLoaderThread = null;
+      loadingRows = null;
+    }
+  }
+
+  /**
+   * @return the rows that are being loaded for the loader thread, otherwise the rows of this list.
+   */
+  private ObservableList<FeatureListRow> rows() {
+    return rowLoaderThread == Thread.currentThread() ? loadingRows : featureListRows;
+  }
+
+  @Override
+  public boolean isModified() {
+    return modified;
+  }
+
+  @Override
+  public void setModified(boolean modified) {
+    // avoid concurrent writes, this is called on every value change
+    if (this.modified != modified) {
+      this.modified = modified;
+    }
+  }
+
+  /**
+   * Rows and features in columnar mode do not listen to the type maps. Removed types are removed
+   * from all rows and features here. Removed rows release their column indices.
+   */
+  private void addColumnarTypeListeners() {
+    // release the column indices of removed rows and their features. Rows that are added again,
+    // e.g., by setRows, move their values back into the columns
+    featureListRows.addListener((ListChangeListener<FeatureListRow>) c -> {
+      while (c.next()) {
+        for (FeatureListRow row : c.getRemoved()) {
+          ((ModularFeatureListRow) row).detachColumns();
+        }
+        for (FeatureListRow row : c.getAddedSubList()) {
+          ((ModularFeatureListRow) row).attachColumns();
+        }
+      }
+    });
+    rowTypes.addListener(
+        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
+          if (change.wasRemoved()) {
+            DataType type = change.getValueRemoved();
+            for (FeatureListRow row : featureListRows) {
+              ((ModularFeatureListRow) row).remove((Class) type.getClass());
+            }
+            rowColumns.removeColumn(type);
+          }
+        });
+    featureTypes.addListener(
+        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
+          if (change.wasRemoved()) {
+            DataType type = change.getValueRemoved();
+            streamFeatures().forEach(feature -> feature.remove((Class) type.getClass()));
+            featureColumns.removeColumn(type);
+          }
+        });
+  }
+
+  /**
+   * @return true if numeric values of rows and features are stored in primitive columns
+   */
+  public boolean isColumnarStorage() {
+    return rowColumns != null;
+  }
+
+  /**
+   * @return the columns of row values or null if this list does not use columnar storage
+   */
+  @Nullable
+  public DataTypeColumns getRowColumns() {
+    return rowColumns;
+  }
+
+  /**
+   * @return the columns of feature values or null if this list does not use columnar storage
+   */
+  @Nullable
+  public DataTypeColumns getFeatureColumns() {
+    return featureColumns;
   }
 
   private void addDefaultListeners() {
@@ -169,6 +448,7 @@ public class ModularFeatureList implements FeatureList {
   @Override
   public String setNameNoChecks(@NotNull String name) {
     this.nameProperty = name;
+    setModified(true);
 
     final MZmineProject project = MZmineCore.getProjectManager().getCurrentProject();
     if (project != null) {
@@ -190,6 +470,7 @@ public class ModularFeatureList implements FeatureList {
    *              For ion mobility data, the Frames are returned
    */
   public void setSelectedScans(@NotNull RawDataFile file, @Nullable List<? extends Scan> scans) {
+    retainStoragesOf(file);
     selectedScans.put(file, scans);
   }
 
@@ -292,7 +573,8 @@ public class ModularFeatureList implements FeatureList {
 
   @Override
   public void applyRowBindings() {
-    for (var row : featureListRows) {
+    ensureRowsLoaded();
+    for (var row : rows()) {
       applyRowBindings(row);
     }
   }
@@ -315,11 +597,13 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public ObservableMap<Class<? extends DataType>, DataType> getFeatureTypes() {
+    ensureRowsLoaded();
     return featureTypes;
   }
 
   @Override
   public void addFeatureType(Collection<DataType> types) {
+    ensureRowsLoaded();
     for (DataType<?> type : types) {
       if (!featureTypes.containsKey(type.getClass())) {
         // all {@link ModularFeature} will automatically add a default data map
@@ -337,6 +621,7 @@ public class ModularFeatureList implements FeatureList {
 
   @Override
   public void addRowType(Collection<DataType> types) {
+    ensureRowsLoaded();
     for (DataType<?> type : types) {
       if (!rowTypes.containsKey(type.getClass())) {
         // add row type - all rows will automatically generate a default property for this type in
@@ -358,6 +643,7 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public ObservableMap<Class<? extends DataType>, DataType> getRowTypes() {
+    ensureRowsLoaded();
     return rowTypes;
   }
 
@@ -415,7 +701,8 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public int getNumberOfRows() {
-    return featureListRows.size();
+    ensureRowsLoaded();
+    return rows().size();
   }
 
   /**
@@ -426,7 +713,8 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public ModularFeature getFeature(int row, RawDataFile raw) {
-    return ((ModularFeatureListRow) featureListRows.get(row)).getFilesFeatures().get(raw);
+    ensureRowsLoaded();
+    return ((ModularFeatureListRow) rows().get(row)).getFilesFeatures().get(raw);
   }
 
   /**
@@ -449,16 +737,19 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public FeatureListRow getRow(int row) {
-    return featureListRows.get(row);
+    ensureRowsLoaded();
+    return rows().get(row);
   }
 
   @Override
   public ObservableList<FeatureListRow> getRows() {
-    return featureListRows;
+    ensureRowsLoaded();
+    return rows();
   }
 
   @Override
   public void setRows(FeatureListRow... rows) {
+    ensureRowsLoaded();
     Set<RawDataFile> fileSet = new HashSet<>();
     for (FeatureListRow row : rows) {
       if (!(row instanceof ModularFeatureListRow)) {
@@ -478,8 +769,8 @@ public class ModularFeatureList implements FeatureList {
       }
     }
 //    logger.log(Level.FINEST, "SET ALL ROWS");
-    featureListRows.clear();
-    featureListRows.addAll(rows);
+    rows().clear();
+    rows().addAll(rows);
     applyRowBindings();
   }
 
@@ -512,6 +803,7 @@ public class ModularFeatureList implements FeatureList {
 
   @Override
   public void addRow(FeatureListRow row) {
+    ensureRowsLoaded();
     if (!(row instanceof ModularFeatureListRow modularRow)) {
       throw new IllegalArgumentException(
           "Can not add non-modular feature list row to modular feature list");
@@ -525,7 +817,7 @@ public class ModularFeatureList implements FeatureList {
       }
     }
     //    logger.finest("ADD ROW");
-    featureListRows.add(modularRow);
+    rows().add(modularRow);
     applyRowBindings(modularRow);
 
     // TODO solve with bindings
@@ -572,10 +864,11 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public void removeRow(FeatureListRow row) {
+    ensureRowsLoaded();
     // remove buffered charts, otherwise the reference is kept alive. What references the row, though?
     ((ModularFeatureListRow) row).clearBufferedColCharts();
     //    logger.finest("REMOVE ROW");
-    featureListRows.remove(row);
+    rows().remove(row);
   }
 
   /**
@@ -583,7 +876,8 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public void removeRow(int rowNum) {
-    removeRow(featureListRows.get(rowNum));
+    ensureRowsLoaded();
+    removeRow(rows().get(rowNum));
   }
 
   /**
@@ -591,28 +885,33 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public void removeRow(int rowNum, FeatureListRow row) {
-    removeRow(featureListRows.get(rowNum));
+    ensureRowsLoaded();
+    removeRow(rows().get(rowNum));
     // remove buffered charts, otherwise the reference is kept alive. What references the row, though?
     ((ModularFeatureListRow) row).clearBufferedColCharts();
-    featureListRows.remove(rowNum);
+    rows().remove(rowNum);
   }
 
   @Override
   public Stream<FeatureListRow> stream() {
-    return featureListRows.stream();
+    ensureRowsLoaded();
+    return rows().stream();
   }
 
   public Stream<ModularFeatureListRow> modularStream() {
-    return featureListRows.stream().map(row -> (ModularFeatureListRow) row);
+    ensureRowsLoaded();
+    return rows().stream().map(row -> (ModularFeatureListRow) row);
   }
 
   @Override
   public Stream<FeatureListRow> parallelStream() {
-    return featureListRows.parallelStream();
+    ensureRowsLoaded();
+    return rows().parallelStream();
   }
 
   public Stream<ModularFeatureListRow> modularParallelStream() {
-    return featureListRows.parallelStream().map(row -> (ModularFeatureListRow) row);
+    ensureRowsLoaded();
+    return rows().parallelStream().map(row -> (ModularFeatureListRow) row);
   }
 
   @Override
@@ -631,8 +930,10 @@ public class ModularFeatureList implements FeatureList {
    */
   @Override
   public int getFeatureListRowNum(Feature feature) {
-    for (int i = 0; i < featureListRows.size(); i++) {
-      if (featureListRows.get(i).hasFeature(feature)) {
+    ensureRowsLoaded();
+    final List<FeatureListRow> rows = rows();
+    for (int i = 0; i < rows.size(); i++) {
+      if (rows.get(i).hasFeature(feature)) {
         return i;
       }
     }
@@ -690,6 +991,7 @@ public class ModularFeatureList implements FeatureList {
   @Override
   public void setDateCreated(String date) {
     this.dateCreated = date;
+    setModified(true);
   }
 
 
@@ -731,6 +1033,7 @@ public class ModularFeatureList implements FeatureList {
   public void setGroups(List<RowGroup> groups) {
     this.groups = groups;
     CorrelationGroupingUtils.setGroupsToAllRows(groups);
+    setModified(true);
   }
 
   @NotNull
@@ -752,6 +1055,7 @@ public class ModularFeatureList implements FeatureList {
   public void addRowsRelationships(R2RMap<? extends RowsRelationship> map, Type relationship) {
     R2RMap<RowsRelationship> rowMap = r2rMaps.computeIfAbsent(relationship, key -> new R2RMap<>());
     rowMap.putAll(map);
+    setModified(true);
   }
 
   @Override
@@ -760,6 +1064,7 @@ public class ModularFeatureList implements FeatureList {
     R2RMap<RowsRelationship> rowMap = r2rMaps.computeIfAbsent(relationship.getType(),
         key -> new R2RMap<>());
     rowMap.add(a, b, relationship);
+    setModified(true);
   }
 
   /**
@@ -819,6 +1124,58 @@ public class ModularFeatureList implements FeatureList {
     return memoryMapStorage;
   }
 
+  /**
+   * Keeps the storage alive until this feature list is disposed. Required if this list references
+   * data that was stored by another storage, e.g., features copied from another feature list.
+   *
+   * @param storage the storage or null, if the data is stored in ram
+   */
+  public void retainStorage(@Nullable MemoryMapStorage storage) {
+    if (storage != null && retainedStorages.add(storage)) {
+      storage.retain();
+    }
+  }
+
+  /**
+   * Retains all storages of the other feature list, because data of its rows and features is
+   * shared with this list.
+   *
+   * @param other the feature list that data is copied from
+   */
+  public void retainStoragesOf(@Nullable FeatureList other) {
+    if (other instanceof ModularFeatureList mfl && mfl != this) {
+      mfl.retainedStorages.forEach(this::retainStorage);
+    }
+  }
+
+  /**
+   * Retains the storages of the raw data file, e.g., of its scans and mass lists, because the
+   * selected scans and the features of this list reference their data. New storages of the file
+   * are retained by {@link RawDataFileImpl#retainStorage(MemoryMapStorage)}.
+   *
+   * @param file the raw data file of this feature list
+   */
+  public void retainStoragesOf(@NotNull RawDataFile file) {
+    if (file instanceof RawDataFileImpl impl) {
+      impl.getRetainedStorages().forEach(this::retainStorage);
+    } else {
+      retainStorage(file.getMemoryMapStorage());
+    }
+  }
+
+  /**
+   * Releases all storages retained by this feature list. Storages that are not used by other
+   * feature lists or raw data files are released for reuse. This feature list and its rows must
+   * not be accessed afterwards. Called when the feature list is removed from the project.
+   */
+  public void dispose() {
+    for (MemoryMapStorage storage : List.copyOf(retainedStorages)) {
+      if (retainedStorages.remove(storage)) {
+        storage.releaseOwner(null);
+      }
+    }
+  }
+
   /**
    * Replaces {@link CachedIMSRawDataFile}s and {@link CachedIMSFrame}s in the selected scans and
    * raw data files of this feature list. Cached files are used during feature list import to avoid
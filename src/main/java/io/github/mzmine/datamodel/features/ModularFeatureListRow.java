@@ -32,6 +32,7 @@ import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.IsotopePattern;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.features.columnar.ColumnarValueMap;
 import io.github.mzmine.datamodel.features.compoundannotations.CompoundDBAnnotation;
 import io.github.mzmine.datamodel.features.types.DataType;
 import io.github.mzmine.datamodel.features.types.DetectionType;
@@ -100,14 +101,19 @@ import org.jetbrains.annotations.Nullable;
 public class ModularFeatureListRow implements FeatureListRow {
 
   private static final Logger logger = Logger.getLogger(ModularFeatureListRow.class.getName());
+  /**
+   * Stores all values. Either the observable map or a {@link ColumnarValueMap} if the feature list
+   * uses columnar storage. Then the observable map is only created on demand.
+   */
+  private final Map<DataType, Object> valueMap;
+  private volatile ObservableMap<DataType, Object> map;
   /**
    * this final map is used in the FeaturesType - only ModularFeatureListRow is supposed to change
    * this map see {@link #addFeature}
    */
-  private final ObservableMap<DataType, Object> map = FXCollections.observableMap(new HashMap<>());
   private final Map<RawDataFile, ModularFeature> features;
-  // buffert col charts and nodes
-  private final Map<String, Node> buffertColCharts = new HashMap<>();
+  // buffert col charts and nodes, only created for the GUI
+  private Map<String, Node> buffertColCharts;
   @NotNull
   private ModularFeatureList flist;
 
@@ -120,17 +126,24 @@ public class ModularFeatureListRow implements FeatureListRow {
   public ModularFeatureListRow(@NotNull ModularFeatureList flist, int id) {
     this.flist = flist;
 
-    // register listener to types map to automatically generate default properties for new DataTypes
-    flist.getRowTypes().addListener(
-        (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
-          if (change.wasAdded()) {
-            // do nothing for now
-          } else if (change.wasRemoved()) {
-            // remove type columns to maps
-            DataType type = change.getValueRemoved();
-            this.remove((Class) type.getClass());
-          }
-        });
+    if (flist.isColumnarStorage()) {
+      // removed types are handled by the feature list
+      valueMap = new ColumnarValueMap(flist.getRowColumns());
+    } else {
+      map = FXCollections.observableMap(new HashMap<>());
+      valueMap = map;
+      // register listener to types map to automatically generate default properties for new DataTypes
+      flist.getRowTypes().addListener(
+          (MapChangeListener<? super Class<? extends DataType>, ? super DataType>) change -> {
+            if (change.wasAdded()) {
+              // do nothing for now
+            } else if (change.wasRemoved()) {
+              // remove type columns to maps
+              DataType type = change.getValueRemoved();
+              this.remove((Class) type.getClass());
+            }
+          });
+    }
 
     // features
     List<RawDataFile> raws = flist.getRawDataFiles();
@@ -186,6 +199,8 @@ public class ModularFeatureListRow implements FeatureListRow {
 
     // copy all but features and id
     if (row != null) {
+      // the copy shares the stored data of the original row
+      flist.retainStoragesOf(row.getFeatureList());
       row.stream()
           .filter(e -> !(e.getKey() instanceof FeaturesType) && !(e.getKey() instanceof IDType))
           .forEach(entry -> this.set(entry.getKey(), entry.getValue()));
@@ -207,7 +222,52 @@ public class ModularFeatureListRow implements FeatureListRow {
   // todo make private?
   @Override
   public ObservableMap<DataType, Object> getMap() {
-    return map;
+    ObservableMap<DataType, Object> observable = map;
+    if (observable == null) {
+      synchronized (this) {
+        if (map == null) {
+          // only created when needed, e.g., by the GUI
+          map = FXCollections.observableMap(valueMap);
+        }
+        observable = map;
+      }
+    }
+    return observable;
+  }
+
+  /**
+   * Writes go through the observable map once it was created by {@link #getMap()}, so that its
+   * listeners are notified of all changes.
+   */
+  @Override
+  public Map<DataType, Object> getValueMap() {
+    final ObservableMap<DataType, Object> observable = map;
+    return observable != null ? observable : valueMap;
+  }
+
+  /**
+   * Moves numeric values out of the shared columns of the feature list and releases the index in
+   * columnar mode, when this row is removed from the feature list. Values are kept.
+   */
+  void detachColumns() {
+    if (valueMap instanceof ColumnarValueMap columnar) {
+      columnar.detach();
+    }
+    for (ModularFeature feature : features.values()) {
+      feature.detachColumns();
+    }
+  }
+
+  /**
+   * Reverts {@link #detachColumns()} when this row is added to the feature list again
+   */
+  void attachColumns() {
+    if (valueMap instanceof ColumnarValueMap columnar) {
+      columnar.attach();
+    }
+    for (ModularFeature feature : features.values()) {
+      feature.attachColumns();
+    }
   }
 
   @Override
@@ -230,6 +290,9 @@ public class ModularFeatureListRow implements FeatureListRow {
     }
     // access default method
     boolean changed = FeatureListRow.super.set(tclass, value);
+    if (changed) {
+      flist.setModified(true);
+    }
 
     //
     if (changed && tclass.equals(FeaturesType.class)) {
@@ -284,6 +347,12 @@ public class ModularFeatureListRow implements FeatureListRow {
     modularFeature.setRow(this);
 
     if (!Objects.equals(oldFeature, modularFeature)) {
+      if (oldFeature != null) {
+        oldFeature.detachColumns();
+      }
+      // the feature might have been removed from a row before
+      modularFeature.attachColumns();
+      flist.setModified(true);
       // reflect changes by updating all row bindings
       getFeatureList().fireFeatureChangedEvent(this, modularFeature, raw, updateByRowBindings);
     }
@@ -308,7 +377,11 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void removeFeature(RawDataFile file) {
-    this.features.remove(file);
+    final ModularFeature removed = this.features.remove(file);
+    if (removed != null) {
+      removed.detachColumns();
+      flist.setModified(true);
+    }
   }
 
   @Override
@@ -381,14 +454,20 @@ public class ModularFeatureListRow implements FeatureListRow {
   }
 
   public Node getBufferedColChart(String colname) {
-    return buffertColCharts.get(colname);
+    return buffertColCharts == null ? null : buffertColCharts.get(colname);
   }
 
   public void addBufferedColChart(String colname, Node node) {
+    if (buffertColCharts == null) {
+      buffertColCharts = new HashMap<>();
+    }
     buffertColCharts.put(colname, node);
   }
 
   public void clearBufferedColCharts() {
+    if (buffertColCharts == null) {
+      return;
+    }
     buffertColCharts.forEach((k, v) -> {
       if (v instanceof Pane p && p.getParent() instanceof Pane pane) {
         // remove the node from the parent so there is no more reference and it can be GC'ed
@@ -543,7 +622,7 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void addCompoundAnnotation(CompoundDBAnnotation id) {
-    synchronized (getMap()) {
+    synchronized (valueMap) {
       List<CompoundDBAnnotation> matches = get(CompoundDatabaseMatchesType.class);
       if (matches == null) {
         matches = new ArrayList<>();
@@ -569,7 +648,7 @@ public class ModularFeatureListRow implements FeatureListRow {
    */
   @Override
   public boolean isIdentified() {
-    for (Entry<DataType, Object> entry : getMap().entrySet()) {
+    for (Entry<DataType, Object> entry : getValueMap().entrySet()) {
       final DataType dt = entry.getKey();
       if (dt instanceof ListWithSubsType<?> listType && dt instanceof AnnotationType) {
         final List<?> list = get(listType);
@@ -583,14 +662,14 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void setCompoundAnnotations(List<CompoundDBAnnotation> annotations) {
-    synchronized (getMap()) {
+    synchronized (valueMap) {
       set(CompoundDatabaseMatchesType.class, annotations);
     }
   }
 
   @Override
   public void addSpectralLibraryMatch(SpectralDBAnnotation id) {
-    synchronized (getMap()) {
+    synchronized (valueMap) {
       List<SpectralDBAnnotation> matches = get(SpectralLibraryMatchesType.class);
       if (matches == null) {
         matches = new ArrayList<>();
@@ -602,7 +681,7 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void addSpectralLibraryMatches(List<SpectralDBAnnotation> matches) {
-    synchronized (getMap()) {
+    synchronized (valueMap) {
       List<SpectralDBAnnotation> old = get(SpectralLibraryMatchesType.class);
       if (old == null) {
         old = new ArrayList<>();
@@ -620,7 +699,7 @@ public class ModularFeatureListRow implements FeatureListRow {
 
   @Override
   public void setSpectralLibraryMatch(List<SpectralDBAnnotation> matches) {
-    synchronized (getMap()) {
+    synchronized (valueMap) {
       set(SpectralLibraryMatchesType.class, matches);
     }
   }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.columnar;
+
+import io.github.mzmine.datamodel.features.ModularDataModel;
+import io.github.mzmine.datamodel.features.columnar.DataTypeColumns.Column;
+import io.github.mzmine.datamodel.features.types.DataType;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Value map of a single {@link ModularDataModel} in columnar mode. Numeric values are stored in
+ * the shared {@link DataTypeColumns} of the feature list, all other values in a small map that is
+ * only created when needed. Null values are not stored. All methods synchronize on this map, which
+ * guards the index in the columns.
+ * <p>
+ * Rows and features that are removed from the feature list are detached: their values are moved
+ * into the object map and the index is returned to the columns. Attaching them again, e.g., when a
+ * row is added back, moves the values back into the columns.
+ * <p>
+ * The entry set is a snapshot, changes to the entries are not written back.
+ */
+public class ColumnarValueMap extends AbstractMap<DataType, Object> {
+
+  private final DataTypeColumns columns;
+  // index in the columns or -1 if detached
+  private int index;
+  private Map<DataType, Object> objects;
+
+  public ColumnarValueMap(@NotNull DataTypeColumns columns) {
+    this.columns = columns;
+    this.index = columns.allocateIndex();
+  }
+
+  /**
+   * @return true if numeric values are stored in the columns
+   */
+  public synchronized boolean isAttached() {
+    return index != -1;
+  }
+
+  /**
+   * Moves all values from the columns into the object map and releases the index, e.g., when the
+   * row or feature is removed from the feature list. All values are kept.
+   */
+  public synchronized void detach() {
+    if (index == -1) {
+      return;
+    }
+    for (Entry<DataType, Column> entry : columns.getColumns().entrySet()) {
+      final Object value = entry.getValue().remove(index);
+      if (value != null) {
+        objects().put(entry.getKey(), value);
+      }
+    }
+    columns.releaseIndex(index);
+    index = -1;
+  }
+
+  /**
+   * Allocates a new index and moves all numeric values back into the columns. Reverts
+   * {@link #detach()}.
+   */
+  public synchronized void attach() {
+    if (index != -1) {
+      return;
+    }
+    index = columns.allocateIndex();
+    if (objects == null) {
+      return;
+    }
+    for (Iterator<Entry<DataType, Object>> it = objects.entrySet().iterator(); it.hasNext(); ) {
+      final Entry<DataType, Object> entry = it.next();
+      if (DataTypeColumns.isColumnType(entry.getKey())) {
+        final Column column = columns.getOrCreateColumn(entry.getKey());
+        if (column.accepts(entry.getValue())) {
+          column.put(index, entry.getValue());
+          it.remove();
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized Object get(Object key) {
+    if (index != -1 && DataTypeColumns.isColumnType(key)) {
+      Column column = columns.getColumn((DataType) key);
+      if (column != null) {
+        Object value = column.get(index);
+        if (value != null) {
+          return value;
+        }
+      }
+    }
+    return objects == null ? null : objects.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public synchronized Object put(DataType key, Object value) {
+    if (value == null) {
+      return remove(key);
+    }
+    if (index != -1 && DataTypeColumns.isColumnType(key)) {
+      Column column = columns.getOrCreateColumn(key);
+      if (column.accepts(value)) {
+        Object old = column.put(index, value);
+        // value might have been stored as an object before
+        Object oldObject = objects == null ? null : objects.remove(key);
+        return old != null ? old : oldObject;
+      }
+    }
+    // other values, unexpected value classes or detached
+    final Object old = removeFromColumn(key);
+    Object oldObject = objects().put(key, value);
+    return old != null ? old : oldObject;
+  }
+
+  @Override
+  public synchronized Object remove(Object key) {
+    Object old = removeFromColumn(key);
+    Object oldObject = objects == null ? null : objects.remove(key);
+    return old != null ? old : oldObject;
+  }
+
+  private Object removeFromColumn(Object key) {
+    if (index == -1 || !DataTypeColumns.isColumnType(key)) {
+      return null;
+    }
+    Column column = columns.getColumn((DataType) key);
+    return column == null ? null : column.remove(index);
+  }
+
+  private Map<DataType, Object> objects() {
+    if (objects == null) {
+      objects = new HashMap<>(4);
+    }
+    return objects;
+  }
+
+  @Override
+  public synchronized void clear() {
+    if (index != -1) {
+      for (Column column : columns.getColumns().values()) {
+        column.remove(index);
+      }
+    }
+    objects = null;
+  }
+
+  @NotNull
+  @Override
+  public synchronized Set<Entry<DataType, Object>> entrySet() {
+    final List<Entry<DataType, Object>> entries = new ArrayList<>();
+    if (index != -1) {
+      for (Entry<DataType, Column> entry : columns.getColumns().entrySet()) {
+        Object value = entry.getValue().get(index);
+        if (value != null) {
+          entries.add(new SimpleImmutableEntry<>(entry.getKey(), value));
+        }
+      }
+    }
+    if (objects != null) {
+      for (Entry<DataType, Object> entry : objects.entrySet()) {
+        entries.add(new SimpleImmutableEntry<>(entry));
+      }
+    }
+
+    return new AbstractSet<>() {
+      @Override
+      public Iterator<Entry<DataType, Object>> iterator() {
+        final Iterator<Entry<DataType, Object>> it = entries.iterator();
+        return new Iterator<>() {
+          private Entry<DataType, Object> last;
+
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public Entry<DataType, Object> next() {
+            last = it.next();
+            return last;
+          }
+
+          @Override
+          public void remove() {
+            it.remove();
+            ColumnarValueMap.this.remove(last.getKey());
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return entries.size();
+      }
+    };
+  }
+}
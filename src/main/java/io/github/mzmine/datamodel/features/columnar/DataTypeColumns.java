@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.columnar;
+
+import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.DoubleType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.FloatType;
+import io.github.mzmine.datamodel.features.types.numbers.abstr.IntegerType;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Columnar storage of numeric {@link DataType} values for all rows or all features of a feature
+ * list. Each data model gets an index into primitive arrays per type, instead of boxed values in a
+ * hash map per row or feature. See {@link ColumnarValueMap}.
+ * <p>
+ * The columns are split into pages of {@link #PAGE_SIZE} values that are created on first write.
+ * Columns are not locked: each index is only accessed by its {@link ColumnarValueMap} while holding
+ * the monitor of that map, and the presence bits of a page are updated atomically. Only the
+ * creation of new pages locks the column.
+ * <p>
+ * Indices of rows and features that are removed from the feature list are released right away
+ * (see {@link ColumnarValueMap#detach()}) and handed out again, so the columns only grow with the
+ * maximum number of rows or features in the list at the same time.
+ */
+public class DataTypeColumns {
+
+  static final int PAGE_BITS = 10;
+  static final int PAGE_SIZE = 1 << PAGE_BITS;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  private final Map<DataType, Column> columns = new ConcurrentHashMap<>();
+  private final AtomicInteger nextIndex = new AtomicInteger(0);
+  /**
+   * Released indices, guarded by itself
+   */
+  private final IntArrayList freeIndices = new IntArrayList();
+
+  /**
+   * @return true if values of this type are stored in primitive columns
+   */
+  public static boolean isColumnType(@Nullable Object type) {
+    return type instanceof DoubleType || type instanceof FloatType || type instanceof IntegerType;
+  }
+
+  /**
+   * @return a released index or a new index for a row or feature
+   */
+  int allocateIndex() {
+    synchronized (freeIndices) {
+      if (!freeIndices.isEmpty()) {
+        return freeIndices.popInt();
+      }
+    }
+    return nextIndex.getAndIncrement();
+  }
+
+  /**
+   * Puts an index into the free-list. All values of the index must have been removed and the
+   * index must not be used by any value map anymore.
+   */
+  void releaseIndex(int index) {
+    synchronized (freeIndices) {
+      freeIndices.add(index);
+    }
+  }
+
+  /**
+   * @return the number of indices in use
+   */
+  public int size() {
+    synchronized (freeIndices) {
+      return nextIndex.get() - freeIndices.size();
+    }
+  }
+
+  /**
+   * @return the number of indices that were ever handed out, the columns are at most this long
+   */
+  public int getCapacity() {
+    return nextIndex.get();
+  }
+
+  @Nullable
+  Column getColumn(DataType type) {
+    return columns.get(type);
+  }
+
+  @NotNull
+  Column getOrCreateColumn(DataType type) {
+    return columns.computeIfAbsent(type, DataTypeColumns::createColumn);
+  }
+
+  Map<DataType, Column> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Drops all values of a type, e.g., when the type was removed from the feature list
+   */
+  public void removeColumn(DataType type) {
+    columns.remove(type);
+  }
+
+  private static Column createColumn(DataType type) {
+    if (type instanceof DoubleType) {
+      return new DoubleColumn();
+    } else if (type instanceof FloatType) {
+      return new FloatColumn();
+    } else if (type instanceof IntegerType) {
+      return new IntColumn();
+    }
+    throw new IllegalArgumentException("No column for data type " + type.getClass().getName());
+  }
+
+  /**
+   * A paged column of primitive values with a set of indices that hold a value. Callers need to
+   * hold the monitor of the {@link ColumnarValueMap} that owns the index. Values are only boxed by
+   * {@link #get(int)} and {@link #put(int, Object)} for the map interface.
+   */
+  static abstract class Column {
+
+    // presence bits of each page, the pages of values are created together with the bits
+    private volatile AtomicLongArray[] present = new AtomicLongArray[0];
+
+    final boolean has(int index) {
+      final AtomicLongArray[] pages = present;
+      final int page = index >>> PAGE_BITS;
+      if (page >= pages.length || pages[page] == null) {
+        return false;
+      }
+      return (pages[page].get((index & PAGE_MASK) >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * @return the old value or null
+     */
+    final Object remove(int index) {
+      final Object old = get(index);
+      if (old != null) {
+        final AtomicLongArray bits = present[index >>> PAGE_BITS];
+        final long mask = ~(1L << index);
+        bits.getAndUpdate((index & PAGE_MASK) >>> 6, word -> word & mask);
+      }
+      return old;
+    }
+
+    /**
+     * @return the value or null if there is no value for this index
+     */
+    abstract Object get(int index);
+
+    /**
+     * @param value a value that this column {@link #accepts(Object)}
+     * @return the old value or null
+     */
+    final Object put(int index, @NotNull Object value) {
+      final Object old = get(index);
+      ensurePage(index >>> PAGE_BITS);
+      setValue(index & PAGE_MASK, index >>> PAGE_BITS, value);
+      final long mask = 1L << index;
+      // other indices of the same word are set concurrently
+      present[index >>> PAGE_BITS].getAndUpdate((index & PAGE_MASK) >>> 6, word -> word | mask);
+      return old;
+    }
+
+    /**
+     * @return true if the value can be stored in this column
+     */
+    abstract boolean accepts(Object value);
+
+    /**
+     * Unboxes and stores the value, the page exists
+     */
+    protected abstract void setValue(int offset, int page, Object value);
+
+    /**
+     * Grows the pages of values to the given number of pages and creates the page
+     */
+    protected abstract void createPage(int page, int numPages);
+
+    private void ensurePage(int page) {
+      final AtomicLongArray[] pages = present;
+      if (page < pages.length && pages[page] != null) {
+        return;
+      }
+      synchronized (this) {
+        AtomicLongArray[] current = present;
+        if (page < current.length && current[page] != null) {
+          return;
+        }
+        final int numPages = Math.max(page + 1, current.length);
+        // values first, readers check the presence bits before reading values
+        createPage(page, numPages);
+        current = Arrays.copyOf(current, numPages);
+        current[page] = new AtomicLongArray(PAGE_SIZE / 64);
+        present = current;
+      }
+    }
+  }
+
+  static final class DoubleColumn extends Column {
+
+    private volatile double[][] pages = new double[0][];
+
+    /**
+     * @return the value of an index that {@link #has(int)} a value
+     */
+    double getDouble(int index) {
+      return pages[index >>> PAGE_BITS][index & PAGE_MASK];
+    }
+
+    @Override
+    Object get(int index) {
+      return has(index) ? getDouble(index) : null;
+    }
+
+    @Override
+    boolean accepts(Object value) {
+      return value instanceof Double;
+    }
+
+    @Override
+    protected void setValue(int offset, int page, Object value) {
+      pages[page][offset] = (Double) value;
+    }
+
+    @Override
+    protected void createPage(int page, int numPages) {
+      final double[][] grown = Arrays.copyOf(pages, numPages);
+      grown[page] = new double[PAGE_SIZE];
+      pages = grown;
+    }
+  }
+
+  static final class FloatColumn extends Column {
+
+    private volatile float[][] pages = new float[0][];
+
+    /**
+     * @return the value of an index that {@link #has(int)} a value
+     */
+    float getFloat(int index) {
+      return pages[index >>> PAGE_BITS][index & PAGE_MASK];
+    }
+
+    @Override
+    Object get(int index) {
+      return has(index) ? getFloat(index) : null;
+    }
+
+    @Override
+    boolean accepts(Object value) {
+      return value instanceof Float;
+    }
+
+    @Override
+    protected void setValue(int offset, int page, Object value) {
+      pages[page][offset] = (Float) value;
+    }
+
+    @Override
+    protected void createPage(int page, int numPages) {
+      final float[][] grown = Arrays.copyOf(pages, numPages);
+      grown[page] = new float[PAGE_SIZE];
+      pages = grown;
+    }
+  }
+
+  static final class IntColumn extends Column {
+
+    private volatile int[][] pages = new int[0][];
+
+    /**
+     * @return the value of an index that {@link #has(int)} a value
+     */
+    int getInt(int index) {
+      return pages[index >>> PAGE_BITS][index & PAGE_MASK];
+    }
+
+    @Override
+    Object get(int index) {
+      return has(index) ? getInt(index) : null;
+    }
+
+    @Override
+    boolean accepts(Object value) {
+      return value instanceof Integer;
+    }
+
+    @Override
+    protected void setValue(int offset, int page, Object value) {
+      pages[page][offset] = (Integer) value;
+    }
+
+    @Override
+    protected void createPage(int page, int numPages) {
+      final int[][] grown = Arrays.copyOf(pages, numPages);
+      grown[page] = new int[PAGE_SIZE];
+      pages = grown;
+    }
+  }
+}
@@ -28,6 +28,7 @@ package io.github.mzmine.datamodel.features.correlation;
 import io.github.mzmine.util.maths.similarity.Similarity;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import org.apache.commons.math.MathException;
 import org.apache.commons.math.stat.regression.SimpleRegression;
@@ -66,9 +67,7 @@ public class FullCorrelationData implements CorrelationData {
   public static FullCorrelationData create(Collection<FullCorrelationData> corr) {
     List<double[]> dat = new ArrayList<>();
     for (FullCorrelationData c : corr) {
-      for (double[] d : c.getData()) {
-        dat.add(d);
-      }
+      Collections.addAll(dat, c.data);
     }
     return create(dat);
   }
@@ -115,6 +114,9 @@ public class FullCorrelationData implements CorrelationData {
     return cosineSim;
   }
 
+  /**
+   * @return all data points [data point number intensity][feature a, b]
+   */
   @Override
   public double[][] getData() {
     return data;
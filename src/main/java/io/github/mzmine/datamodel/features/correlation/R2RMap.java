@@ -26,15 +26,24 @@
 package io.github.mzmine.datamodel.features.correlation;
 
 import io.github.mzmine.datamodel.features.FeatureListRow;
-import io.github.mzmine.util.MathUtils;
-import java.util.concurrent.ConcurrentHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
 
 /**
- * Map an object to two rows
+ * Map an object to two rows. Backed by a primitive long keyed map, the key is built from both row
+ * IDs. All methods are thread safe. Threads that add many values at the same time should collect
+ * into their own maps and merge them with {@link #putAll(R2RMap)}, all writes lock the map.
  *
  * @author Robin Schmid
  */
-public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
+public class R2RMap<T> {
+
+  private final Long2ObjectOpenHashMap<T> map = new Long2ObjectOpenHashMap<>();
+  // snapshot of the values, reset on modification
+  private volatile List<T> values;
 
   public R2RMap() {
   }
@@ -46,8 +55,10 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param b Feature list row with getID >=0
    * @return unique undirected ID
    */
-  public static int toKey(FeatureListRow a, FeatureListRow b) {
-    return MathUtils.undirectedPairing(a.getID(), b.getID());
+  public static long toKey(FeatureListRow a, FeatureListRow b) {
+    final int idA = a.getID();
+    final int idB = b.getID();
+    return idA <= idB ? ((long) idA << 32) | idB : ((long) idB << 32) | idA;
   }
 
   /**
@@ -57,7 +68,7 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param value values is mapped to the pair of FeatureListRows a and b
    */
   public void add(FeatureListRow a, FeatureListRow b, T value) {
-    this.put(toKey(a, b), value);
+    put(a, b, value);
   }
 
   /**
@@ -67,7 +78,28 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @param value values is mapped to the pair of FeatureListRows a and b
    */
   public void put(FeatureListRow a, FeatureListRow b, T value) {
-    super.put(toKey(a, b), value);
+    final long key = toKey(a, b);
+    synchronized (map) {
+      map.put(key, value);
+      values = null;
+    }
+  }
+
+  /**
+   * Adds all mappings of the other map
+   */
+  public void putAll(@NotNull R2RMap<? extends T> other) {
+    if (other == this) {
+      return;
+    }
+    final Long2ObjectOpenHashMap<? extends T> copy;
+    synchronized (other.map) {
+      copy = new Long2ObjectOpenHashMap<>(other.map);
+    }
+    synchronized (map) {
+      map.putAll(copy);
+      values = null;
+    }
   }
 
   /**
@@ -76,7 +108,39 @@ public class R2RMap<T> extends ConcurrentHashMap<Integer, T> {
    * @return the value mapped to the pair of a-b (== b-a) or null if no mapping exists
    */
   public T get(FeatureListRow a, FeatureListRow b) {
-    return get(toKey(a, b));
+    final long key = toKey(a, b);
+    synchronized (map) {
+      return map.get(key);
+    }
+  }
+
+  /**
+   * The snapshot is only created again after the map was modified.
+   *
+   * @return an unmodifiable snapshot of all values
+   */
+  @NotNull
+  public List<T> values() {
+    final List<T> snapshot = values;
+    if (snapshot != null) {
+      return snapshot;
+    }
+    synchronized (map) {
+      if (values == null) {
+        values = Collections.unmodifiableList(new ArrayList<>(map.values()));
+      }
+      return values;
+    }
+  }
+
+  public int size() {
+    synchronized (map) {
+      return map.size();
+    }
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
   }
 
 }
@@ -91,7 +91,7 @@ public class MZmineToMSDKRawDataFile implements io.github.msdk.datamodel.RawData
 
   @Override
   public void dispose() {
-    mzmineRawdataFile.close();
+    // the wrapped file is owned by the project and closed when it is removed
   }
 
 }
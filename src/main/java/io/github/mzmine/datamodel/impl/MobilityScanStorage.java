@@ -125,17 +125,31 @@ public class MobilityScanStorage {
   public void generateAndAddMobilityScanMassLists(@Nullable MemoryMapStorage storage,
       @NotNull MassDetector massDetector, @NotNull ParameterSet massDetectorParameters,
       boolean denormalizeMSnScans) {
+    final List<double[][]> data = detectMobilityScanMassLists(massDetector,
+        massDetectorParameters, denormalizeMSnScans);
+    if (data == null) {
+      useRawDataAsMassLists();
+    } else {
+      setMassLists(storage, data);
+    }
+  }
 
+  /**
+   * Runs the mass detection on all mobility scans without storing the results. Can be called
+   * concurrently for different frames, the results are set via
+   * {@link #setMassLists(MemoryMapStorage, List)}.
+   *
+   * @return the mass lists as [0,1] as [mzs, intensities] arrays, one for each MobilityScan or
+   * null if the raw data can be used as mass lists ({@link #useRawDataAsMassLists()}).
+   */
+  @Nullable
+  public List<double[][]> detectMobilityScanMassLists(@NotNull MassDetector massDetector,
+      @NotNull ParameterSet massDetectorParameters, boolean denormalizeMSnScans) {
     if (massDetector instanceof CentroidMassDetector &&
         Double.compare(massDetectorParameters.getValue(CentroidMassDetectorParameters.noiseLevel),
             0d) == 0) {
       // no need to run mass detection in this case.
-      massListBasePeakIndices = rawBasePeakIndices;
-      massListMaxNumPoints = rawMaxNumPoints;
-      massListMzValues = rawMzValues;
-      massListIntensityValues = rawIntensityValues;
-      massListStorageOffsets = rawStorageOffsets;
-      return;
+      return null;
     }
 
     // mobility scan -> [0][] = mzs, [1][] = intensities
@@ -149,8 +163,18 @@ public class MobilityScanStorage {
       }
       data.add(mzIntensity);
     }
+    return data;
+  }
 
-    setMassLists(storage, data);
+  /**
+   * Uses the raw data of the mobility scans as mass lists.
+   */
+  public void useRawDataAsMassLists() {
+    massListBasePeakIndices = rawBasePeakIndices;
+    massListMaxNumPoints = rawMaxNumPoints;
+    massListMzValues = rawMzValues;
+    massListIntensityValues = rawIntensityValues;
+    massListStorageOffsets = rawStorageOffsets;
   }
 
   /**
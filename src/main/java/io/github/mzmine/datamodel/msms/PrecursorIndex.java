@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.msms;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Scan;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable index of fragmentation scans or {@link MsMsInfo}s sorted by precursor m/z. Queries
+ * find all entries in an m/z range by binary search and return them in their original order, so
+ * grouping of MS2 scans to features is a range query instead of a scan over all fragment scans.
+ *
+ * @param <T> the indexed type, e.g., {@link Scan} or {@link PasefMsMsInfo}
+ */
+public final class PrecursorIndex<T> {
+
+  private final T[] items;
+  private final double[] mzs;
+  private final float[] rts;
+  // position in the original collection
+  private final int[] positions;
+
+  private PrecursorIndex(T[] items, double[] mzs, float[] rts, int[] positions) {
+    this.items = items;
+    this.mzs = mzs;
+    this.rts = rts;
+    this.positions = positions;
+  }
+
+  /**
+   * @param items       the items to index. All items are indexed, filter items without a precursor
+   *                    m/z beforehand
+   * @param precursorMz the precursor m/z of an item
+   * @param rt          the retention time of an item
+   * @return an index sorted by precursor m/z
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> PrecursorIndex<T> create(@NotNull Collection<? extends T> items,
+      @NotNull ToDoubleFunction<? super T> precursorMz, @NotNull ToDoubleFunction<? super T> rt) {
+    final Object[] sourceItems = items.toArray();
+    final int n = sourceItems.length;
+    final double[] sourceMzs = new double[n];
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      sourceMzs[i] = precursorMz.applyAsDouble((T) sourceItems[i]);
+      order[i] = i;
+    }
+    // Double.compare sorts NaN last, the binary searches treat it as larger than any m/z
+    IntArrays.quickSort(order, (a, b) -> {
+      int compare = Double.compare(sourceMzs[a], sourceMzs[b]);
+      return compare != 0 ? compare : Integer.compare(a, b);
+    });
+
+    final T[] sorted = (T[]) new Object[n];
+    final double[] mzs = new double[n];
+    final float[] rts = new float[n];
+    for (int i = 0; i < n; i++) {
+      final T item = (T) sourceItems[order[i]];
+      sorted[i] = item;
+      mzs[i] = sourceMzs[order[i]];
+      rts[i] = (float) rt.applyAsDouble(item);
+    }
+    return new PrecursorIndex<>(sorted, mzs, rts, order);
+  }
+
+  /**
+   * Index of scans by {@link Scan#getPrecursorMz()}. Scans without a precursor m/z are not indexed.
+   */
+  public static PrecursorIndex<Scan> ofScans(@NotNull Collection<? extends Scan> scans) {
+    return create(scans.stream().filter(scan -> scan.getPrecursorMz() != null).toList(),
+        Scan::getPrecursorMz, Scan::getRetentionTime);
+  }
+
+  /**
+   * @return the number of indexed items
+   */
+  public int size() {
+    return items.length;
+  }
+
+  /**
+   * @param mzRange precursor m/z range
+   * @param rtRange retention time range or null
+   * @return all items within the ranges in their original order
+   */
+  @NotNull
+  public List<T> find(@NotNull Range<Double> mzRange, @Nullable Range<Float> rtRange) {
+    return find(mzRange, rtRange, null);
+  }
+
+  /**
+   * @param mzRange precursor m/z range
+   * @param rtRange retention time range or null
+   * @param filter  additional filter or null
+   * @return all items within the ranges that match the filter in their original order
+   */
+  @NotNull
+  public List<T> find(@NotNull Range<Double> mzRange, @Nullable Range<Float> rtRange,
+      @Nullable Predicate<? super T> filter) {
+    int from = mzRange.hasLowerBound() ? lowerBound(mzRange.lowerEndpoint()) : 0;
+    int to = mzRange.hasUpperBound() ? upperBound(mzRange.upperEndpoint()) : items.length;
+
+    int[] matches = null;
+    int n = 0;
+    for (int i = from; i < to; i++) {
+      if (!mzRange.contains(mzs[i]) || (rtRange != null && !rtRange.contains(rts[i])) || (
+          filter != null && !filter.test(items[i]))) {
+        continue;
+      }
+      if (matches == null) {
+        matches = new int[Math.min(to - from, 16)];
+      } else if (n == matches.length) {
+        matches = Arrays.copyOf(matches, n * 2);
+      }
+      matches[n++] = i;
+    }
+    if (n == 0) {
+      return List.of();
+    }
+
+    // restore the original order
+    final int[] found = matches;
+    IntArrays.quickSort(found, 0, n, (a, b) -> Integer.compare(positions[a], positions[b]));
+    final List<T> result = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      result.add(items[found[i]]);
+    }
+    return result;
+  }
+
+  /**
+   * @return the first index with mzs[i] >= mz
+   */
+  private int lowerBound(double mz) {
+    int low = 0;
+    int high = mzs.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mzs[mid] < mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the first index with mzs[i] > mz
+   */
+  private int upperBound(double mz) {
+    int low = 0;
+    int high = mzs.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mzs[mid] <= mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
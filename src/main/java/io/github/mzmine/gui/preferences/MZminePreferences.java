@@ -45,6 +45,7 @@ import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
 import io.github.mzmine.parameters.parametertypes.paintscale.PaintScalePaletteParameter;
 import io.github.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
 import io.github.mzmine.util.ExitCode;
+import io.github.mzmine.util.MemoryMapBackend;
 import java.text.DecimalFormat;
 import java.util.Map;
 import javafx.application.Platform;
@@ -153,6 +154,20 @@ public class MZminePreferences extends SimpleParameterSet {
       KeepInMemory.ALL, KeepInMemory.MASSES_AND_FEATURES), KeepInMemory.values(),
       KeepInMemory.NONE);
 
+  public static final ComboParameter<MemoryMapBackend> memoryMapBackend = new ComboParameter<>(
+      "Memory mapping backend", String.format(
+      "Specifies how temporary files are mapped into memory. %s is the established default. %s "
+          + "uses the foreign memory API with larger temporary files, deterministic release of "
+          + "temp files and native byte order for faster bulk reads. Only applies to newly "
+          + "created data.", MemoryMapBackend.BYTE_BUFFER, MemoryMapBackend.FOREIGN_MEMORY),
+      MemoryMapBackend.values(), MemoryMapBackend.BYTE_BUFFER);
+
+  public static final BooleanParameter virtualThreadTasks = new BooleanParameter(
+      "Run tasks on virtual threads",
+      "Runs tasks on lightweight virtual threads instead of a pool of platform threads. May "
+          + "improve throughput for many I/O bound tasks like data import. The number of "
+          + "concurrent tasks is still limited by the number of threads. Experimental.", false);
+
   public static final BooleanParameter showPrecursorWindow = new BooleanParameter(
       "Show precursor windows", "Show the isolation window instead of just the precursor m/z.",
       false);
@@ -171,7 +186,8 @@ public class MZminePreferences extends SimpleParameterSet {
   public MZminePreferences() {
     super(new Parameter[]{
         // start with performance
-        numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath, sendStatistics,
+        numOfThreads, virtualThreadTasks, memoryOption, memoryMapBackend, tempDirectory,
+        proxySettings, rExecPath, sendStatistics,
         // visuals
         // number formats
         mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat, scoreFormat,
@@ -196,8 +212,8 @@ public class MZminePreferences extends SimpleParameterSet {
 
     // add groups
     dialog.addParameterGroup("General",
-        new Parameter[]{numOfThreads, memoryOption, tempDirectory, proxySettings, rExecPath,
-            sendStatistics});
+        new Parameter[]{numOfThreads, virtualThreadTasks, memoryOption, memoryMapBackend,
+            tempDirectory, proxySettings, rExecPath, sendStatistics});
     dialog.addParameterGroup("Formats",
         new Parameter[]{mzFormat, rtFormat, mobilityFormat, ccsFormat, intensityFormat, ppmFormat,
             scoreFormat, unitFormat});
@@ -222,6 +238,7 @@ public class MZminePreferences extends SimpleParameterSet {
       final KeepInMemory keepInMemory = MZmineCore.getConfiguration().getPreferences()
           .getParameter(MZminePreferences.memoryOption).getValue();
       keepInMemory.enforceToMemoryMapping();
+      getValue(MZminePreferences.memoryMapBackend).enforceToMemoryMapping();
 
       // Repaint windows to update number formats
       // MZmineCore.getDesktop().getMainWindow().repaint();
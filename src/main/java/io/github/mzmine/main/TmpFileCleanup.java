@@ -142,6 +142,7 @@ public class TmpFileCleanup implements Runnable {
         e.printStackTrace();
       }
     }
+    MemoryMapStorage.discardSegmentPool(theUnsafe);
 
   }
 
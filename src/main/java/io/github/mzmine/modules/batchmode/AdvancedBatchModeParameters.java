@@ -28,6 +28,7 @@ package io.github.mzmine.modules.batchmode;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
 import io.github.mzmine.parameters.parametertypes.BooleanParameter;
+import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.DirectoryParameter;
 
 public class AdvancedBatchModeParameters extends SimpleParameterSet {
@@ -47,9 +48,16 @@ public class AdvancedBatchModeParameters extends SimpleParameterSet {
       "Search for files in sub directories. Still uses the first subdirectories as datasets each.",
       false);
 
+  public static final IntegerParameter parallelDatasets = new IntegerParameter(
+      "Parallel datasets",
+      "Maximum number of datasets (sub directories) processed at the same time, each in its own "
+          + "project. 1 processes datasets one after another. The actual number is also limited "
+          + "by the number of threads and by the available memory (" + (
+          BatchTask.MIN_MEMORY_PER_DATASET >> 30) + " GB per dataset).", 1, 1, null);
+
   public AdvancedBatchModeParameters() {
     super(new Parameter[]{skipOnError, processingParentDir, includeSubdirectories,
-        createResultsDirectory});
+        createResultsDirectory, parallelDatasets});
   }
 
 }
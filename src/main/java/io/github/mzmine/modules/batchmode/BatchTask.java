@@ -28,6 +28,7 @@ package io.github.mzmine.modules.batchmode;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.gui.preferences.MZminePreferences;
 import io.github.mzmine.main.GoogleAnalyticsTracker;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModuleCategory;
@@ -44,6 +45,8 @@ import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParamete
 import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelection;
+import io.github.mzmine.parameters.parametertypes.selectors.SpectralLibrarySelectionParameter;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskPriority;
@@ -51,12 +54,23 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.taskcontrol.impl.WrappedTask;
 import io.github.mzmine.util.ExitCode;
 import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import java.io.File;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 
@@ -65,15 +79,22 @@ import org.jetbrains.annotations.NotNull;
  */
 public class BatchTask extends AbstractTask {
 
+  /**
+   * Memory budget for each dataset that is processed in parallel
+   */
+  static final long MIN_MEMORY_PER_DATASET = 4L << 30;
+
   private final BatchQueue queue;
   // advanced parameters
   private final int stepsPerDataset;
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final int totalSteps;
   private final MZmineProject project;
-  private int processedSteps;
+  private volatile int processedSteps;
   private final boolean useAdvanced;
   private final int datasets;
+  // a dataset of a batch that processes datasets in parallel, see runDatasetsInParallel
+  private final boolean parallelDataset;
   private List<File> subDirectories;
   private List<RawDataFile> createdDataFiles;
   private List<RawDataFile> previousCreatedDataFiles;
@@ -84,6 +105,10 @@ public class BatchTask extends AbstractTask {
   private Boolean createResultsDir;
   private File parentDir;
   private int currentDataset;
+  private int parallelDatasets = 1;
+  // parallel datasets
+  private final List<BatchTask> runningDatasetTasks = new CopyOnWriteArrayList<>();
+  private final AtomicInteger finishedDatasets = new AtomicInteger(0);
 
   BatchTask(MZmineProject project, ParameterSet parameters, @NotNull Instant moduleCallDate) {
     this(project, parameters, moduleCallDate,
@@ -106,11 +131,14 @@ public class BatchTask extends AbstractTask {
       searchSubdirs = advanced.getValue(AdvancedBatchModeParameters.includeSubdirectories);
       createResultsDir = advanced.getValue(AdvancedBatchModeParameters.createResultsDirectory);
       parentDir = advanced.getValue(AdvancedBatchModeParameters.processingParentDir);
+      final Integer parallel = advanced.getValue(AdvancedBatchModeParameters.parallelDatasets);
+      parallelDatasets = parallel == null ? 1 : parallel;
       this.subDirectories = subDirectories;
       datasets = subDirectories == null || subDirectories.isEmpty() ? 1 : subDirectories.size();
     } else {
       datasets = 1;
     }
+    parallelDataset = false;
     stepsPerDataset = queue.size();
     totalSteps = stepsPerDataset * datasets;
     createdDataFiles = new ArrayList<>();
@@ -119,12 +147,40 @@ public class BatchTask extends AbstractTask {
     previousCreatedFeatureLists = new ArrayList<>();
   }
 
+  /**
+   * A batch of a single dataset that is processed in parallel to other datasets.
+   *
+   * @param project the project of this dataset
+   * @param queue   a copy of the batch queue with import and export files of this dataset
+   */
+  BatchTask(final MZmineProject project, final BatchQueue queue,
+      final Instant moduleCallDate) {
+    super(null, moduleCallDate);
+    this.project = project;
+    this.queue = queue;
+    useAdvanced = false;
+    datasets = 1;
+    parallelDataset = true;
+    stepsPerDataset = queue.size();
+    totalSteps = stepsPerDataset;
+    createdDataFiles = new ArrayList<>();
+    createdFeatureLists = new ArrayList<>();
+    previousCreatedDataFiles = new ArrayList<>();
+    previousCreatedFeatureLists = new ArrayList<>();
+  }
+
   @Override
   public void run() {
 
     setStatus(TaskStatus.PROCESSING);
     logger.info("Starting a batch of " + totalSteps + " steps");
 
+    final int concurrentDatasets = getConcurrentDatasets();
+    if (concurrentDatasets > 1) {
+      runDatasetsInParallel(concurrentDatasets);
+      return;
+    }
+
     int errorDataset = 0;
     currentDataset = -1;
     String datasetName = "";
@@ -191,8 +247,179 @@ public class BatchTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * The number of datasets to process at the same time is limited by the parameter, the number of
+   * threads and the maximum memory.
+   *
+   * @return 1 to process datasets sequentially
+   */
+  private int getConcurrentDatasets() {
+    if (!useAdvanced || subDirectories == null || datasets <= 1 || parallelDatasets <= 1) {
+      return 1;
+    }
+    final int threads = MZmineCore.getConfiguration().getPreferences()
+        .getValue(MZminePreferences.numOfThreads);
+    final long memoryBudget = Math.max(1,
+        Runtime.getRuntime().maxMemory() / MIN_MEMORY_PER_DATASET);
+    final int concurrent = (int) Math.min(Math.min(parallelDatasets, datasets),
+        Math.min(threads, memoryBudget));
+    if (concurrent < parallelDatasets) {
+      logger.info(String.format("Processing %d datasets in parallel instead of %d "
+          + "(limited by datasets, threads or memory)", concurrent, parallelDatasets));
+    }
+    return Math.max(1, concurrent);
+  }
+
+  /**
+   * Each dataset is processed by its own batch task on a copy of the queue with its own project.
+   * The project is passed to the modules and set to the selections of each step. All tasks of all
+   * datasets share the task controller and its thread limit.
+   */
+  private void runDatasetsInParallel(final int concurrentDatasets) {
+    logger.info(
+        String.format("Processing %d datasets with up to %d in parallel", datasets,
+            concurrentDatasets));
+
+    final AtomicInteger errorDatasets = new AtomicInteger(0);
+    final AtomicInteger datasetCounter = new AtomicInteger(0);
+    final ExecutorService executor = Executors.newFixedThreadPool(concurrentDatasets, r -> {
+      Thread thread = new Thread(r, "Batch dataset " + datasetCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      final List<Future<String>> results = new ArrayList<>();
+      for (final File datasetDir : subDirectories) {
+        results.add(executor.submit(() -> processDataset(datasetDir)));
+      }
+
+      for (int i = 0; i < results.size(); i++) {
+        final String datasetName = subDirectories.get(i).getName();
+        final String error = awaitDataset(results.get(i));
+        if (isCanceled() || getStatus() == TaskStatus.ERROR) {
+          return;
+        }
+        if (error == null) {
+          continue;
+        }
+
+        errorDatasets.incrementAndGet();
+        logger.info("Error in dataset: " + datasetName + " total error datasets:" + errorDatasets);
+        if (!skipOnError) {
+          setErrorMessage(datasetName + ": " + error);
+          setStatus(TaskStatus.ERROR);
+          return;
+        }
+      }
+    } finally {
+      // stop remaining datasets on cancel or error
+      if (getStatus() != TaskStatus.PROCESSING) {
+        runningDatasetTasks.forEach(BatchTask::cancel);
+      }
+      executor.shutdownNow();
+    }
+
+    logger.info("Finished a batch of " + totalSteps + " steps");
+    setStatus(TaskStatus.FINISHED);
+  }
+
+  /**
+   * Waits for a dataset and checks for cancellation of this batch in the meantime
+   *
+   * @return the error message or null if the dataset finished successfully
+   */
+  private String awaitDataset(Future<String> result) {
+    while (true) {
+      if (isCanceled()) {
+        return null;
+      }
+      try {
+        return result.get(1, TimeUnit.SECONDS);
+      } catch (TimeoutException e) {
+        // check cancel and wait again
+      } catch (InterruptedException e) {
+        // ignore
+      } catch (ExecutionException e) {
+        logger.log(Level.WARNING, "Error while processing dataset", e.getCause());
+        return e.getCause().getMessage();
+      }
+    }
+  }
+
+  /**
+   * @return the error message or null on success
+   */
+  private String processDataset(final File datasetDir) {
+    final String datasetName = datasetDir.getName();
+    try {
+      if (isCanceled()) {
+        return null;
+      }
+      File[] allFiles = FileAndPathUtil.findFilesInDirFlat(datasetDir,
+          AllSpectralDataImportParameters.ALL_MS_DATA_FILTER, searchSubdirs);
+      if (allFiles.length == 0) {
+        logger.info("No data files found in directory: " + datasetName);
+        return "No data files found in directory: " + datasetName;
+      }
+
+      logger.info("Processing batch dataset " + datasetName);
+      final BatchQueue datasetQueue = queue.clone();
+      setImportFiles(datasetQueue, allFiles);
+      setOutputFiles(datasetQueue, parentDir, createResultsDir, datasetName);
+
+      // own project, only libraries are shared like in the sequential mode. It is passed to all
+      // modules and the selections of all steps of this dataset
+      final MZmineProject datasetProject = new MZmineProjectImpl();
+      datasetProject.addSpectralLibrary(
+          project.getCurrentSpectralLibraries().toArray(new SpectralLibrary[0]));
+
+      final BatchTask datasetTask = new BatchTask(datasetProject, datasetQueue, Instant.now());
+      runningDatasetTasks.add(datasetTask);
+      try {
+        datasetTask.run();
+      } finally {
+        runningDatasetTasks.remove(datasetTask);
+        finishedDatasets.incrementAndGet();
+        closeDatasetProject(datasetProject);
+      }
+
+      return switch (datasetTask.getStatus()) {
+        case FINISHED -> null;
+        case CANCELED -> {
+          // a canceled step cancels the whole batch, like in the sequential mode
+          if (!isCanceled()) {
+            logger.info("Batch dataset " + datasetName + " was canceled, canceling the batch");
+            cancel();
+          }
+          yield null;
+        }
+        default -> Objects.requireNonNullElse(datasetTask.getErrorMessage(), "Unspecified error");
+      };
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Error in dataset " + datasetName, e);
+      return e.getMessage() == null ? e.toString() : e.getMessage();
+    }
+  }
+
+  /**
+   * Removes all feature lists and closes all raw data files of a dataset. Their storages are
+   * released by the last owner.
+   */
+  private static void closeDatasetProject(final MZmineProject datasetProject) {
+    datasetProject.removeFeatureLists(datasetProject.getCurrentFeatureLists());
+    for (RawDataFile file : datasetProject.getDataFiles()) {
+      file.close();
+    }
+  }
+
   private void setOutputFiles(final File parentDir, final boolean createResultsDir,
       final String datasetName) {
+    setOutputFiles(queue, parentDir, createResultsDir, datasetName);
+  }
+
+  private void setOutputFiles(final BatchQueue queue, final File parentDir,
+      final boolean createResultsDir, final String datasetName) {
     int changedOutputSteps = 0;
     for (MZmineProcessingStep<?> currentStep : queue) {
       // only change for export modules
@@ -231,6 +458,10 @@ public class BatchTask extends AbstractTask {
   }
 
   private void setImportFiles(final File[] allFiles) {
+    setImportFiles(queue, allFiles);
+  }
+
+  private void setImportFiles(final BatchQueue queue, final File[] allFiles) {
     MZmineProcessingStep<?> currentStep = queue.get(0);
     ParameterSet importParameters = currentStep.getParameterSet();
     FileNamesParameter importParam = importParameters.getParameter(
@@ -265,6 +496,11 @@ public class BatchTask extends AbstractTask {
       createdFeatureLists = previousCreatedFeatureLists;
     }
 
+    // datasets that are processed in parallel select their data from their own project
+    if (parallelDataset) {
+      setProjectToParamSet(batchStepParameters);
+    }
+
     // Update the RawDataFilesParameter parameters to reflect the current
     // state of the batch
     for (Parameter<?> p : batchStepParameters.getParameters()) {
@@ -421,6 +657,24 @@ public class BatchTask extends AbstractTask {
     return true;
   }
 
+  /**
+   * Sets the project of this batch to all file, feature list and library selections, so that they
+   * do not select from the current project.
+   */
+  private void setProjectToParamSet(ParameterSet parameters) {
+    for (Parameter<?> p : parameters.getParameters()) {
+      if (p instanceof RawDataFilesParameter rdp && rdp.getValue() != null) {
+        rdp.getValue().setProject(project);
+      } else if (p instanceof FeatureListsParameter flp && flp.getValue() != null) {
+        flp.getValue().setProject(project);
+      } else if (p instanceof SpectralLibrarySelectionParameter slp && slp.getValue() != null) {
+        slp.setValue(slp.getValue().withProject(project));
+      } else if (p instanceof EmbeddedParameterSet embedded) {
+        setProjectToParamSet(embedded.getEmbeddedParameters());
+      }
+    }
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     // to not block mzmine when run with single thread
@@ -432,11 +686,23 @@ public class BatchTask extends AbstractTask {
     if (totalSteps == 0) {
       return 0;
     }
+    if (!runningDatasetTasks.isEmpty() || finishedDatasets.get() > 0) {
+      // parallel datasets
+      double steps = finishedDatasets.get() * stepsPerDataset;
+      for (BatchTask datasetTask : runningDatasetTasks) {
+        steps += datasetTask.processedSteps;
+      }
+      return Math.min(1d, steps / totalSteps);
+    }
     return (double) processedSteps / totalSteps;
   }
 
   @Override
   public String getTaskDescription() {
+    if (!runningDatasetTasks.isEmpty()) {
+      return String.format("Batch of %d datasets (%d finished, %d running)", datasets,
+          finishedDatasets.get(), runningDatasetTasks.size());
+    }
     if (datasets > 1) {
       if (stepsPerDataset == 0) {
         return "Batch mode";
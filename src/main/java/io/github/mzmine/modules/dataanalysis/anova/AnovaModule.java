@@ -62,7 +62,8 @@ public class AnovaModule implements MZmineProcessingModule {
         parameters.getParameter(AnovaParameters.featureLists).getValue().getMatchingFeatureLists();
 
     for (FeatureList featureList : featureLists) {
-      tasks.add(new AnovaTask(featureList.getRows().toArray(FeatureListRow[]::new), parameters, moduleCallDate));
+      tasks.add(new AnovaTask(project, featureList.getRows().toArray(FeatureListRow[]::new),
+          parameters, moduleCallDate));
     }
 
     return ExitCode.OK;
@@ -31,7 +31,6 @@ import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.impl.SimpleFeatureInformation;
-import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.UserParameter;
 import io.github.mzmine.taskcontrol.AbstractTask;
@@ -62,11 +61,14 @@ public class AnovaTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
   private double finishedPercentage = 0.0;
 
+  private final MZmineProject project;
   private final FeatureListRow[] featureListRows;
   private final UserParameter userParameter;
 
-  public AnovaTask(FeatureListRow[] featureListRows, ParameterSet parameters, @NotNull Instant moduleCallDate) {
+  public AnovaTask(MZmineProject project, FeatureListRow[] featureListRows,
+      ParameterSet parameters, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
+    this.project = project;
     this.featureListRows = featureListRows;
     this.userParameter = parameters.getParameter(AnovaParameters.selectionData).getValue();
   }
@@ -153,8 +155,6 @@ public class AnovaTask extends AbstractTask {
 
   private List<Set<RawDataFile>> getGroups(UserParameter factor) {
 
-    MZmineProject project = MZmineCore.getProjectManager().getCurrentProject();
-
     // Find the parameter value of each data file
     Map<RawDataFile, Object> paramMap = new HashMap<>();
     for (FeatureListRow row : featureListRows) {
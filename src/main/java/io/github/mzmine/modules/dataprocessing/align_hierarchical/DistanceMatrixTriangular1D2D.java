@@ -25,9 +25,11 @@
 
 package io.github.mzmine.modules.dataprocessing.align_hierarchical;
 
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.IOException;
 import java.util.logging.Logger;
-
 import org.gnf.clustering.DistanceMatrix;
+import org.jetbrains.annotations.NotNull;
 
 public class DistanceMatrixTriangular1D2D implements DistanceMatrix {
 
@@ -43,6 +45,16 @@ public class DistanceMatrixTriangular1D2D implements DistanceMatrix {
     dimension = nRowCount;
   }
 
+  /**
+   * Matrix backed by a memory-mapped file instead of the heap
+   */
+  public DistanceMatrixTriangular1D2D(int nRowCount, @NotNull MemoryMapStorage storage)
+      throws IOException {
+
+    list = new LargeArrayFloat(sumFormula(nRowCount), storage);
+    dimension = nRowCount;
+  }
+
   public DistanceMatrixTriangular1D2D(DistanceMatrix distanceMatrix2) {
 
     this.dimension = distanceMatrix2.getRowCount();
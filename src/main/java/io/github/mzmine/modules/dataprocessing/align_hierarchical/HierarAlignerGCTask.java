@@ -58,6 +58,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.gnf.clustering.DataSource;
 import org.gnf.clustering.DistanceMatrix;
@@ -336,14 +337,6 @@ public class HierarAlignerGCTask extends AbstractTask {
       nbPeaks += peakList.getNumberOfRows();
     }
 
-    // If 'Hybrid' or no distance matrix: no need for a matrix
-    if (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1) {
-      // distances = new double[nbPeaks][nbPeaks];
-
-      int nRowCount = nbPeaks;
-      distancesGNF_Tri = new DistanceMatrixTriangular1D2D(nRowCount);
-    }
-
     full_rows_list = new ArrayList<>();
 
     for (int i = 0; i < newIds.length; ++i) {
@@ -368,33 +361,6 @@ public class HierarAlignerGCTask extends AbstractTask {
         // rtToleranceAfter,
         maximumScore);
 
-    // If 'Hybrid' or no distance matrix: no need for a matrix
-    if (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1) {
-
-      for (int x = 0; x < nbPeaks; ++x) {
-
-        for (int y = x; y < nbPeaks; ++y) {
-
-          float dist = (float) distProvider.getRankedDistance(x, y, mzTolerance.getMzTolerance(),
-              rtTolerance.getTolerance(), minScore);
-
-          // if (CLUSTERER_TYPE == ClustererType.CLASSIC_OLD)
-          // distances.set(x, y , dist);
-          // else
-          distancesGNF_Tri.setValue(x, y, dist);
-
-        }
-
-        processedRows++;
-        if (DEBUG)
-          logger.info(
-              "Treating lists: " + (Math.round(100 * processedRows / (double) nbPeaks)) + " %");
-
-      }
-    }
-    if (DEBUG)
-      printMemoryUsage(logger, run_time, prevTotal, prevFree, "DISTANCES COMPUTED");
-
     //////
     double max_dist = maximumScore; // Math.abs(row.getBestPeak().getRT() -
                                     // k_row.getBestPeak().getRT()) /
@@ -429,63 +395,99 @@ public class HierarAlignerGCTask extends AbstractTask {
     }
     String outputPrefix = null;
 
-    if (CLUSTERER_TYPE == ClustererType.CLASSIC) { // Pure Hierar!
+    // Only distances within the m/z and RT tolerance window are calculated and stored, all other
+    // distances are constant. The clustering modifies a dense copy, which is memory-mapped if
+    // possible.
+    ToleranceWindowDistanceMatrix windowDistances = null;
+    final MemoryMapStorage matrixStorage = MemoryMapStorage.forFeatureList();
+    try {
+      // If 'Hybrid' or no distance matrix: no need for a matrix
+      if (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1) {
+        windowDistances = ToleranceWindowDistanceMatrix.create(full_rows_list, distProvider,
+            mzTolerance.getMzTolerance(), rtTolerance.getTolerance(), minScore);
+        processedRows += nbPeaks;
+        if (DEBUG)
+          logger.info(
+              "Distances within tolerance window: " + windowDistances.getNumberOfStoredValues());
 
-      outputPrefix = "hierar_0";
+        try {
+          distancesGNF_Tri = matrixStorage != null ? new DistanceMatrixTriangular1D2D(nbPeaks,
+              matrixStorage) : new DistanceMatrixTriangular1D2D(nbPeaks);
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Cannot create memory-mapped distance matrix", e);
+          setStatus(TaskStatus.ERROR);
+          setErrorMessage("Cannot create memory-mapped distance matrix: " + e.getMessage());
+          return;
+        }
+        windowDistances.copyTo(distancesGNF_Tri);
+      }
+      if (DEBUG)
+        printMemoryUsage(logger, run_time, prevTotal, prevFree, "DISTANCES COMPUTED");
 
-      throw new IllegalStateException(
-          "'" + ClustererType.CLASSIC.toString() + "' algorithm not yet implemented!");
+      if (CLUSTERER_TYPE == ClustererType.CLASSIC) { // Pure Hierar!
 
-    } else if (CLUSTERER_TYPE == ClustererType.CACHED) { // Pure Hierar!
+        outputPrefix = "hierar_0";
 
-      // TODO: ...!
-      if (DEBUG_2)
-        logger.info(distancesGNF_Tri.toString());
-
-      if (saveRAMratherThanCPU_2) { // Requires: distances values will be
-                                    // recomputed on demand during
-                                    // "getValidatedClusters_3()"
-        distancesGNF_Tri_Bkp = null; // No duplicate backup storage!
-      } else { // Otherwise, backing up the distance matrix (matrix being
-               // deeply changed during "clusterDM()", then no more
-               // exploitable)
-        distancesGNF_Tri_Bkp = new DistanceMatrixTriangular1D2D(distancesGNF_Tri);
-        if (DEBUG)
-          printMemoryUsage(logger, run_time, prevTotal, prevFree, "GNF CLUSTERER BACKUP MATRIX");
-      }
+        throw new IllegalStateException(
+            "'" + ClustererType.CLASSIC.toString() + "' algorithm not yet implemented!");
 
-      if (DEBUG)
-        logger.info("Clustering...");
-      if (distancesGNF_Tri != null)
-        arNodes = org.gnf.clustering.sequentialcache.SequentialCacheClustering
-            .clusterDM(distancesGNF_Tri, linkageStartegyType, null, nRowCount);
+      } else if (CLUSTERER_TYPE == ClustererType.CACHED) { // Pure Hierar!
 
-      distancesGNF_Tri = null;
-      System.gc();
+        // TODO: ...!
+        if (DEBUG_2)
+          logger.info(distancesGNF_Tri.toString());
 
-      if (DEBUG)
-        printMemoryUsage(logger, run_time, prevTotal, prevFree, "GNF CLUSTERER DONE");
+        if (saveRAMratherThanCPU_2) { // Requires: distances values will be
+                                      // recomputed on demand during
+                                      // "getValidatedClusters_3()"
+          distancesGNF_Tri_Bkp = null; // No duplicate backup storage!
+        } else { // Otherwise, backing up the distance matrix (matrix being
+                 // deeply changed during "clusterDM()", then no more
+                 // exploitable). The sparse window distances are not modified.
+          distancesGNF_Tri_Bkp = windowDistances != null ? windowDistances
+              : new DistanceMatrixTriangular1D2D(distancesGNF_Tri);
+          if (DEBUG)
+            printMemoryUsage(logger, run_time, prevTotal, prevFree, "GNF CLUSTERER BACKUP MATRIX");
+        }
 
-      if (DEBUG_2)
-        logger.info(distancesGNF_Tri.toString());
+        if (DEBUG)
+          logger.info("Clustering...");
+        if (distancesGNF_Tri != null)
+          arNodes = org.gnf.clustering.sequentialcache.SequentialCacheClustering
+              .clusterDM(distancesGNF_Tri, linkageStartegyType, null, nRowCount);
 
-      if (DEBUG_2)
-        for (int i = 0; i < arNodes.length; i++) {
-          logger.info("Node " + i + ": " + arNodes[i]);
-        }
+        distancesGNF_Tri = null;
+        System.gc();
+
+        if (DEBUG)
+          printMemoryUsage(logger, run_time, prevTotal, prevFree, "GNF CLUSTERER DONE");
 
-      // TODO: Use usual interfacing ...
-      // ClusteringResult<org.gnf.clustering.Node> clust_res = new
-      // ClusteringResult<>(
-      // Arrays.asList(arNodes), null, 0, null);
+        if (DEBUG_2)
+          logger.info(distancesGNF_Tri.toString());
 
-      outputPrefix = "hierar_1";
+        if (DEBUG_2)
+          for (int i = 0; i < arNodes.length; i++) {
+            logger.info("Node " + i + ": " + arNodes[i]);
+          }
+
+        // TODO: Use usual interfacing ...
+        // ClusteringResult<org.gnf.clustering.Node> clust_res = new
+        // ClusteringResult<>(
+        // Arrays.asList(arNodes), null, 0, null);
+
+        outputPrefix = "hierar_1";
 
-    } else if (CLUSTERER_TYPE == ClustererType.HYBRID) { // Hybrid!
+      } else if (CLUSTERER_TYPE == ClustererType.HYBRID) { // Hybrid!
 
-      throw new IllegalStateException(
-          "'" + ClustererType.HYBRID.toString() + "' algorithm not yet implemented!");
+        throw new IllegalStateException(
+            "'" + ClustererType.HYBRID.toString() + "' algorithm not yet implemented!");
 
+      }
+    } finally {
+      // the dense matrix is only used for clustering, also release it on errors
+      if (matrixStorage != null) {
+        matrixStorage.release(null);
+      }
     }
 
     // Sort Nodes by correlation score (Required in
@@ -25,7 +25,11 @@
 
 package io.github.mzmine.modules.dataprocessing.align_hierarchical;
 
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
 
 public class LargeArrayFloat {
 
@@ -34,12 +38,48 @@ public class LargeArrayFloat {
 
   private final long CHUNK_SIZE = 1024 * 1024 * 1024; // 1GiB
 
+  // chunks for memory-mapped storage, sized to fill whole segments of the MemoryMapStorage
+  private final int mappedChunkSize;
+
   long size;
   float[][] data;
+  // only used if the array was allocated in a MemoryMapStorage, then data is null
+  FloatBuffer[] mappedData;
+
+  /**
+   * Array backed by a memory-mapped file instead of the heap
+   *
+   * @param size    number of values
+   * @param storage the storage to allocate the chunks in
+   * @throws IOException if the memory-mapped file cannot be created
+   */
+  public LargeArrayFloat(long size, @NotNull MemoryMapStorage storage) throws IOException {
+    this.size = size;
+    mappedChunkSize = getMappedChunkSize(storage.getSegmentCapacity());
+    final int chunks = (int) ((size + mappedChunkSize - 1) / mappedChunkSize);
+    mappedData = new FloatBuffer[chunks];
+    for (int idx = 0; idx < chunks; idx++) {
+      final long chunkSize = Math.min(mappedChunkSize, size - (long) idx * mappedChunkSize);
+      mappedData[idx] = storage.allocateFloats((int) chunkSize);
+    }
+  }
+
+  /**
+   * A chunk that does not fit into the rest of a segment starts a new segment. Chunks that divide
+   * the segment capacity leave no unused space in the segments.
+   *
+   * @param segmentCapacity the segment capacity of the storage in bytes
+   * @return the number of floats per chunk. A chunk spans at most 2 GB, the limit of a buffer.
+   */
+  static int getMappedChunkSize(long segmentCapacity) {
+    final long chunksPerSegment = (segmentCapacity + Integer.MAX_VALUE - 1) / Integer.MAX_VALUE;
+    return (int) (segmentCapacity / chunksPerSegment / Float.BYTES);
+  }
 
   public LargeArrayFloat(long size) {
 
     this.size = size;
+    mappedChunkSize = 0; // not memory-mapped
     if (size == 0) {
       data = null;
     } else {
@@ -72,6 +112,9 @@ public class LargeArrayFloat {
       throw new IndexOutOfBoundsException("Error attempting to access data element " + index
           + ".  Array is " + size + " elements long.");
     }
+    if (mappedData != null) {
+      return mappedData[(int) (index / mappedChunkSize)].get((int) (index % mappedChunkSize));
+    }
     int chunk = (int) (index / CHUNK_SIZE);
     int offset = (int) (index - (((long) chunk) * CHUNK_SIZE));
     return data[chunk][offset];
@@ -83,6 +126,10 @@ public class LargeArrayFloat {
       throw new IndexOutOfBoundsException("Error attempting to access data element " + index
           + ".  Array is " + size + " elements long.");
     }
+    if (mappedData != null) {
+      mappedData[(int) (index / mappedChunkSize)].put((int) (index % mappedChunkSize), f);
+      return;
+    }
     int chunk = (int) (index / CHUNK_SIZE);
     int offset = (int) (index - (((long) chunk) * CHUNK_SIZE));
     data[chunk][offset] = f;
@@ -32,6 +32,15 @@ import io.github.mzmine.datamodel.MZmineProject;
 
 public class RowVsRowDistanceProvider {
 
+  /**
+   * Distance of two rows from the same raw data file
+   */
+  public static final float SAME_FILE_DISTANCE = 1000f;
+  /**
+   * Distance of two rows outside the m/z or RT tolerance window
+   */
+  public static final float OUT_OF_WINDOW_DISTANCE = 100f;
+
   MZmineProject project;
   // boolean useOldestRDFancestor;
   // Hashtable<RawDataFile, List<double[]>> rtAdjustementMapping;
@@ -130,7 +139,7 @@ public class RowVsRowDistanceProvider {
     // aligned_row_id < 102)
     // || (row_id >= 102 && aligned_row_id >= 102)) {
     if (row.getRawDataFiles().get(0) == k_row.getRawDataFiles().get(0)) {
-      return 1000.0d;
+      return SAME_FILE_DISTANCE;
     }
     // Not candidate
     else {
@@ -147,7 +156,7 @@ public class RowVsRowDistanceProvider {
       if ((Math.abs(row.getBestFeature().getRT() - k_row.getBestFeature().getRT()) >= rtMaxDiff / 2.0
           || Math.abs(row.getBestFeature().getMZ() - k_row.getBestFeature().getMZ()) >= mzMaxDiff
               / 2.0)) {
-        return 100.0d;
+        return OUT_OF_WINDOW_DISTANCE;
       }
     }
 
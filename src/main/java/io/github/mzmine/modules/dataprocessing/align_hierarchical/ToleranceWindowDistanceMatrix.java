@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_hierarchical;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import it.unimi.dsi.fastutil.longs.Long2FloatMap;
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.gnf.clustering.DistanceMatrix;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sparse distance matrix that only stores the distances of rows within the m/z and RT tolerance
+ * window. All other distances are constant, see
+ * {@link RowVsRowDistanceProvider#getRankedDistance(int, int, double, double, double)}: rows of the
+ * same raw data file have {@link RowVsRowDistanceProvider#SAME_FILE_DISTANCE} and rows outside the
+ * window have {@link RowVsRowDistanceProvider#OUT_OF_WINDOW_DISTANCE}.
+ * <p>
+ * The constant distances depend on the original row indices, therefore, this matrix cannot be
+ * handed to the clustering, which moves rows while merging clusters. It replaces the backup of the
+ * original distances and fills the dense matrix for the clustering.
+ */
+public class ToleranceWindowDistanceMatrix implements DistanceMatrix {
+
+  private final int dimension;
+  // index of the raw data file of each row
+  private final int[] fileIndex;
+  private final Long2FloatOpenHashMap values = new Long2FloatOpenHashMap();
+
+  private ToleranceWindowDistanceMatrix(int[] fileIndex) {
+    this.dimension = fileIndex.length;
+    this.fileIndex = fileIndex;
+    values.defaultReturnValue(Float.NaN);
+  }
+
+  /**
+   * Calculates the distances of all rows within the tolerance window. Rows are sorted by m/z and
+   * only compared to the following rows until the m/z difference exceeds the window.
+   *
+   * @param rows all rows, the indices are used in the matrix
+   * @return the sparse distance matrix
+   */
+  @NotNull
+  public static ToleranceWindowDistanceMatrix create(@NotNull List<FeatureListRow> rows,
+      @NotNull RowVsRowDistanceProvider distProvider, double mzMaxDiff, double rtMaxDiff,
+      double minScore) {
+    final int n = rows.size();
+    final int[] fileIndex = new int[n];
+    final double[] mzs = new double[n];
+    final float[] rts = new float[n];
+    final Map<RawDataFile, Integer> files = new HashMap<>();
+    for (int i = 0; i < n; i++) {
+      final FeatureListRow row = rows.get(i);
+      fileIndex[i] = files.computeIfAbsent(row.getRawDataFiles().get(0), f -> files.size());
+      mzs[i] = row.getBestFeature().getMZ();
+      rts[i] = row.getBestFeature().getRT();
+    }
+
+    final int[] byMz = IntStream.range(0, n).boxed()
+        .sorted(Comparator.comparingDouble(i -> mzs[i])).mapToInt(Integer::intValue).toArray();
+
+    final ToleranceWindowDistanceMatrix matrix = new ToleranceWindowDistanceMatrix(fileIndex);
+    for (int a = 0; a < n; a++) {
+      final int i = byMz[a];
+      for (int b = a + 1; b < n; b++) {
+        final int j = byMz[b];
+        if (mzs[j] - mzs[i] >= mzMaxDiff / 2.0) {
+          break;
+        }
+        if (fileIndex[i] == fileIndex[j] || Math.abs(rts[i] - rts[j]) >= rtMaxDiff / 2.0) {
+          continue;
+        }
+        // same argument order as for the full matrix, the score is not symmetric
+        final int row = Math.min(i, j);
+        final int column = Math.max(i, j);
+        matrix.setValue(row, column,
+            (float) distProvider.getRankedDistance(row, column, mzMaxDiff, rtMaxDiff, minScore));
+      }
+    }
+    return matrix;
+  }
+
+  private static long key(int row, int column) {
+    final int min = Math.min(row, column);
+    final int max = Math.max(row, column);
+    return ((long) min << 32) | max;
+  }
+
+  private float getConstantDistance(int row, int column) {
+    if (row == column) {
+      return 0f;
+    }
+    return fileIndex[row] == fileIndex[column] ? RowVsRowDistanceProvider.SAME_FILE_DISTANCE
+        : RowVsRowDistanceProvider.OUT_OF_WINDOW_DISTANCE;
+  }
+
+  /**
+   * @return the number of distances within the tolerance window
+   */
+  public int getNumberOfStoredValues() {
+    return values.size();
+  }
+
+  /**
+   * Writes all distances to the (dense) target matrix
+   */
+  public void copyTo(@NotNull DistanceMatrix target) {
+    for (int x = 0; x < dimension; x++) {
+      for (int y = x; y < dimension; y++) {
+        target.setValue(x, y, getConstantDistance(x, y));
+      }
+    }
+    for (Long2FloatMap.Entry entry : values.long2FloatEntrySet()) {
+      final long key = entry.getLongKey();
+      target.setValue((int) (key >>> 32), (int) key, entry.getFloatValue());
+    }
+  }
+
+  @Override
+  public int getRowCount() {
+    return dimension;
+  }
+
+  @Override
+  public int getColCount() {
+    return dimension;
+  }
+
+  @Override
+  public float getValue(int nRow, int nCol) {
+    final float value = values.get(key(nRow, nCol));
+    return Float.isNaN(value) ? getConstantDistance(nRow, nCol) : value;
+  }
+
+  @Override
+  public void setValue(int nRow, int nCol, float fVal) {
+    if (Float.compare(fVal, getConstantDistance(nRow, nCol)) == 0) {
+      values.remove(key(nRow, nCol));
+    } else {
+      values.put(key(nRow, nCol), fVal);
+    }
+  }
+}
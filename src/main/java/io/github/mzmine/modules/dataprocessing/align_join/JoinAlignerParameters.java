@@ -88,6 +88,11 @@ public class JoinAlignerParameters extends SimpleParameterSet {
       "Compare spectra similarity", "Compare MS1 or MS2 spectra similarity",
       new JoinAlignerSpectraSimilarityScoreParameters(), false);
 
+  public static final BooleanParameter mzShardedAlignment = new BooleanParameter(
+      "Sharded m/z alignment",
+      "If checked, the m/z axis is split into independent shards that cannot share candidates. "
+          + "Shards are scored and matched in parallel with the same greedy best score assignment. "
+          + "Reduces the memory consumption for large numbers of feature lists.", false);
 
   public static final OriginalFeatureListHandlingParameter handleOriginal =
       new OriginalFeatureListHandlingParameter("Original feature list",
@@ -97,7 +102,7 @@ public class JoinAlignerParameters extends SimpleParameterSet {
   public JoinAlignerParameters() {
     super(new Parameter[]{peakLists, peakListName, MZTolerance, MZWeight, RTTolerance, RTWeight,
             mobilityTolerance, mobilityWeight, SameChargeRequired, SameIDRequired,
-            compareIsotopePattern, compareSpectraSimilarity, handleOriginal},
+            compareIsotopePattern, compareSpectraSimilarity, mzShardedAlignment, handleOriginal},
         "https://mzmine.github.io/mzmine_documentation/module_docs/join_aligner/join_aligner.html");
   }
 
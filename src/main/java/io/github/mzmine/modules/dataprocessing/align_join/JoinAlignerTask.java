@@ -55,16 +55,25 @@ import io.github.mzmine.util.FeatureUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -89,6 +98,7 @@ public class JoinAlignerTask extends AbstractTask {
   private final Double minIsotopeScore;
   private final Double isotopeNoiseLevel;
   private final MZTolerance isotopeMZTolerance;
+  private final boolean mzShardedAlignment;
   /**
    * All feature lists except the base list
    */
@@ -145,6 +155,8 @@ public class JoinAlignerTask extends AbstractTask {
       isotopeMZTolerance = null;
     }
 
+    mzShardedAlignment = parameters.getValue(JoinAlignerParameters.mzShardedAlignment);
+
     compareSpectraSimilarity = parameters.getParameter(
         JoinAlignerParameters.compareSpectraSimilarity).getValue();
 
@@ -238,7 +250,11 @@ public class JoinAlignerTask extends AbstractTask {
 
       // align all remaining feature lists onto the feature list with max(row number) = nextBaseRows
       if (!allRows.isEmpty()) {
-        alignRowsOnBaseRows(allRows, nextBaseRows);
+        if (mzShardedAlignment) {
+          alignRowsOnBaseRowsSharded(allRows, nextBaseRows);
+        } else {
+          alignRowsOnBaseRows(allRows, nextBaseRows);
+        }
       }
 
       // add all new base rows
@@ -328,15 +344,239 @@ public class JoinAlignerTask extends AbstractTask {
       }
     });
 
+    // ties in the score are resolved by the m/z order of the rows, like the sharded alignment
+    final List<FeatureListRow> rowsToAdd = sortRowsToAddByMz(unalignedRows);
+    final Object2IntOpenHashMap<FeatureListRow> rowOrder = new Object2IntOpenHashMap<>(
+        rowsToAdd.size());
+    for (int i = 0; i < rowsToAdd.size(); i++) {
+      rowOrder.put(rowsToAdd.get(i), i);
+    }
+    final Object2IntOpenHashMap<FeatureListRow> baseOrder = new Object2IntOpenHashMap<>(
+        baseRowsByMz.size());
+    for (int i = 0; i < baseRowsByMz.size(); i++) {
+      baseOrder.put(baseRowsByMz.get(i), i);
+    }
+    final Comparator<RowVsRowScore> scoreOrder = Comparator.<RowVsRowScore>naturalOrder()
+        .thenComparingInt(score -> rowOrder.getInt(score.getRowToAdd()))
+        .thenComparingInt(score -> baseOrder.getInt(score.getAlignedBaseRow()));
+
     // after an iteration, rows of all other featureLists have been given a mapping
     // now we have to find the best match
     // track all aligned rows - only align to highest scoring row
-    final var alignedRowsMap = addFeaturesBasedOnScores(scoresList);
+    final var alignedRowsMap = addFeaturesBasedOnScores(scoresList, scoreOrder);
+
+    // keep track of unaligned rows for the next interation.
+    removeAlignedRows(unalignedRows, alignedRowsMap);
+  }
+
+  /**
+   * Same greedy best score assignment as {@link #alignRowsOnBaseRows(List, List)} but the m/z axis
+   * is split into shards that cannot share any candidate. A row only competes with rows of the same
+   * shard for the same aligned rows, therefore, the shards are scored and resolved independently
+   * and in parallel. Both modes resolve ties in the score by the m/z order of the rows to add and
+   * then of the base rows, so they produce the same alignment.
+   *
+   * @param unalignedRows FeatureList<Rows>
+   * @param baseRowsByMz  list of base rows sorted by acsending mz
+   */
+  private void alignRowsOnBaseRowsSharded(List<List<FeatureListRow>> unalignedRows,
+      List<FeatureListRow> baseRowsByMz) {
+    final List<FeatureListRow> rowsToAdd = sortRowsToAddByMz(unalignedRows);
+    final double[] baseMzs = baseRowsByMz.stream().mapToDouble(FeatureListRow::getAverageMZ)
+        .toArray();
+
+    // index range [first, end) of m/z candidates in the base rows for each row to add
+    final int[] firstCandidate = new int[rowsToAdd.size()];
+    final int[] endCandidate = new int[rowsToAdd.size()];
+    final List<MzShard> shards = createMzShards(rowsToAdd, baseMzs, firstCandidate, endCandidate);
+
+    // ordered results - each shard holds pairs of (row to add, base row) indices
+    final List<IntArrayList> matchesPerShard = shards.parallelStream()
+        .map(shard -> resolveShard(shard, rowsToAdd, baseRowsByMz, firstCandidate, endCandidate))
+        .toList();
+
+    if (isCanceled()) {
+      return;
+    }
+
+    // shards do not share rows, apply matches in a deterministic order
+    final Object2BooleanOpenHashMap<FeatureListRow> alignedRowsMap = new Object2BooleanOpenHashMap<>();
+    for (IntArrayList matches : matchesPerShard) {
+      for (int i = 0; i < matches.size(); i += 2) {
+        final FeatureListRow row = rowsToAdd.get(matches.getInt(i));
+        final FeatureListRow alignedRow = baseRowsByMz.get(matches.getInt(i + 1));
+        for (Feature feature : row.getFeatures()) {
+          final RawDataFile dataFile = feature.getRawDataFile();
+          if (!alignedRow.hasFeature(dataFile)) {
+            alignedRow.addFeature(dataFile, new ModularFeature(alignedFeatureList, feature), false);
+            alignedRowsMap.put(row, true);
+            this.alignedRows.getAndIncrement();
+          }
+        }
+      }
+    }
 
     // keep track of unaligned rows for the next interation.
     removeAlignedRows(unalignedRows, alignedRowsMap);
   }
 
+  /**
+   * @return all rows to add sorted by m/z, rows of equal m/z in the order of the feature lists
+   */
+  private static List<FeatureListRow> sortRowsToAddByMz(
+      List<List<FeatureListRow>> unalignedRows) {
+    return unalignedRows.stream().flatMap(Collection::stream).sorted(MZ_ASCENDING).toList();
+  }
+
+  /**
+   * Splits the rows into shards of consecutive rows to add and base rows. Two shards never share a
+   * base row in their m/z candidate ranges. Relies on the tolerance ranges to be monotonic in m/z.
+   *
+   * @param rowsToAdd      sorted by m/z
+   * @param baseMzs        sorted m/z values of the base rows
+   * @param firstCandidate output: first candidate index in the base rows for each row to add
+   * @param endCandidate   output: exclusive end candidate index for each row to add
+   * @return all shards ordered by m/z
+   */
+  private List<MzShard> createMzShards(List<FeatureListRow> rowsToAdd, double[] baseMzs,
+      int[] firstCandidate, int[] endCandidate) {
+    if (mzWeight <= 0) {
+      // no m/z restriction - all rows may match all base rows
+      Arrays.fill(firstCandidate, 0);
+      Arrays.fill(endCandidate, baseMzs.length);
+      return List.of(new MzShard(0, rowsToAdd.size(), 0, baseMzs.length));
+    }
+
+    final List<MzShard> shards = new ArrayList<>();
+    int shardFirstRow = -1;
+    int shardFirstBase = 0;
+    int shardEndBase = 0;
+    for (int i = 0; i < rowsToAdd.size(); i++) {
+      final Range<Double> mzRange = mzTolerance.getToleranceRange(rowsToAdd.get(i).getAverageMZ());
+      final int first = lowerBound(baseMzs, mzRange.lowerEndpoint(), false);
+      final int end = lowerBound(baseMzs, mzRange.upperEndpoint(), true);
+      firstCandidate[i] = first;
+      endCandidate[i] = end;
+      if (first >= end) {
+        // no candidates
+        continue;
+      }
+
+      if (shardFirstRow != -1 && first < shardEndBase) {
+        // overlaps with the current shard
+        shardEndBase = Math.max(shardEndBase, end);
+        continue;
+      }
+      if (shardFirstRow != -1) {
+        shards.add(new MzShard(shardFirstRow, i, shardFirstBase, shardEndBase));
+      }
+      shardFirstRow = i;
+      shardFirstBase = first;
+      shardEndBase = end;
+    }
+    if (shardFirstRow != -1) {
+      shards.add(new MzShard(shardFirstRow, rowsToAdd.size(), shardFirstBase, shardEndBase));
+    }
+    return shards;
+  }
+
+  /**
+   * @param inclusive true: index of the first value > key; false: index of the first value >= key
+   */
+  private static int lowerBound(double[] sorted, double key, boolean inclusive) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (sorted[mid] < key || (inclusive && sorted[mid] == key)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Scores all candidates within a shard and applies the greedy best score assignment locally.
+   *
+   * @return pairs of matched (row to add, base row) indices in the order of assignment
+   */
+  @NotNull
+  private IntArrayList resolveShard(MzShard shard, List<FeatureListRow> rowsToAdd,
+      List<FeatureListRow> baseRowsByMz, int[] firstCandidate, int[] endCandidate) {
+    final DoubleArrayList scores = new DoubleArrayList();
+    final IntArrayList rowIndices = new IntArrayList();
+    final IntArrayList baseIndices = new IntArrayList();
+
+    for (int r = shard.firstRow(); r < shard.endRow(); r++) {
+      if (isCanceled()) {
+        return new IntArrayList();
+      }
+      final FeatureListRow rowToAdd = rowsToAdd.get(r);
+      // ranges are build with prechecks - so if there is no mobility use Range.all() to deactivate the filter
+      final Range<Double> mzRange =
+          mzWeight > 0 ? mzTolerance.getToleranceRange(rowToAdd.getAverageMZ()) : Range.all();
+      final Range<Float> rtRange =
+          rtWeight > 0 ? rtTolerance.getToleranceRange(rowToAdd.getAverageRT()) : Range.all();
+      final Range<Float> mobilityRange =
+          compareMobility && mobilityWeight > 0 && rowToAdd.getAverageMobility() != null
+              ? mobilityTolerance.getToleranceRange(rowToAdd.getAverageMobility()) : Range.all();
+
+      for (int b = firstCandidate[r]; b < endCandidate[r]; b++) {
+        final FeatureListRow candidate = baseRowsByMz.get(b);
+        final Float candidateMobility = candidate.getAverageMobility();
+        final Float candidateRT = candidate.getAverageRT();
+        if ((candidateMobility != null && !mobilityRange.contains(candidateMobility)) || (
+            candidateRT != null && !rtRange.contains(candidateRT))) {
+          continue;
+        }
+        if (additionalChecks(rowToAdd, candidate)) {
+          scores.add(FeatureListUtils.getAlignmentScore(candidate, mzRange, rtRange, mobilityRange,
+              mzWeight, rtWeight, mobilityWeight));
+          rowIndices.add(r);
+          baseIndices.add(b);
+        }
+      }
+    }
+
+    // highest score first, ties by m/z order of the rows
+    final int[] order = IntStream.range(0, scores.size()).toArray();
+    IntArrays.quickSort(order, (a, b) -> {
+      int result = Double.compare(scores.getDouble(b), scores.getDouble(a));
+      if (result == 0) {
+        result = Integer.compare(rowIndices.getInt(a), rowIndices.getInt(b));
+      }
+      return result != 0 ? result : Integer.compare(baseIndices.getInt(a), baseIndices.getInt(b));
+    });
+
+    // simulate the data files that are added to each base row during the assignment. The row's
+    // raw data files are those of the feature list, only files with a feature are occupied
+    final boolean[] rowAligned = new boolean[shard.endRow() - shard.firstRow()];
+    final Int2ObjectOpenHashMap<Set<RawDataFile>> addedFiles = new Int2ObjectOpenHashMap<>();
+    final IntArrayList matches = new IntArrayList();
+    for (int i : order) {
+      final int r = rowIndices.getInt(i);
+      if (rowAligned[r - shard.firstRow()]) {
+        continue;
+      }
+      final int b = baseIndices.getInt(i);
+      final FeatureListRow baseRow = baseRowsByMz.get(b);
+      final Set<RawDataFile> added = addedFiles.computeIfAbsent(b, key -> new HashSet<>());
+      for (Feature feature : rowsToAdd.get(r).getFeatures()) {
+        final RawDataFile dataFile = feature.getRawDataFile();
+        if (!baseRow.hasFeature(dataFile) && added.add(dataFile)) {
+          rowAligned[r - shard.firstRow()] = true;
+        }
+      }
+      if (rowAligned[r - shard.firstRow()]) {
+        matches.add(r);
+        matches.add(b);
+      }
+    }
+    return matches;
+  }
+
   private boolean additionalChecks(final FeatureListRow row,
       final FeatureListRow candidateInAligned) {
     return (!sameChargeRequired || FeatureUtils.compareChargeState(row, candidateInAligned)) //
@@ -347,9 +587,10 @@ public class JoinAlignerTask extends AbstractTask {
 
   @NotNull
   private Object2BooleanOpenHashMap<FeatureListRow> addFeaturesBasedOnScores(
-      ConcurrentLinkedDeque<RowVsRowScore> scoresList) {
+      ConcurrentLinkedDeque<RowVsRowScore> scoresList, Comparator<RowVsRowScore> scoreOrder) {
     // natural order is reversed so best highest score is first element
-    final RowVsRowScore[] scores = scoresList.stream().sorted().toArray(RowVsRowScore[]::new);
+    final RowVsRowScore[] scores = scoresList.stream().sorted(scoreOrder)
+        .toArray(RowVsRowScore[]::new);
 
     // track if row was aligned
     final Object2BooleanOpenHashMap<FeatureListRow> alignedRowsMap = new Object2BooleanOpenHashMap<>(
@@ -469,4 +710,12 @@ public class JoinAlignerTask extends AbstractTask {
     return simFunction.getModule()
         .getSimilarity(simFunction.getParameterSet(), mzTolerance, 0, library, query);
   }
+
+  /**
+   * Consecutive rows to add [firstRow, endRow) and their candidate base rows [firstBase, endBase),
+   * both sorted by m/z.
+   */
+  private record MzShard(int firstRow, int endRow, int firstBase, int endBase) {
+
+  }
 }
@@ -118,6 +118,18 @@ public class ADAPChromatogram {
     mz = mzSum / mzN;
   }
 
+  /**
+   * Same as {@link #addMzFeature(Scan, DataPoint)}, but only creates a data point if the scan is
+   * not yet part of this chromatogram.
+   */
+  public void addMzFeature(Scan scanNumber, double mz, double intensity) {
+    if (dataPointsMap.containsKey(scanNumber)) {
+      tmp_see_same_scan_count += 1;
+      return;
+    }
+    addMzFeature(scanNumber, new SimpleDataPoint(mz, intensity));
+  }
+
   public DataPoint getDataPoint(Scan scanNumber) {
     return dataPointsMap.get(scanNumber);
   }
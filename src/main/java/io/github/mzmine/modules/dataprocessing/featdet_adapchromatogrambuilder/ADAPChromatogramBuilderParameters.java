@@ -30,6 +30,7 @@ import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.dialogs.ParameterSetupDialog;
 import io.github.mzmine.parameters.impl.IonMobilitySupport;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.HiddenParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
@@ -88,6 +89,12 @@ public class ADAPChromatogramBuilderParameters extends SimpleParameterSet {
       MZmineCore.getConfiguration().getIntensityFormat());
   // End Owen Edit
 
+  public static final BooleanParameter columnarMode = new BooleanParameter("Memory efficient mode",
+      """
+          Keeps all data points in primitive arrays instead of one object per data point.
+          This reduces the memory consumption for large files and produces the same chromatograms.""",
+      true);
+
   public static final HiddenParameter<OptOutParameter, Map<String, Boolean>> allowSingleScans = new HiddenParameter<>(
       new OptOutParameter("Allow single scan chromatograms",
           "Allows selection of single scans as chromatograms. This is useful for "
@@ -95,7 +102,7 @@ public class ADAPChromatogramBuilderParameters extends SimpleParameterSet {
 
   public ADAPChromatogramBuilderParameters() {
     super(new Parameter[]{dataFiles, scanSelection, minimumScanSpan,
-            minGroupIntensity, minHighestPoint, mzTolerance, suffix,
+            minGroupIntensity, minHighestPoint, mzTolerance, suffix, columnarMode,
             allowSingleScans},
         "https://mzmine.github.io/mzmine_documentation/module_docs/lc-ms_featdet/featdet_adap_chromatogram_builder/adap-chromatogram-builder.html");
   }
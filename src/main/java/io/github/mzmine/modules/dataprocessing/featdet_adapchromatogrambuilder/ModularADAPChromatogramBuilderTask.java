@@ -55,12 +55,15 @@ import io.github.mzmine.util.FeatureListUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.SortingDirection;
 import io.github.mzmine.util.SortingProperty;
+import io.github.mzmine.util.collections.SortedRangeIndex;
 import io.github.mzmine.util.exceptions.MissingMassListException;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -82,6 +85,7 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
   // Owen added User parameers;
   private final double minGroupIntensity;
   private final double minHighestPoint;
+  private final boolean columnarMode;
   private final ParameterSet parameters;
   private final Class<? extends MZmineModule> callingModule;
   private double progress = 0.0;
@@ -113,6 +117,7 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
         ADAPChromatogramBuilderParameters.minGroupIntensity).getValue();
     this.minHighestPoint = parameters.getParameter(
         ADAPChromatogramBuilderParameters.minHighestPoint).getValue();
+    this.columnarMode = parameters.getValue(ADAPChromatogramBuilderParameters.columnarMode);
     this.parameters = parameters;
     this.callingModule = callingModule;
   }
@@ -189,6 +194,79 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
       }
     }
 
+    final List<ADAPChromatogram> chromatograms =
+        columnarMode ? buildChromatogramsColumnar() : buildChromatograms();
+    if (chromatograms == null) {
+      // canceled or error
+      return;
+    }
+
+    int numChromatograms = chromatograms.size();
+    final double progressStep = numChromatograms > 0 ? 0.5 / numChromatograms : 0.0;
+
+    // Create new feature list
+    newFeatureList = new ModularFeatureList(dataFile + " " + suffix,
+        getMemoryMapStorage(), dataFile);
+    // ensure that the default columns are available
+    DataTypeUtils.addDefaultChromatographicTypeColumns(newFeatureList);
+
+    int newFeatureID = 1;
+    // add chromatograms that match criteria
+    for (ADAPChromatogram chromatogram : chromatograms) {
+      if (isCanceled()) {
+        return;
+      }
+
+      progress += progressStep;
+
+      // And remove chromatograms who dont have a certian number of continous points above the
+      // IntensityThresh2 level.
+      if (chromatogram.matchesMinContinuousDataPoints(scans, minGroupIntensity,
+          minimumScanSpan, minHighestPoint)) {
+        // add zeros to edges
+        chromatogram.addNZeros(scans, 1, 1);
+
+        // add to list
+        ModularFeature modular = FeatureConvertors.ADAPChromatogramToModularFeature(
+            newFeatureList, dataFile, chromatogram);
+        ModularFeatureListRow newRow = new ModularFeatureListRow(newFeatureList,
+            newFeatureID, modular);
+        newFeatureList.addRow(newRow);
+        // activate shape for this row
+        newRow.set(FeatureShapeType.class, true);
+        newFeatureID++;
+      }
+    }
+
+    // sort and reset IDs here to ahve the same sorting for every feature list
+    FeatureListUtils.sortByDefaultRT(newFeatureList, true);
+
+    newFeatureList.setSelectedScans(dataFile, Arrays.asList(scans));
+
+    dataFile.getAppliedMethods()
+        .forEach(m -> newFeatureList.getAppliedMethods().add(m));
+    // Add new feature list to the project
+    newFeatureList.getAppliedMethods().add(
+        new SimpleFeatureListAppliedMethod(callingModule, parameters,
+            getModuleCallDate()));
+    project.addFeatureList(newFeatureList);
+
+    progress = 1.0;
+
+    setStatus(TaskStatus.FINISHED);
+
+    logger.info(() -> "Finished chromatogram builder on " + dataFile);
+  }
+
+  /**
+   * Collects one {@link ExpandedDataPoint} per centroid of all scans, sorts them by intensity and
+   * groups them into chromatograms.
+   *
+   * @return the chromatograms sorted by m/z or null if the task was canceled or failed.
+   */
+  @SuppressWarnings("UnstableApiUsage")
+  @Nullable
+  private List<ADAPChromatogram> buildChromatograms() {
     // make a list of all the data points
     // sort data points by intensity
     // loop through list
@@ -207,27 +285,12 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
 
     while (scanData.hasNextScan()) {
       if (isCanceled()) {
-        return;
+        return null;
       }
 
-      Scan scan;
-      try {
-        scan = scanData.nextScan();
-      } catch (MissingMassListException e) {
-        setStatus(TaskStatus.ERROR);
-        StringBuilder b = new StringBuilder("Scan #");
-        b.append(scanData.getCurrentScan().getScanNumber()).append(" from ");
-        b.append(dataFile.getName());
-        b.append(
-            " does not have a mass list. Please run \"Raw data methods\" -> \"Mass detection\"");
-        if (dataFile instanceof IMSRawDataFile) {
-          b.append(
-              "\nIMS files require mass detection on the frame level (Scan type = \"Frames ");
-          b.append("only\" or \"All scan types\"");
-        }
-        setErrorMessage(b.toString());
-        e.printStackTrace();
-        return;
+      final Scan scan = nextScan(scanData);
+      if (scan == null) {
+        return null;
       }
 
       int dps = scanData.getNumberOfDataPoints();
@@ -252,7 +315,7 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
       progress += progressStep;
 
       if (isCanceled()) {
-        return;
+        return null;
       }
 
       if (mzFeature == null || Double.isNaN(mzFeature.getMZ()) || Double.isNaN(
@@ -276,63 +339,161 @@ public class ModularADAPChromatogramBuilderTask extends AbstractTask {
     }
 
     // finish chromatograms sorted by m/z
-    final Map<Range<Double>, ADAPChromatogram> finalRangeMap = rangeToChromMap.asMapOfRanges();
+    return new ArrayList<>(rangeToChromMap.asMapOfRanges().values());
+  }
 
-    int numChromatograms = finalRangeMap.size();
-    progressStep = numChromatograms > 0 ? 0.5 / numChromatograms : 0.0;
+  /**
+   * Same algorithm as {@link #buildChromatograms()}, but keeps m/z, intensity and scan index of all
+   * centroids in primitive arrays and sorts an index array instead of data point objects. Ties in
+   * intensity and m/z are resolved by the original order, like the stable sort of the object
+   * list, so the resulting chromatograms are identical.
+   *
+   * @return the chromatograms sorted by m/z or null if the task was canceled or failed.
+   */
+  @Nullable
+  private List<ADAPChromatogram> buildChromatogramsColumnar() {
+    final List<Scan> dataScans = new ArrayList<>();
+    final DoubleArrayList mzList = new DoubleArrayList();
+    final DoubleArrayList intensityList = new DoubleArrayList();
+    final IntArrayList scanIndexList = new IntArrayList();
 
-    // Create new feature list
-    newFeatureList = new ModularFeatureList(dataFile + " " + suffix,
-        getMemoryMapStorage(), dataFile);
-    // ensure that the default columns are available
-    DataTypeUtils.addDefaultChromatographicTypeColumns(newFeatureList);
+    final ScanDataAccess scanData = EfficientDataAccess.of(dataFile, ScanDataType.CENTROID,
+        scanSelection);
 
-    int newFeatureID = 1;
-    // add chromatograms that match criteria
-    for (ADAPChromatogram chromatogram : finalRangeMap.values()) {
+    while (scanData.hasNextScan()) {
       if (isCanceled()) {
-        return;
+        return null;
+      }
+
+      final Scan scan = nextScan(scanData);
+      if (scan == null) {
+        return null;
+      }
+
+      final int scanIndex = dataScans.size();
+      dataScans.add(scan);
+      final int dps = scanData.getNumberOfDataPoints();
+      for (int i = 0; i < dps; i++) {
+        mzList.add(scanData.getMzValue(i));
+        intensityList.add(scanData.getIntensityValue(i));
+        scanIndexList.add(scanIndex);
       }
+    }
+
+    final int numDataPoints = mzList.size();
+    final double[] mzs = mzList.elements();
+    final double[] intensities = intensityList.elements();
+    final int[] scanIndices = scanIndexList.elements();
+
+    // sort indices by intensity and m/z descending (like the DataPointSorter)
+    final int[] order = new int[numDataPoints];
+    for (int i = 0; i < numDataPoints; i++) {
+      order[i] = i;
+    }
+    IntArrays.parallelQuickSort(order, 0, numDataPoints, (a, b) -> {
+      int result = Double.compare(intensities[b], intensities[a]);
+      if (result == 0) {
+        result = Double.compare(mzs[b], mzs[a]);
+      }
+      return result != 0 ? result : Integer.compare(a, b);
+    });
+
+    // map the mz tolerance to chromatograms
+    final SortedRangeIndex<ADAPChromatogram> rangeIndex = new SortedRangeIndex<>();
+
+    progress = 0.0;
+    final double progressStep = numDataPoints > 0 ? 0.5 / numDataPoints : 0.0;
 
+    for (final int index : order) {
       progress += progressStep;
 
-      // And remove chromatograms who dont have a certian number of continous points above the
-      // IntensityThresh2 level.
-      if (chromatogram.matchesMinContinuousDataPoints(scans, minGroupIntensity,
-          minimumScanSpan, minHighestPoint)) {
-        // add zeros to edges
-        chromatogram.addNZeros(scans, 1, 1);
+      if (isCanceled()) {
+        return null;
+      }
 
-        // add to list
-        ModularFeature modular = FeatureConvertors.ADAPChromatogramToModularFeature(
-            newFeatureList, dataFile, chromatogram);
-        ModularFeatureListRow newRow = new ModularFeatureListRow(newFeatureList,
-            newFeatureID, modular);
-        newFeatureList.addRow(newRow);
-        // activate shape for this row
-        newRow.set(FeatureShapeType.class, true);
-        newFeatureID++;
+      final double mz = mzs[index];
+      final double intensity = intensities[index];
+      if (Double.isNaN(mz) || Double.isNaN(intensity)) {
+        continue;
+      }
+
+      final Scan scan = dataScans.get(scanIndices[index]);
+      final long existing = rangeIndex.find(mz);
+      if (existing >= 0) {
+        // add data point to chromatogram
+        rangeIndex.valueAt(existing).addMzFeature(scan, mz, intensity);
+      } else {
+        // skip it entierly if the intensity is not high enough
+        if (intensity < minHighestPoint) {
+          continue;
+        }
+        // add a new chromatogram to the range index - limit ranges to avoid overlap
+        startNewChromatogramLimitMzRanges(rangeIndex, scan, mz, intensity);
       }
     }
 
-    // sort and reset IDs here to ahve the same sorting for every feature list
-    FeatureListUtils.sortByDefaultRT(newFeatureList, true);
+    // finish chromatograms sorted by m/z
+    return rangeIndex.values();
+  }
 
-    newFeatureList.setSelectedScans(dataFile, Arrays.asList(scans));
+  /**
+   * @return the next scan or null if the scan has no mass list. The error is set to the task.
+   */
+  @Nullable
+  private Scan nextScan(ScanDataAccess scanData) {
+    try {
+      return scanData.nextScan();
+    } catch (MissingMassListException e) {
+      setStatus(TaskStatus.ERROR);
+      StringBuilder b = new StringBuilder("Scan #");
+      b.append(scanData.getCurrentScan().getScanNumber()).append(" from ");
+      b.append(dataFile.getName());
+      b.append(
+          " does not have a mass list. Please run \"Raw data methods\" -> \"Mass detection\"");
+      if (dataFile instanceof IMSRawDataFile) {
+        b.append(
+            "\nIMS files require mass detection on the frame level (Scan type = \"Frames ");
+        b.append("only\" or \"All scan types\"");
+      }
+      setErrorMessage(b.toString());
+      e.printStackTrace();
+      return null;
+    }
+  }
 
-    dataFile.getAppliedMethods()
-        .forEach(m -> newFeatureList.getAppliedMethods().add(m));
-    // Add new feature list to the project
-    newFeatureList.getAppliedMethods().add(
-        new SimpleFeatureListAppliedMethod(callingModule, parameters,
-            getModuleCallDate()));
-    project.addFeatureList(newFeatureList);
+  /**
+   * Same as {@link #startNewChromatogramLimitMzRanges(RangeMap, ExpandedDataPoint)} on a
+   * {@link SortedRangeIndex}.
+   *
+   * @param rangeIndex started chromatograms with their non overlapping m/z range
+   * @param scan       the scan of the current data point
+   * @param mz         m/z of the current data point
+   * @param intensity  intensity of the current data point
+   */
+  private void startNewChromatogramLimitMzRanges(SortedRangeIndex<ADAPChromatogram> rangeIndex,
+      Scan scan, double mz, double intensity) {
+    Range<Double> toleranceRange = mzTolerance.getToleranceRange(mz);
 
-    progress = 1.0;
+    final long minusRange = rangeIndex.find(toleranceRange.lowerEndpoint());
+    final long plusRange = rangeIndex.find(toleranceRange.upperEndpoint());
 
-    setStatus(TaskStatus.FINISHED);
+    final double toBeLowerBound = minusRange < 0 ? toleranceRange.lowerEndpoint()
+        : rangeIndex.upperAt(minusRange);
+    final double toBeUpperBound = plusRange < 0 ? toleranceRange.upperEndpoint()
+        : rangeIndex.lowerAt(plusRange);
 
-    logger.info(() -> "Finished chromatogram builder on " + dataFile);
+    if (toBeLowerBound < toBeUpperBound) {
+      ADAPChromatogram newChrom = new ADAPChromatogram();
+      newChrom.addMzFeature(scan, mz, intensity);
+
+      rangeIndex.put(toBeLowerBound, toBeUpperBound, newChrom);
+    } else if (Double.compare(toBeLowerBound, toBeUpperBound) == 0 && plusRange >= 0) {
+      rangeIndex.valueAt(plusRange).addMzFeature(scan, mz, intensity);
+    } else {
+      throw new IllegalStateException(
+          String.format("Incorrect range [%f, %f] for m/z %f", toBeLowerBound, toBeUpperBound,
+              mz));
+    }
   }
 
   /**
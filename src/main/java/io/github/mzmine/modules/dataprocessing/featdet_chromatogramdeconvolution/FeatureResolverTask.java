@@ -25,6 +25,7 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution;
 
+import com.google.common.collect.Lists;
 import io.github.mzmine.datamodel.ImagingRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -43,6 +44,8 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.ImageType;
 import io.github.mzmine.datamodel.features.types.MobilityUnitType;
 import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2SubParameters;
 import io.github.mzmine.modules.dataprocessing.filter_groupms2.GroupMS2Task;
 import io.github.mzmine.parameters.ParameterSet;
@@ -57,7 +60,9 @@ import io.github.mzmine.util.R.RSessionWrapper;
 import io.github.mzmine.util.R.RSessionWrapperException;
 import io.github.mzmine.util.maths.CenterFunction;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -66,6 +71,10 @@ public class FeatureResolverTask extends AbstractTask {
 
   // Logger.
   private static final Logger logger = Logger.getLogger(FeatureResolverTask.class.getName());
+  private static final int NUM_THREADS = MZmineCore.getConfiguration().getPreferences()
+      .getParameter(MZminePreferences.numOfThreads).getValue();
+  // small chunks do not pay off the data access and resolver initialisation
+  private static final int MIN_RESOLVER_CHUNK_SIZE = 500;
 
   // Feature lists.
   private final MZmineProject project;
@@ -74,9 +83,11 @@ public class FeatureResolverTask extends AbstractTask {
   private final ParameterSet parameters;
   // function to find center mz of all feature data points
   private final CenterFunction mzCenterFunction;
+  // rows are resolved in chunks of at least this size
+  private final int minChunkSize;
   private FeatureList newPeakList;
   // Counters.
-  private int processedRows;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
   private int totalRows;
   private RSessionWrapper rSession;
   private String errorMsg;
@@ -94,6 +105,16 @@ public class FeatureResolverTask extends AbstractTask {
   public FeatureResolverTask(final MZmineProject project, MemoryMapStorage storage,
       final FeatureList list, final ParameterSet parameterSet, CenterFunction mzCenterFunction,
       @NotNull Instant moduleCallDate) {
+    this(project, storage, list, parameterSet, mzCenterFunction, moduleCallDate,
+        MIN_RESOLVER_CHUNK_SIZE);
+  }
+
+  /**
+   * @param minChunkSize the minimum number of rows resolved in one chunk
+   */
+  FeatureResolverTask(final MZmineProject project, MemoryMapStorage storage,
+      final FeatureList list, final ParameterSet parameterSet, CenterFunction mzCenterFunction,
+      @NotNull Instant moduleCallDate, int minChunkSize) {
     super(storage, moduleCallDate);
 
     // Initialize.
@@ -101,9 +122,9 @@ public class FeatureResolverTask extends AbstractTask {
     parameters = parameterSet;
     originalPeakList = list;
     newPeakList = null;
-    processedRows = 0;
     totalRows = 0;
     this.mzCenterFunction = mzCenterFunction;
+    this.minChunkSize = minChunkSize;
   }
 
   @Override
@@ -113,7 +134,7 @@ public class FeatureResolverTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return totalRows == 0 ? 0.0 : (double) processedRows / (double) totalRows;
+    return totalRows == 0 ? 0.0 : (double) processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -150,12 +171,12 @@ public class FeatureResolverTask extends AbstractTask {
                 GeneralResolverParameters.groupMS2Parameters).getEmbeddedParameters();
             GroupMS2Task task = new GroupMS2Task(project, newPeakList, ms2params, moduleCallDate);
             // restart progress
-            processedRows = 0;
+            processedRows.set(0);
             totalRows = newPeakList.getNumberOfRows();
             // group all features with MS/MS
             for (FeatureListRow row : newPeakList.getRows()) {
               task.processRow(row);
-              processedRows++;
+              processedRows.getAndIncrement();
             }
           }
 
@@ -262,7 +283,7 @@ public class FeatureResolverTask extends AbstractTask {
         "Feature deconvolution by " + resolver, resolver.getParameterSet()));
 
     // Initialise counters.
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
     int peakId = 1;
 
@@ -357,39 +378,43 @@ public class FeatureResolverTask extends AbstractTask {
     final RawDataFile dataFile = originalFeatureList.getRawDataFile(0);
     final ModularFeatureList resolvedFeatureList = createNewFeatureList(originalFeatureList);
 
-    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
-        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile);
-
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
-    int peakId = 1;
-
-    int c = 0;
 
-    while (access.hasNextFeature()) {
-      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
-      final List<IonTimeSeries<? extends Scan>> resolvedSeries = resolver.resolve(access,
-          getMemoryMapStorage());
+    // resolve chunks of chromatograms in parallel, each with its own resolver and data access.
+    // The resolvers reuse internal buffers and are therefore not thread safe.
+    final List<FeatureListRow> rows = List.copyOf(originalFeatureList.getRows());
+    final int chunkSize = Math.max(minChunkSize,
+        (int) Math.ceil(rows.size() / (double) (NUM_THREADS * 4)));
+    final List<List<ResolvedChromatogram>> resolvedChunks = Lists.partition(rows, chunkSize)
+        .parallelStream().map(chunk -> resolveChunk(originalFeatureList, dataFile, chunk))
+        .toList();
 
-      for (IonTimeSeries<? extends Scan> resolved : resolvedSeries) {
-        final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
-            peakId++);
-        final ModularFeature f = new ModularFeature(resolvedFeatureList,
-            originalFeature.getRawDataFile(), resolved, originalFeature.getFeatureStatus());
-
-        if (originalFeature.getMobilityUnit() != null) {
-          f.set(MobilityUnitType.class, originalFeature.getMobilityUnit());
-        }
-        if (originalFeature.get(ImageType.class) != null) {
-          f.set(ImageType.class, true);
-        }
-        newRow.addFeature(originalFeature.getRawDataFile(), f);
-        resolvedFeatureList.addRow(newRow);
-        if (resolved.getSpectra().size() <= 3) {
-          c++;
+    // merge in the original order to keep the row IDs deterministic
+    int peakId = 1;
+    int c = 0;
+    for (List<ResolvedChromatogram> chunk : resolvedChunks) {
+      for (ResolvedChromatogram resolvedChromatogram : chunk) {
+        final ModularFeature originalFeature = resolvedChromatogram.originalFeature();
+        for (IonTimeSeries<? extends Scan> resolved : resolvedChromatogram.resolvedSeries()) {
+          final ModularFeatureListRow newRow = new ModularFeatureListRow(resolvedFeatureList,
+              peakId++);
+          final ModularFeature f = new ModularFeature(resolvedFeatureList,
+              originalFeature.getRawDataFile(), resolved, originalFeature.getFeatureStatus());
+
+          if (originalFeature.getMobilityUnit() != null) {
+            f.set(MobilityUnitType.class, originalFeature.getMobilityUnit());
+          }
+          if (originalFeature.get(ImageType.class) != null) {
+            f.set(ImageType.class, true);
+          }
+          newRow.addFeature(originalFeature.getRawDataFile(), f);
+          resolvedFeatureList.addRow(newRow);
+          if (resolved.getSpectra().size() <= 3) {
+            c++;
+          }
         }
       }
-      processedRows++;
     }
     logger.info(c + "/" + resolvedFeatureList.getNumberOfRows()
         + " have less than 4 scans (frames for IMS data)");
@@ -402,6 +427,28 @@ public class FeatureResolverTask extends AbstractTask {
     newPeakList = resolvedFeatureList;
   }
 
+  /**
+   * Resolves a chunk of chromatograms with a new resolver instance and data access.
+   *
+   * @return the resolved series of every chromatogram in the order of the rows.
+   */
+  private List<ResolvedChromatogram> resolveChunk(ModularFeatureList originalFeatureList,
+      RawDataFile dataFile, List<FeatureListRow> rows) {
+    final Resolver resolver = ((GeneralResolverParameters) parameters).getResolver(parameters,
+        originalFeatureList);
+    final FeatureDataAccess access = EfficientDataAccess.of(originalFeatureList,
+        EfficientDataAccess.FeatureDataType.INCLUDE_ZEROS, dataFile, rows);
+
+    final List<ResolvedChromatogram> resolvedChromatograms = new ArrayList<>(rows.size());
+    while (access.hasNextFeature() && !isCanceled()) {
+      final ModularFeature originalFeature = (ModularFeature) access.nextFeature();
+      resolvedChromatograms.add(new ResolvedChromatogram(originalFeature,
+          resolver.resolve(access, getMemoryMapStorage())));
+      processedRows.getAndIncrement();
+    }
+    return resolvedChromatograms;
+  }
+
   @Override
   public void cancel() {
     super.cancel();
@@ -429,7 +476,7 @@ public class FeatureResolverTask extends AbstractTask {
 
     final FeatureResolver resolver = ((GeneralResolverParameters) parameters).getResolver();
 
-    processedRows = 0;
+    processedRows.set(0);
     totalRows = originalFeatureList.getNumberOfRows();
     int peakId = 1;
     final Integer minNumDp = parameters.getValue(GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS);
@@ -459,7 +506,7 @@ public class FeatureResolverTask extends AbstractTask {
         newRow.setFeatureInformation(peak.getPeakInformation());
         resolvedFeatureList.addRow(newRow);
       }
-      processedRows++;
+      processedRows.getAndIncrement();
     }
 
     resolvedFeatureList.addDescriptionOfAppliedTask(
@@ -508,4 +555,9 @@ public class FeatureResolverTask extends AbstractTask {
 
     return resolvedFeatureList;
   }
+
+  private record ResolvedChromatogram(ModularFeature originalFeature,
+                                      List<IonTimeSeries<? extends Scan>> resolvedSeries) {
+
+  }
 }
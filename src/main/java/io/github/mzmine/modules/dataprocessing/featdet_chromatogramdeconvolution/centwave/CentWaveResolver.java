@@ -22,63 +22,63 @@
  * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
  * OTHER DEALINGS IN THE SOFTWARE.
  */
-
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
 
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.INTEGRATION_METHOD;
+import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.MIN_NUMBER_OF_DATAPOINTS;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PEAK_DURATION;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PEAK_SCALES;
 import static io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.SN_THRESHOLD;
 
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.DataPoint;
-import io.github.mzmine.datamodel.RawDataFile;
-import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.MZmineProcessingModule;
-import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolver;
-import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.ResolvedPeak;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.AbstractResolver;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PeakIntegrationMethod;
 import io.github.mzmine.parameters.ParameterSet;
-import io.github.mzmine.util.R.REngineType;
-import io.github.mzmine.util.R.RSessionWrapper;
-import io.github.mzmine.util.R.RSessionWrapperException;
-import io.github.mzmine.util.maths.CenterFunction;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Use XCMS findPeaks.centWave to identify peaks.
+ * CentWave peak detection (Tautenhahn et al., BMC Bioinformatics 2008, 9:504), implemented on
+ * primitive arrays following xcms findPeaks.centWave. Every region of interest (a section of
+ * consecutive non-zero intensities) is transformed with a Mexican hat wavelet at multiple scales.
+ * Ridges of local maxima across the scales are peak candidates, which are filtered by their signal
+ * to noise ratio.
+ * <p>
+ * Instances reuse internal buffers and are not thread safe.
  */
-public class CentWaveResolver implements FeatureResolver {
-
-  // Logger.
-  private static final Logger logger = Logger.getLogger(CentWaveResolver.class.getName());
-
-  // Name.
-  private static final String NAME = "Wavelets (XCMS)";
-
-  // Minutes <-> seconds.
-  private static final double SECONDS_PER_MINUTE = 60.0;
-
-  // Required minimum version of XCMS.
-  private static final String XCMS_VERSION = "1.33.2";
-
-  @NotNull
-  @Override
-  public String getName() {
-
-    return NAME;
-  }
-
-  @NotNull
-  @Override
-  public Class<? extends ParameterSet> getParameterSetClass() {
-
-    return CentWaveResolverParameters.class;
+public class CentWaveResolver extends AbstractResolver {
+
+  // the wavelet is truncated at this multiple of the scale (psi(4) is ~0.5 % of psi(0))
+  private static final int WAVELET_SUPPORT = 4;
+  private static final double MEXICAN_HAT_NORM = 2d / (Math.sqrt(3d) * Math.pow(Math.PI, 0.25));
+  // limits the computation time for very long regions of interest
+  private static final int MAX_NUMBER_OF_SCALES = 32;
+  // number of scales a ridge may skip before it is terminated (as in MassSpecWavelet)
+  private static final int MAX_RIDGE_GAP = 3;
+  // fraction of the lowest and highest intensities excluded from the noise estimation
+  private static final double NOISE_TRIM = 0.05;
+
+  private final double snThreshold;
+  private final Range<Double> peakScales;
+  private final Range<Double> peakDuration;
+  private final PeakIntegrationMethod integrationMethod;
+  private final int minDataPoints;
+
+  private double[][] coefficients = new double[0][];
+  private double[] noiseBuffer = new double[0];
+
+  public CentWaveResolver(@NotNull ParameterSet parameters, @NotNull ModularFeatureList flist) {
+    super(parameters, flist);
+    snThreshold = parameters.getParameter(SN_THRESHOLD).getValue();
+    peakScales = parameters.getParameter(PEAK_SCALES).getValue();
+    peakDuration = parameters.getParameter(PEAK_DURATION).getValue();
+    integrationMethod = parameters.getParameter(INTEGRATION_METHOD).getValue();
+    minDataPoints = parameters.getParameter(MIN_NUMBER_OF_DATAPOINTS).getValue();
   }
 
   @Override
@@ -87,189 +87,309 @@ public class CentWaveResolver implements FeatureResolver {
   }
 
   @Override
-  public boolean getRequiresR() {
-    return true;
-  }
+  public @NotNull List<Range<Double>> resolve(double[] x, double[] y) {
+    if (x.length != y.length) {
+      throw new AssertionError("Length of x and y array does not match.");
+    }
+    final int numValues = x.length;
+    if (numValues < 3 || x[numValues - 1] <= x[0]) {
+      return List.of();
+    }
 
-  @Override
-  public String[] getRequiredRPackages() {
-    return new String[] {"xcms"};
-  }
+    // noise level of the whole chromatogram
+    final double[] noise = estimateNoise(y);
+    if (noise == null) {
+      return List.of();
+    }
+    final double baseline = noise[0];
+    final double sdNoise = noise[1] > 0 ? noise[1] : Math.max(baseline, 1d);
+
+    // wavelet scales in number of data points, as in xcms
+    final double meanDistance = (x[numValues - 1] - x[0]) / (numValues - 1);
+    final int minScale = (int) Math.max(1,
+        Math.round(peakScales.lowerEndpoint() / meanDistance / 2));
+    final int maxScale = (int) Math.max(minScale,
+        Math.round(peakScales.upperEndpoint() / meanDistance / 2));
+
+    final List<Peak> candidates = new ArrayList<>();
+    for (int start = 0; start < numValues; start++) {
+      if (y[start] <= 0d) {
+        continue;
+      }
+      int end = start;
+      while (end + 1 < numValues && y[end + 1] > 0d) {
+        end++;
+      }
+      if (end - start + 1 >= minDataPoints) {
+        findPeaksInRoi(y, start, end, minScale, maxScale, baseline, sdNoise, candidates);
+      }
+      start = end;
+    }
 
-  @Override
-  public String[] getRequiredRPackagesVersions() {
-    return new String[] {XCMS_VERSION};
-  }
+    // the most intense candidates win, overlapping ones are trimmed
+    candidates.sort(Comparator.comparingDouble(Peak::height).reversed());
+    final List<Peak> accepted = new ArrayList<>();
+    candidateLoop:
+    for (Peak candidate : candidates) {
+      int left = candidate.left();
+      int right = candidate.right();
+      for (Peak peak : accepted) {
+        if (candidate.apex() >= peak.left() && candidate.apex() <= peak.right()) {
+          continue candidateLoop;
+        }
+        if (candidate.apex() < peak.left()) {
+          right = Math.min(right, peak.left() - 1);
+        } else {
+          left = Math.max(left, peak.right() + 1);
+        }
+      }
+      if (right - left + 1 >= minDataPoints && peakDuration.contains(x[right] - x[left])) {
+        accepted.add(new Peak(left, candidate.apex(), right, candidate.height()));
+      }
+    }
 
-  @Override
-  public REngineType getREngineType(final ParameterSet parameters) {
-    return parameters.getParameter(CentWaveResolverParameters.RENGINE_TYPE).getValue();
+    accepted.sort(Comparator.comparingInt(Peak::left));
+    final List<Range<Double>> resolved = new ArrayList<>(accepted.size());
+    for (Peak peak : accepted) {
+      resolved.add(Range.closed(x[peak.left()], x[peak.right()]));
+    }
+    return resolved;
   }
 
-  @Override
-  public ResolvedPeak[] resolvePeaks(final Feature chromatogram, final ParameterSet parameters,
-      RSessionWrapper rSession, CenterFunction mzCenterFunction, double msmsRange,
-      float rTRangeMSMS) throws RSessionWrapperException {
-
-    List<Scan> scanNumbers = chromatogram.getScanNumbers();
-    final int scanCount = scanNumbers.size();
-    double retentionTimes[] = new double[scanCount];
-    double intensities[] = new double[scanCount];
-    RawDataFile dataFile = chromatogram.getRawDataFile();
-    for (int i = 0; i < scanCount; i++) {
-      final Scan scanNum = scanNumbers.get(i);
-      retentionTimes[i] = scanNum.getRetentionTime();
-      DataPoint dp = chromatogram.getDataPointAtIndex(i);
-      if (dp != null)
-        intensities[i] = dp.getIntensity();
-      else
-        intensities[i] = 0.0;
+  /**
+   * Detects the peaks of a single region of interest.
+   *
+   * @param start first index of the region (inclusive).
+   * @param end   last index of the region (inclusive).
+   */
+  private void findPeaksInRoi(double[] y, int start, int end, int minScale, int maxScale,
+      double baseline, double sdNoise, List<Peak> candidates) {
+    final int length = end - start + 1;
+    final int[] scales = getScales(minScale, Math.min(maxScale, Math.max(1, length / 2)));
+    if (coefficients.length < scales.length || coefficients[0].length < length) {
+      coefficients = new double[Math.max(scales.length, coefficients.length)][Math.max(length,
+          coefficients.length > 0 ? coefficients[0].length : 0)];
+    }
+    for (int s = 0; s < scales.length; s++) {
+      mexicanHatTransform(y, start, end, scales[s], coefficients[s]);
     }
 
-    // Call findPeaks.centWave.
-    double[][] peakMatrix = null;
-
-    peakMatrix = centWave(rSession, retentionTimes, intensities, chromatogram.getMZ(),
-        parameters.getParameter(SN_THRESHOLD).getValue(),
-        parameters.getParameter(PEAK_SCALES).getValue(),
-        parameters.getParameter(INTEGRATION_METHOD).getValue());
-
-    final List<ResolvedPeak> resolvedPeaks;
-    if (peakMatrix == null) {
-
-      resolvedPeaks = new ArrayList<ResolvedPeak>(0);
-
-    } else {
-
-      logger.finest("Processing peak matrix...");
-
-      final Range<Double> peakDuration = parameters.getParameter(PEAK_DURATION).getValue();
-
-      // Process peak matrix.
-      resolvedPeaks = new ArrayList<ResolvedPeak>(peakMatrix.length);
-
-      for (final double[] peakRow : peakMatrix) {
-
-        // Get peak start and end.
-        final int peakLeft = findRTIndex(retentionTimes, peakRow[4]);
-        final int peakRight = findRTIndex(retentionTimes, peakRow[5]);
-
-        // Partition into sections bounded by null data points, creating
-        // a peak for each.
-        for (int start = peakLeft; start < peakRight; start++) {
-
-          if (chromatogram.getDataPointAtIndex(start) != null) {
-
-            int end = start;
-
-            while (end < peakRight && chromatogram.getDataPointAtIndex(end + 1) != null) {
+    for (Ridge ridge : findRidges(coefficients, scales, length)) {
+      final int scale = scales[ridge.bestScaleIndex];
+      final double[] coef = coefficients[ridge.bestScaleIndex];
 
-              end++;
-            }
+      // apex: highest intensity close to the ridge
+      int apex = ridge.bestPosition;
+      for (int i = Math.max(0, ridge.bestPosition - scale);
+          i <= Math.min(length - 1, ridge.bestPosition + scale); i++) {
+        if (y[start + i] > y[start + apex]) {
+          apex = i;
+        }
+      }
 
-            if ((end > start)
-                && (peakDuration.contains(retentionTimes[end] - retentionTimes[start]))) {
+      int left;
+      int right;
+      if (integrationMethod == PeakIntegrationMethod.UseSmoothedData) {
+        // descend the wavelet coefficients at the best scale
+        left = ridge.bestPosition;
+        while (left > 0 && coef[left - 1] > 0 && coef[left - 1] < coef[left]) {
+          left--;
+        }
+        right = ridge.bestPosition;
+        while (right < length - 1 && coef[right + 1] > 0 && coef[right + 1] < coef[right]) {
+          right++;
+        }
+        left = Math.min(left, apex);
+        right = Math.max(right, apex);
+      } else {
+        // descend the raw intensities
+        left = apex;
+        while (left > 0 && y[start + left - 1] > baseline
+            && y[start + left - 1] <= y[start + left]) {
+          left--;
+        }
+        right = apex;
+        while (right < length - 1 && y[start + right + 1] > baseline
+            && y[start + right + 1] <= y[start + right]) {
+          right++;
+        }
+      }
 
-              resolvedPeaks.add(new ResolvedPeak(chromatogram, start, end, mzCenterFunction,
-                  msmsRange, rTRangeMSMS));
-            }
+      final double height = y[start + apex];
+      if ((height - baseline) / sdNoise >= snThreshold) {
+        candidates.add(new Peak(start + left, start + apex, start + right, height));
+      }
+    }
+  }
 
-            start = end;
+  /**
+   * Follows the local maxima of the wavelet coefficients from the largest to the smallest scale.
+   *
+   * @param coefficients the wavelet coefficients of each scale.
+   * @param length       number of valid coefficients per scale.
+   */
+  static List<Ridge> findRidges(double[][] coefficients, int[] scales, int length) {
+    final List<Ridge> finished = new ArrayList<>();
+    final List<Ridge> active = new ArrayList<>();
+    final boolean[] claimed = new boolean[length];
+
+    for (int s = scales.length - 1; s >= 0; s--) {
+      final double[] coef = coefficients[s];
+      final int scale = scales[s];
+      Arrays.fill(claimed, false);
+
+      for (int r = active.size() - 1; r >= 0; r--) {
+        final Ridge ridge = active.get(r);
+        final int window = Math.max(2, scale);
+        int best = -1;
+        for (int i = Math.max(0, ridge.position - window);
+            i <= Math.min(length - 1, ridge.position + window); i++) {
+          if (!claimed[i] && isLocalMaximum(coef, i, scale, length) && (best == -1
+              || Math.abs(i - ridge.position) < Math.abs(best - ridge.position))) {
+            best = i;
           }
         }
+        if (best != -1) {
+          claimed[best] = true;
+          ridge.extend(s, best, coef[best]);
+        } else if (++ridge.gap > MAX_RIDGE_GAP) {
+          active.remove(r);
+          finished.add(ridge);
+        }
+      }
+
+      for (int i = 0; i < length; i++) {
+        if (!claimed[i] && isLocalMaximum(coef, i, scale, length)) {
+          active.add(new Ridge(s, i, coef[i]));
+        }
       }
     }
+    finished.addAll(active);
 
-    return resolvedPeaks.toArray(new ResolvedPeak[resolvedPeaks.size()]);
+    final int minRidgeLength = Math.min(2, scales.length);
+    finished.removeIf(ridge -> ridge.length < minRidgeLength);
+    return finished;
   }
 
-  private static int findRTIndex(final double[] rtMinutes, final double rtSec) {
-
-    final int i = Arrays.binarySearch(rtMinutes, rtSec / SECONDS_PER_MINUTE);
-    return i >= 0 ? i : -i - 2;
+  private static boolean isLocalMaximum(double[] coef, int index, int scale, int length) {
+    final double value = coef[index];
+    if (value <= 0) {
+      return false;
+    }
+    for (int i = Math.max(0, index - scale); i <= Math.min(length - 1, index + scale); i++) {
+      // the first maximum of a plateau wins
+      if (coef[i] > value || (i < index && coef[i] == value)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
-   * Do peak picking using xcms::findPeaks.centWave.
-   * 
-   * @param scanTime retention times (for each scan).
-   * @param intensity intensity values (for each scan).
-   * @param mz fixed m/z value for EIC.
-   * @param snrThreshold signal:noise ratio threshold.
-   * @param peakWidth peak width range.
-   * @param integrationMethod integration method.
-   * @return a matrix with a row for each detected peak.
-   * @throws RSessionWrapperException
+   * Continuous wavelet transform of y[start..end] with a Mexican hat wavelet. Values outside the
+   * region are treated as zero.
    */
-  private static double[][] centWave(RSessionWrapper rSession, final double[] scanTime,
-      final double[] intensity, final double mz, final double snrThreshold,
-      final Range<Double> peakWidth, final PeakIntegrationMethod integrationMethod)
-      throws RSessionWrapperException {
-
-    logger.finest("Detecting peaks.");
-
-    final double[][] peaks;
-
-    // Set vectors.
-    rSession.assign("scantime", scanTime);
-    rSession.assign("intensity", intensity);
-
-    // Initialize.
-    rSession.eval("mz <- " + mz);
-    rSession.eval("numPoints <- length(intensity)");
-
-    // Construct xcmsRaw object
-    rSession.eval("xRaw <- new(\"xcmsRaw\")");
-    rSession.eval("xRaw@tic <- intensity");
-    rSession.eval("xRaw@scantime <- scantime * " + SECONDS_PER_MINUTE);
-    rSession.eval("xRaw@scanindex <- 0:(numPoints-1)");
-    rSession.eval("xRaw@env$mz <- rep(mz, numPoints)");
-    rSession.eval("xRaw@env$intensity <- intensity");
-
-    // Construct ROIs.
-    rSession.eval("ROIs <- list()");
-    int roi = 1;
-    for (int start = 0; start < intensity.length; start++) {
-
-      // Found non-zero section.
-      if (intensity[start] > 0.0) {
-
-        // Look for end.
-        int end = start + 1;
-        while (end < intensity.length && intensity[end] > 0.0) {
-
-          end++;
-        }
+  static void mexicanHatTransform(double[] y, int start, int end, int scale, double[] dst) {
+    final int halfWidth = WAVELET_SUPPORT * scale;
+    final double[] kernel = new double[2 * halfWidth + 1];
+    final double norm = MEXICAN_HAT_NORM / Math.sqrt(scale);
+    for (int j = -halfWidth; j <= halfWidth; j++) {
+      final double t = j / (double) scale;
+      kernel[j + halfWidth] = norm * (1 - t * t) * Math.exp(-t * t / 2);
+    }
 
-        // Add ROI to list.
-        rSession.eval("ROIs[[" + roi + "]] <- list('scmin'=" + (start + 1) + ", 'scmax'=" + end
-            + ", 'mzmin'=mz, 'mzmax'=mz)");
+    final int length = end - start + 1;
+    for (int i = 0; i < length; i++) {
+      double sum = 0d;
+      final int from = Math.max(0, i - halfWidth);
+      final int to = Math.min(length - 1, i + halfWidth);
+      for (int k = from; k <= to; k++) {
+        sum += y[start + k] * kernel[k - i + halfWidth];
+      }
+      dst[i] = sum;
+    }
+  }
 
-        // Next ROI.
-        start = end;
-        roi++;
+  static int[] getScales(int minScale, int maxScale) {
+    minScale = Math.min(minScale, maxScale);
+    // steps of two as in xcms, but limit the number of scales
+    final int step = Math.max(2,
+        (int) Math.ceil((maxScale - minScale) / (double) MAX_NUMBER_OF_SCALES));
+    final int numScales = (maxScale - minScale) / step + 1;
+    final int[] scales = new int[numScales];
+    for (int i = 0; i < numScales; i++) {
+      scales[i] = minScale + i * step;
+    }
+    return scales;
+  }
 
+  /**
+   * Trimmed mean and standard deviation of all positive intensities.
+   *
+   * @return {baseline, sd} or null if there are no positive values.
+   */
+  private double[] estimateNoise(double[] y) {
+    if (noiseBuffer.length < y.length) {
+      noiseBuffer = new double[y.length];
+    }
+    int numPositive = 0;
+    for (double v : y) {
+      if (v > 0) {
+        noiseBuffer[numPositive++] = v;
       }
     }
+    if (numPositive == 0) {
+      return null;
+    }
+    Arrays.sort(noiseBuffer, 0, numPositive);
 
-    // Do peak picking.
-    rSession.eval("mtx <- findPeaks.centWave(xRaw, ppm=0, mzdiff=0, verbose=TRUE" + ", peakwidth=c("
-        + peakWidth.lowerEndpoint() * SECONDS_PER_MINUTE + ", "
-        + peakWidth.upperEndpoint() * SECONDS_PER_MINUTE + ')' + ", snthresh=" + snrThreshold
-        + ", integrate=" + integrationMethod.getIndex() + ", ROI.list=ROIs)");
-
-    // Get rid of 'NA' values potentially found in the resulting matrix
-    rSession.eval("mtx[is.na(mtx)] <- " + RSessionWrapper.NA_DOUBLE); // +
-                                                                      // "0");//
+    final int from = (int) Math.floor(numPositive * NOISE_TRIM);
+    final int to = Math.max(from + 1, (int) Math.ceil(numPositive * (1 - NOISE_TRIM)));
+    double sum = 0d;
+    for (int i = from; i < to; i++) {
+      sum += noiseBuffer[i];
+    }
+    final double mean = sum / (to - from);
+    double squares = 0d;
+    for (int i = from; i < to; i++) {
+      squares += (noiseBuffer[i] - mean) * (noiseBuffer[i] - mean);
+    }
+    return new double[]{mean, Math.sqrt(squares / Math.max(1, to - from - 1))};
+  }
 
-    final Object centWave = roi <= 1 ? null : (double[][]) rSession.collect("mtx", false);
+  private record Peak(int left, int apex, int right, double height) {
 
-    // Done: Refresh R code stack
-    rSession.clearCode();
+  }
 
-    peaks = (centWave == null) ? null : (double[][]) centWave;
+  /**
+   * Connected local maxima of the wavelet coefficients across the scales. The best position is the
+   * one with the highest coefficient.
+   */
+  static class Ridge {
+
+    private int position;
+    private int gap = 0;
+    int length = 1;
+    int bestScaleIndex;
+    int bestPosition;
+    double bestCoefficient;
+
+    private Ridge(int scaleIndex, int position, double coefficient) {
+      this.position = position;
+      bestScaleIndex = scaleIndex;
+      bestPosition = position;
+      bestCoefficient = coefficient;
+    }
 
-    return peaks;
+    private void extend(int scaleIndex, int newPosition, double coefficient) {
+      position = newPosition;
+      gap = 0;
+      length++;
+      if (coefficient > bestCoefficient) {
+        bestScaleIndex = scaleIndex;
+        bestPosition = newPosition;
+        bestCoefficient = coefficient;
+      }
+    }
   }
-
 }
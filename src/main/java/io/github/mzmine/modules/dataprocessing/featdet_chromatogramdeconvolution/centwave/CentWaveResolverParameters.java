@@ -26,16 +26,20 @@
 package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
 
 import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolver;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.FeatureResolverSetupDialog;
 import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.GeneralResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.Resolver;
 import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.DoubleParameter;
 import io.github.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
 import io.github.mzmine.util.ExitCode;
 import java.text.NumberFormat;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Parameters used by CentWaveDetector.
@@ -56,7 +60,7 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
      * Create the method.
      *
      * @param aName   name
-     * @param anIndex index (as used by findPeaks.centWave)
+     * @param anIndex index (as used by xcms findPeaks.centWave)
      */
     PeakIntegrationMethod(final String aName, final int anIndex) {
 
@@ -94,8 +98,8 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
 
   public CentWaveResolverParameters() {
 
-    super(new Parameter[]{PEAK_LISTS, SUFFIX, handleOriginal, groupMS2Parameters, SN_THRESHOLD,
-        PEAK_SCALES, PEAK_DURATION, INTEGRATION_METHOD, RENGINE_TYPE, MIN_NUMBER_OF_DATAPOINTS},
+    super(new Parameter[]{PEAK_LISTS, SUFFIX, handleOriginal, groupMS2Parameters, dimension,
+        SN_THRESHOLD, PEAK_SCALES, PEAK_DURATION, INTEGRATION_METHOD, MIN_NUMBER_OF_DATAPOINTS},
         "https://mzmine.github.io/mzmine_documentation/module_docs/featdet_resolver_centwave/centwave-resolver.html");
   }
 
@@ -110,6 +114,11 @@ public class CentWaveResolverParameters extends GeneralResolverParameters {
 
   @Override
   public FeatureResolver getResolver() {
-    return new CentWaveResolver();
+    throw new UnsupportedOperationException("Legacy resolving is not supported by CentWave.");
+  }
+
+  @Override
+  public @Nullable Resolver getResolver(ParameterSet parameterSet, ModularFeatureList flist) {
+    return new CentWaveResolver(parameterSet, flist);
   }
 }
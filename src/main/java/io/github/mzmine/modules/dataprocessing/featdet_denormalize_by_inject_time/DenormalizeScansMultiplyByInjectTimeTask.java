@@ -32,6 +32,7 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
@@ -97,6 +98,11 @@ public class DenormalizeScansMultiplyByInjectTimeTask extends AbstractTask {
       return;
     }
 
+    // the denormalized mass lists stay alive as long as the file
+    if (dataFile instanceof RawDataFileImpl file) {
+      file.retainStorage(storage);
+    }
+
     for (var scan : scans) {
       if (isCanceled()) {
         return;
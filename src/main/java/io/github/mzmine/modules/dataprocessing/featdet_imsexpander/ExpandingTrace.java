@@ -26,34 +26,37 @@
 package io.github.mzmine.modules.dataprocessing.featdet_imsexpander;
 
 import com.google.common.collect.Range;
-import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.MobilityScan;
 import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
-import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
 import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
 import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.featuredata.impl.IonMobilogramTimeSeriesFactory;
 import io.github.mzmine.datamodel.featuredata.impl.SimpleIonMobilitySeries;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
-import io.github.mzmine.datamodel.impl.SimpleDataPoint;
-import io.github.mzmine.util.DataPointUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * A trace that collects the mobility scan data points of a feature during the expansion. The data
+ * points are stored in primitive buffers, one slot per frame within the rt range of the feature.
+ * Each slot is written by exactly one {@link ImsExpanderSubTask}, so frames may be processed in
+ * parallel without synchronization.
+ */
 public class ExpandingTrace {
 
   private final ModularFeatureListRow f;
   private final Range<Float> rtRange;
   private final Range<Double> mzRange;
 
-  private final Map<MobilityScan, DataPoint> dataPoints = new HashMap<>();
+  private int firstFrameIndex = -1;
+  private int lastFrameIndex = -2;
+  private Frame[] slotFrames;
+  private int[][] slotScanNumbers;
+  private double[][] slotMzs;
+  private double[][] slotIntensities;
 
   ExpandingTrace(@NotNull final ModularFeatureListRow f, Range<Double> mzRange) {
     this.f = f;
@@ -66,64 +69,97 @@ public class ExpandingTrace {
   }
 
   /**
-   * Offers a data point to this trace.
+   * Preallocates one buffer slot for every frame within the rt range of this trace.
    *
-   * @param access
-   * @param index
-   * @return true if the data points is added to this trace.
+   * @param frameRts the retention times of all processed frames, sorted ascending.
    */
-  public boolean offerDataPoint(@NotNull MobilityScanDataAccess access, int index) {
-    if (!rtRange.contains(access.getRetentionTime()) || !mzRange.contains(
-        access.getMzValue(index))) {
-      return false;
-    }
+  void initFrameSlots(final float[] frameRts) {
+    initFrameSlots(firstIndexAtOrAbove(frameRts, rtRange.lowerEndpoint()),
+        firstIndexAtOrAbove(frameRts, Math.nextUp(rtRange.upperEndpoint())) - 1);
+  }
 
-    synchronized (dataPoints) {
-      return dataPoints.putIfAbsent(access.getCurrentMobilityScan(),
-          new SimpleDataPoint(access.getMzValue(index), access.getIntensityValue(index))) == null;
-    }
+  /**
+   * Preallocates one buffer slot for every frame within the rt range of this trace.
+   *
+   * @param firstFrameIndex index of the first frame within the rt range (inclusive).
+   * @param lastFrameIndex  index of the last frame within the rt range (inclusive).
+   */
+  void initFrameSlots(int firstFrameIndex, int lastFrameIndex) {
+    this.firstFrameIndex = firstFrameIndex;
+    this.lastFrameIndex = lastFrameIndex;
+    final int numSlots = Math.max(0, lastFrameIndex - firstFrameIndex + 1);
+    slotFrames = new Frame[numSlots];
+    slotScanNumbers = new int[numSlots][];
+    slotMzs = new double[numSlots][];
+    slotIntensities = new double[numSlots][];
+  }
+
+  /**
+   * Sets the data points of this trace in the given frame.
+   *
+   * @param frameIndex  index of the frame in the list of all processed frames.
+   * @param scanNumbers the mobility scan numbers (ascending), see
+   *                    {@link MobilityScan#getMobilityScanNumber()}.
+   */
+  void setFrameData(int frameIndex, @NotNull Frame frame, @NotNull int[] scanNumbers,
+      @NotNull double[] mzs, @NotNull double[] intensities) {
+    final int slot = frameIndex - firstFrameIndex;
+    slotFrames[slot] = frame;
+    slotScanNumbers[slot] = scanNumbers;
+    slotMzs[slot] = mzs;
+    slotIntensities[slot] = intensities;
   }
 
   public IonMobilogramTimeSeries toIonMobilogramTimeSeries(MemoryMapStorage storage,
       BinningMobilogramDataAccess mobilogramDataAccess) {
+    return IonMobilogramTimeSeriesFactory.of(storage, createMobilograms(), mobilogramDataAccess);
+  }
 
+  /**
+   * @return one mobilogram per frame that contains data points of this trace, sorted by frame.
+   */
+  @NotNull
+  List<IonMobilitySeries> createMobilograms() {
     final List<IonMobilitySeries> mobilograms = new ArrayList<>();
+    for (int slot = 0; slot < slotFrames.length; slot++) {
+      final Frame frame = slotFrames[slot];
+      if (frame == null) {
+        continue;
+      }
 
-    int scanStart = 0;
-    int scanEnd = 0;
-    Frame lastFrame = null;
-
-    final List<MobilityScan> scans = dataPoints.keySet().stream().sorted().toList();
-    final List<DataPoint> dataPointsList = this.dataPoints.entrySet().stream()
-        .sorted(Comparator.comparing(Entry::getKey)).map(Entry::getValue).toList();
-
-    for (int i = 0; i < scans.size(); i++) {
-      final MobilityScan scan = scans.get(i);
-      if (lastFrame == null) {
-        lastFrame = scan.getFrame();
-      } else if (lastFrame != scan.getFrame()) {
-        scanEnd = i;
-
-        final double[][] dps = DataPointUtils.getDataPointsAsDoubleArray(
-            dataPointsList.subList(scanStart, scanEnd));
-
-        final IonMobilitySeries mobilogram = new SimpleIonMobilitySeries(null, dps[0], dps[1],
-            scans.subList(scanStart, scanEnd));
-        mobilograms.add(mobilogram);
-        scanStart = i;
-        lastFrame = scan.getFrame();
+      final int[] scanNumbers = slotScanNumbers[slot];
+      final List<MobilityScan> scans = new ArrayList<>(scanNumbers.length);
+      for (int scanNumber : scanNumbers) {
+        scans.add(frame.getMobilityScan(scanNumber));
       }
+      mobilograms.add(
+          new SimpleIonMobilitySeries(null, slotMzs[slot], slotIntensities[slot], scans));
     }
+    return mobilograms;
+  }
 
-    if (scanStart <= scanEnd) {
-      final double[][] dps = DataPointUtils.getDataPointsAsDoubleArray(
-          dataPointsList.subList(scanStart, dataPoints.size()));
-      final IonMobilitySeries mobilogram = new SimpleIonMobilitySeries(null, dps[0], dps[1],
-          scans.subList(scanStart, scans.size()));
-      mobilograms.add(mobilogram);
-    }
+  /**
+   * Releases the buffers after the series was created.
+   */
+  void clearFrameSlots() {
+    initFrameSlots(-1, -2);
+  }
 
-    return IonMobilogramTimeSeriesFactory.of(storage, mobilograms, mobilogramDataAccess);
+  /**
+   * @return the index of the first value >= the given value or values.length.
+   */
+  private static int firstIndexAtOrAbove(final float[] values, final float value) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (values[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
   }
 
   public Range<Float> getRtRange() {
@@ -134,7 +170,21 @@ public class ExpandingTrace {
     return mzRange;
   }
 
+  public int getFirstFrameIndex() {
+    return firstFrameIndex;
+  }
+
+  public int getLastFrameIndex() {
+    return lastFrameIndex;
+  }
+
   public int getNumberOfMobilityScans() {
-    return dataPoints.size();
+    int num = 0;
+    for (int[] scanNumbers : slotScanNumbers) {
+      if (scanNumbers != null) {
+        num += scanNumbers.length;
+      }
+    }
+    return num;
   }
 }
@@ -25,25 +25,20 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_imsexpander;
 
-import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.IMSRawDataFile;
-import io.github.mzmine.datamodel.MobilityScan;
-import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
 import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
-import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
-import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
-import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.exceptions.MissingMassListException;
-import java.text.NumberFormat;
 import java.time.Instant;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -51,50 +46,57 @@ import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Expands all traces within a block of consecutive frames in a single pass over the mobility scans.
+ * The traces active in a frame (by rt) are determined with two cursors over the traces sorted by
+ * their first and last frame. The data points of each mobility scan are then assigned to the active
+ * traces (sorted by m/z) with a cursor, so every data point is only visited once.
+ */
 public class ImsExpanderSubTask extends AbstractTask {
 
   private static final Logger logger = Logger.getLogger(ImsExpanderSubTask.class.getName());
 
   protected final ParameterSet parameters;
   private final List<Frame> frames;
+  private final int startFrameIndex;
+  private final int endFrameIndex;
   private final ModularFeatureList flist;
-  private List<ExpandingTrace> expandingTraces;
+  private final ExpandingTrace[] tracesByMz;
 
   private final AtomicInteger processedFrames = new AtomicInteger(0);
   private final Boolean useRawData;
   private final Double customNoiseLevel;
-  private final Range<Double> traceMzRange;
+  private final IMSRawDataFile imsFile;
 
-  private long totalFrames = 1;
+  private final long totalFrames;
   private String desc;
-  private final BinningMobilogramDataAccess mobilogramDataAccess;
-  private final List<ExpandedTrace> expandedTraces;
-  private final IMSRawDataFile imsFile;
-  private double createdRows = 0;
 
+  /**
+   * @param frames          all frames, the trace frame indices refer to this list.
+   * @param startFrameIndex the first frame to process (inclusive).
+   * @param endFrameIndex   the last frame to process (exclusive).
+   * @param tracesByMz      the traces to expand, sorted by m/z. Frame slots must be initialised.
+   */
   public ImsExpanderSubTask(@Nullable final MemoryMapStorage storage,
       @NotNull final ParameterSet parameters, @NotNull final List<Frame> frames,
-      @NotNull final ModularFeatureList flist, @NotNull final List<ExpandingTrace> expandingTraces,
-      BinningMobilogramDataAccess mobilogramDataAccess, IMSRawDataFile imsFile) {
+      final int startFrameIndex, final int endFrameIndex, @NotNull final ModularFeatureList flist,
+      @NotNull final List<ExpandingTrace> tracesByMz, @NotNull final IMSRawDataFile imsFile) {
     super(storage, Instant.now()); // just a subtask, date irrelevant
     this.parameters = parameters;
     this.frames = frames;
+    this.startFrameIndex = startFrameIndex;
+    this.endFrameIndex = endFrameIndex;
     this.flist = flist;
-    this.expandingTraces = expandingTraces;
+    this.tracesByMz = tracesByMz.stream()
+        .filter(t -> t.getFirstFrameIndex() <= t.getLastFrameIndex())
+        .filter(t -> t.getFirstFrameIndex() < endFrameIndex)
+        .filter(t -> t.getLastFrameIndex() >= startFrameIndex).toArray(ExpandingTrace[]::new);
     this.useRawData = parameters.getParameter(ImsExpanderParameters.useRawData).getValue();
     this.customNoiseLevel = parameters.getParameter(ImsExpanderParameters.useRawData)
         .getEmbeddedParameter().getValue();
-    traceMzRange = expandingTraces.size() > 0 ? Range.closed(
-        expandingTraces.get(0).getMzRange().lowerEndpoint(),
-        expandingTraces.get(expandingTraces.size() - 1).getMzRange().upperEndpoint())
-        : Range.singleton(0d);
-
-    desc = flist.getName() + ": expanding traces for frame " + processedFrames.get() + "/"
-        + totalFrames + " m/z range: " + RangeUtils.formatRange(traceMzRange,
-        MZmineCore.getConfiguration().getMZFormat());
-    this.mobilogramDataAccess = mobilogramDataAccess;
-    expandedTraces = new ArrayList<>(expandingTraces.size());
     this.imsFile = imsFile;
+    totalFrames = Math.max(1, endFrameIndex - startFrameIndex);
+    desc = flist.getName() + ": expanding traces for frame 0/" + totalFrames;
   }
 
   @Override
@@ -104,111 +106,146 @@ public class ImsExpanderSubTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    if (expandingTraces == null) {
-      return 1.0d;
-    }
-    return (processedFrames.get() / (double) totalFrames) * 0.5
-        + createdRows / (double) expandingTraces.size();
+    return processedFrames.get() / (double) totalFrames;
   }
 
   @Override
   public void run() {
     setStatus(TaskStatus.PROCESSING);
+    if (tracesByMz.length == 0 || startFrameIndex >= endFrameIndex) {
+      setStatus(TaskStatus.FINISHED);
+      return;
+    }
+
     logger.finest("Initialising data access for file " + imsFile.getName());
     final MobilityScanDataAccess access = new MobilityScanDataAccess(imsFile,
-        useRawData ? MobilityScanDataType.RAW : MobilityScanDataType.CENTROID, frames);
+        useRawData ? MobilityScanDataType.RAW : MobilityScanDataType.CENTROID,
+        frames.subList(startFrameIndex, endFrameIndex));
 
-    totalFrames = access.getNumberOfScans();
-    final NumberFormat mzFormat = MZmineCore.getConfiguration().getMZFormat();
+    // positions in tracesByMz, sorted by the first and last frame of the trace
+    final Integer[] byFirstFrame = new Integer[tracesByMz.length];
+    for (int i = 0; i < byFirstFrame.length; i++) {
+      byFirstFrame[i] = i;
+    }
+    final Integer[] byLastFrame = byFirstFrame.clone();
+    Arrays.sort(byFirstFrame, Comparator.comparingInt(i -> tracesByMz[i].getFirstFrameIndex()));
+    Arrays.sort(byLastFrame, Comparator.comparingInt(i -> tracesByMz[i].getLastFrameIndex()));
+    int activationCursor = 0;
+    int expirationCursor = 0;
+    final BitSet active = new BitSet(tracesByMz.length);
+
+    // reused buffers, one per active trace
+    ExpandingTrace[] activeTraces = new ExpandingTrace[16];
+    int[][] scanBuffers = new int[16][];
+    double[][] mzBuffers = new double[16][];
+    double[][] intensityBuffers = new double[16][];
+    int[] bufferSizes = new int[16];
 
-    final int numTraces = expandingTraces.size();
     try {
-
-      for (int i = 0; i < access.getNumberOfScans(); i++) {
+      for (int frameIndex = startFrameIndex; frameIndex < endFrameIndex; frameIndex++) {
         if (isCanceled()) {
-          // allow traces to be released
-          expandingTraces = null;
           return;
         }
 
         final Frame frame = access.nextFrame();
 
+        while (activationCursor < byFirstFrame.length
+            && tracesByMz[byFirstFrame[activationCursor]].getFirstFrameIndex() <= frameIndex) {
+          active.set(byFirstFrame[activationCursor++]);
+        }
+        while (expirationCursor < byLastFrame.length
+            && tracesByMz[byLastFrame[expirationCursor]].getLastFrameIndex() < frameIndex) {
+          active.clear(byLastFrame[expirationCursor++]);
+        }
+
+        final int numActive = active.cardinality();
+        if (numActive == 0) {
+          processedFrames.getAndIncrement();
+          continue;
+        }
+        if (numActive > activeTraces.length) {
+          final int newLength = Math.max(numActive, activeTraces.length * 2);
+          activeTraces = new ExpandingTrace[newLength];
+          scanBuffers = Arrays.copyOf(scanBuffers, newLength);
+          mzBuffers = Arrays.copyOf(mzBuffers, newLength);
+          intensityBuffers = Arrays.copyOf(intensityBuffers, newLength);
+          bufferSizes = new int[newLength];
+        }
+        for (int i = active.nextSetBit(0), a = 0; i >= 0; i = active.nextSetBit(i + 1), a++) {
+          activeTraces[a] = tracesByMz[i];
+          bufferSizes[a] = 0;
+        }
+
+        final int maxPointsPerTrace = frame.getNumberOfMobilityScans();
         while (access.hasNextMobilityScan()) {
-          final MobilityScan mobilityScan = access.nextMobilityScan();
+          final int scanNumber = access.nextMobilityScan().getMobilityScanNumber();
 
           int traceIndex = 0;
-          for (int dpIndex = 0; dpIndex < access.getNumberOfDataPoints() && traceIndex < numTraces;
-              dpIndex++) {
+          for (int dpIndex = 0; dpIndex < access.getNumberOfDataPoints(); dpIndex++) {
             final double mz = access.getMzValue(dpIndex);
-            final double intensity = access.getIntensityValue(dpIndex);
-
-            if (useRawData && intensity < customNoiseLevel) {
-              continue;
-            }
 
             // while the trace upper mz smaller than the current mz, we increment the trace index
-            while (expandingTraces.get(traceIndex).getMzRange().upperEndpoint() < mz
-                && traceIndex < numTraces - 1) {
+            while (traceIndex < numActive - 1
+                && activeTraces[traceIndex].getMzRange().upperEndpoint() < mz) {
               traceIndex++;
             }
             // if the current lower mz passed the current data point, we go to the next data point
-            if (expandingTraces.get(traceIndex).getMzRange().lowerEndpoint() > mz) {
+            if (activeTraces[traceIndex].getMzRange().lowerEndpoint() > mz) {
               continue;
             }
 
-            // try to offer the current data point to the trace
-            while (expandingTraces.get(traceIndex).getMzRange().contains(mz)
-                && !expandingTraces.get(traceIndex).offerDataPoint(access, dpIndex)
-                && traceIndex < numTraces - 1) {
+            final double intensity = access.getIntensityValue(dpIndex);
+            if (useRawData && intensity < customNoiseLevel) {
+              continue;
+            }
+
+            // add to the first trace that does not contain a point of this mobility scan yet.
+            // Traces that are already occupied cannot take another point of this scan, so
+            // traceIndex is moved past them and the following data points start behind them. If
+            // the last active trace is occupied, traceIndex stays there.
+            while (activeTraces[traceIndex].getMzRange().contains(mz)) {
+              final int size = bufferSizes[traceIndex];
+              if (size == 0 || scanBuffers[traceIndex][size - 1] != scanNumber) {
+                if (scanBuffers[traceIndex] == null
+                    || scanBuffers[traceIndex].length < maxPointsPerTrace) {
+                  scanBuffers[traceIndex] = new int[maxPointsPerTrace];
+                  mzBuffers[traceIndex] = new double[maxPointsPerTrace];
+                  intensityBuffers[traceIndex] = new double[maxPointsPerTrace];
+                }
+                scanBuffers[traceIndex][size] = scanNumber;
+                mzBuffers[traceIndex][size] = mz;
+                intensityBuffers[traceIndex][size] = intensity;
+                bufferSizes[traceIndex] = size + 1;
+                break;
+              }
+              if (traceIndex == numActive - 1) {
+                break;
+              }
               traceIndex++;
             }
           }
         }
-        processedFrames.getAndIncrement();
 
+        for (int a = 0; a < numActive; a++) {
+          final int size = bufferSizes[a];
+          if (size > 0) {
+            activeTraces[a].setFrameData(frameIndex, frame, Arrays.copyOf(scanBuffers[a], size),
+                Arrays.copyOf(mzBuffers[a], size), Arrays.copyOf(intensityBuffers[a], size));
+          }
+          activeTraces[a] = null;
+        }
+
+        processedFrames.getAndIncrement();
         desc = flist.getName() + ": expanding traces for frame " + processedFrames.get() + "/"
-            + totalFrames + " m/z range: " + RangeUtils.formatRange(traceMzRange, mzFormat);
+            + totalFrames;
       }
     } catch (MissingMassListException e) {
-      // allow traces to be released
-      expandingTraces = null;
-      e.printStackTrace();
       logger.log(Level.WARNING, e.getMessage(), e);
       setErrorMessage(e.getMessage());
       setStatus(TaskStatus.ERROR);
+      return;
     }
 
-    for (var expandingTrace : expandingTraces) {
-      desc = "Creating new features " + createdRows + "/" + expandingTraces.size();
-
-      if (expandingTrace.getNumberOfMobilityScans() > 1) {
-        final IonMobilogramTimeSeries series = expandingTrace.toIonMobilogramTimeSeries(
-            getMemoryMapStorage(), mobilogramDataAccess);
-        expandedTraces.add(new ExpandedTrace(series, expandingTrace.getRow(),
-            expandingTrace.getRow().getFeature(imsFile)));
-      }
-
-      createdRows++;
-
-      if (isCanceled()) {
-        // allow traces to be released
-        expandingTraces = null;
-        return;
-      }
-    }
-
-    // allow traces to be released
-    expandingTraces = null;
-
-//    synchronized (newFlist) {
-//      newRows.forEach(newFlist::addRow);
-//    }
-
     setStatus(TaskStatus.FINISHED);
   }
-
-  @NotNull
-  public List<ExpandedTrace> getExpandedTraces() {
-    return expandedTraces;
-  }
 }
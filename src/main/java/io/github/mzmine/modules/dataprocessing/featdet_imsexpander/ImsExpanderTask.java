@@ -29,11 +29,10 @@ import com.google.common.collect.Lists;
 import io.github.mzmine.datamodel.Frame;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
-import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
-import io.github.mzmine.datamodel.featuredata.IonTimeSeries;
+import io.github.mzmine.datamodel.featuredata.IonMobilogramTimeSeries;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
@@ -56,6 +55,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
@@ -71,7 +71,7 @@ public class ImsExpanderTask extends AbstractTask {
   private static final String SUFFIX = " expanded ";
   protected final ParameterSet parameters;
   protected final ModularFeatureList flist;
-  final List<AbstractTask> tasks = new ArrayList<>();
+  final List<AbstractTask> tasks = new CopyOnWriteArrayList<>();
   private final MZmineProject project;
   private final MZTolerance mzTolerance;
   private final boolean useMzToleranceRange;
@@ -110,9 +110,9 @@ public class ImsExpanderTask extends AbstractTask {
 
   @Override
   public double getFinishedPercentage() {
-    return
-        0.4 * tasks.stream().mapToDouble(AbstractTask::getFinishedPercentage).sum() / tasks.size()
-            + 0.4 * (processedRows.get() / (double) totalRows)
+    final double taskProgress = tasks.isEmpty() ? 0d
+        : tasks.stream().mapToDouble(AbstractTask::getFinishedPercentage).sum() / tasks.size();
+    return 0.4 * taskProgress + 0.4 * (processedRows.get() / (double) totalRows)
             + 0.2 * createdRows / (double) totalRows;
   }
 
@@ -148,74 +148,52 @@ public class ImsExpanderTask extends AbstractTask {
 
     final List<Frame> frames = (List<Frame>) flist.getSeletedScans(flist.getRawDataFile(0));
     assert frames != null;
+    final float[] frameRts = new float[frames.size()];
+    for (int i = 0; i < frameRts.length; i++) {
+      frameRts[i] = frames.get(i).getRetentionTime();
+    }
 
-    // we partition the traces (sorted by rt) so we can start and end at specific frames. By splitting
-    // the traces and not frames, we can also directly store the raw data on the SSD/HDD as soon as
-    // a thread finishes. Thereby we can reduce the memory consumption, especially in images.
-    final int tracesPerList = Math.min(expandingTraces.size() / NUM_THREADS, maxNumTraces);
+    // traces are processed in batches (sorted by rt) so the raw data of each batch can be stored
+    // on the SSD/HDD before the next batch starts. Thereby we can reduce the memory consumption,
+    // especially in images. Within a batch, the frames are split between the threads.
     expandingTraces.sort(
         (a, b) -> Float.compare(a.getRtRange().lowerEndpoint(), b.getRtRange().lowerEndpoint()));
-    final List<List<ExpandingTrace>> subLists = Lists.partition(expandingTraces, tracesPerList);
-
-    for (final List<ExpandingTrace> subList : subLists) {
-      final Frame firstFrame = (Frame) subList.get(0).getRow().getBestFeature().getFeatureData()
-          .getSpectrum(0);
-      final ExpandingTrace lastFrameTrace = subList.stream().max(
-              (a, b) -> Float.compare(a.getRtRange().upperEndpoint(), b.getRtRange().upperEndpoint()))
-          .orElseThrow(() -> new IllegalStateException("Cannot determine last frame."));
-      final IonTimeSeries<? extends Scan> lastTraceData = lastFrameTrace.getRow().getBestFeature()
-          .getFeatureData();
-      final Frame lastFrame = (Frame) lastTraceData.getSpectrum(
-          lastTraceData.getNumberOfValues() - 1);
-      final List<Frame> framesSubList = frames.subList(frames.indexOf(firstFrame),
-          frames.indexOf(lastFrame) + 1);
-
-      final ArrayList<ExpandingTrace> traces = new ArrayList<>(subList);
-      traces.sort(Comparator.comparingDouble(a -> a.getRow().getAverageMZ()));
-
-      final BinningMobilogramDataAccess mobilogramDataAccess = EfficientDataAccess.of(imsFile,
-          binWidth);
-      tasks.add(
-          new ImsExpanderSubTask(getMemoryMapStorage(), parameters, framesSubList, flist, traces,
-              mobilogramDataAccess, imsFile));
-    }
+    final int tracesPerBatch = Math.max(1,
+        (int) Math.min((long) maxNumTraces * NUM_THREADS, expandingTraces.size()));
+    final List<List<ExpandingTrace>> batches = Lists.partition(expandingTraces, tracesPerBatch);
 
-    final AtomicBoolean allThreadsFinished = new AtomicBoolean(false);
-    final AtomicBoolean mayContinue = new AtomicBoolean(true);
+    for (final List<ExpandingTrace> batch : batches) {
+      int firstFrameIndex = frames.size();
+      int lastFrameIndex = -1;
+      for (ExpandingTrace trace : batch) {
+        trace.initFrameSlots(frameRts);
+        firstFrameIndex = Math.min(firstFrameIndex, trace.getFirstFrameIndex());
+        lastFrameIndex = Math.max(lastFrameIndex, trace.getLastFrameIndex());
+      }
 
-    // DO NOT DELETE, adds itself to the tasks
-    final AllTasksFinishedListener listener = new AllTasksFinishedListener(tasks, true,
-        c -> allThreadsFinished.set(true), c -> {
-      mayContinue.set(false);
-      allThreadsFinished.set(true);
-    }, c -> {
-      mayContinue.set(false);
-      allThreadsFinished.set(true);
-    });
+      final List<ExpandingTrace> tracesByMz = new ArrayList<>(batch);
+      tracesByMz.sort(Comparator.comparingDouble(a -> a.getRow().getAverageMZ()));
 
-    MZmineCore.getTaskController().addTasks(tasks.toArray(AbstractTask[]::new));
+      final int numFrames = lastFrameIndex - firstFrameIndex + 1;
+      final List<AbstractTask> batchTasks = new ArrayList<>();
+      if (numFrames > 0) {
+        final int framesPerTask = Math.max(1, (int) Math.ceil(numFrames / (double) NUM_THREADS));
+        for (int start = firstFrameIndex; start <= lastFrameIndex; start += framesPerTask) {
+          batchTasks.add(new ImsExpanderSubTask(getMemoryMapStorage(), parameters, frames, start,
+              Math.min(start + framesPerTask, lastFrameIndex + 1), flist, tracesByMz, imsFile));
+        }
+      }
+      tasks.addAll(batchTasks);
 
-    while (!allThreadsFinished.get()) {
-      try {
-        Thread.sleep(100L);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-        logger.log(Level.WARNING, e.getMessage(), e);
-        setErrorMessage(e.getMessage());
-        setStatus(TaskStatus.ERROR);
+      if (!runSubTasks(batchTasks)) {
         return;
       }
-    }
-
-    if (!mayContinue.get() || getStatus() == TaskStatus.CANCELED) {
-      setStatus(TaskStatus.CANCELED);
-      return;
-    }
 
-    desc = "Creating new features for feature list " + flist.getName();
-    for (AbstractTask task : tasks) {
-      final ImsExpanderSubTask t = (ImsExpanderSubTask) task;
-      final List<ExpandedTrace> expandedTraces = t.getExpandedTraces();
+      desc = "Creating new features for feature list " + flist.getName();
+      final List<ExpandedTrace> expandedTraces = createExpandedTraces(tracesByMz, imsFile);
+      if (expandedTraces == null) {
+        return;
+      }
 
       for (ExpandedTrace expandedTrace : expandedTraces) {
         final ModularFeatureListRow row = new ModularFeatureListRow(newFlist,
@@ -242,6 +220,82 @@ public class ImsExpanderTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * Runs the sub tasks in parallel and waits for them to finish.
+   *
+   * @return false if a sub task failed or this task was canceled.
+   */
+  private boolean runSubTasks(@NotNull final List<AbstractTask> subTasks) {
+    if (subTasks.isEmpty()) {
+      return true;
+    }
+
+    final AtomicBoolean allThreadsFinished = new AtomicBoolean(false);
+    final AtomicBoolean mayContinue = new AtomicBoolean(true);
+
+    // DO NOT DELETE, adds itself to the tasks
+    final AllTasksFinishedListener listener = new AllTasksFinishedListener(subTasks, true,
+        c -> allThreadsFinished.set(true), c -> {
+      mayContinue.set(false);
+      allThreadsFinished.set(true);
+    }, c -> {
+      mayContinue.set(false);
+      allThreadsFinished.set(true);
+    });
+
+    MZmineCore.getTaskController().addTasks(subTasks.toArray(AbstractTask[]::new));
+
+    while (!allThreadsFinished.get()) {
+      try {
+        Thread.sleep(100L);
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+        logger.log(Level.WARNING, e.getMessage(), e);
+        setErrorMessage(e.getMessage());
+        setStatus(TaskStatus.ERROR);
+        return false;
+      }
+    }
+
+    if (!mayContinue.get() || getStatus() == TaskStatus.CANCELED) {
+      setStatus(TaskStatus.CANCELED);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Creates the mobilogram time series of all traces in parallel and releases the trace buffers.
+   *
+   * @return the expanded traces or null if this task was canceled.
+   */
+  @Nullable
+  private List<ExpandedTrace> createExpandedTraces(@NotNull final List<ExpandingTrace> traces,
+      @NotNull final IMSRawDataFile imsFile) {
+    final int tracesPerThread = Math.max(1,
+        (int) Math.ceil(traces.size() / (double) NUM_THREADS));
+    final List<ExpandedTrace> expandedTraces = Lists.partition(traces, tracesPerThread)
+        .parallelStream().<ExpandedTrace>mapMulti((subList, consumer) -> {
+          // the binning data access is not thread safe
+          final BinningMobilogramDataAccess mobilogramDataAccess = EfficientDataAccess.of(imsFile,
+              binWidth);
+          for (ExpandingTrace trace : subList) {
+            if (isCanceled()) {
+              return;
+            }
+            if (trace.getNumberOfMobilityScans() > 1) {
+              final IonMobilogramTimeSeries series = trace.toIonMobilogramTimeSeries(
+                  getMemoryMapStorage(), mobilogramDataAccess);
+              consumer.accept(
+                  new ExpandedTrace(series, trace.getRow(), trace.getRow().getFeature(imsFile)));
+            }
+            trace.clearFrameSlots();
+            processedRows.getAndIncrement();
+          }
+        }).toList();
+    return isCanceled() ? null : expandedTraces;
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     return TaskPriority.HIGH; // master task needs high priority, so it does not brick the task controller
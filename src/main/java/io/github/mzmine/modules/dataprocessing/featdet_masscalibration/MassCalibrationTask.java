@@ -48,6 +48,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.combonested.NestedCombo;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
@@ -303,6 +304,11 @@ public class MassCalibrationTask extends AbstractTask {
       return;
     }
 
+    // the calibrated mass lists stay alive as long as the file
+    if (dataFile instanceof RawDataFileImpl file) {
+      file.retainStorage(storageMemoryMap);
+    }
+
     // mass calibrate all mass lists
     for (int i = 0; i < totalScans; i++) {
 
@@ -25,16 +25,21 @@
 
 package io.github.mzmine.modules.dataprocessing.featdet_massdetection;
 
+import com.google.common.collect.Lists;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
 import io.github.mzmine.datamodel.data_access.ScanDataAccess;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
+import io.github.mzmine.datamodel.impl.MobilityScanStorage;
 import io.github.mzmine.datamodel.impl.SimpleFrame;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.selectors.ScanSelection;
+import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
@@ -57,6 +62,11 @@ import ucar.nc2.Variable;
 
 public class MassDetectionTask extends AbstractTask {
 
+  private static final int NUM_THREADS = MZmineCore.getConfiguration().getPreferences()
+      .getParameter(MZminePreferences.numOfThreads).getValue();
+  // number of scans that are detected by one thread before the results are stored
+  private static final int SCANS_PER_BLOCK = 32;
+
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final RawDataFile dataFile;
   private final ScanSelection scanSelection;
@@ -140,65 +150,73 @@ public class MassDetectionTask extends AbstractTask {
 
       logger.info("Started mass detector on " + dataFile);
 
-      // uses only a single array for each (mz and intensity) to loop over all scans
-      ScanDataAccess data = EfficientDataAccess.of(dataFile, EfficientDataAccess.ScanDataType.RAW,
-          scanSelection);
-      totalScans = data.getNumberOfScans();
+      // the mass lists stay alive as long as the file
+      if (dataFile instanceof RawDataFileImpl file) {
+        file.retainStorage(getMemoryMapStorage());
+      }
 
-      MassDetector detector = massDetector.getModule();
-      ParameterSet parameterSet = massDetector.getParameterSet();
+      final List<Scan> scans = List.of(scanSelection.getMatchingScans(dataFile));
+      totalScans = scans.size();
 
-      // all scans
-      while (data.hasNextScan()) {
+      // detect the masses of NUM_THREADS blocks concurrently and write the results in scan order.
+      // This keeps the number of pending mass lists in memory bounded.
+      final List<List<Scan>> blocks = Lists.partition(scans, SCANS_PER_BLOCK);
+      for (int first = 0; first < blocks.size(); first += NUM_THREADS) {
         if (isCanceled()) {
           return;
         }
 
-        Scan scan = data.nextScan();
-
-        double[][] mzPeaks = null;
-        if (scanTypes.applyTo(scan)) {
-          // run mass detection on data object
-          // [mzs, intensities]
-          mzPeaks = detector.getMassValues(data, parameterSet);
-
-          if (denormalizeMSnScans && Objects.requireNonNullElse(scan.getMSLevel(), 1) > 1) {
-            ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzPeaks[1],
-                scan.getInjectionTime());
-          }
+        final List<List<DetectedScan>> detectedBlocks = blocks.subList(first,
+            Math.min(first + NUM_THREADS, blocks.size())).parallelStream().map(this::detectBlock)
+            .toList();
 
-          // add mass list to scans and frames
-          scan.addMassList(new SimpleMassList(getMemoryMapStorage(), mzPeaks[0], mzPeaks[1]));
-        }
-
-        if (scan instanceof SimpleFrame frame && (scanTypes == SelectedScanTypes.MOBLITY_SCANS
-            || scanTypes == SelectedScanTypes.SCANS)) {
-          // for ion mobility, detect subscans, too
-          frame.getMobilityScanStorage()
-              .generateAndAddMobilityScanMassLists(getMemoryMapStorage(), detector, parameterSet,
-                  denormalizeMSnScans);
+        if (isCanceled()) {
+          return;
         }
 
-        if (this.saveToCDF && mzPeaks != null) {
-          curTotalIntensity = 0;
-          double[] mzs = mzPeaks[0];
-          double[] intensities = mzPeaks[1];
-          int size = mzs.length;
-          for (int a = 0; a < size; a++) {
-            allMZ.add(mzs[a]);
-            allIntensities.add(intensities[a]);
-            curTotalIntensity += intensities[a];
+        for (List<DetectedScan> detectedBlock : detectedBlocks) {
+          for (DetectedScan detected : detectedBlock) {
+            final Scan scan = detected.scan();
+            final double[][] mzPeaks = detected.mzPeaks();
+
+            // add mass list to scans and frames
+            if (mzPeaks != null) {
+              scan.addMassList(new SimpleMassList(getMemoryMapStorage(), mzPeaks[0], mzPeaks[1]));
+            }
+
+            if (detected.detectedMobilityScans()) {
+              final MobilityScanStorage mobilityScanStorage = ((SimpleFrame) scan)
+                  .getMobilityScanStorage();
+              if (detected.mobilityScanMassLists() == null) {
+                mobilityScanStorage.useRawDataAsMassLists();
+              } else {
+                mobilityScanStorage.setMassLists(getMemoryMapStorage(),
+                    detected.mobilityScanMassLists());
+              }
+            }
+
+            if (this.saveToCDF && mzPeaks != null) {
+              curTotalIntensity = 0;
+              double[] mzs = mzPeaks[0];
+              double[] intensities = mzPeaks[1];
+              int size = mzs.length;
+              for (int a = 0; a < size; a++) {
+                allMZ.add(mzs[a]);
+                allIntensities.add(intensities[a]);
+                curTotalIntensity += intensities[a];
+              }
+
+              scanAcquisitionTime.add(scan.getRetentionTime());
+              pointsInScans.add(0);
+              startIndex.add(mzPeaks.length + lastPointCount);
+              totalIntensity.add(curTotalIntensity);
+
+              lastPointCount = mzPeaks.length + lastPointCount;
+            }
+
+            processedScans++;
           }
-
-          scanAcquisitionTime.add(scan.getRetentionTime());
-          pointsInScans.add(0);
-          startIndex.add(mzPeaks.length + lastPointCount);
-          totalIntensity.add(curTotalIntensity);
-
-          lastPointCount = mzPeaks.length + lastPointCount;
         }
-
-        processedScans++;
       }
 
       if (this.saveToCDF) {
@@ -327,4 +345,73 @@ public class MassDetectionTask extends AbstractTask {
     logger.info("Finished mass detector on " + dataFile);
 
   }
+
+  /**
+   * Detects the masses of a block of consecutive scans with its own data access and mass detector.
+   * Mass detectors may cache values between calls and are therefore not shared between threads.
+   *
+   * @return the detected masses in scan order
+   */
+  private List<DetectedScan> detectBlock(List<Scan> blockScans) {
+    final MassDetector detector = createMassDetector();
+    final ParameterSet parameterSet = massDetector.getParameterSet();
+
+    // uses only a single array for each (mz and intensity) to loop over all scans of the block
+    final ScanDataAccess data = EfficientDataAccess.of(dataFile,
+        EfficientDataAccess.ScanDataType.RAW, blockScans);
+
+    final List<DetectedScan> detected = new ArrayList<>(blockScans.size());
+    while (data.hasNextScan()) {
+      if (isCanceled()) {
+        return detected;
+      }
+
+      Scan scan = data.nextScan();
+
+      double[][] mzPeaks = null;
+      if (scanTypes.applyTo(scan)) {
+        // run mass detection on data object
+        // [mzs, intensities]
+        mzPeaks = detector.getMassValues(data, parameterSet);
+
+        if (denormalizeMSnScans && Objects.requireNonNullElse(scan.getMSLevel(), 1) > 1) {
+          ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzPeaks[1],
+              scan.getInjectionTime());
+        }
+      }
+
+      if (scan instanceof SimpleFrame frame && (scanTypes == SelectedScanTypes.MOBLITY_SCANS
+          || scanTypes == SelectedScanTypes.SCANS)) {
+        // for ion mobility, detect subscans, too
+        final List<double[][]> mobilityScanMassLists = frame.getMobilityScanStorage()
+            .detectMobilityScanMassLists(detector, parameterSet, denormalizeMSnScans);
+        detected.add(new DetectedScan(scan, mzPeaks, true, mobilityScanMassLists));
+      } else {
+        detected.add(new DetectedScan(scan, mzPeaks, false, null));
+      }
+    }
+    return detected;
+  }
+
+  private MassDetector createMassDetector() {
+    final MassDetector module = massDetector.getModule();
+    try {
+      return module.getClass().getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(
+          "Cannot create an instance of mass detector " + module.getName(), e);
+    }
+  }
+
+  /**
+   * Detected masses of a scan that are not yet stored.
+   *
+   * @param mzPeaks               [mzs, intensities] or null if the scan type was not selected
+   * @param detectedMobilityScans true if the mass lists of the mobility scans were detected
+   * @param mobilityScanMassLists the mobility scan mass lists or null if the raw data is used
+   */
+  private record DetectedScan(Scan scan, double[][] mzPeaks, boolean detectedMobilityScans,
+                              List<double[][]> mobilityScanMassLists) {
+
+  }
 }
@@ -32,6 +32,7 @@ import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
@@ -116,6 +117,11 @@ public class ShoulderPeaksFilterTask extends AbstractTask {
       return;
     }
 
+    // the filtered mass lists stay alive as long as the file
+    if (dataFile instanceof RawDataFileImpl file) {
+      file.retainStorage(storage);
+    }
+
     // Process all scans
     for (int i = 0; i < totalScans; i++) {
 
@@ -29,6 +29,7 @@ import io.github.mzmine.util.MemoryMapStorage;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.RawDataFile;
@@ -113,7 +114,7 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
       final RawDataFile dataFile, final ParameterSet parameters,
       final ParameterSet commonParameters, @Nullable MemoryMapStorage storage) throws IOException, RSessionWrapperException {
 
-    if (isAborted(dataFile) || !rSession.isSessionRunning())
+    if (isAborted(dataFile) || (rSession != null && !rSession.isSessionRunning()))
       return null;
     // Get very last information from root module setup
     // this.setGeneralParameters(MZmineCore.getConfiguration().getModuleParameters(BaselineCorrectionModule.class));
@@ -251,11 +252,8 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
     // Calculate baselines: done in-place, i.e. overwrite chromatograms to
     // save memory.
     logger.finest("Calculating baselines.");
-    for (int binIndex = 0; !isAborted(origDataFile) && binIndex < numBins; binIndex++) {
-      baseChrom[binIndex] =
-          computeBaseline(rSession, origDataFile, baseChrom[binIndex], parameters);
-      progressMap.get(origDataFile)[0]++;
-    }
+    computeBaselines(rSession, origDataFile, baseChrom, parameters,
+        (binIndex, baseline) -> baseChrom[binIndex] = baseline);
 
     // Subtract baselines.
     logger.finest("Subtracting baselines.");
@@ -302,13 +300,7 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
     // Calculate baselines: done in-place, i.e. overwrite chromatograms to
     // save memory.
     logger.finest("Calculating baselines.");
-    for (int binIndex = 0; !isAborted(origDataFile) && binIndex < numBins; binIndex++) {
-
-      // Calculate baseline.
-      // final double[] baseline = asymBaseline(baseChrom[binIndex]);
-      final double[] baseline =
-          computeBaseline(rSession, origDataFile, baseChrom[binIndex], parameters);
-
+    computeBaselines(rSession, origDataFile, baseChrom, parameters, (binIndex, baseline) -> {
       // Normalize the baseline w.r.t. chromatogram (TIC).
       for (int scanIndex = 0; !isAborted(origDataFile) && scanIndex < numScans; scanIndex++) {
         final double bc = baseChrom[binIndex][scanIndex];
@@ -316,8 +308,7 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
           baseChrom[binIndex][scanIndex] = baseline[scanIndex] / bc;
         }
       }
-      progressMap.get(origDataFile)[0]++;
-    }
+    });
 
     // Subtract baselines.
     logger.finest("Subtracting baselines.");
@@ -487,6 +478,52 @@ public abstract class BaselineCorrector implements BaselineProvider, MZmineModul
     return newDataPoints;
   }
 
+  /**
+   * Computes the baselines of all bins. Correctors that do not require R compute the bins in
+   * parallel.
+   *
+   * @param chromatograms the chromatogram of each bin.
+   * @param consumer      receives the baseline of each bin. Called concurrently for different bins
+   *                      if the corrector does not require R.
+   */
+  private void computeBaselines(final RSessionWrapper rSession, final RawDataFile origDataFile,
+      final double[][] chromatograms, final ParameterSet parameters,
+      final BaselineConsumer consumer) throws RSessionWrapperException {
+    final int[] progress = progressMap.get(origDataFile);
+
+    if (getRequiresR()) {
+      for (int binIndex = 0; !isAborted(origDataFile) && binIndex < chromatograms.length;
+          binIndex++) {
+        consumer.accept(binIndex,
+            computeBaseline(rSession, origDataFile, chromatograms[binIndex], parameters));
+        progress[0]++;
+      }
+      return;
+    }
+
+    IntStream.range(0, chromatograms.length).parallel().forEach(binIndex -> {
+      if (isAborted(origDataFile)) {
+        return;
+      }
+      try {
+        consumer.accept(binIndex,
+            computeBaseline(null, origDataFile, chromatograms[binIndex], parameters));
+      } catch (RSessionWrapperException e) {
+        // not thrown without an R session
+        throw new IllegalStateException(e);
+      }
+      synchronized (progress) {
+        progress[0]++;
+      }
+    });
+  }
+
+  @FunctionalInterface
+  private interface BaselineConsumer {
+
+    void accept(int binIndex, double[] baseline);
+  }
+
   // Correction progress stuffs (to be called from mother Task)
   /**
    * Initializing progress info.
@@ -42,7 +42,17 @@ public interface BaselineProvider {
   public String[] getRequiredRPackages();
 
   /**
-   * Returns a baseline for correcting the given chromatogram using R
+   * @return true if the baseline is computed in R. Otherwise, {@link #computeBaseline} is called
+   * without an R session and may be called concurrently.
+   */
+  public default boolean getRequiresR() {
+    return true;
+  }
+
+  /**
+   * Returns a baseline for correcting the given chromatogram
+   *
+   * @param rSession the R session or null if the corrector does not require R
    * 
    * @throws RSessionWrapperException
    */
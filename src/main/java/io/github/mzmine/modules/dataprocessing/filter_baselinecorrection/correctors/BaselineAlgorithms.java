@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.dataprocessing.filter_baselinecorrection.correctors;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Baseline algorithms on primitive arrays. They replace the implementations of the R packages
+ * "baseline", "hyperSpec" and "ptw" and are thread safe.
+ */
+public final class BaselineAlgorithms {
+
+  private BaselineAlgorithms() {
+  }
+
+  /**
+   * Rolling ball baseline as in the R package "baseline" (method "rollingBall"): a local minimum
+   * filter followed by a local maximum filter (both with half width wm) and a moving average (half
+   * width ws).
+   *
+   * @param y  the chromatogram.
+   * @param wm half width of the minimum/maximum window in number of scans.
+   * @param ws half width of the smoothing window in number of scans.
+   * @return the baseline.
+   */
+  public static double[] rollingBall(@NotNull final double[] y, final int wm, final int ws) {
+    final double[] minimised = slidingExtremum(y, wm, true);
+    final double[] maximised = slidingExtremum(minimised, wm, false);
+
+    // moving average with prefix sums
+    final int n = y.length;
+    final double[] prefix = new double[n + 1];
+    for (int i = 0; i < n; i++) {
+      prefix[i + 1] = prefix[i] + maximised[i];
+    }
+    final double[] baseline = new double[n];
+    for (int i = 0; i < n; i++) {
+      final int from = Math.max(0, i - ws);
+      final int to = Math.min(n - 1, i + ws);
+      baseline[i] = (prefix[to + 1] - prefix[from]) / (to - from + 1);
+    }
+    return baseline;
+  }
+
+  /**
+   * Rubber band baseline as in the R package "hyperSpec" (spc.rubberband): the lower convex hull of
+   * the bent chromatogram. If spline is true, a smoothing spline is fitted through all points within
+   * the noise level of the hull.
+   *
+   * @param y          the chromatogram.
+   * @param noise      points up to this distance above the hull support the spline.
+   * @param df         degrees of freedom of the smoothing spline. Values <= 1 fall back to the
+   *                   number of hull points.
+   * @param spline     smoothing spline or piecewise linear baseline.
+   * @param bendFactor bends the chromatogram by bendFactor * x^2 (x normalised to [0, 1]) before
+   *                   the hull is calculated.
+   * @return the baseline.
+   */
+  public static double[] rubberBand(@NotNull final double[] y, final double noise, final double df,
+      final boolean spline, final double bendFactor) {
+    final int n = y.length;
+    if (n < 3) {
+      return Arrays.copyOf(y, n);
+    }
+
+    final double[] bend = new double[n];
+    final double[] bent = new double[n];
+    for (int i = 0; i < n; i++) {
+      final double x = i / (double) (n - 1);
+      bend[i] = bendFactor * x * x;
+      bent[i] = y[i] + bend[i];
+    }
+
+    // lower convex hull (monotone chain)
+    final int[] hull = new int[n];
+    int hullSize = 0;
+    for (int i = 0; i < n; i++) {
+      while (hullSize >= 2 && cross(hull[hullSize - 2], hull[hullSize - 1], i, bent) <= 0) {
+        hullSize--;
+      }
+      hull[hullSize++] = i;
+    }
+
+    double[] baseline = new double[n];
+    for (int h = 0; h < hullSize - 1; h++) {
+      final int left = hull[h];
+      final int right = hull[h + 1];
+      final double slope = (bent[right] - bent[left]) / (right - left);
+      for (int i = left; i <= right; i++) {
+        baseline[i] = bent[left] + slope * (i - left);
+      }
+    }
+
+    if (spline) {
+      final double[] weights = new double[n];
+      int numSupport = 0;
+      for (int i = 0; i < n; i++) {
+        if (bent[i] <= baseline[i] + noise) {
+          weights[i] = 1d;
+          numSupport++;
+        }
+      }
+      if (numSupport > 3) {
+        final double degreesOfFreedom = df > 1 ? df : hullSize;
+        baseline = whittakerSmooth(bent, weights, lambdaForDegreesOfFreedom(n, degreesOfFreedom));
+      }
+    }
+
+    for (int i = 0; i < n; i++) {
+      baseline[i] -= bend[i];
+    }
+    return baseline;
+  }
+
+  /**
+   * Asymmetric least squares baseline as in the R package "ptw" (asysm). Iteratively fits a
+   * Whittaker smoother, where points above the fit are weighted with p and points below with 1 -
+   * p.
+   *
+   * @param y      the chromatogram.
+   * @param lambda smoothing factor.
+   * @param p      asymmetry (weight of the points above the baseline).
+   * @return the baseline.
+   */
+  public static double[] asymmetricLeastSquares(@NotNull final double[] y, final double lambda,
+      final double p) {
+    final int maxIterations = 25;
+    final int n = y.length;
+    final double[] weights = new double[n];
+    Arrays.fill(weights, 1d);
+
+    double[] baseline = Arrays.copyOf(y, n);
+    for (int iteration = 0; iteration < maxIterations; iteration++) {
+      baseline = whittakerSmooth(y, weights, lambda);
+      boolean changed = false;
+      for (int i = 0; i < n; i++) {
+        final double w = y[i] > baseline[i] ? p : 1 - p;
+        changed |= w != weights[i];
+        weights[i] = w;
+      }
+      if (!changed) {
+        break;
+      }
+    }
+    return baseline;
+  }
+
+  /**
+   * Weighted Whittaker smoother with a second order difference penalty. Solves (W + lambda D'D) z
+   * = W y with a banded LDL' decomposition in linear time.
+   *
+   * @param y       the values.
+   * @param weights the weight of each value. At least two weights must be positive.
+   * @param lambda  smoothing factor.
+   * @return the smoothed values.
+   */
+  public static double[] whittakerSmooth(@NotNull final double[] y,
+      @NotNull final double[] weights, final double lambda) {
+    final int n = y.length;
+    if (n < 3) {
+      return Arrays.copyOf(y, n);
+    }
+
+    // bands of the symmetric pentadiagonal matrix W + lambda D'D
+    final double[] d = new double[n];
+    final double[] l1 = new double[n];
+    final double[] l2 = new double[n];
+    for (int row = 0; row < n - 2; row++) {
+      // D has the entries 1, -2, 1 at row, row + 1, row + 2
+      d[row] += lambda;
+      d[row + 1] += 4 * lambda;
+      d[row + 2] += lambda;
+      l1[row] -= 2 * lambda;
+      l1[row + 1] -= 2 * lambda;
+      l2[row] += lambda;
+    }
+    final double[] z = new double[n];
+    for (int i = 0; i < n; i++) {
+      d[i] += weights[i];
+      z[i] = weights[i] * y[i];
+    }
+
+    // in-place LDL' decomposition: l1[i] = L[i+1][i], l2[i] = L[i+2][i]
+    for (int i = 0; i < n; i++) {
+      if (i >= 1) {
+        d[i] -= l1[i - 1] * l1[i - 1] * d[i - 1];
+      }
+      if (i >= 2) {
+        d[i] -= l2[i - 2] * l2[i - 2] * d[i - 2];
+      }
+      if (i < n - 1) {
+        if (i >= 1) {
+          l1[i] -= l2[i - 1] * l1[i - 1] * d[i - 1];
+        }
+        l1[i] /= d[i];
+      }
+      if (i < n - 2) {
+        l2[i] /= d[i];
+      }
+    }
+
+    // forward substitution, scaling and back substitution
+    for (int i = 1; i < n; i++) {
+      z[i] -= l1[i - 1] * z[i - 1] + (i >= 2 ? l2[i - 2] * z[i - 2] : 0d);
+    }
+    for (int i = 0; i < n; i++) {
+      z[i] /= d[i];
+    }
+    for (int i = n - 2; i >= 0; i--) {
+      z[i] -= l1[i] * z[i + 1] + (i < n - 2 ? l2[i] * z[i + 2] : 0d);
+    }
+    return z;
+  }
+
+  /**
+   * Approximates the smoothing factor of a Whittaker smoother (second order penalty) on n
+   * equidistant points with the given effective degrees of freedom.
+   */
+  private static double lambdaForDegreesOfFreedom(final int n, final double df) {
+    return Math.pow(n / (2 * Math.sqrt(2) * df), 4);
+  }
+
+  /**
+   * Sliding minimum or maximum with a centered window of the given half width (monotone deque).
+   */
+  private static double[] slidingExtremum(final double[] values, final int halfWidth,
+      final boolean minimum) {
+    final int n = values.length;
+    final double[] result = new double[n];
+    final int[] deque = new int[n];
+    int head = 0;
+    int tail = 0;
+    int next = 0;
+
+    for (int i = 0; i < n; i++) {
+      final int windowEnd = Math.min(n - 1, i + halfWidth);
+      for (; next <= windowEnd; next++) {
+        while (tail > head && (minimum ? values[deque[tail - 1]] >= values[next]
+            : values[deque[tail - 1]] <= values[next])) {
+          tail--;
+        }
+        deque[tail++] = next;
+      }
+      while (deque[head] < i - halfWidth) {
+        head++;
+      }
+      result[i] = values[deque[head]];
+    }
+    return result;
+  }
+
+  /**
+   * @return the cross product of (b - a) and (c - a) with x = index and y = values[index].
+   */
+  private static double cross(final int a, final int b, final int c, final double[] values) {
+    return (b - a) * (values[c] - values[a]) - (values[b] - values[a]) * (c - a);
+  }
+}
@@ -40,11 +40,13 @@ import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.MsMsInfoType;
+import io.github.mzmine.datamodel.features.types.numbers.FragmentScanNumbersType;
 import io.github.mzmine.datamodel.features.types.numbers.RtMs2ApexDistanceType;
 import io.github.mzmine.datamodel.impl.MSnInfoImpl;
 import io.github.mzmine.datamodel.msms.DDAMsMsInfo;
 import io.github.mzmine.datamodel.msms.MsMsInfo;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.datamodel.msms.PrecursorIndex;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
@@ -56,10 +58,12 @@ import io.github.mzmine.util.scans.SpectraMerging.IntensityMergingType;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -77,12 +81,16 @@ public class GroupMS2Task extends AbstractTask {
   private final boolean combineTimsMS2;
   private final Double minMs2IntensityRel;
   // Processed rows counter
-  private int processedRows, totalRows;
+  private final AtomicInteger processedRows = new AtomicInteger(0);
+  private int totalRows;
   private final FeatureList list;
   private final RTTolerance rtTol;
   private final MZTolerance mzTol;
   private final boolean limitRTByFeature;
   private final boolean lockToFeatureMobilityRange;
+  // fragment scans and PASEF MS/MS infos of each raw data file by precursor m/z
+  private final Map<RawDataFile, PrecursorIndex<Scan>> fragmentScanIndex = new ConcurrentHashMap<>();
+  private final Map<RawDataFile, PrecursorIndex<FrameMsMsInfo>> pasefMsMsIndex = new ConcurrentHashMap<>();
 
   /**
    * Create the task.
@@ -112,14 +120,13 @@ public class GroupMS2Task extends AbstractTask {
             .getEmbeddedParameter().getValue() : null;
 
     this.list = list;
-    processedRows = 0;
     totalRows = 0;
   }
 
   @Override
   public double getFinishedPercentage() {
 
-    return totalRows == 0 ? 0.0 : (double) processedRows / (double) totalRows;
+    return totalRows == 0 ? 0.0 : (double) processedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -135,14 +142,21 @@ public class GroupMS2Task extends AbstractTask {
       setStatus(TaskStatus.PROCESSING);
 
       totalRows = list.getNumberOfRows();
+      // add types before the parallel processing, rows are only changed by one thread each
+      list.addFeatureType(new FragmentScanNumbersType(), new RtMs2ApexDistanceType(),
+          new MsMsInfoType());
+
       // for all features
-      for (FeatureListRow row : list.getRows()) {
+      list.getRows().parallelStream().forEach(row -> {
         if (isCanceled()) {
           return;
         }
 
         processRow(row);
-        processedRows++;
+        processedRows.incrementAndGet();
+      });
+      if (isCanceled()) {
+        return;
       }
 
       list.getAppliedMethods().add(
@@ -177,9 +191,10 @@ public class GroupMS2Task extends AbstractTask {
         double fmz = f.getMZ();
         Range<Float> rtRange = f.getRawDataPointsRTRange();
 
-        List<Scan> scans = raw.stream().filter(scan -> scan.getMSLevel() > 1)
-            .filter(scan -> filterScan(scan, frt, fmz, rtRange))
-            .sorted(FragmentScanSorter.DEFAULT_TIC).toList();
+        List<Scan> scans = getFragmentScanIndex(raw).find(mzTol.getToleranceRange(fmz),
+            rtTol.getToleranceRange(frt),
+            scan -> !limitRTByFeature || rtRange.contains(scan.getRetentionTime()));
+        scans = scans.stream().sorted(FragmentScanSorter.DEFAULT_TIC).toList();
 
         // set list to feature and sort
         f.setAllMS2FragmentScans(scans);
@@ -199,18 +214,42 @@ public class GroupMS2Task extends AbstractTask {
     }
   }
 
-  private boolean filterScan(Scan scan, float frt, double fmz, Range<Float> featureRtRange) {
-    final double precursorMZ;
+  /**
+   * All fragment scans (MS level > 1) of a raw data file, indexed once by precursor m/z
+   */
+  private PrecursorIndex<Scan> getFragmentScanIndex(RawDataFile raw) {
+    return fragmentScanIndex.computeIfAbsent(raw, file -> PrecursorIndex.create(
+        file.getScans().stream().filter(scan -> scan.getMSLevel() > 1 && getPrecursorMz(scan) != 0)
+            .toList(),
+        GroupMS2Task::getPrecursorMz, Scan::getRetentionTime));
+  }
+
+  private static double getPrecursorMz(Scan scan) {
     if (scan.getMsMsInfo() instanceof MSnInfoImpl msn) {
-      precursorMZ = msn.getMS2PrecursorMz();
+      return msn.getMS2PrecursorMz();
     } else if (scan.getMsMsInfo() instanceof DDAMsMsInfo info) {
-      precursorMZ = info.getIsolationMz();
+      return info.getIsolationMz();
     } else {
-      precursorMZ = Objects.requireNonNullElse(scan.getPrecursorMz(), 0d);
+      return Objects.requireNonNullElse(scan.getPrecursorMz(), 0d);
     }
-    return (!limitRTByFeature || featureRtRange.contains(scan.getRetentionTime()))
-        && rtTol.checkWithinTolerance(frt, scan.getRetentionTime()) && precursorMZ != 0
-        && mzTol.checkWithinTolerance(fmz, precursorMZ);
+  }
+
+  /**
+   * All PASEF MS/MS infos of the MS2 frames of a raw data file, indexed once by isolation m/z
+   */
+  private PrecursorIndex<FrameMsMsInfo> getPasefMsMsIndex(RawDataFile raw) {
+    return pasefMsMsIndex.computeIfAbsent(raw, file -> {
+      final List<FrameMsMsInfo> infos = new ArrayList<>();
+      for (Scan scan : file.getScanNumbers(2)) {
+        if (scan instanceof Frame frame) {
+          for (PasefMsMsInfo info : frame.getImsMsMsInfos()) {
+            infos.add(new FrameMsMsInfo(frame, info));
+          }
+        }
+      }
+      return PrecursorIndex.create(infos, info -> info.info().getIsolationMz(),
+          info -> info.frame().getRetentionTime());
+    });
   }
 
   private void processTimsFeature(ModularFeature feature) {
@@ -220,37 +259,28 @@ public class GroupMS2Task extends AbstractTask {
     Range<Float> rtRange = feature.getRawDataPointsRTRange();
     Float mobility = feature.getMobility();
 
-    final List<? extends Scan> scans = feature.getRawDataFile().getScanNumbers(2).stream().filter(
-            scan -> (!limitRTByFeature && rtTol.checkWithinTolerance(frt, scan.getRetentionTime())) || (
-                limitRTByFeature && rtRange.contains(scan.getRetentionTime())))
-        .collect(Collectors.toList());
+    final List<FrameMsMsInfo> infos = getPasefMsMsIndex(feature.getRawDataFile()).find(
+        mzTol.getToleranceRange(fmz), limitRTByFeature ? rtRange : rtTol.getToleranceRange(frt));
 
-    if (scans.isEmpty() || !(scans.get(0) instanceof Frame)) {
-      return;
-    }
-
-    final List<Frame> frames = (List<Frame>) scans;
     final List<MsMsInfo> eligibleMsMsInfos = new ArrayList<>();
-    for (Frame frame : frames) {
-      frame.getImsMsMsInfos().forEach(imsMsMsInfo -> {
-        if (mzTol.checkWithinTolerance(fmz, imsMsMsInfo.getIsolationMz())) {
-          // if we have a mobility (=processed by IMS workflow), we can check for the correct range during assignment.
-          if (mobility != null) {
-            // todo: maybe revisit this for a more sophisticated range check
-            int mobilityScannumberOffset = frame.getMobilityScan(0).getMobilityScanNumber();
-            float mobility1 = (float) frame.getMobilityForMobilityScanNumber(
-                imsMsMsInfo.getSpectrumNumberRange().lowerEndpoint() - mobilityScannumberOffset);
-            float mobility2 = (float) frame.getMobilityForMobilityScanNumber(
-                imsMsMsInfo.getSpectrumNumberRange().upperEndpoint() - mobilityScannumberOffset);
-            if (Range.singleton(mobility1).span(Range.singleton(mobility2)).contains(mobility)) {
-              eligibleMsMsInfos.add(imsMsMsInfo);
-            }
-          } else {
-            // if we don't have a mobility, we can simply add the msms info.
-            eligibleMsMsInfos.add(imsMsMsInfo);
-          }
+    for (FrameMsMsInfo frameInfo : infos) {
+      final Frame frame = frameInfo.frame();
+      final PasefMsMsInfo imsMsMsInfo = frameInfo.info();
+      // if we have a mobility (=processed by IMS workflow), we can check for the correct range during assignment.
+      if (mobility != null) {
+        // todo: maybe revisit this for a more sophisticated range check
+        int mobilityScannumberOffset = frame.getMobilityScan(0).getMobilityScanNumber();
+        float mobility1 = (float) frame.getMobilityForMobilityScanNumber(
+            imsMsMsInfo.getSpectrumNumberRange().lowerEndpoint() - mobilityScannumberOffset);
+        float mobility2 = (float) frame.getMobilityForMobilityScanNumber(
+            imsMsMsInfo.getSpectrumNumberRange().upperEndpoint() - mobilityScannumberOffset);
+        if (Range.singleton(mobility1).span(Range.singleton(mobility2)).contains(mobility)) {
+          eligibleMsMsInfos.add(imsMsMsInfo);
         }
-      });
+      } else {
+        // if we don't have a mobility, we can simply add the msms info.
+        eligibleMsMsInfos.add(imsMsMsInfo);
+      }
     }
 
     if (eligibleMsMsInfos.isEmpty()) {
@@ -294,4 +324,11 @@ public class GroupMS2Task extends AbstractTask {
       }
     }
   }
+
+  /**
+   * A PASEF MS/MS info with the MS2 frame it was found in
+   */
+  private record FrameMsMsInfo(Frame frame, PasefMsMsInfo info) {
+
+  }
 }
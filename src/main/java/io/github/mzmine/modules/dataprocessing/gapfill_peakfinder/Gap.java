@@ -80,6 +80,16 @@ public class Gap {
   }
 
   public void offerNextScan(Scan scan) {
+    offerNextScan(scan, 0);
+  }
+
+  /**
+   * @param scan      the next scan
+   * @param fromIndex index of the first data point in the scan that may be within the m/z range of
+   *                  this gap. Provided by {@link GapSweepLine} to skip the search from the start of
+   *                  the spectrum.
+   */
+  public void offerNextScan(Scan scan, int fromIndex) {
 
     float scanRT = scan.getRetentionTime();
 
@@ -89,7 +99,7 @@ public class Gap {
     }
 
     // Find top m/z peak in our range
-    DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange);
+    DataPoint basePeak = ScanUtils.findBasePeak(scan, mzRange, fromIndex);
 
     GapDataPointImpl currentDataPoint;
     if (basePeak != null) {
@@ -124,6 +134,22 @@ public class Gap {
 
   }
 
+  /**
+   * @param scanRT retention time of the current scan
+   * @return true if this gap will not accept any scan with a retention time >= scanRT
+   */
+  public boolean isFinishedAt(float scanRT) {
+    return scanRT > rtRange.upperEndpoint();
+  }
+
+  public Range<Double> getMzRange() {
+    return mzRange;
+  }
+
+  public Range<Float> getRtRange() {
+    return rtRange;
+  }
+
   /**
    * Finalizes the gap, adds a peak
    */
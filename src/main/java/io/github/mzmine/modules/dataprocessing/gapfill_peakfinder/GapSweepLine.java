@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
+
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.datamodel.Scan;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sweep line over the retention time dimension to feed scans only to the gaps that overlap them.
+ * Gaps are sorted by their rt range start and activated once the scan cursor reaches them. Gaps are
+ * retired as soon as {@link Gap#isFinishedAt(float)}. The active gaps are kept sorted by their
+ * lower m/z bound, so the first data point of each gap is found by a binary search that starts at
+ * the position of the previous gap.
+ * <p>
+ * Scans have to be offered in ascending retention time order. If a scan with a lower retention
+ * time is offered, the sweep line falls back to offering every scan to all gaps.
+ *
+ * @param <T> gap type
+ */
+public class GapSweepLine<T extends Gap> {
+
+  private static final Comparator<Gap> mzLowerComparator = Comparator.comparingDouble(
+      gap -> gap.getMzRange().lowerEndpoint());
+
+  private final List<T> allGaps;
+  private final List<T> pending;
+  private final List<T> active = new ArrayList<>();
+  private int nextPending = 0;
+  private float lastRt = Float.NEGATIVE_INFINITY;
+  private boolean unsorted = false;
+
+  public GapSweepLine(@NotNull Collection<T> gaps) {
+    allGaps = List.copyOf(gaps);
+    pending = new ArrayList<>(gaps);
+    pending.sort(Comparator.comparingDouble(gap -> gap.getRtRange().lowerEndpoint()));
+  }
+
+  /**
+   * Moves the scan cursor to the given retention time.
+   *
+   * @param rt retention time of the next scan
+   * @return the gaps that may accept a scan at this retention time, sorted by the lower m/z bound.
+   * All gaps if the scans were not offered in ascending rt order.
+   */
+  @NotNull
+  public List<T> advanceTo(float rt) {
+    if (unsorted || rt < lastRt) {
+      unsorted = true;
+      return allGaps;
+    }
+    lastRt = rt;
+
+    active.removeIf(gap -> gap.isFinishedAt(rt));
+
+    while (nextPending < pending.size()
+        && pending.get(nextPending).getRtRange().lowerEndpoint() <= rt) {
+      final T gap = pending.get(nextPending++);
+      if (gap.isFinishedAt(rt)) {
+        continue;
+      }
+      int index = binarySearchInsertion(gap);
+      active.add(index, gap);
+    }
+    return active;
+  }
+
+  /**
+   * Offers the scan to all gaps that overlap its retention time.
+   */
+  public void offerNextScan(@NotNull Scan scan) {
+    final List<T> gaps = advanceTo(scan.getRetentionTime());
+    if (unsorted) {
+      for (T gap : gaps) {
+        gap.offerNextScan(scan);
+      }
+      return;
+    }
+
+    int fromIndex = 0;
+    for (T gap : gaps) {
+      fromIndex = lowerBound(scan, gap.getMzRange().lowerEndpoint(), fromIndex);
+      gap.offerNextScan(scan, fromIndex);
+    }
+  }
+
+  /**
+   * @return number of gaps that are currently active
+   */
+  public int getNumberOfActiveGaps() {
+    return unsorted ? allGaps.size() : active.size();
+  }
+
+  private int binarySearchInsertion(T gap) {
+    int low = 0;
+    int high = active.size();
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (mzLowerComparator.compare(active.get(mid), gap) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the index of the first data point with an m/z >= mz
+   */
+  public static int lowerBound(@NotNull MassSpectrum spectrum, double mz) {
+    return lowerBound(spectrum, mz, 0);
+  }
+
+  /**
+   * @param fromIndex inclusive start index of the search
+   * @return the index of the first data point with an m/z >= mz, starting the search at fromIndex
+   */
+  public static int lowerBound(@NotNull MassSpectrum spectrum, double mz, int fromIndex) {
+    final int numDp = spectrum.getNumberOfDataPoints();
+    if (fromIndex >= numDp) {
+      return numDp;
+    }
+    int index = spectrum.binarySearch(mz, false, fromIndex, numDp);
+    if (index < 0) {
+      return -(index + 1);
+    }
+    // exact match, step back over equal values
+    while (index > fromIndex && Double.compare(spectrum.getMzValue(index - 1), mz) >= 0) {
+      index--;
+    }
+    return index;
+  }
+}
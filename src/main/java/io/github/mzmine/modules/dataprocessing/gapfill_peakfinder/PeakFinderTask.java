@@ -158,12 +158,11 @@ class PeakFinderTask extends AbstractTask {
         }
 
         // Get all scans of this data file
+        final GapSweepLine<Gap> sweepLine = new GapSweepLine<>(gaps);
         dataFile.getScanNumbers(1).forEach(scan -> {
           if(!isCanceled()) {
-            // Feed this scan to all gaps
-            for (Gap gap : gaps) {
-              gap.offerNextScan(scan);
-            }
+            // Feed this scan to all gaps that overlap its rt
+            sweepLine.offerNextScan(scan);
 
             processedScans.incrementAndGet();
           }
@@ -270,12 +269,11 @@ class PeakFinderTask extends AbstractTask {
         }
 
         // Get all scans of this data file
+        final GapSweepLine<Gap> sweepLine = new GapSweepLine<>(gaps);
         datafile1.getScanNumbers(1).forEach(scan -> {
           if(!isCanceled()) {
-            // Feed this scan to all gaps
-            for (Gap gap : gaps) {
-              gap.offerNextScan(scan);
-            }
+            // Feed this scan to all gaps that overlap its rt
+            sweepLine.offerNextScan(scan);
             processedScans.incrementAndGet();
           }
         });
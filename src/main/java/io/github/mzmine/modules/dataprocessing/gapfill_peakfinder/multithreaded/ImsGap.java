@@ -43,6 +43,7 @@ import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapDataPoint;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapSweepLine;
 import io.github.mzmine.util.RangeUtils;
 import io.github.mzmine.util.exceptions.MissingMassListException;
 import java.util.ArrayList;
@@ -86,6 +87,18 @@ public class ImsGap extends Gap {
     this.mobilogramBinning = mobilogramBinning;
   }
 
+  @Override
+  public void offerNextScan(Scan scan, int fromIndex) {
+    // the index refers to the frame, mobility scans are searched individually
+    offerNextScan(scan);
+  }
+
+  @Override
+  public boolean isFinishedAt(float scanRT) {
+    // a peak in progress may extend beyond the rt range
+    return super.isFinishedAt(scanRT) && currentPeakDataPoints == null;
+  }
+
   @Override
   public void offerNextScan(Scan scan) {
     if (!(scan instanceof MobilityScanDataAccess access)) {
@@ -162,7 +175,8 @@ public class ImsGap extends Gap {
 
       int bestIndex = -1;
       double bestDelta = Double.POSITIVE_INFINITY;
-      for (int i = 0; i < access.getNumberOfDataPoints(); i++) {
+      for (int i = GapSweepLine.lowerBound(access, mzRange.lowerEndpoint());
+          i < access.getNumberOfDataPoints(); i++) {
         final double mz = access.getMzValue(i);
         if (mz < mzRange.lowerEndpoint()) {
           continue;
@@ -41,6 +41,7 @@ import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.types.numbers.MobilityType;
 import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.Gap;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.GapSweepLine;
 import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
@@ -211,7 +212,8 @@ class MultiThreadPeakFinderTask extends AbstractTask {
     if (file instanceof IMSRawDataFile imsFile && peakList.hasFeatureType(MobilityType.class)) {
       final MobilityScanDataAccess access = new MobilityScanDataAccess(imsFile,
           MobilityScanDataType.CENTROID, (List<Frame>) peakList.getSeletedScans(file));
-      List<ImsGap> imsGaps = (List<ImsGap>) (List<? extends Gap>) gaps;
+      final GapSweepLine<ImsGap> sweepLine = new GapSweepLine<>(
+          (List<ImsGap>) (List<? extends Gap>) gaps);
 
       while (access.hasNextFrame()) {
         if (isCanceled()) {
@@ -219,7 +221,8 @@ class MultiThreadPeakFinderTask extends AbstractTask {
         }
 
         final Frame frame = access.nextFrame();
-        for (ImsGap gap : imsGaps) {
+        // only gaps that overlap the frame rt
+        for (ImsGap gap : sweepLine.advanceTo(frame.getRetentionTime())) {
           access.resetMobilityScan();
           gap.offerNextScan(access);
         }
@@ -231,15 +234,14 @@ class MultiThreadPeakFinderTask extends AbstractTask {
 
       final ScanDataAccess scanAccess = EfficientDataAccess.of(file, ScanDataType.CENTROID,
           peakList.getSeletedScans(file));
+      final GapSweepLine<Gap> sweepLine = new GapSweepLine<>(gaps);
       while (scanAccess.hasNextScan()) {
         if (isCanceled()) {
           return;
         }
         scanAccess.nextScan();
-        // Feed this scan to all gaps
-        for (Gap gap : gaps) {
-          gap.offerNextScan(scanAccess);
-        }
+        // Feed this scan to all gaps that overlap its rt
+        sweepLine.offerNextScan(scanAccess);
 
         processedScans.incrementAndGet();
       }
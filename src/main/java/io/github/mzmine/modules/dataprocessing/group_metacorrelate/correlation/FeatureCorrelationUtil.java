@@ -456,8 +456,8 @@ public class FeatureCorrelationUtil {
       return false;
     }
 
-    double maxFC = Math.max(Similarity.maxFoldChange(corr.getData(), 0),
-        Similarity.maxFoldChange(corr.getData(), 1));
+    final double[][] data = corr.getData();
+    double maxFC = Math.max(Similarity.maxFoldChange(data, 0), Similarity.maxFoldChange(data, 1));
     // do not use as filter if
     if (maxFC < minFoldChange) {
       return false;
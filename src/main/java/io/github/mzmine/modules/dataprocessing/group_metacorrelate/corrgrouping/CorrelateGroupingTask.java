@@ -26,11 +26,13 @@
 package io.github.mzmine.modules.dataprocessing.group_metacorrelate.corrgrouping;
 
 
+import com.google.common.collect.Range;
 import com.google.common.util.concurrent.AtomicDouble;
 import io.github.msdk.MSDKRuntimeException;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.data_access.CachedFeatureDataAccess;
+import io.github.mzmine.datamodel.features.Feature;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.RowGroup;
@@ -57,11 +59,13 @@ import io.github.mzmine.util.SortingProperty;
 import io.github.mzmine.util.maths.similarity.SimilarityMeasure;
 import java.text.MessageFormat;
 import java.time.Instant;
+import java.util.Comparator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class CorrelateGroupingTask extends AbstractTask {
 
@@ -266,6 +270,35 @@ public class CorrelateGroupingTask extends AbstractTask {
     }
   }
 
+  /**
+   * Checks the feature overlap of two rows, correlates them and adds the correlation to the map
+   */
+  private void compareRows(CachedFeatureDataAccess data, List<RawDataFile> raws,
+      FeatureListRow row, FeatureListRow row2, R2RMap<R2RCorrelationData> map) {
+    // has a minimum number/% of overlapping features in all samples / in at least one
+    // groups
+    OverlapResult overlap = minFFilter.filterMinFeaturesOverlap(data, raws, row, row2,
+        rtTolerance);
+    if (overlap.equals(OverlapResult.TRUE)) {
+      // correlate if in rt range
+      R2RFullCorrelationData corr = FeatureCorrelationUtil.corrR2R(data, raws, row, row2,
+          groupByFShapeCorr, minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr,
+          minHeight, noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
+
+      // corr is even present if only grouping by retention time
+      // corr is only null if heightCorrelation was not met
+      if (corr != null && //
+          (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL, minFFilter,
+              corr, useTotalShapeCorrFilter, minTotalShapeCorrR, minShapeCorrR,
+              shapeSimMeasure))) {
+        // add to map
+        // can be because of any combination of
+        // retention time, shape correlation, non-negative height correlation
+        map.add(row, row2, corr);
+      }
+    }
+  }
+
   /**
    * Correlation and adduct network creation
    */
@@ -284,51 +317,34 @@ public class CorrelateGroupingTask extends AbstractTask {
     // preload all intensity values
     CachedFeatureDataAccess data = new CachedFeatureDataAccess(rows, false, true);
 
-    // for all rows - do in parallel
-    IntStream.range(0, totalRows - 1).parallel().forEach(i -> {
-      if (!isCanceled()) {
-        try {
-          FeatureListRow row = rows[i];
-          // compare to the rest of rows
-          for (int x = i + 1; x < totalRows; x++) {
-            if (isCanceled()) {
-              break;
-            }
-
-            FeatureListRow row2 = rows[x];
-
-            // has a minimum number/% of overlapping features in all samples / in at least one
-            // groups
-            OverlapResult overlap =
-                minFFilter.filterMinFeaturesOverlap(data, raws, row, row2, rtTolerance);
-            if (overlap.equals(OverlapResult.TRUE)) {
-              // correlate if in rt range
-              R2RFullCorrelationData corr =
-                  FeatureCorrelationUtil.corrR2R(data, raws, row, row2, groupByFShapeCorr,
-                      minCorrelatedDataPoints, minCorrDPOnFeatureEdge, minDPHeightCorr, minHeight,
-                      noiseLevelCorr, useHeightCorrFilter, heightSimMeasure, minHeightCorr);
-
-              // corr is even present if only grouping by retention time
-              // corr is only null if heightCorrelation was not met
-              if (corr != null && //
-                  (!groupByFShapeCorr || FeatureCorrelationUtil.checkFShapeCorr(groupedPKL,
-                      minFFilter, corr, useTotalShapeCorrFilter, minTotalShapeCorrR,
-                      minShapeCorrR,
-                      shapeSimMeasure))) {
-                // add to map
-                // can be because of any combination of
-                // retention time, shape correlation, non-negative height correlation
-                map.add(row, row2, corr);
-              }
+    // rows only pass the overlap filter if at least one pair of features is within the RT
+    // tolerance. Sweep over the RT windows of all rows and only compare overlapping windows
+    final boolean pruneByRT =
+        rtTolerance != null && minFFilter.requiresFeatureOverlap(raws.size());
+    final RTWindows windows = new RTWindows(rows, pruneByRT ? rtTolerance : null);
+
+    // for all rows - do in parallel. Every thread collects into its own map, the maps are merged
+    // at the end, so the correlation threads do not wait for each other on one map
+    final R2RMap<R2RCorrelationData> correlations = IntStream.range(0, totalRows).parallel()
+        .collect(R2RMap::new, (threadMap, s) -> {
+          if (!isCanceled()) {
+            try {
+              // compare to the rest of rows with an overlapping RT window
+              windows.forEachOverlappingPair(s, (i, x) -> {
+                if (isCanceled()) {
+                  return false;
+                }
+                compareRows(data, raws, rows[i], rows[x], threadMap);
+                return true;
+              });
+              stageProgress.addAndGet(1d / totalRows);
+            } catch (Exception e) {
+              logger.log(Level.SEVERE, "Error in parallel R2Rcomparison: " + e.getMessage(), e);
+              throw new MSDKRuntimeException(e);
             }
           }
-          stageProgress.addAndGet(1d / totalRows);
-        } catch (Exception e) {
-          logger.log(Level.SEVERE, "Error in parallel R2Rcomparison: " + e.getMessage(), e);
-          throw new MSDKRuntimeException(e);
-        }
-      }
-    });
+        }, R2RMap::putAll);
+    map.putAll(correlations);
 
     // number of f2f correlations
     int nR2Rcorr = 0;
@@ -347,4 +363,73 @@ public class CorrelateGroupingTask extends AbstractTask {
         nR2Rcorr, nF2F, map.size()));
   }
 
+  /**
+   * RT windows of rows, each spanning the RT tolerance ranges of all features of a row. Two rows
+   * can only have a pair of features within the RT tolerance if their windows overlap.
+   */
+  static final class RTWindows {
+
+    private final float[] start;
+    private final float[] end;
+    // row indices sorted by window start
+    private final int[] byStart;
+
+    /**
+     * @param rows        the rows
+     * @param rtTolerance the RT tolerance or null to give all rows an infinite window
+     */
+    RTWindows(FeatureListRow[] rows, @Nullable RTTolerance rtTolerance) {
+      start = new float[rows.length];
+      end = new float[rows.length];
+      for (int i = 0; i < rows.length; i++) {
+        if (rtTolerance == null) {
+          start[i] = Float.NEGATIVE_INFINITY;
+          end[i] = Float.POSITIVE_INFINITY;
+          continue;
+        }
+        start[i] = Float.POSITIVE_INFINITY;
+        end[i] = Float.NEGATIVE_INFINITY;
+        for (Feature feature : rows[i].getFeatures()) {
+          final Float rt = feature.getRT();
+          if (rt == null) {
+            continue;
+          }
+          final Range<Float> range = rtTolerance.getToleranceRange(rt);
+          start[i] = Math.min(start[i], range.lowerEndpoint());
+          end[i] = Math.max(end[i], range.upperEndpoint());
+        }
+      }
+      // stable sort keeps the order of the rows for equal window starts
+      byStart = IntStream.range(0, rows.length).boxed()
+          .sorted(Comparator.comparingDouble(i -> start[i])).mapToInt(Integer::intValue)
+          .toArray();
+    }
+
+    /**
+     * Passes the row at position s of the sorted windows and all following rows with an overlapping
+     * window to the consumer. Over all positions, each overlapping pair is passed once.
+     *
+     * @param s        position in the rows sorted by window start
+     * @param consumer receives the two row indices in ascending order, returns false to stop
+     */
+    void forEachOverlappingPair(int s, IntBiPredicate consumer) {
+      final int i = byStart[s];
+      for (int t = s + 1; t < byStart.length; t++) {
+        final int x = byStart[t];
+        if (start[x] > end[i]) {
+          break;
+        }
+        // keep the order of the two rows as arguments
+        if (!consumer.test(Math.min(i, x), Math.max(i, x))) {
+          break;
+        }
+      }
+    }
+  }
+
+  @FunctionalInterface
+  interface IntBiPredicate {
+
+    boolean test(int a, int b);
+  }
 }
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_formulaprediction;
+
+import com.google.common.collect.Range;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.interfaces.IIsotope;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+
+/**
+ * Mass sorted table of elemental compositions to generate all formulas within a mass range. The
+ * table is built once for an element range and reused for many queries, e.g., for all rows of a
+ * feature list.
+ * <p>
+ * Enumerating all compositions including C and H would not fit into memory for the default CHNOPS
+ * ranges. Therefore, the two lightest isotopes (usually H and C) are kept free and only the
+ * compositions of all other isotopes are stored, sorted by mass. A query iterates the counts of the
+ * free isotopes and finds the matching compositions by a binary search on the remaining mass.
+ * <p>
+ * Tables can be cached on disk with {@link #loadOrBuild(MolecularFormulaRange, double, File)}. A
+ * cached table is reused for the same isotopes and count ranges as long as it covers the queried
+ * mass.
+ */
+public class FormulaMassTable {
+
+  private static final Logger logger = Logger.getLogger(FormulaMassTable.class.getName());
+
+  private static final int CACHE_MAGIC = 0x4D5A4654;
+  /**
+   * Increment on changes of the cache file layout
+   */
+  private static final int CACHE_VERSION = 1;
+
+  /**
+   * The summation order of the masses differs from the final mass calculation. Searches are widened
+   * by this margin and every candidate is checked with its exact mass.
+   */
+  private static final double SEARCH_MARGIN = 1E-6;
+
+  private static final int MAX_FREE_ISOTOPES = 2;
+
+  private final IIsotope[] isotopes;
+  private final double[] isotopeMasses;
+  private final int[] freeIsotopes;
+  private final int[] freeMin;
+  private final int[] freeMax;
+  private final int[] tableIsotopes;
+  private final double maxMass;
+
+  // sorted masses and the isotope counts of the table isotopes (tableIsotopes.length per entry)
+  private final double[] masses;
+  private final int[] counts;
+
+  /**
+   * @param elementCounts the isotopes and their count ranges
+   * @param maxMass       the maximum neutral mass that will be queried
+   */
+  public FormulaMassTable(@NotNull MolecularFormulaRange elementCounts, double maxMass) {
+    this(elementCounts, maxMass, null, null);
+  }
+
+  /**
+   * @param cachedMasses the sorted masses of a cached table or null to enumerate the compositions
+   * @param cachedCounts the isotope counts of a cached table or null to enumerate the compositions
+   */
+  private FormulaMassTable(@NotNull MolecularFormulaRange elementCounts, double maxMass,
+      @Nullable double[] cachedMasses, @Nullable int[] cachedCounts) {
+    this.maxMass = maxMass;
+    final List<IIsotope> isotopeList = new ArrayList<>();
+    for (IIsotope isotope : elementCounts.isotopes()) {
+      isotopeList.add(isotope);
+    }
+    isotopes = isotopeList.toArray(IIsotope[]::new);
+    isotopeMasses = new double[isotopes.length];
+    for (int i = 0; i < isotopes.length; i++) {
+      isotopeMasses[i] = isotopes[i].getExactMass();
+    }
+
+    // keep the lightest isotopes free
+    final int[] byMass = new int[isotopes.length];
+    for (int i = 0; i < byMass.length; i++) {
+      byMass[i] = i;
+    }
+    IntArrays.quickSort(byMass, (a, b) -> Double.compare(isotopeMasses[a], isotopeMasses[b]));
+    final int numFree = Math.min(MAX_FREE_ISOTOPES, isotopes.length);
+    freeIsotopes = new int[numFree];
+    freeMin = new int[numFree];
+    freeMax = new int[numFree];
+    double minFreeMass = 0d;
+    for (int i = 0; i < numFree; i++) {
+      freeIsotopes[i] = byMass[i];
+      freeMin[i] = elementCounts.getIsotopeCountMin(isotopes[byMass[i]]);
+      freeMax[i] = elementCounts.getIsotopeCountMax(isotopes[byMass[i]]);
+      minFreeMass += freeMin[i] * isotopeMasses[byMass[i]];
+    }
+    tableIsotopes = new int[isotopes.length - numFree];
+    for (int i = numFree; i < byMass.length; i++) {
+      tableIsotopes[i - numFree] = byMass[i];
+    }
+    if (cachedMasses != null && cachedCounts != null) {
+      masses = cachedMasses;
+      counts = cachedCounts;
+      return;
+    }
+
+    final int[] tableMin = new int[tableIsotopes.length];
+    final int[] tableMax = new int[tableIsotopes.length];
+    for (int i = 0; i < tableIsotopes.length; i++) {
+      tableMin[i] = elementCounts.getIsotopeCountMin(isotopes[tableIsotopes[i]]);
+      tableMax[i] = elementCounts.getIsotopeCountMax(isotopes[tableIsotopes[i]]);
+    }
+
+    // enumerate all compositions of the table isotopes up to the maximum remaining mass
+    final DoubleArrayList massList = new DoubleArrayList();
+    final IntArrayList countList = new IntArrayList();
+    enumerate(0, 0d, new int[tableIsotopes.length], tableMin, tableMax,
+        maxMass - minFreeMass + SEARCH_MARGIN, massList, countList);
+
+    final int n = massList.size();
+    final double[] unsortedMasses = massList.toDoubleArray();
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    IntArrays.parallelQuickSort(order, 0, n,
+        (a, b) -> Double.compare(unsortedMasses[a], unsortedMasses[b]));
+
+    final int k = tableIsotopes.length;
+    masses = new double[n];
+    counts = new int[n * k];
+    for (int i = 0; i < n; i++) {
+      masses[i] = unsortedMasses[order[i]];
+      for (int j = 0; j < k; j++) {
+        counts[i * k + j] = countList.getInt(order[i] * k + j);
+      }
+    }
+  }
+
+  private void enumerate(int isotope, double mass, int[] current, int[] min, int[] max,
+      double maxMass, DoubleArrayList massList, IntArrayList countList) {
+    if (isotope == current.length) {
+      massList.add(mass);
+      countList.addElements(countList.size(), current);
+      return;
+    }
+    final double isotopeMass = isotopeMasses[tableIsotopes[isotope]];
+    for (int count = min[isotope]; count <= max[isotope]; count++) {
+      final double newMass = mass + count * isotopeMass;
+      if (newMass > maxMass) {
+        break;
+      }
+      current[isotope] = count;
+      enumerate(isotope + 1, newMass, current, min, max, maxMass, massList, countList);
+    }
+    current[isotope] = 0;
+  }
+
+  /**
+   * Reads the table of the element ranges from the cache directory if a cached table covers the
+   * maximum mass. Otherwise, the table is built and written to the cache directory. Failures to
+   * read or write the cache are logged and the table is built in memory.
+   *
+   * @param elementCounts  the isotopes and their count ranges
+   * @param maxMass        the maximum neutral mass that will be queried
+   * @param cacheDirectory the directory of the cached tables
+   * @return the cached or newly built table
+   */
+  @NotNull
+  public static FormulaMassTable loadOrBuild(@NotNull MolecularFormulaRange elementCounts,
+      double maxMass, @NotNull File cacheDirectory) {
+    final String key = getCacheKey(elementCounts);
+    final File file = new File(cacheDirectory,
+        "formula_mass_table_" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8))
+            + ".bin");
+
+    if (file.exists()) {
+      try {
+        final FormulaMassTable cached = readCache(file, key, elementCounts, maxMass);
+        if (cached != null) {
+          logger.finest(() -> "Read formula mass table from " + file.getAbsolutePath());
+          return cached;
+        }
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot read cached formula mass table " + file.getAbsolutePath()
+            + ". The table is built again.", e);
+      }
+    }
+
+    final FormulaMassTable table = new FormulaMassTable(elementCounts, maxMass);
+    try {
+      table.writeCache(file, key);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot write formula mass table to " + file.getAbsolutePath(), e);
+    }
+    return table;
+  }
+
+  /**
+   * The key identifies the isotopes, their masses, and count ranges of a table.
+   */
+  private static String getCacheKey(MolecularFormulaRange elementCounts) {
+    final StringBuilder key = new StringBuilder();
+    for (IIsotope isotope : elementCounts.isotopes()) {
+      key.append(isotope.getSymbol()).append(isotope.getMassNumber()).append('=')
+          .append(isotope.getExactMass()).append('[')
+          .append(elementCounts.getIsotopeCountMin(isotope)).append(',')
+          .append(elementCounts.getIsotopeCountMax(isotope)).append("];");
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return the cached table or null if the cache belongs to other element ranges or does not
+   * cover the maximum mass
+   */
+  @Nullable
+  private static FormulaMassTable readCache(File file, String key,
+      MolecularFormulaRange elementCounts, double maxMass) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16))) {
+      if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION || !key.equals(
+          in.readUTF())) {
+        return null;
+      }
+      final double cachedMaxMass = in.readDouble();
+      if (cachedMaxMass < maxMass) {
+        return null;
+      }
+      final int n = in.readInt();
+      final int k = in.readInt();
+      if (n < 0 || k < 0) {
+        throw new IOException("Invalid table size in " + file.getAbsolutePath());
+      }
+      final double[] masses = new double[n];
+      for (int i = 0; i < n; i++) {
+        masses[i] = in.readDouble();
+      }
+      final int[] counts = new int[n * k];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = in.readInt();
+      }
+      return new FormulaMassTable(elementCounts, cachedMaxMass, masses, counts);
+    }
+  }
+
+  /**
+   * Writes to a temporary file first and moves it to the final location, so concurrent readers
+   * never see partially written tables.
+   */
+  private void writeCache(File file, String key) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    final File tmpFile = File.createTempFile("formula_mass_table_", ".part",
+        file.getParentFile());
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath()), 1 << 16))) {
+        out.writeInt(CACHE_MAGIC);
+        out.writeInt(CACHE_VERSION);
+        out.writeUTF(key);
+        out.writeDouble(maxMass);
+        out.writeInt(masses.length);
+        out.writeInt(tableIsotopes.length);
+        for (double mass : masses) {
+          out.writeDouble(mass);
+        }
+        for (int count : counts) {
+          out.writeInt(count);
+        }
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmpFile.toPath());
+    }
+  }
+
+  /**
+   * @return the maximum neutral mass covered by this table
+   */
+  public double getMaxMass() {
+    return maxMass;
+  }
+
+  /**
+   * @return number of stored compositions
+   */
+  public int size() {
+    return masses.length;
+  }
+
+  /**
+   * @param massRange the neutral mass range
+   * @param builder   the builder for the resulting formulas
+   * @return all formulas within the mass range
+   */
+  @NotNull
+  public List<IMolecularFormula> getFormulas(@NotNull Range<Double> massRange,
+      @NotNull IChemObjectBuilder builder) {
+    final List<IMolecularFormula> formulas = new ArrayList<>();
+    if (masses.length == 0) {
+      return formulas;
+    }
+
+    final int[] freeCounts = new int[freeIsotopes.length];
+    collectFormulas(0, 0d, freeCounts, massRange, builder, formulas);
+    return formulas;
+  }
+
+  private void collectFormulas(int free, double freeMass, int[] freeCounts,
+      Range<Double> massRange, IChemObjectBuilder builder, List<IMolecularFormula> formulas) {
+    final double lower = massRange.lowerEndpoint();
+    final double upper = massRange.upperEndpoint();
+
+    if (free < freeIsotopes.length) {
+      final double isotopeMass = isotopeMasses[freeIsotopes[free]];
+      for (int count = freeMin[free]; count <= freeMax[free]; count++) {
+        final double mass = freeMass + count * isotopeMass;
+        if (mass + masses[0] > upper + SEARCH_MARGIN) {
+          break;
+        }
+        freeCounts[free] = count;
+        collectFormulas(free + 1, mass, freeCounts, massRange, builder, formulas);
+      }
+      return;
+    }
+
+    final int k = tableIsotopes.length;
+    for (int i = firstIndexAtLeast(lower - freeMass - SEARCH_MARGIN);
+        i < masses.length && masses[i] <= upper - freeMass + SEARCH_MARGIN; i++) {
+      final int[] isotopeCounts = new int[isotopes.length];
+      for (int f = 0; f < freeIsotopes.length; f++) {
+        isotopeCounts[freeIsotopes[f]] = freeCounts[f];
+      }
+      for (int j = 0; j < k; j++) {
+        isotopeCounts[tableIsotopes[j]] = counts[i * k + j];
+      }
+
+      double exactMass = 0d;
+      for (int j = 0; j < isotopes.length; j++) {
+        exactMass += isotopeCounts[j] * isotopeMasses[j];
+      }
+      if (!massRange.contains(exactMass)) {
+        continue;
+      }
+
+      final IMolecularFormula formula = builder.newInstance(IMolecularFormula.class);
+      for (int j = 0; j < isotopes.length; j++) {
+        if (isotopeCounts[j] > 0) {
+          formula.addIsotope(isotopes[j], isotopeCounts[j]);
+        }
+      }
+      formulas.add(formula);
+    }
+  }
+
+  private int firstIndexAtLeast(double value) {
+    int low = 0;
+    int high = masses.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (masses[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
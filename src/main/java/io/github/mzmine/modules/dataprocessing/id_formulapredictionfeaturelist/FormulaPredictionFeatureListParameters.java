@@ -33,6 +33,7 @@ import io.github.mzmine.modules.tools.msmsscore.MSMSScoreParameters;
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.IonMobilitySupport;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.ComboParameter;
 import io.github.mzmine.parameters.parametertypes.IntegerParameter;
 import io.github.mzmine.parameters.parametertypes.elements.ElementsCompositionRangeParameter;
@@ -64,6 +65,12 @@ public class FormulaPredictionFeatureListParameters extends SimpleParameterSet {
   public static final ElementsCompositionRangeParameter elements =
       new ElementsCompositionRangeParameter("Elements", "Elements and ranges");
 
+  public static final BooleanParameter cacheCompositions = new BooleanParameter(
+      "Cache elemental compositions",
+      "Store the table of all elemental compositions of the element ranges in the temporary "
+          + "directory and reuse it in later runs with the same elements and ranges",
+      false);
+
   public static final OptionalModuleParameter elementalRatios =
       new OptionalModuleParameter("Element count heuristics",
           "Restrict formulas by heuristic restrictions of elemental counts and ratios",
@@ -83,8 +90,8 @@ public class FormulaPredictionFeatureListParameters extends SimpleParameterSet {
 
   public FormulaPredictionFeatureListParameters() {
     super(new Parameter[] {charge, ionization, FEATURE_LISTS, sorting, mzTolerance,
-        maxBestFormulasPerFeature, elements, elementalRatios, rdbeRestrictions, isotopeFilter,
-        msmsFilter},
+        maxBestFormulasPerFeature, elements, cacheCompositions, elementalRatios, rdbeRestrictions,
+        isotopeFilter, msmsFilter},
         "https://mzmine.github.io/mzmine_documentation/module_docs/id_spectra_chem_formula/chem-formula-pred.html");
   }
 
@@ -36,6 +36,7 @@ import io.github.mzmine.datamodel.features.SimpleFeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.types.DataTypes;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.dataprocessing.id_formula_sort.FormulaSortParameters;
+import io.github.mzmine.modules.dataprocessing.id_formulaprediction.FormulaMassTable;
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.ResultFormula;
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.elements.ElementalHeuristicChecker;
 import io.github.mzmine.modules.dataprocessing.id_formulaprediction.restrictions.elements.ElementalHeuristicParameters;
@@ -52,13 +53,15 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.FormulaUtils;
+import java.io.File;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.formula.MolecularFormulaGenerator;
 import org.openscience.cdk.formula.MolecularFormulaRange;
 import org.openscience.cdk.interfaces.IChemObjectBuilder;
 import org.openscience.cdk.interfaces.IMolecularFormula;
@@ -66,6 +69,11 @@ import org.openscience.cdk.silent.SilentChemObjectBuilder;
 
 public class FormulaPredictionFeatureListTask extends AbstractTask {
 
+  /**
+   * Folder in the temporary directory for cached elemental composition tables
+   */
+  public static final String CACHE_FOLDER = "mzmine_formula_mass_tables";
+
   private final Logger logger = Logger.getLogger(this.getClass().getName());
   private final MolecularFormulaRange elementCounts;
   private final Double minIsotopeScore;
@@ -81,14 +89,14 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
   private final ParameterSet parameters;
   private final MZTolerance mzTolerance;
   private final int maxBestFormulasPerFeature;
+  private final boolean cacheCompositions;
   private Double sortPPMFactor;
   private Double sortMSMSFactor;
   private Double sortIsotopeFactor;
-  private MolecularFormulaGenerator generator;
-  private String message;
-  private int totalRows, finishedRows;
+  private volatile String message;
+  private final AtomicInteger finishedRows = new AtomicInteger(0);
+  private int totalRows;
   private Boolean isSorting;
-  private List<ResultFormula> resultingFormulas;
   private Range<Double> rdbeRange;
   private Boolean rdbeIsInteger;
   private Boolean checkHCRatio;
@@ -113,6 +121,8 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
         .getValue();
     elementCounts = parameters.getParameter(FormulaPredictionFeatureListParameters.elements)
         .getValue();
+    cacheCompositions = parameters.getValue(
+        FormulaPredictionFeatureListParameters.cacheCompositions);
 
     checkIsotopes = parameters.getParameter(FormulaPredictionFeatureListParameters.isotopeFilter)
         .getValue();
@@ -185,7 +195,7 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
     if (totalRows == 0) {
       return 0.0;
     }
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   @Override
@@ -198,74 +208,104 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
 
     setStatus(TaskStatus.PROCESSING);
 
-    totalRows = featureList.getNumberOfRows();
-
     featureList.addRowType(DataTypes
         .get(io.github.mzmine.datamodel.features.types.annotations.formula.FormulaListType.class));
 
-    for (FeatureListRow row : featureList.getRows()) {
+    final List<FeatureListRow> rows = featureList.getRows().stream()
+        .filter(row -> row.getPeakIdentities().isEmpty()).toList();
+    totalRows = rows.size();
+    if (rows.isEmpty()) {
+      finish();
+      return;
+    }
+
+    // enumerate the elemental compositions once for all rows
+    double maxMass = 0d;
+    for (FeatureListRow row : rows) {
+      maxMass = Math.max(maxMass, mzTolerance.getToleranceRange(getSearchedMass(row))
+          .upperEndpoint());
+    }
+    message = "Formula prediction: building elemental composition table up to mass "
+        + MZmineCore.getConfiguration().getMZFormat().format(maxMass);
+    final FormulaMassTable formulaTable = cacheCompositions ? FormulaMassTable.loadOrBuild(
+        elementCounts, maxMass, new File(System.getProperty("java.io.tmpdir"), CACHE_FOLDER))
+        : new FormulaMassTable(elementCounts, maxMass);
+    logger.finest(() -> "Built formula mass table with " + formulaTable.size()
+        + " compositions for " + featureList.getName());
+
+    if (isCanceled()) {
+      return;
+    }
 
-      if (row.getPeakIdentities().size() > 0) {
-        continue;
+    message = "Formula prediction for " + featureList.getName();
+    rows.parallelStream().forEach(row -> {
+      if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
+        return;
       }
-      this.resultingFormulas = new ArrayList<>();
+      predictFormulas(formulaTable, row);
+      finishedRows.incrementAndGet();
+    });
 
-      double searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+    if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
+      return;
+    }
 
-      message = "Formula prediction for " + MZmineCore.getConfiguration().getMZFormat()
-          .format(searchedMass);
+    finish();
+  }
 
-      Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
+  private void finish() {
+    featureList.getAppliedMethods().add(
+        new SimpleFeatureListAppliedMethod(FormulaPredictionFeatureListModule.class, parameters,
+            getModuleCallDate()));
 
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
-      generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
-          massRange.upperEndpoint(), elementCounts);
+    logger.finest("Finished formula search for all the features");
 
-      IMolecularFormula cdkFormula;
+    setStatus(TaskStatus.FINISHED);
+  }
 
-      // create a map to store ResultFormula and relative mass deviation
-      // for sorting
-      while ((cdkFormula = generator.getNextFormula()) != null) {
-        // Mass is ok, so test other constraints
-        ResultFormula molf = checkConstraints(cdkFormula, row, searchedMass);
+  private double getSearchedMass(FeatureListRow row) {
+    return (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+  }
 
-        if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
-          return;
-        }
+  /**
+   * Queries all formulas within the mass tolerance of a row and adds the formulas that pass all
+   * constraints to the row.
+   */
+  private void predictFormulas(FormulaMassTable formulaTable, FeatureListRow row) {
+    final double searchedMass = getSearchedMass(row);
+    final Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
 
-        if (molf != null) {
-          resultingFormulas.add(molf);
-        }
-      }
+    final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+    final List<ResultFormula> resultingFormulas = new ArrayList<>();
+    for (IMolecularFormula cdkFormula : formulaTable.getFormulas(massRange, builder)) {
+      // Mass is ok, so test other constraints
+      ResultFormula molf = checkConstraints(cdkFormula, row, searchedMass);
 
-      if (isCanceled()) {
+      if (isCanceled() || getStatus().equals(TaskStatus.ERROR)) {
         return;
       }
 
-      // Add the new formula entry top results
-      if (!resultingFormulas.isEmpty()) {
-        row.setFormulas(resultingFormulas
-            .subList(0, Math.min(resultingFormulas.size() - 1, maxBestFormulasPerFeature)));
-      }
-
-      if (isCanceled()) {
-        return;
+      if (molf != null) {
+        resultingFormulas.add(molf);
       }
-      finishedRows++;
     }
 
-    if (isCanceled()) {
+    if (resultingFormulas.isEmpty()) {
       return;
     }
 
-    featureList.getAppliedMethods().add(
-        new SimpleFeatureListAppliedMethod(FormulaPredictionFeatureListModule.class, parameters,
-            getModuleCallDate()));
-
-    logger.finest("Finished formula search for all the features");
-
-    setStatus(TaskStatus.FINISHED);
+    // sort before truncating so the best formulas are kept
+    if (isSorting) {
+      FormulaUtils.sortFormulaList(resultingFormulas, searchedMass, sortPPMFactor.floatValue(),
+          sortIsotopeFactor.floatValue(), sortMSMSFactor.floatValue());
+    } else {
+      resultingFormulas.sort(
+          Comparator.comparingDouble(f -> Math.abs(f.getPpmDiff(searchedMass))));
+    }
 
+    // Add the new formula entry top results
+    row.setFormulas(new ArrayList<>(resultingFormulas
+        .subList(0, Math.min(resultingFormulas.size(), maxBestFormulasPerFeature))));
   }
 
   /**
@@ -352,15 +392,4 @@ public class FormulaPredictionFeatureListTask extends AbstractTask {
         msmsAnnotations, searchedMass);
   }
 
-  @Override
-  public void cancel() {
-    super.cancel();
-
-    // We need to cancel the formula generator, because searching for next
-    // candidate formula may take a looong time
-    if (generator != null) {
-      generator.cancel();
-    }
-
-  }
 }
@@ -28,6 +28,7 @@ package io.github.mzmine.modules.dataprocessing.id_lipididentification;
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureListRow;
@@ -40,6 +41,8 @@ import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidident
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.*;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.customlipidclass.CustomLipidClass;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidFactory;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidIonMassIndex;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidIonMassIndex.LipidIon;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.MatchedLipid;
 import io.github.mzmine.modules.visualization.spectra.simplespectra.datapointprocessing.isotopes.MassListDeisotoper;
 import io.github.mzmine.modules.visualization.spectra.simplespectra.datapointprocessing.isotopes.MassListDeisotoperParameters;
@@ -56,8 +59,6 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
-import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
-import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
 /**
  * Task to search and annotate lipids in feature list
@@ -85,6 +86,7 @@ public class LipidSearchTask extends AbstractTask {
   private double minMsMsScore;
 
   private final ParameterSet parameters;
+  private final MSMSLipidTools msmsLipidTools = new MSMSLipidTools();
 
   public LipidSearchTask(ParameterSet parameters, FeatureList featureList,
       @NotNull Instant moduleCallDate) {
@@ -163,14 +165,15 @@ public class LipidSearchTask extends AbstractTask {
     }
     totalSteps = rows.size();
 
-    // build lipid species database
+    // build lipid species database and calculate all ion masses once
     Set<ILipidAnnotation> lipidDatabase = buildLipidDatabase();
+    LipidIonMassIndex lipidIonMassIndex = new LipidIonMassIndex(lipidDatabase);
+    logger.finest(() -> "Built lipid ion mass index with " + lipidIonMassIndex.size()
+        + " ions of " + lipidDatabase.size() + " lipids");
 
     // start lipid annotation
     rows.parallelStream().forEach(row -> {
-      for (ILipidAnnotation lipidAnnotation : lipidDatabase) {
-        findPossibleLipid(lipidAnnotation, row);
-      }
+      findPossibleLipids(lipidIonMassIndex, row);
       finishedSteps++;
     });
 
@@ -222,41 +225,45 @@ public class LipidSearchTask extends AbstractTask {
   }
 
   /**
-   * Check if candidate peak may be a possible adduct of a given main peak
+   * Check if the row may be an ion of any lipid in the database. Annotations are added per lipid in
+   * the order of the lipid database.
    */
-  private void findPossibleLipid(ILipidAnnotation lipid, FeatureListRow row) {
+  private void findPossibleLipids(LipidIonMassIndex lipidIonMassIndex, FeatureListRow row) {
     if (isCanceled()) {
       return;
     }
-    Set<MatchedLipid> possibleRowAnnotations = new HashSet<>();
-    Set<IonizationType> ionizationTypeList = new HashSet<>();
-    LipidFragmentationRule[] fragmentationRules = lipid.getLipidClass().getFragmentationRules();
-    for (LipidFragmentationRule fragmentationRule : fragmentationRules) {
-      ionizationTypeList.add(fragmentationRule.getIonizationType());
+
+    // MS1 check
+    Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
+    List<LipidIon> lipidIons = lipidIonMassIndex.findIons(mzTolRange12C);
+    if (lipidIons.isEmpty()) {
+      return;
     }
-    for (IonizationType ionization : ionizationTypeList) {
-      if (!Objects.requireNonNull(row.getBestFeature().getRepresentativeScan()).getPolarity()
-          .equals(ionization.getPolarity())) {
+
+    PolarityType polarity = Objects.requireNonNull(
+        row.getBestFeature().getRepresentativeScan()).getPolarity();
+    Set<MatchedLipid> possibleRowAnnotations = new HashSet<>();
+    int lipidIndex = -1;
+    for (LipidIon lipidIon : lipidIons) {
+      IonizationType ionization = lipidIon.ionization();
+      if (!polarity.equals(ionization.getPolarity())) {
         continue;
       }
-      double lipidIonMass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
-          AtomContainerManipulator.MonoIsotopic) + ionization.getAddedMass();
-      Range<Double> mzTolRange12C = mzTolerance.getToleranceRange(row.getAverageMZ());
-
-      // MS1 check
-      if (mzTolRange12C.contains(lipidIonMass)) {
+      if (lipidIon.lipidIndex() != lipidIndex) {
+        addAnnotationsToFeatureList(row, possibleRowAnnotations);
+        possibleRowAnnotations = new HashSet<>();
+        lipidIndex = lipidIon.lipidIndex();
+      }
 
-        // If search for MSMS fragments is selected search for fragments
-        if (searchForMSMSFragments.booleanValue()) {
-          possibleRowAnnotations.addAll(searchMsmsFragments(row, ionization, lipid));
-        } else {
+      // If search for MSMS fragments is selected search for fragments
+      if (searchForMSMSFragments.booleanValue()) {
+        possibleRowAnnotations.addAll(searchMsmsFragments(row, lipidIon));
+      } else {
 
-          // make MS1 annotation
-          possibleRowAnnotations
-              .add(new MatchedLipid(lipid, row.getAverageMZ(), ionization, null, 0.0));
-        }
+        // make MS1 annotation
+        possibleRowAnnotations
+            .add(new MatchedLipid(lipidIon.lipid(), row.getAverageMZ(), ionization, null, 0.0));
       }
-
     }
     addAnnotationsToFeatureList(row, possibleRowAnnotations);
   }
@@ -274,8 +281,9 @@ public class LipidSearchTask extends AbstractTask {
   /**
    * This method searches for MS/MS fragments. A mass list for MS2 scans will be used if present.
    */
-  private Set<MatchedLipid> searchMsmsFragments(FeatureListRow row, IonizationType ionization,
-      ILipidAnnotation lipid) {
+  private Set<MatchedLipid> searchMsmsFragments(FeatureListRow row, LipidIon lipidIon) {
+    final ILipidAnnotation lipid = lipidIon.lipid();
+    final IonizationType ionization = lipidIon.ionization();
 
     Set<MatchedLipid> matchedLipids = new HashSet<>();
 
@@ -291,14 +299,13 @@ public class LipidSearchTask extends AbstractTask {
         DataPoint[] massList = null;
         massList = msmsScan.getMassList().getDataPoints();
         massList = deisotopeMassList(massList);
-        MSMSLipidTools msmsLipidTools = new MSMSLipidTools();
         LipidFragmentationRule[] rules = lipid.getLipidClass().getFragmentationRules();
         Set<LipidFragment> annotatedFragments = new HashSet<>();
         if (rules != null && rules.length > 0) {
           for (DataPoint dataPoint : massList) {
             Range<Double> mzTolRangeMSMS = mzToleranceMS2.getToleranceRange(dataPoint.getMZ());
             LipidFragment annotatedFragment = msmsLipidTools.checkForClassSpecificFragment(
-                mzTolRangeMSMS, lipid, ionization, rules,
+                mzTolRangeMSMS, lipid, ionization, lipidIon.ionMass(), rules,
                 new SimpleDataPoint(dataPoint.getMZ(), dataPoint.getIntensity()), msmsScan);
             if (annotatedFragment != null) {
               annotatedFragments.add(annotatedFragment);
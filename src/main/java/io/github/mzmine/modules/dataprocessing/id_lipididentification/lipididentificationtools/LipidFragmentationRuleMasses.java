@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidClass;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.LipidFragment;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidChainType;
+import io.github.mzmine.util.FormulaUtils;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fragment masses of a single {@link LipidFragmentationRule} for all possible chain formulas. The
+ * masses are calculated once and kept sorted, so that MS/MS data points can be matched with a
+ * binary search instead of parsing every chain formula again for every data point. For neutral loss
+ * rules, the chain masses are stored and the fragment m/z is derived from the precursor m/z of the
+ * annotated lipid.
+ */
+class LipidFragmentationRuleMasses {
+
+  private static final ChainTools CHAIN_TOOLS = new ChainTools();
+
+  /**
+   * Tolerance used to widen the search window of neutral loss rules. Every candidate in the window
+   * is checked with the exact fragment m/z afterwards.
+   */
+  private static final double NEUTRAL_LOSS_SEARCH_MARGIN = 1E-6;
+
+  private static final ChainMasses FATTY_ACIDS = new ChainMasses(
+      CHAIN_TOOLS.calculateFattyAcidFormulas());
+  private static final ChainMasses HYDRO_CARBONS = new ChainMasses(
+      CHAIN_TOOLS.calculateHydroCarbonFormulas());
+
+  private final LipidFragmentationRule rule;
+  private final LipidChainType chainType;
+  private final boolean neutralLoss;
+  private final int fragmentSign;
+  private final double fragmentMass;
+
+  // sorted by key, key is the fragment m/z or the subtracted mass for neutral losses
+  private final double[] keys;
+  private final double[] reportedMzs;
+  private final int[] order;
+  private final int[] chainLengths;
+  private final int[] doubleBonds;
+
+  private LipidFragmentationRuleMasses(LipidFragmentationRule rule, LipidChainType chainType,
+      boolean neutralLoss, int fragmentSign, double fragmentMass, double[] keys,
+      double[] reportedMzs, int[] chainLengths, int[] doubleBonds) {
+    this.rule = rule;
+    this.chainType = chainType;
+    this.neutralLoss = neutralLoss;
+    this.fragmentSign = fragmentSign;
+    this.fragmentMass = fragmentMass;
+
+    final int n = keys.length;
+    final Integer[] sorted = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, (a, b) -> Double.compare(keys[a], keys[b]));
+
+    this.keys = new double[n];
+    this.reportedMzs = reportedMzs != null ? new double[n] : null;
+    this.order = new int[n];
+    this.chainLengths = chainLengths != null ? new int[n] : null;
+    this.doubleBonds = doubleBonds != null ? new int[n] : null;
+    for (int i = 0; i < n; i++) {
+      final int index = sorted[i];
+      this.keys[i] = keys[index];
+      this.order[i] = index;
+      if (reportedMzs != null) {
+        this.reportedMzs[i] = reportedMzs[index];
+      }
+      if (chainLengths != null) {
+        this.chainLengths[i] = chainLengths[index];
+        this.doubleBonds[i] = doubleBonds[index];
+      }
+    }
+  }
+
+  /**
+   * @return the fragment masses of the given rule or null if the rule type is not supported.
+   */
+  static LipidFragmentationRuleMasses of(LipidFragmentationRule rule) {
+    final LipidFragmentationRuleType ruleType = rule.getLipidFragmentationRuleType();
+    if (ruleType == null) {
+      return null;
+    }
+    final boolean negative = rule.getPolarityType().equals(PolarityType.NEGATIVE);
+
+    switch (ruleType) {
+      case HEADGROUP_FRAGMENT: {
+        final double mz = FormulaUtils.calculateMzRatio(rule.getMolecularFormula());
+        return new LipidFragmentationRuleMasses(rule, null, false, 0, 0d, new double[]{mz}, null,
+            null, null);
+      }
+      case HEADGROUP_FRAGMENT_NL: {
+        final double mass = FormulaUtils.calculateExactMass(rule.getMolecularFormula());
+        return new LipidFragmentationRuleMasses(rule, LipidChainType.ACYL_CHAIN, true, 0, 0d,
+            new double[]{mass}, null, null, null);
+      }
+      case ACYLCHAIN_FRAGMENT: {
+        final double[] mzs = negative ? FATTY_ACIDS.plus(
+            IonizationType.NEGATIVE_HYDROGEN.getAddedMass()) : new double[0];
+        return forChains(rule, LipidChainType.ACYL_CHAIN, false, 0, mzs,
+            negative ? FATTY_ACIDS : ChainMasses.EMPTY);
+      }
+      case ACYLCHAIN_FRAGMENT_NL:
+        return forChains(rule, LipidChainType.ACYL_CHAIN, true, 0, FATTY_ACIDS.masses,
+            FATTY_ACIDS);
+      case ACYLCHAIN_MINUS_FORMULA_FRAGMENT: {
+        final double[] mzs =
+            negative ? FATTY_ACIDS.plus(-fragmentMass(rule)) : new double[0];
+        return forChains(rule, LipidChainType.ACYL_CHAIN, false, 0, mzs,
+            negative ? FATTY_ACIDS : ChainMasses.EMPTY);
+      }
+      case ACYLCHAIN_MINUS_FORMULA_FRAGMENT_NL:
+        return forChains(rule, LipidChainType.ACYL_CHAIN, true, -1, FATTY_ACIDS.masses,
+            FATTY_ACIDS);
+      case ACYLCHAIN_PLUS_FORMULA_FRAGMENT:
+        return forChains(rule, LipidChainType.ACYL_CHAIN, false, 0,
+            FATTY_ACIDS.plusAndIonize(fragmentMass(rule), rule.getPolarityType()), FATTY_ACIDS);
+      case ACYLCHAIN_PLUS_FORMULA_FRAGMENT_NL:
+        return forChains(rule, LipidChainType.ACYL_CHAIN, true, 1, FATTY_ACIDS.masses,
+            FATTY_ACIDS);
+      case TWO_ACYLCHAINS_PLUS_FORMULA_FRAGMENT:
+        return forTwoAcylChains(rule);
+      case ALKYLCHAIN_FRAGMENT:
+        return forChains(rule, LipidChainType.ALKYL_CHAIN, false, 0,
+            HYDRO_CARBONS.plusAndIonize(0d, rule.getPolarityType()), HYDRO_CARBONS);
+      case ALKYLCHAIN_FRAGMENT_NL:
+        return forChains(rule, LipidChainType.ALKYL_CHAIN, true, 0, HYDRO_CARBONS.masses,
+            HYDRO_CARBONS);
+      case ALKYLCHAIN_MINUS_FORMULA_FRAGMENT: {
+        if (!negative) {
+          return forChains(rule, LipidChainType.ALKYL_CHAIN, false, 0, new double[0],
+              ChainMasses.EMPTY);
+        }
+        final double mzFragmentExact = fragmentMass(rule);
+        final double[] mzs = new double[HYDRO_CARBONS.size()];
+        for (int i = 0; i < mzs.length; i++) {
+          mzs[i] = FormulaUtils.calculateExactMass(
+              HYDRO_CARBONS.formulas.get(i) + IonizationType.NEGATIVE_HYDROGEN.getAddedMass())
+              - mzFragmentExact;
+        }
+        return forChains(rule, LipidChainType.ALKYL_CHAIN, false, 0, mzs, HYDRO_CARBONS);
+      }
+      case ALKYLCHAIN_MINUS_FORMULA_FRAGMENT_NL:
+        return forChains(rule, LipidChainType.ACYL_CHAIN, true, -1, HYDRO_CARBONS.masses,
+            HYDRO_CARBONS);
+      case ALKYLCHAIN_PLUS_FORMULA_FRAGMENT:
+        return forChains(rule, LipidChainType.ACYL_CHAIN, false, 0,
+            HYDRO_CARBONS.plusAndIonize(fragmentMass(rule), rule.getPolarityType()),
+            HYDRO_CARBONS);
+      case ALKYLCHAIN_PLUS_FORMULA_FRAGMENT_NL:
+        return forChains(rule, LipidChainType.ACYL_CHAIN, true, 1, HYDRO_CARBONS.masses,
+            HYDRO_CARBONS);
+      default:
+        return null;
+    }
+  }
+
+  private static LipidFragmentationRuleMasses forChains(LipidFragmentationRule rule,
+      LipidChainType chainType, boolean neutralLoss, int fragmentSign, double[] keys,
+      ChainMasses chains) {
+    final double mzFragmentExact = fragmentSign != 0 ? fragmentMass(rule) : 0d;
+    return new LipidFragmentationRuleMasses(rule, chainType, neutralLoss, fragmentSign,
+        mzFragmentExact, keys, null, chains.chainLengths, chains.doubleBonds);
+  }
+
+  private static LipidFragmentationRuleMasses forTwoAcylChains(LipidFragmentationRule rule) {
+    final double mzFragmentExact = fragmentMass(rule);
+    final double[] masses = FATTY_ACIDS.masses;
+    final int n = masses.length;
+    final double[] keys = new double[n * n];
+    final double[] reported = new double[n * n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        final double mzExact = masses[i] + masses[j] + mzFragmentExact;
+        keys[i * n + j] = mzExact;
+        reported[i * n + j] = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
+      }
+    }
+    return new LipidFragmentationRuleMasses(rule, null, false, 0, 0d, keys, reported, null, null);
+  }
+
+  private static double fragmentMass(LipidFragmentationRule rule) {
+    return FormulaUtils.calculateExactMass(rule.getMolecularFormula());
+  }
+
+  static double ionizeFragmentBasedOnPolarity(double mzExact, PolarityType polarityType) {
+    if (polarityType.equals(PolarityType.NEGATIVE)) {
+      return mzExact + IonizationType.NEGATIVE.getAddedMass();
+    } else if (polarityType.equals(PolarityType.POSITIVE)) {
+      return mzExact + IonizationType.POSITIVE.getAddedMass();
+    }
+    return mzExact;
+  }
+
+  LipidFragmentationRule getRule() {
+    return rule;
+  }
+
+  /**
+   * Searches the first matching fragment of this rule in the original order of the chain formulas.
+   *
+   * @param mzTolRangeMSMS the tolerance range around the MS/MS data point
+   * @param mzPrecursorExact the exact precursor m/z of the lipid, used for neutral losses
+   * @return the matched fragment or null
+   */
+  LipidFragment findFragment(Range<Double> mzTolRangeMSMS, double mzPrecursorExact,
+      ILipidClass lipidClass, DataPoint dataPoint, Scan msMsScan) {
+    final double lower = mzTolRangeMSMS.lowerEndpoint();
+    final double upper = mzTolRangeMSMS.upperEndpoint();
+
+    final double searchLower;
+    final double searchUpper;
+    if (neutralLoss) {
+      final double offset = mzPrecursorExact + fragmentSign * fragmentMass;
+      searchLower = offset - upper - NEUTRAL_LOSS_SEARCH_MARGIN;
+      searchUpper = offset - lower + NEUTRAL_LOSS_SEARCH_MARGIN;
+    } else {
+      searchLower = lower;
+      searchUpper = upper;
+    }
+
+    int best = -1;
+    double bestMz = 0d;
+    for (int i = lowerBound(searchLower); i < keys.length && keys[i] <= searchUpper; i++) {
+      if (best != -1 && order[best] < order[i]) {
+        continue;
+      }
+      final double mz = fragmentMz(i, mzPrecursorExact);
+      if (mzTolRangeMSMS.contains(neutralLoss ? mz : keys[i])) {
+        best = i;
+        bestMz = mz;
+      }
+    }
+    if (best == -1) {
+      return null;
+    }
+
+    final Integer chainLength = chainLengths != null ? chainLengths[best] : null;
+    final Integer numberOfDoubleBonds = doubleBonds != null ? doubleBonds[best] : null;
+    return new LipidFragment(rule.getLipidFragmentationRuleType(),
+        rule.getLipidFragmentInformationLevelType(), bestMz, dataPoint, lipidClass, chainLength,
+        numberOfDoubleBonds, chainType, msMsScan);
+  }
+
+  private double fragmentMz(int i, double mzPrecursorExact) {
+    if (neutralLoss) {
+      final double mz = mzPrecursorExact - keys[i];
+      if (fragmentSign < 0) {
+        return mz - fragmentMass;
+      } else if (fragmentSign > 0) {
+        return mz + fragmentMass;
+      }
+      return mz;
+    }
+    return reportedMzs != null ? reportedMzs[i] : keys[i];
+  }
+
+  private int lowerBound(double value) {
+    int low = 0;
+    int high = keys.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (keys[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Exact masses, chain lengths and double bonds of chain formulas in the order of
+   * {@link ChainTools}.
+   */
+  private static class ChainMasses {
+
+    private static final ChainMasses EMPTY = new ChainMasses(List.of());
+
+    private final List<String> formulas;
+    private final double[] masses;
+    private final int[] chainLengths;
+    private final int[] doubleBonds;
+
+    private ChainMasses(List<String> formulas) {
+      this.formulas = formulas;
+      masses = new double[formulas.size()];
+      chainLengths = new int[formulas.size()];
+      doubleBonds = new int[formulas.size()];
+      for (int i = 0; i < formulas.size(); i++) {
+        final String formula = formulas.get(i);
+        masses[i] = FormulaUtils.calculateExactMass(formula);
+        chainLengths[i] = CHAIN_TOOLS.getChainLengthFromFormula(formula);
+        doubleBonds[i] = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(formula);
+      }
+    }
+
+    private int size() {
+      return masses.length;
+    }
+
+    private double[] plus(double mass) {
+      final double[] result = new double[masses.length];
+      for (int i = 0; i < masses.length; i++) {
+        result[i] = masses[i] + mass;
+      }
+      return result;
+    }
+
+    private double[] plusAndIonize(double mass, PolarityType polarityType) {
+      final double[] result = new double[masses.length];
+      for (int i = 0; i < masses.length; i++) {
+        result[i] = ionizeFragmentBasedOnPolarity(masses[i] + mass, polarityType);
+      }
+      return result;
+    }
+  }
+}
@@ -28,7 +28,6 @@ package io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididen
 import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IonizationType;
-import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.Scan;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidAnnotation;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidClass;
@@ -41,13 +40,14 @@ import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidFactory;
 import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.MatchedLipid;
 import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
-import io.github.mzmine.util.FormulaUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
 import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
@@ -59,20 +59,41 @@ import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
  */
 public class MSMSLipidTools {
 
-  private static final ChainTools CHAIN_TOOLS = new ChainTools();
   private static final LipidFactory LIPID_FACTORY = new LipidFactory();
 
+  /**
+   * Fragment masses are calculated once per rule and reused for all lipids of the same class
+   */
+  private final Map<LipidFragmentationRule, LipidFragmentationRuleMasses> ruleMasses =
+      new ConcurrentHashMap<>();
 
   public LipidFragment checkForClassSpecificFragment(Range<Double> mzTolRangeMSMS,
       ILipidAnnotation lipidAnnotation, IonizationType ionizationType,
       LipidFragmentationRule[] rules, DataPoint dataPoint, Scan msMsScan) {
+    double mzPrecursorExact =
+        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
+            AtomContainerManipulator.MonoIsotopic) + ionizationType.getAddedMass();
+    return checkForClassSpecificFragment(mzTolRangeMSMS, lipidAnnotation, ionizationType,
+        mzPrecursorExact, rules, dataPoint, msMsScan);
+  }
+
+  /**
+   * @param mzPrecursorExact the exact m/z of the lipid ion, used to calculate neutral losses.
+   */
+  public LipidFragment checkForClassSpecificFragment(Range<Double> mzTolRangeMSMS,
+      ILipidAnnotation lipidAnnotation, IonizationType ionizationType, double mzPrecursorExact,
+      LipidFragmentationRule[] rules, DataPoint dataPoint, Scan msMsScan) {
     for (int i = 0; i < rules.length; i++) {
       if (!ionizationType.equals(rules[i].getIonizationType())
           || rules[i].getLipidFragmentationRuleType() == null) {
         continue;
       }
-      LipidFragment detectedFragment =
-          checkForSpecificRuleTpye(rules[i], mzTolRangeMSMS, lipidAnnotation, dataPoint, msMsScan);
+      LipidFragmentationRuleMasses masses = getRuleMasses(rules[i]);
+      if (masses == null) {
+        continue;
+      }
+      LipidFragment detectedFragment = masses.findFragment(mzTolRangeMSMS, mzPrecursorExact,
+          lipidAnnotation.getLipidClass(), dataPoint, msMsScan);
       if (detectedFragment != null) {
         return detectedFragment;
       }
@@ -80,408 +101,18 @@ public class MSMSLipidTools {
     return null;
   }
 
-  private LipidFragment checkForSpecificRuleTpye(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-    LipidFragmentationRuleType ruleType = rule.getLipidFragmentationRuleType();
-    switch (ruleType) {
-      case HEADGROUP_FRAGMENT:
-        return checkForHeadgroupFragment(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
-      case HEADGROUP_FRAGMENT_NL:
-        return checkForHeadgroupFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
-      case ACYLCHAIN_FRAGMENT:
-        return checkForAcylChainFragment(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
-      case ACYLCHAIN_FRAGMENT_NL:
-        return checkForAcylChainFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
-      case ACYLCHAIN_MINUS_FORMULA_FRAGMENT:
-        return checkForAcylChainMinusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case ACYLCHAIN_MINUS_FORMULA_FRAGMENT_NL:
-        return checkForAcylChainMinusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case ACYLCHAIN_PLUS_FORMULA_FRAGMENT:
-        return checkForAcylChainPlusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case ACYLCHAIN_PLUS_FORMULA_FRAGMENT_NL:
-        return checkForAcylChainPlusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case TWO_ACYLCHAINS_PLUS_FORMULA_FRAGMENT:
-        return checkForTwoAcylChainsPlusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case ALKYLCHAIN_FRAGMENT:
-        return checkForAlkylChainFragment(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
-      case ALKYLCHAIN_FRAGMENT_NL:
-        return checkForAlkylChainFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation, dataPoint,
-            msMsScan);
-      case ALKYLCHAIN_MINUS_FORMULA_FRAGMENT:
-        return checkForAlkylChainMinusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case ALKYLCHAIN_MINUS_FORMULA_FRAGMENT_NL:
-        return checkForAlkylChainMinusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case ALKYLCHAIN_PLUS_FORMULA_FRAGMENT:
-        return checkForAlkylChainPlusFormulaFragment(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      case ALKYLCHAIN_PLUS_FORMULA_FRAGMENT_NL:
-        return checkForAlkylChainPlusFormulaFragmentNL(rule, mzTolRangeMSMS, lipidAnnotation,
-            dataPoint, msMsScan);
-      default:
-        return null;
-    }
-  }
-
-  private LipidFragment checkForHeadgroupFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateMzRatio(fragmentFormula);
-    if (mzTolRangeMSMS.contains(mzFragmentExact)) {
-      return new LipidFragment(rule.getLipidFragmentationRuleType(),
-          rule.getLipidFragmentInformationLevelType(), mzFragmentExact, dataPoint,
-          lipidAnnotation.getLipidClass(), null, null, null, msMsScan);
-    } else {
-      return null;
-    }
-  }
-
-  private LipidFragment checkForHeadgroupFragmentNL(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzExact = mzPrecursorExact - mzFragmentExact;
-    if (mzTolRangeMSMS.contains(mzExact)) {
-      return new LipidFragment(rule.getLipidFragmentationRuleType(),
-          rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-          lipidAnnotation.getLipidClass(), null, null, LipidChainType.ACYL_CHAIN, msMsScan);
-    } else {
-      return null;
-    }
-  }
-
-  // Acly Chains
-  private LipidFragment checkForAcylChainFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    if (rule.getPolarityType().equals(PolarityType.NEGATIVE)) {
-      List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-      for (String fattyAcidFormula : fattyAcidFormulas) {
-        Double mzExact = FormulaUtils.calculateExactMass(fattyAcidFormula)
-            + IonizationType.NEGATIVE_HYDROGEN.getAddedMass();
-        if (mzTolRangeMSMS.contains(mzExact)) {
-          int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-          int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
-          return new LipidFragment(rule.getLipidFragmentationRuleType(),
-              rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-              lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-              LipidChainType.ACYL_CHAIN, msMsScan);
-        }
-      }
-    }
-
-    return null;
-  }
-
-  private LipidFragment checkForAcylChainFragmentNL(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzFattyAcid = FormulaUtils.calculateExactMass(fattyAcidFormula);
-      Double mzExact = mzPrecursorExact - mzFattyAcid;
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ACYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-
-  private LipidFragment checkForAcylChainMinusFormulaFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    if (rule.getPolarityType().equals(PolarityType.NEGATIVE)) {
-      String fragmentFormula = rule.getMolecularFormula();
-      Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-      List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-      for (String fattyAcidFormula : fattyAcidFormulas) {
-//        @Ansgar the result is not used and the method itself is buggy as hell - please write a test
-//        FormulaUtils.ionizeFormula(fattyAcidFormula, IonizationType.NEGATIVE_HYDROGEN, 1);
-        Double mzExact = FormulaUtils.calculateExactMass(fattyAcidFormula) - mzFragmentExact;
-        if (mzTolRangeMSMS.contains(mzExact)) {
-          int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-          int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
-          return new LipidFragment(rule.getLipidFragmentationRuleType(),
-              rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-              lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-              LipidChainType.ACYL_CHAIN, msMsScan);
-        }
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForAcylChainMinusFormulaFragmentNL(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(fattyAcidFormula) - mzFragmentExact;
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ACYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForAcylChainPlusFormulaFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzExact = FormulaUtils.calculateExactMass(fattyAcidFormula) + mzFragmentExact;
-      mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ACYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForAcylChainPlusFormulaFragmentNL(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulas = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (String fattyAcidFormula : fattyAcidFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(fattyAcidFormula) + mzFragmentExact;
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(fattyAcidFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(fattyAcidFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ACYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForTwoAcylChainsPlusFormulaFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> fattyAcidFormulasOne = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    List<String> fattyAcidFormulasTwo = CHAIN_TOOLS.calculateFattyAcidFormulas();
-    for (int i = 0; i < fattyAcidFormulasOne.size(); i++) {
-      Double mzFattyAcidOne = FormulaUtils.calculateExactMass(fattyAcidFormulasOne.get(i));
-      for (int j = 0; j < fattyAcidFormulasTwo.size(); j++) {
-        Double mzFattyAcidTwo = FormulaUtils.calculateExactMass(fattyAcidFormulasTwo.get(j));
-        Double mzExact = mzFattyAcidOne + mzFattyAcidTwo + mzFragmentExact;
-        mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
-        if (mzTolRangeMSMS.contains(mzFattyAcidOne + mzFattyAcidTwo + mzFragmentExact)) {
-          return new LipidFragment(rule.getLipidFragmentationRuleType(),
-              rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-              lipidAnnotation.getLipidClass(), null, null, null, msMsScan);
-        }
-      }
-    }
-    return null;
-  }
-
-  // Alkyl Chains
-  private LipidFragment checkForAlkylChainFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact = FormulaUtils.calculateExactMass(chainFormula);
-      mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ALKYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForAlkylChainFragmentNL(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    for (String chainFormula : chainFormulas) {
-      Double mzFattyAcid = FormulaUtils.calculateExactMass(chainFormula);
-      Double mzExact = mzPrecursorExact - mzFattyAcid;
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ALKYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForAlkylChainMinusFormulaFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    if (rule.getPolarityType().equals(PolarityType.NEGATIVE)) {
-      String fragmentFormula = rule.getMolecularFormula();
-      Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-      List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-      for (String chainFormula : chainFormulas) {
-        Double mzExact = FormulaUtils.calculateExactMass(
-            chainFormula + IonizationType.NEGATIVE_HYDROGEN.getAddedMass()) - mzFragmentExact;
-        if (mzTolRangeMSMS.contains(mzExact)) {
-          int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-          int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
-          return new LipidFragment(rule.getLipidFragmentationRuleType(),
-              rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-              lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-              LipidChainType.ALKYL_CHAIN, msMsScan);
+  private LipidFragmentationRuleMasses getRuleMasses(LipidFragmentationRule rule) {
+    LipidFragmentationRuleMasses masses = ruleMasses.get(rule);
+    if (masses == null) {
+      masses = LipidFragmentationRuleMasses.of(rule);
+      if (masses != null) {
+        LipidFragmentationRuleMasses previous = ruleMasses.putIfAbsent(rule, masses);
+        if (previous != null) {
+          masses = previous;
         }
       }
     }
-    return null;
-  }
-
-  private LipidFragment checkForAlkylChainMinusFormulaFragmentNL(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(chainFormula) - mzFragmentExact;
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ACYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForAlkylChainPlusFormulaFragment(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact = FormulaUtils.calculateExactMass(chainFormula) + mzFragmentExact;
-      mzExact = ionizeFragmentBasedOnPolarity(mzExact, rule.getPolarityType());
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ACYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private LipidFragment checkForAlkylChainPlusFormulaFragmentNL(LipidFragmentationRule rule,
-      Range<Double> mzTolRangeMSMS, ILipidAnnotation lipidAnnotation, DataPoint dataPoint,
-      Scan msMsScan) {
-
-    String fragmentFormula = rule.getMolecularFormula();
-    Double mzPrecursorExact =
-        MolecularFormulaManipulator.getMass(lipidAnnotation.getMolecularFormula(),
-            AtomContainerManipulator.MonoIsotopic) + rule.getIonizationType().getAddedMass();
-    Double mzFragmentExact = FormulaUtils.calculateExactMass(fragmentFormula);
-    List<String> chainFormulas = CHAIN_TOOLS.calculateHydroCarbonFormulas();
-    for (String chainFormula : chainFormulas) {
-      Double mzExact =
-          mzPrecursorExact - FormulaUtils.calculateExactMass(chainFormula) + mzFragmentExact;
-      if (mzTolRangeMSMS.contains(mzExact)) {
-        int chainLength = CHAIN_TOOLS.getChainLengthFromFormula(chainFormula);
-        int numberOfDoubleBonds = CHAIN_TOOLS.getNumberOfDoubleBondsFromFormula(chainFormula);
-        return new LipidFragment(rule.getLipidFragmentationRuleType(),
-            rule.getLipidFragmentInformationLevelType(), mzExact, dataPoint,
-            lipidAnnotation.getLipidClass(), chainLength, numberOfDoubleBonds,
-            LipidChainType.ACYL_CHAIN, msMsScan);
-      }
-    }
-    return null;
-  }
-
-  private double ionizeFragmentBasedOnPolarity(Double mzExact, PolarityType polarityType) {
-    if (polarityType.equals(PolarityType.NEGATIVE)) {
-      return mzExact + IonizationType.NEGATIVE.getAddedMass();
-    } else if (polarityType.equals(PolarityType.POSITIVE)) {
-      return mzExact + IonizationType.POSITIVE.getAddedMass();
-    }
-    return mzExact;
+    return masses;
   }
 
   public MatchedLipid confirmSpeciesLevelAnnotation(Double accurateMz,
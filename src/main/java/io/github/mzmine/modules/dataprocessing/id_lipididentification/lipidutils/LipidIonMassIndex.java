@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools.LipidFragmentationRule;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.ILipidAnnotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * Ion masses of all lipids in a lipid database and all ionizations of their fragmentation rules,
+ * sorted by m/z. The masses are calculated once, so that feature list rows can be matched by a
+ * binary search for the m/z tolerance range instead of calculating the mass of every lipid for
+ * every row.
+ */
+public class LipidIonMassIndex {
+
+  private final double[] ionMasses;
+  private final LipidIon[] ions;
+
+  public LipidIonMassIndex(@NotNull Collection<ILipidAnnotation> lipidDatabase) {
+    List<LipidIon> lipidIons = new ArrayList<>();
+    int lipidIndex = 0;
+    for (ILipidAnnotation lipid : lipidDatabase) {
+      Set<IonizationType> ionizationTypes = new LinkedHashSet<>();
+      LipidFragmentationRule[] rules = lipid.getLipidClass().getFragmentationRules();
+      if (rules != null) {
+        for (LipidFragmentationRule rule : rules) {
+          if (rule.getIonizationType() != null) {
+            ionizationTypes.add(rule.getIonizationType());
+          }
+        }
+      }
+      if (!ionizationTypes.isEmpty()) {
+        double lipidMass = MolecularFormulaManipulator.getMass(lipid.getMolecularFormula(),
+            AtomContainerManipulator.MonoIsotopic);
+        for (IonizationType ionization : ionizationTypes) {
+          lipidIons.add(new LipidIon(lipidIndex, lipid, ionization,
+              lipidMass + ionization.getAddedMass()));
+        }
+      }
+      lipidIndex++;
+    }
+
+    ions = lipidIons.toArray(LipidIon[]::new);
+    Arrays.sort(ions, Comparator.comparingDouble(LipidIon::ionMass));
+    ionMasses = new double[ions.length];
+    for (int i = 0; i < ions.length; i++) {
+      ionMasses[i] = ions[i].ionMass();
+    }
+  }
+
+  /**
+   * @return number of lipid ions in this index
+   */
+  public int size() {
+    return ions.length;
+  }
+
+  /**
+   * @param mzRange the m/z tolerance range of a feature list row
+   * @return all lipid ions within the range, sorted by the position of the lipid in the database
+   */
+  @NotNull
+  public List<LipidIon> findIons(@NotNull Range<Double> mzRange) {
+    final double upper = mzRange.upperEndpoint();
+    List<LipidIon> matches = new ArrayList<>();
+    for (int i = lowerBound(mzRange.lowerEndpoint()); i < ions.length && ionMasses[i] <= upper;
+        i++) {
+      if (mzRange.contains(ionMasses[i])) {
+        matches.add(ions[i]);
+      }
+    }
+    matches.sort(Comparator.comparingInt(LipidIon::lipidIndex));
+    return matches;
+  }
+
+  private int lowerBound(double mz) {
+    int low = 0;
+    int high = ionMasses.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (ionMasses[mid] < mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * A lipid of the database with one of its ionizations.
+   *
+   * @param lipidIndex the position of the lipid in the lipid database
+   * @param ionMass    the exact m/z of the lipid ion
+   */
+  public record LipidIon(int lipidIndex, ILipidAnnotation lipid, IonizationType ionization,
+                         double ionMass) {
+
+  }
+}
@@ -25,6 +25,8 @@
 
 package io.github.mzmine.modules.dataprocessing.id_spectral_library_match;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Range;
 import io.github.mzmine.datamodel.DataPoint;
 import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MassList;
@@ -50,6 +52,8 @@ import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.ScanUtils;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.impl.packed.PackedCosineSpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.impl.packed.PackedSpectrum;
 import io.github.mzmine.util.scans.sorting.ScanSortMode;
 import io.github.mzmine.util.spectraldb.entry.DBEntryField;
 import io.github.mzmine.util.spectraldb.entry.SpectralDBAnnotation;
@@ -59,12 +63,14 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class RowsSpectralMatchTask extends AbstractTask {
 
@@ -86,6 +92,9 @@ public class RowsSpectralMatchTask extends AbstractTask {
   protected final RTTolerance rtTolerance;
   protected final PercentTolerance ccsTolerance;
   private final AtomicInteger errorCounter = new AtomicInteger(0);
+  // library spectra packed once for all rows, only used by the packed cosine similarity
+  private final Map<SpectralLibraryEntry, PackedSpectrum> packedEntries = CacheBuilder.newBuilder()
+      .weakKeys().softValues().<SpectralLibraryEntry, PackedSpectrum>build().asMap();
   private final boolean useRT;
   private final int totalRows;
   private final int msLevel;
@@ -275,7 +284,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
       logger.info(
           () -> String.format("Comparing %d library spectra to scan: %s", entries.size(), scan));
 
-      matchScan(entries, scan);
+      matchScan(getCandidateEntries(entries, scanPrecursorMZ), scan);
 
       logger.info(
           () -> String.format("library matches=%d (Errors:%d); library entries=%d; for scan: %s",
@@ -288,7 +297,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
           entries.size(), totalRows));
       rows.stream().parallel().forEach(row -> {
         if (!isCanceled()) {
-          matchRowToLibraries(entries, row);
+          matchRowToLibraries(getCandidateEntries(entries, row.getAverageMZ()), row);
           finishedRows.incrementAndGet();
         }
       });
@@ -299,6 +308,35 @@ public class RowsSpectralMatchTask extends AbstractTask {
 
   }
 
+  /**
+   * Pre-filters the library entries by precursor m/z using the index of each library. The precursor
+   * m/z is still checked exactly in {@link #matchSpectrum(Float, double, Float, DataPoint[],
+   * PackedSpectrum, SpectralLibraryEntry)}, so this only needs to return a superset of all matching
+   * entries.
+   *
+   * @param allEntries  combined entries of all libraries, used if there is no precursor filter
+   * @param precursorMZ the precursor m/z of the query
+   * @return the entries within the precursor tolerance in the same order as allEntries
+   */
+  private List<SpectralLibraryEntry> getCandidateEntries(List<SpectralLibraryEntry> allEntries,
+      double precursorMZ) {
+    if (msLevel == 1 || mzTolerancePrecursor == null) {
+      return allEntries;
+    }
+    // the tolerance is applied to the library m/z, the window needs to cover all library m/z
+    // values whose tolerance range contains the query m/z
+    final Range<Double> window = mzTolerancePrecursor.getReferenceRangeContaining(precursorMZ);
+    // widen by rounding errors of the exact check
+    final double lower = window.lowerEndpoint() - Math.ulp(window.lowerEndpoint()) * 4;
+    final double upper = window.upperEndpoint() + Math.ulp(window.upperEndpoint()) * 4;
+
+    final List<SpectralLibraryEntry> candidates = new ArrayList<>();
+    for (var lib : libraries) {
+      candidates.addAll(lib.getEntriesInPrecursorRange(lower, upper));
+    }
+    return candidates;
+  }
+
   /**
    * Match row against all entries, add matches, sort them by score
    *
@@ -309,13 +347,14 @@ public class RowsSpectralMatchTask extends AbstractTask {
     try {
       // get mass list and perform deisotoping if active
       DataPoint[] masses = getDataPoints(scan, true);
+      final PackedSpectrum packedMasses = packQuery(masses);
 
       // get a ccs for the precursor of this scan
       final Float precursorCCS = getPrecursorCCSFromMsMs(scan);
 
       for (var entry : entries) {
         final SpectralSimilarity sim = matchSpectrum(scan.getRetentionTime(), scanPrecursorMZ,
-            precursorCCS, masses, entry);
+            precursorCCS, masses, packedMasses, entry);
         if (sim != null) {
           Float ccsError = PercentTolerance.getPercentError(entry.getOrElse(DBEntryField.CCS, null),
               precursorCCS);
@@ -376,10 +415,12 @@ public class RowsSpectralMatchTask extends AbstractTask {
       // check for MS1 or MSMS scan
       List<Scan> scans = getScans(row);
       List<DataPoint[]> rowMassLists = new ArrayList<>();
+      List<PackedSpectrum> packedRowMassLists = new ArrayList<>();
       for (Scan scan : scans) {
         // get mass list and perform deisotoping if active
         DataPoint[] rowMassList = getDataPoints(scan, true);
         rowMassLists.add(rowMassList);
+        packedRowMassLists.add(packQuery(rowMassList));
       }
 
       final Float rowCCS = row.getAverageCCS();
@@ -391,7 +432,7 @@ public class RowsSpectralMatchTask extends AbstractTask {
         // match all scans against this ident to find best match
         for (int i = 0; i < scans.size(); i++) {
           SpectralSimilarity sim = matchSpectrum(row.getAverageRT(), row.getAverageMZ(), rowCCS,
-              rowMassLists.get(i), ident);
+              rowMassLists.get(i), packedRowMassLists.get(i), ident);
           if (sim != null && (!needsIsotopePattern || checkForIsotopePattern(sim,
               mzToleranceSpectra, minMatchedIsoSignals)) && (best == null
               || best.getSimilarity().getScore() < sim.getScore())) {
@@ -435,15 +476,24 @@ public class RowsSpectralMatchTask extends AbstractTask {
    * @param rowRT       retention time of query row
    * @param rowMZ       m/z of query row
    * @param rowMassList mass list (data points) for row
+   * @param packedRow   the packed mass list or null, see {@link #packQuery(DataPoint[])}
    * @param ident       library entry
    * @return spectral similarity or null if no match
    */
   private SpectralSimilarity matchSpectrum(Float rowRT, double rowMZ, Float rowCCS,
-      DataPoint[] rowMassList, SpectralLibraryEntry ident) {
+      DataPoint[] rowMassList, @Nullable PackedSpectrum packedRow, SpectralLibraryEntry ident) {
     // retention time
     // MS level 1 or check precursorMZ
     if (checkRT(rowRT, ident) && (msLevel == 1 || checkPrecursorMZ(rowMZ, ident)) && checkCCS(
         rowCCS, ident)) {
+      if (packedRow != null) {
+        // both spectra are packed once, cropping is applied on the packed spectra
+        final PackedSpectrum library = packedEntries.computeIfAbsent(ident, this::packLibrary);
+        return ((PackedCosineSpectralSimilarity) simFunction.getModule()).getSimilarity(
+            simFunction.getParameterSet(), mzToleranceSpectra, minMatch, library, packedRow,
+            cropSpectraToOverlap);
+      }
+
       DataPoint[] library = ident.getDataPoints();
       if (removeIsotopes) {
         library = removeIsotopes(library);
@@ -474,6 +524,31 @@ public class RowsSpectralMatchTask extends AbstractTask {
     return null;
   }
 
+  /**
+   * The packed cosine similarity compares spectra that were packed once. Precursor removal
+   * depends on each pair of spectra, the spectra are then packed for each comparison.
+   *
+   * @return the packed query mass list or null if the spectra need to be filtered for each pair
+   */
+  @Nullable
+  private PackedSpectrum packQuery(DataPoint[] query) {
+    if (simFunction.getModule() instanceof PackedCosineSpectralSimilarity && !(msLevel > 1
+        && removePrecursor)) {
+      return new PackedSpectrum(query,
+          PackedCosineSpectralSimilarity.getWeights(simFunction.getParameterSet()));
+    }
+    return null;
+  }
+
+  private PackedSpectrum packLibrary(SpectralLibraryEntry ident) {
+    DataPoint[] library = ident.getDataPoints();
+    if (removeIsotopes) {
+      library = removeIsotopes(library);
+    }
+    return new PackedSpectrum(library,
+        PackedCosineSpectralSimilarity.getWeights(simFunction.getParameterSet()));
+  }
+
   private boolean checkCCS(Float rowCCS, SpectralLibraryEntry ident) {
     return ccsTolerance == null || ccsTolerance.matches(rowCCS,
         ident.getOrElse(DBEntryField.CCS, null));
@@ -232,7 +232,7 @@ class MzTabImportTask extends AbstractTask {
 
       }
 
-      RawDataFileUtils.createRawDataImportTasks(MZmineCore.getProjectManager().getCurrentProject(),
+      RawDataFileUtils.createRawDataImportTasks(project,
           underlyingTasks, MzTabImportModule.class, parameters, getModuleCallDate(),
           filesToImport.toArray(new File[0]));
       if (underlyingTasks.size() > 0) {
@@ -235,7 +235,7 @@ public class MzTabmImportTask extends AbstractTask {
       }
 
       // import files
-      RawDataFileUtils.createRawDataImportTasks(MZmineCore.getProjectManager().getCurrentProject(),
+      RawDataFileUtils.createRawDataImportTasks(project,
           underlyingTasks, MZTabmImportModule.class, parameters, moduleCallDate,
           filesToImport.toArray(new File[0]));
       if (underlyingTasks.size() > 0) {
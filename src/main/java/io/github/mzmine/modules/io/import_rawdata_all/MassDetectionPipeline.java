@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_all;
+
+import io.github.mzmine.datamodel.MassSpectrum;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
+import io.github.mzmine.taskcontrol.SubTaskExecutor;
+import io.github.mzmine.util.scans.ScanUtils;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Applies mass detection on a shared pool of worker threads (usually the {@link SubTaskExecutor})
+ * while the data import keeps parsing scans.
+ * The number of scans in flight is bounded by the capacity: {@link #submit(Callable)} blocks the
+ * parsing thread and hands finished results to the consumer once the capacity is reached. Results
+ * are always consumed in submission order on the submitting thread, so scans can be added to the
+ * data file in the original order.
+ *
+ * @param <T> the result of one unit of work, e.g., a scan with its detected masses
+ */
+public class MassDetectionPipeline<T> implements AutoCloseable {
+
+  private final MZmineProcessingStep<MassDetector> ms1Detector;
+  private final MZmineProcessingStep<MassDetector> ms2Detector;
+  private final boolean denormalizeMSnScans;
+  private final ExecutorService executor;
+  private final ArrayDeque<Future<T>> pending;
+  private final int capacity;
+  private final ResultConsumer<T> consumer;
+
+  /**
+   * @param ms1Detector         mass detector for MS1 scans or null to skip MS1 scans
+   * @param ms2Detector         mass detector for MSn scans or null to skip MSn scans
+   * @param denormalizeMSnScans multiply MSn intensities with the injection time
+   * @param executor            the shared worker pool, it is not shut down by this pipeline
+   * @param capacity            maximum number of submitted but not yet consumed results
+   * @param consumer            consumes the results in submission order
+   */
+  public MassDetectionPipeline(@Nullable MZmineProcessingStep<MassDetector> ms1Detector,
+      @Nullable MZmineProcessingStep<MassDetector> ms2Detector, boolean denormalizeMSnScans,
+      @NotNull ExecutorService executor, int capacity, @NotNull ResultConsumer<T> consumer) {
+    this.ms1Detector = ms1Detector;
+    this.ms2Detector = ms2Detector;
+    this.denormalizeMSnScans = denormalizeMSnScans;
+    this.capacity = Math.max(1, capacity);
+    this.consumer = consumer;
+    this.pending = new ArrayDeque<>(this.capacity);
+    this.executor = executor;
+  }
+
+  /**
+   * Applies the mass detector of the respective MS level. Can be called from any thread.
+   *
+   * @param spectrum      the spectrum, data is accessed through the {@link MassSpectrum} methods
+   * @param msLevel       the MS level of the spectrum
+   * @param injectionTime the injection time used to denormalize MSn scans
+   * @return [mzs, intensities] or null if there is no mass detector for this MS level
+   */
+  @Nullable
+  public double[][] detect(@NotNull MassSpectrum spectrum, int msLevel,
+      @Nullable Float injectionTime) {
+    double[][] mzIntensities = null;
+    if (ms1Detector != null && msLevel <= 1) {
+      mzIntensities = ms1Detector.getModule()
+          .getMassValues(spectrum, ms1Detector.getParameterSet());
+    } else if (ms2Detector != null && msLevel >= 2) {
+      mzIntensities = ms2Detector.getModule()
+          .getMassValues(spectrum, ms2Detector.getParameterSet());
+      if (denormalizeMSnScans) {
+        ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzIntensities[1], injectionTime);
+      }
+    }
+    return mzIntensities;
+  }
+
+  /**
+   * Submits work to the pool. Blocks and consumes the oldest results while the pipeline is full.
+   *
+   * @param work the work, usually calling {@link #detect(MassSpectrum, int, Float)}
+   * @throws IOException if the consumer or a previously submitted unit of work failed
+   */
+  public synchronized void submit(@NotNull Callable<T> work) throws IOException {
+    while (pending.size() >= capacity) {
+      consumeNext();
+    }
+    pending.add(executor.submit(work));
+  }
+
+  /**
+   * Waits for all submitted work and consumes the remaining results.
+   *
+   * @throws IOException if the consumer or a submitted unit of work failed
+   */
+  public synchronized void finish() throws IOException {
+    while (!pending.isEmpty()) {
+      consumeNext();
+    }
+  }
+
+  private void consumeNext() throws IOException {
+    final Future<T> next = pending.poll();
+    final T result;
+    try {
+      result = next.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for mass detection", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException ioe) {
+        throw ioe;
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IOException("Error during mass detection", cause);
+    }
+    consumer.accept(result);
+  }
+
+  /**
+   * Cancels all pending work of this pipeline. The shared executor keeps running.
+   */
+  @Override
+  public synchronized void close() {
+    pending.forEach(future -> future.cancel(true));
+    pending.clear();
+  }
+
+  @FunctionalInterface
+  public interface ResultConsumer<T> {
+
+    void accept(T result) throws IOException;
+  }
+}
@@ -27,26 +27,33 @@ package io.github.mzmine.modules.io.import_rawdata_all;
 
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
-import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
-import io.github.mzmine.datamodel.data_access.ScanDataAccess;
 import io.github.mzmine.datamodel.impl.masslist.SimpleMassList;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.SubTaskExecutor;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.MemoryMapStorage;
-import io.github.mzmine.util.scans.ScanUtils;
+import java.io.IOException;
 import java.time.Instant;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import javafx.collections.ListChangeListener;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * This import task wraps other data import tasks that do not support application of mass detection
- * during data import. This task calls the data import and applies mass detection afterwards.
+ * during data import. Scans are handed to a {@link MassDetectionPipeline} as soon as the import
+ * adds them to the data file, so mass detection runs in parallel to parsing.
  */
 public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
 
+  /**
+   * Maximum number of scans waiting for mass detection per pipeline
+   */
+  private static final int PIPELINE_CAPACITY = 256;
+
   private final RawDataFile newMZmineFile;
   private final AbstractTask importTask;
   private final Boolean denormalizeMSnScans;
@@ -54,12 +61,12 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
   private MZmineProcessingStep<MassDetector> ms2Detector = null;
 
   private int totalScans = 1;
-  private final int parsedScans = 0;
+  private volatile int parsedScans = 0;
 
   /**
    * This import task wraps other data import tasks that do not support application of mass
-   * detection during data import. This task calls the data import and applies mass detection
-   * afterwards.
+   * detection during data import. This task calls the data import and applies mass detection to
+   * the scans while they are parsed.
    *
    * @param storageMassLists data storage for mass lists (usually different to that of the data
    *                         file
@@ -109,17 +116,10 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
   public void run() {
     setStatus(TaskStatus.PROCESSING);
     try {
-      // import data
-      importTask.run();
-
-      // should be in the new data file
-      if (importTask.isFinished()) {
-        totalScans = newMZmineFile.getNumOfScans();
-
-        if (!applyMassDetection()) {
-          // cancelled
-          return;
-        }
+      // import data and apply mass detection to the scans in the new data file
+      if (!importAndApplyMassDetection()) {
+        // cancelled
+        return;
       }
 
     } catch (Exception e) {
@@ -133,45 +133,99 @@ public class MsDataImportAndMassDetectWrapperTask extends AbstractTask {
   }
 
   /**
-   * apply mass detection to all scans and sets the mass lists
+   * Runs the import and applies mass detection to every scan that is added to the data file on a
+   * pool of worker threads while parsing continues.
    *
    * @return true if succeed and false if cancelled
    */
-  public boolean applyMassDetection() {
-    // uses only a single array for each (mz and intensity) to loop over all scans
-    ScanDataAccess data = EfficientDataAccess.of(newMZmineFile,
-        EfficientDataAccess.ScanDataType.RAW);
-    totalScans = data.getNumberOfScans();
-
-    // all scans
-    while (data.hasNextScan()) {
-      if (isCanceled() || (importTask != null && importTask.isCanceled())) {
-        return false;
-      }
+  private boolean importAndApplyMassDetection() throws IOException {
+    final AtomicReference<Exception> pipelineError = new AtomicReference<>();
+    // the mass lists stay alive as long as the file
+    if (newMZmineFile instanceof RawDataFileImpl file) {
+      file.retainStorage(storage);
+    }
 
-      Scan scan = data.nextScan();
-
-      int msLevel = Objects.requireNonNullElse(scan.getMSLevel(), 1);
-      double[][] mzIntensities = null;
-      if (ms1Detector != null && msLevel <= 1) {
-        mzIntensities = ms1Detector.getModule().getMassValues(data, ms1Detector.getParameterSet());
-      } else if (ms2Detector != null && msLevel >= 2) {
-        mzIntensities = ms2Detector.getModule().getMassValues(data, ms2Detector.getParameterSet());
-        if (denormalizeMSnScans) {
-          ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzIntensities[1],
-              scan.getInjectionTime());
+    try (MassDetectionPipeline<Scan> pipeline = new MassDetectionPipeline<>(ms1Detector,
+        ms2Detector, denormalizeMSnScans, SubTaskExecutor.get(), PIPELINE_CAPACITY,
+        scan -> parsedScans++)) {
+      // exceptions in list listeners are not propagated to the import task
+      final ListChangeListener<Scan> listener = change -> {
+        while (change.next()) {
+          for (Scan scan : change.getAddedSubList()) {
+            if (pipelineError.get() != null) {
+              return;
+            }
+            try {
+              pipeline.submit(() -> detectAndAddMassList(pipeline, scan));
+            } catch (Exception e) {
+              pipelineError.compareAndSet(null, e);
+              importTask.cancel();
+            }
+          }
         }
+      };
+
+      newMZmineFile.getScans().addListener(listener);
+      try {
+        importTask.run();
+      } finally {
+        newMZmineFile.getScans().removeListener(listener);
       }
 
-      if (mzIntensities != null) {
-        // uses a different storage for mass lists then the one defined for the MS data import
-        SimpleMassList newMassList = new SimpleMassList(storage, mzIntensities[0],
-            mzIntensities[1]);
-        scan.addMassList(newMassList);
+      final Exception error = pipelineError.get();
+      if (error != null) {
+        throw new IOException("Error during mass detection: " + error.getMessage(), error);
       }
+      if (isCanceled() || importTask.isCanceled()) {
+        return false;
+      }
+      if (!importTask.isFinished()) {
+        return true;
+      }
+
+      totalScans = newMZmineFile.getNumOfScans();
+      pipeline.finish();
     }
+
     return true;
   }
 
+  private Scan detectAndAddMassList(MassDetectionPipeline<Scan> pipeline, Scan scan) {
+    double[][] mzIntensities = pipeline.detect(scan, scan.getMSLevel(), scan.getInjectionTime());
+    if (mzIntensities != null) {
+      // uses a different storage for mass lists then the one defined for the MS data import
+      SimpleMassList newMassList = new SimpleMassList(storage, mzIntensities[0],
+          mzIntensities[1]);
+      scan.addMassList(newMassList);
+    }
+    return scan;
+  }
 
+  /**
+   * Applies mass detection to all scans of the data file on the shared worker pool and sets the
+   * mass lists. Used for files that are already imported, e.g., IMS files.
+   *
+   * @return true if succeed and false if cancelled
+   * @throws IOException if mass detection failed on a scan
+   */
+  public boolean applyMassDetection() throws IOException {
+    // the mass lists stay alive as long as the file
+    if (newMZmineFile instanceof RawDataFileImpl file) {
+      file.retainStorage(storage);
+    }
+    totalScans = newMZmineFile.getNumOfScans();
+
+    try (MassDetectionPipeline<Scan> pipeline = new MassDetectionPipeline<>(ms1Detector,
+        ms2Detector, denormalizeMSnScans, SubTaskExecutor.get(), PIPELINE_CAPACITY,
+        scan -> parsedScans++)) {
+      for (Scan scan : newMZmineFile.getScans()) {
+        if (isCanceled() || (importTask != null && importTask.isCanceled())) {
+          return false;
+        }
+        pipeline.submit(() -> detectAndAddMassList(pipeline, scan));
+      }
+      pipeline.finish();
+    }
+    return true;
+  }
 }
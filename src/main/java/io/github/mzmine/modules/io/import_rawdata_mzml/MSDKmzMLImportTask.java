@@ -42,10 +42,13 @@ import io.github.mzmine.datamodel.impl.MsdkScanWrapper;
 import io.github.mzmine.datamodel.impl.SimpleFrame;
 import io.github.mzmine.datamodel.impl.masslist.ScanPointerMassList;
 import io.github.mzmine.datamodel.msms.PasefMsMsInfo;
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.modules.MZmineModule;
 import io.github.mzmine.modules.MZmineProcessingStep;
 import io.github.mzmine.modules.dataprocessing.featdet_massdetection.MassDetector;
 import io.github.mzmine.modules.io.import_rawdata_all.AdvancedSpectraImportParameters;
+import io.github.mzmine.modules.io.import_rawdata_all.MassDetectionPipeline;
 import io.github.mzmine.modules.io.import_rawdata_all.MsDataImportAndMassDetectWrapperTask;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.MzMLFileImportMethod;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLMsScan;
@@ -54,6 +57,7 @@ import io.github.mzmine.parameters.ParameterSet;
 import io.github.mzmine.project.impl.IMSRawDataFileImpl;
 import io.github.mzmine.project.impl.RawDataFileImpl;
 import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.SubTaskExecutor;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ArrayUtils;
 import io.github.mzmine.util.DataPointSorter;
@@ -62,7 +66,6 @@ import io.github.mzmine.util.DateTimeUtils;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.RangeUtils;
-import io.github.mzmine.util.scans.ScanUtils;
 import io.github.mzmine.util.scans.SpectraMerging;
 import java.io.File;
 import java.io.IOException;
@@ -92,6 +95,10 @@ public class MSDKmzMLImportTask extends AbstractTask {
   public static final Pattern watersPattern = Pattern.compile(
       "function=([1-9]+) process=[\\d]+ scan=[\\d]+");
   private static final Logger logger = Logger.getLogger(MSDKmzMLImportTask.class.getName());
+  /**
+   * Maximum number of decoded scans waiting for mass detection
+   */
+  private static final int PIPELINE_CAPACITY = 256;
   private final File file;
   private final InputStream fis;
   // advanced processing will apply mass detection directly to the scans
@@ -158,6 +165,8 @@ public class MSDKmzMLImportTask extends AbstractTask {
         msdkTask = new MzMLFileImportMethod(fis);
       } else {
         msdkTask = new MzMLFileImportMethod(file);
+        msdkTask.setNumThreads(MZmineCore.getConfiguration().getPreferences()
+            .getParameter(MZminePreferences.numOfThreads).getValue());
       }
       addTaskStatusListener((task, newStatus, oldStatus) -> {
         if (newStatus == TaskStatus.CANCELED) {
@@ -227,13 +236,6 @@ public class MSDKmzMLImportTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
-  private double[][] applyMassDetection(MZmineProcessingStep<MassDetector> msDetector,
-      MsdkScanWrapper scan) {
-    // run mass detection on data object
-    // [mzs, intensities]
-    return msDetector.getModule().getMassValues(scan, msDetector.getParameterSet());
-  }
-
   @Override
   public void cancel() {
     if (msdkTask != null) {
@@ -244,53 +246,86 @@ public class MSDKmzMLImportTask extends AbstractTask {
 
   public void buildLCMSFile(io.github.msdk.datamodel.RawDataFile file, RawDataFile newMZmineFile)
       throws IOException {
-    for (MsScan scan : file.getScans()) {
+    if (applyMassDetection) {
+      buildLCMSFileWithMassDetection(file, newMZmineFile);
+      return;
+    }
+
+    for (MsScan scan : scansInOrder(file)) {
       if (isCanceled()) {
         return;
       }
-      MzMLMsScan mzMLScan = (MzMLMsScan) scan;
+      // mz arrays are sorted within this method to ensure order in scans
+      Scan newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, (MzMLMsScan) scan);
+      addParsedScan(newMZmineFile, newScan);
+    }
+  }
 
-      Scan newScan = null;
-      if (applyMassDetection) {
-        // wrap scan
-        MsdkScanWrapper wrapper = new MsdkScanWrapper(scan);
-        double[][] mzIntensities = null;
-
-        // apply mass detection
-        if (ms1Detector != null && wrapper.getMSLevel() == 1) {
-          mzIntensities = applyMassDetection(ms1Detector, wrapper);
-        } else if (ms2Detector != null && wrapper.getMSLevel() >= 2) {
-          mzIntensities = applyMassDetection(ms2Detector, wrapper);
-          if (denormalizeMSnScans) {
-            ScanUtils.denormalizeIntensitiesMultiplyByInjectTime(mzIntensities[1],
-                wrapper.getInjectionTime());
-          }
+  /**
+   * Scans are wrapped on this thread and handed to a {@link MassDetectionPipeline}, which applies
+   * mass detection on worker threads while parsing continues. Scans are added to the data file in
+   * the original order. Only the detected masses are stored for scans with a mass detector, the
+   * profile data of these scans is never written to the storage.
+   */
+  private void buildLCMSFileWithMassDetection(io.github.msdk.datamodel.RawDataFile file,
+      RawDataFile newMZmineFile) throws IOException {
+    try (MassDetectionPipeline<DetectedScan> pipeline = new MassDetectionPipeline<>(ms1Detector,
+        ms2Detector, denormalizeMSnScans, SubTaskExecutor.get(), PIPELINE_CAPACITY,
+        detected -> addDetectedScan(newMZmineFile, detected))) {
+      for (MsScan scan : scansInOrder(file)) {
+        if (isCanceled()) {
+          return;
         }
-
-        if (mzIntensities != null) {
+        final MzMLMsScan mzMLScan = (MzMLMsScan) scan;
+        // wrap scan on this thread - the decoded data of the scan may be released before the
+        // pipeline consumes the result, the wrapper keeps the data and the spectrum type
+        final MsdkScanWrapper wrapper = new MsdkScanWrapper(scan);
+        final int msLevel = wrapper.getMSLevel();
+        final Float injectionTime = wrapper.getInjectionTime();
+        final MassSpectrumType spectrumType = wrapper.getSpectrumType();
+
+        pipeline.submit(() -> {
+          double[][] mzIntensities = pipeline.detect(wrapper, msLevel, injectionTime);
+          final boolean detected = mzIntensities != null;
+          if (!detected) {
+            // no mass detector for this MS level, keep the data of the scan
+            final int numDp = wrapper.getNumberOfDataPoints();
+            mzIntensities = new double[2][numDp];
+            for (int i = 0; i < numDp; i++) {
+              mzIntensities[0][i] = wrapper.getMzValue(i);
+              mzIntensities[1][i] = wrapper.getIntensityValue(i);
+            }
+          }
           // sort arrays because some files are unsorted. Latest versions of msconvert should fix that
           mzIntensities = DataPointUtils.sort(mzIntensities[0], mzIntensities[1],
               DataPointSorter.DEFAULT_MZ_ASCENDING);
-
-          // create mass list and scan. Override data points and spectrum type
-          newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan, mzIntensities[0],
-              mzIntensities[1], MassSpectrumType.CENTROIDED);
-          ScanPointerMassList newMassList = new ScanPointerMassList(newScan);
-          newScan.addMassList(newMassList);
-        }
-      }
-
-      if (newScan == null) {
-        // mz arrays are sorted within this method to ensure order in scans
-        newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, mzMLScan);
+          return new DetectedScan(mzMLScan, mzIntensities,
+              detected ? MassSpectrumType.CENTROIDED : spectrumType, detected);
+        });
       }
+      pipeline.finish();
+    }
+  }
 
-      newMZmineFile.addScan(newScan);
-      parsedScans++;
-      description =
-          "Importing " + this.file.getName() + ", parsed " + parsedScans + "/" + totalScans
-              + " scans";
+  private void addDetectedScan(RawDataFile newMZmineFile, DetectedScan detected)
+      throws IOException {
+    final double[][] mzIntensities = detected.mzIntensities();
+    // data points and spectrum type are overridden for scans with detected masses
+    final Scan newScan = ConversionUtils.msdkScanToSimpleScan(newMZmineFile, detected.scan(),
+        mzIntensities[0], mzIntensities[1], detected.spectrumType());
+    if (detected.massDetected()) {
+      ScanPointerMassList newMassList = new ScanPointerMassList(newScan);
+      newScan.addMassList(newMassList);
     }
+    addParsedScan(newMZmineFile, newScan);
+  }
+
+  private void addParsedScan(RawDataFile newMZmineFile, Scan newScan) throws IOException {
+    newMZmineFile.addScan(newScan);
+    parsedScans++;
+    description =
+        "Importing " + this.file.getName() + ", parsed " + parsedScans + "/" + totalScans
+            + " scans";
   }
 
   public void buildIonMobilityFile(io.github.msdk.datamodel.RawDataFile file,
@@ -312,7 +347,7 @@ public class MSDKmzMLImportTask extends AbstractTask {
         .toArray();
 
 //    int previousFunction = 1;
-    for (MsScan scan : file.getScans()) {
+    for (MsScan scan : scansInOrder(file)) {
       if (isCanceled()) {
         return;
       }
@@ -391,13 +426,13 @@ public class MSDKmzMLImportTask extends AbstractTask {
     }
 
     // apply mass detection to frames and mobility scans
-    if (advancedParam != null) {
+    if (advancedParam != null && !isCanceled()) {
       logger.warning("""
           Applying the advanced import (with mass detection) to an IMS mzML file only performs mass
            detection on the summed frame level. Better to perform individual steps of mass detection
             to the mobility scans and the summed frames.""");
       MsDataImportAndMassDetectWrapperTask massDetector = new MsDataImportAndMassDetectWrapperTask(
-          storage, newMZmineFile, this, parameters, moduleCallDate);
+          storage, newMZmineFile, this, advancedParam, moduleCallDate);
       massDetector.applyMassDetection();
     }
   }
@@ -470,4 +505,25 @@ public class MSDKmzMLImportTask extends AbstractTask {
     final double parsingProgress = totalScans == 0 ? 0.0 : (double) parsedScans / totalScans;
     return (msdkProgress * 0.25) + (parsingProgress * 0.75);
   }
+
+  /**
+   * The scans of the file in their original order. Scans of the parallel reader are decoded ahead
+   * on worker threads and released after they were consumed, so each scan has to be converted
+   * before the next one is requested.
+   */
+  private Iterable<MsScan> scansInOrder(io.github.msdk.datamodel.RawDataFile file) {
+    if (msdkTask != null && msdkTask.getResult() == file) {
+      return msdkTask.getDecodedScans();
+    }
+    return file.getScans();
+  }
+
+  /**
+   * @param mzIntensities sorted detected masses or sorted data points of the scan
+   * @param massDetected  true if the data points are detected masses
+   */
+  private record DetectedScan(MzMLMsScan scan, double[][] mzIntensities,
+                              MassSpectrumType spectrumType, boolean massDetected) {
+
+  }
 }
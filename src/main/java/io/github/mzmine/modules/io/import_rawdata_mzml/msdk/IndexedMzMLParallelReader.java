@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzml.msdk;
+
+import io.github.msdk.datamodel.MsScan;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLMsScan;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLParser;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRawDataFile;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLTags;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.ByteBufferInputStream;
+import io.github.mzmine.taskcontrol.SubTaskExecutor;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javolution.xml.internal.stream.XMLStreamReaderImpl;
+import javolution.xml.stream.XMLStreamConstants;
+import javolution.xml.stream.XMLStreamException;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>
+ * Reads indexedmzML files in parallel. The offsets of all spectra are read from the
+ * <code>&lt;indexList&gt;</code> at the end of the file and the spectra are split into chunks
+ * of consecutive spectra. Each chunk is parsed by its own {@link MzMLParser} from a stream that
+ * consists of the file header (everything before the first spectrum), the chunk of the memory
+ * mapped file and the closing tags. Chunks run on the {@link SubTaskExecutor} that is shared by
+ * all imports. Spectra are added to the {@link MzMLRawDataFile} in the original order.
+ * </p>
+ * <p>
+ * Parsing only keeps the positions of the binary data. The data is decoded by
+ * {@link #decodedScans(List)} in batches of {@link #DECODE_BATCH_SIZE} spectra, at most
+ * {@link #BATCHES_PER_THREAD} batches per thread ahead of the consumer, and released once the
+ * consumer moved past a batch. Peak memory is therefore bounded by the batch size instead of the
+ * file size.
+ * </p>
+ */
+class IndexedMzMLParallelReader {
+
+  private static final Logger logger = Logger.getLogger(IndexedMzMLParallelReader.class.getName());
+
+  private static final Pattern INDEX_LIST_OFFSET_PATTERN = Pattern.compile(
+      "<indexListOffset>\\s*(\\d+)\\s*</indexListOffset>");
+  private static final Pattern SPECTRUM_INDEX_PATTERN = Pattern.compile(
+      "<index\\s+name=\"spectrum\"\\s*>(.*?)</index>", Pattern.DOTALL);
+  private static final Pattern OFFSET_PATTERN = Pattern.compile(
+      "<offset[^>]*>\\s*(\\d+)\\s*</offset>");
+  private static final byte[] SPECTRUM_TAG = ("<" + MzMLTags.TAG_SPECTRUM).getBytes(
+      StandardCharsets.US_ASCII);
+  private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+  /**
+   * The indexListOffset element is at the end of the file, only followed by the checksum
+   */
+  private static final int TAIL_LENGTH = 8192;
+  private static final int MAX_HEADER_LENGTH = 64 * 1024 * 1024;
+  private static final int CHUNKS_PER_THREAD = 4;
+  private static final int DECODE_BATCH_SIZE = 64;
+  private static final int BATCHES_PER_THREAD = 2;
+
+  private final MzMLFileImportMethod importer;
+  private final ByteBufferInputStream mappedFile;
+  private final long[] spectrumOffsets;
+  private final long indexListOffset;
+  private final AtomicInteger parsedSpectra = new AtomicInteger(0);
+  private int numThreads = 1;
+
+  private IndexedMzMLParallelReader(MzMLFileImportMethod importer,
+      ByteBufferInputStream mappedFile, long[] spectrumOffsets, long indexListOffset) {
+    this.importer = importer;
+    this.mappedFile = mappedFile;
+    this.spectrumOffsets = spectrumOffsets;
+    this.indexListOffset = indexListOffset;
+  }
+
+  /**
+   * Reads and validates the spectrum offsets of an indexedmzML file.
+   *
+   * @return a reader or null if the file is not indexed or the index cannot be used
+   */
+  @Nullable
+  static IndexedMzMLParallelReader create(MzMLFileImportMethod importer,
+      ByteBufferInputStream mappedFile) throws IOException {
+    final long size = mappedFile.length();
+    final int tailLength = (int) Math.min(size, TAIL_LENGTH);
+    final String tail = new String(readBytes(mappedFile, size - tailLength, tailLength),
+        StandardCharsets.US_ASCII);
+    final Matcher offsetMatcher = INDEX_LIST_OFFSET_PATTERN.matcher(tail);
+    if (!offsetMatcher.find()) {
+      return null;
+    }
+    final long indexListOffset = Long.parseLong(offsetMatcher.group(1));
+    if (indexListOffset <= 0 || indexListOffset >= size
+        || size - indexListOffset > Integer.MAX_VALUE) {
+      return null;
+    }
+
+    final String indexList = new String(
+        readBytes(mappedFile, indexListOffset, (int) (size - indexListOffset)),
+        StandardCharsets.US_ASCII);
+    final Matcher spectrumIndex = SPECTRUM_INDEX_PATTERN.matcher(indexList);
+    if (!spectrumIndex.find()) {
+      return null;
+    }
+    final Matcher offsets = OFFSET_PATTERN.matcher(spectrumIndex.group(1));
+    final List<Long> offsetList = new ArrayList<>();
+    while (offsets.find()) {
+      offsetList.add(Long.parseLong(offsets.group(1)));
+    }
+    if (offsetList.isEmpty()) {
+      return null;
+    }
+
+    // the offsets need to point to the spectra in ascending order
+    final long[] spectrumOffsets = new long[offsetList.size()];
+    long previous = 0;
+    for (int i = 0; i < spectrumOffsets.length; i++) {
+      final long offset = offsetList.get(i);
+      if (offset <= previous || offset >= indexListOffset) {
+        logger.info("Invalid spectrum offsets in the index of " + importer.getMzMLFile());
+        return null;
+      }
+      final byte[] tag = readBytes(mappedFile, offset, SPECTRUM_TAG.length);
+      for (int b = 0; b < tag.length; b++) {
+        if (tag[b] != SPECTRUM_TAG[b]) {
+          logger.info("Spectrum offsets do not match the spectra in " + importer.getMzMLFile());
+          return null;
+        }
+      }
+      spectrumOffsets[i] = offset;
+      previous = offset;
+    }
+    if (spectrumOffsets[0] > MAX_HEADER_LENGTH) {
+      return null;
+    }
+    return new IndexedMzMLParallelReader(importer, mappedFile, spectrumOffsets, indexListOffset);
+  }
+
+  /**
+   * Parses all spectra on the shared {@link SubTaskExecutor} without decoding the binary data. The
+   * number of threads defines the number of chunks and the number of batches that are decoded
+   * ahead in {@link #decodedScans(List)}.
+   *
+   * @return the parsed file or null if the import was cancelled
+   */
+  @Nullable
+  MzMLRawDataFile read(int numThreads) throws IOException, XMLStreamException {
+    this.numThreads = Math.max(1, numThreads);
+    final byte[] header = readBytes(mappedFile, 0, (int) spectrumOffsets[0]);
+    final int headerChars = countChars(header);
+
+    // parse the header once to apply the run attributes and to find the open elements
+    final MzMLParser mainParser = new MzMLParser(importer);
+    final List<String> openElements = parseHeader(mainParser, header);
+    final int mzMLIndex = openElements.indexOf(MzMLTags.TAG_MZML);
+    final byte[] closeAll = closingTags(openElements);
+    // the last chunk ends at the index list and already closes the mzML element
+    final byte[] closeOuter = closingTags(openElements.subList(0, Math.max(mzMLIndex, 0)));
+
+    final int numChunks = Math.max(1,
+        Math.min(spectrumOffsets.length, numThreads * CHUNKS_PER_THREAD));
+    final ExecutorService executor = SubTaskExecutor.get();
+    final List<Future<MzMLParser>> chunks = new ArrayList<>(numChunks);
+    try {
+      for (int c = 0; c < numChunks; c++) {
+        final int firstSpectrum = (int) ((long) spectrumOffsets.length * c / numChunks);
+        final int lastSpectrum = (int) ((long) spectrumOffsets.length * (c + 1) / numChunks);
+        final boolean isLast = c == numChunks - 1;
+        final long start = spectrumOffsets[firstSpectrum];
+        final long end = isLast ? indexListOffset : spectrumOffsets[lastSpectrum];
+        final byte[] suffix = isLast ? closeOuter : closeAll;
+        chunks.add(executor.submit(
+            () -> parseChunk(mainParser.getMzMLRawFile(), header, headerChars, start, end,
+                suffix)));
+      }
+
+      // add in the original order
+      for (Future<MzMLParser> chunk : chunks) {
+        final MzMLParser parser = chunk.get();
+        if (parser == null) {
+          // cancelled
+          return null;
+        }
+        mainParser.getParsedSpectra().addAll(parser.getParsedSpectra());
+        mainParser.getParsedChromatograms().addAll(parser.getParsedChromatograms());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while reading " + importer.getMzMLFile(), e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException ioe) {
+        throw ioe;
+      }
+      if (cause instanceof XMLStreamException xse) {
+        throw xse;
+      }
+      if (cause instanceof RuntimeException re) {
+        throw re;
+      }
+      throw new IOException(cause);
+    } finally {
+      // the executor is shared, only stop the own chunks that are still running
+      chunks.forEach(chunk -> chunk.cancel(true));
+    }
+    return mainParser.getMzMLRawFile();
+  }
+
+  /**
+   * @return the parsed spectra or null if cancelled
+   */
+  @Nullable
+  private MzMLParser parseChunk(MzMLRawDataFile rawFile, byte[] header, int headerChars,
+      long start, long end, byte[] suffix) throws XMLStreamException {
+    final InputStream chunkStream = new SequenceInputStream(Collections.enumeration(
+        List.of(new ByteArrayInputStream(header), new SliceInputStream(mappedFile, start, end),
+            new ByteArrayInputStream(suffix))));
+
+    final MzMLParser parser = new MzMLParser(importer, rawFile);
+    if (!parse(parser, chunkStream, null)) {
+      return null;
+    }
+
+    // binary positions are relative to the chunk stream, decode with an independent stream
+    parser.relocateBinaryData(mappedFile.copy(), start - headerChars);
+    parsedSpectra.addAndGet(parser.getParsedSpectra().size());
+    return parser;
+  }
+
+  /**
+   * The returned iterable decodes the binary data of the scans on the shared
+   * {@link SubTaskExecutor} while the scans are consumed in order. The decoded data of a batch is
+   * released when the next batch is consumed, so the consumer has to copy or convert a scan before
+   * moving on.
+   *
+   * @param scans the scans of the file read by {@link #read(int)}
+   */
+  Iterable<MsScan> decodedScans(List<MsScan> scans) {
+    return () -> new DecodingIterator(scans, numThreads * BATCHES_PER_THREAD);
+  }
+
+  /**
+   * Decodes all scans of a batch with an own stream, so batches of the same chunk do not share a
+   * position.
+   */
+  private void decodeBatch(List<MsScan> batch) {
+    final ByteBufferInputStream stream = mappedFile.copy();
+    for (MsScan scan : batch) {
+      if (importer.isCanceled()) {
+        return;
+      }
+      final MzMLMsScan mzMLScan = (MzMLMsScan) scan;
+      mzMLScan.setInputStream(stream);
+      mzMLScan.getMzValues();
+      mzMLScan.getIntensityValues();
+    }
+  }
+
+  private List<String> parseHeader(MzMLParser parser, byte[] header) throws XMLStreamException {
+    final List<String> openElements = new ArrayList<>();
+    parse(parser, new ByteArrayInputStream(header), openElements);
+    return openElements;
+  }
+
+  /**
+   * Feeds all events to the parser. If open elements are tracked, parsing stops at the opening
+   * spectrumList element.
+   *
+   * @return false if cancelled
+   */
+  private boolean parse(MzMLParser parser, InputStream is, @Nullable List<String> openElements)
+      throws XMLStreamException {
+    final XMLStreamReaderImpl xmlStreamReader = new XMLStreamReaderImpl();
+    try {
+      xmlStreamReader.setInput(is, "UTF-8");
+      int eventType;
+      do {
+        if (importer.isCanceled()) {
+          return false;
+        }
+        eventType = xmlStreamReader.next();
+        switch (eventType) {
+          case XMLStreamConstants.START_ELEMENT -> {
+            final var openingTagName = xmlStreamReader.getLocalName();
+            parser.processOpeningTag(xmlStreamReader, is, openingTagName);
+            if (openElements != null) {
+              openElements.add(openingTagName.toString());
+              if (openingTagName.contentEquals(MzMLTags.TAG_SPECTRUM_LIST)) {
+                return true;
+              }
+            }
+          }
+          case XMLStreamConstants.END_ELEMENT -> {
+            final var closingTagName = xmlStreamReader.getLocalName();
+            parser.processClosingTag(xmlStreamReader, closingTagName);
+            if (openElements != null && !openElements.isEmpty()) {
+              openElements.remove(openElements.size() - 1);
+            }
+          }
+          case XMLStreamConstants.CHARACTERS -> parser.processCharacters(xmlStreamReader);
+          default -> {
+          }
+        }
+      } while (eventType != XMLStreamConstants.END_DOCUMENT);
+    } finally {
+      xmlStreamReader.close();
+    }
+    if (openElements != null) {
+      throw new XMLStreamException("No spectrumList found in " + importer.getMzMLFile());
+    }
+    return true;
+  }
+
+  /**
+   * @return the progress of parsing
+   */
+  float getFinishedPercentage() {
+    return parsedSpectra.get() / (float) spectrumOffsets.length;
+  }
+
+  private static byte[] closingTags(List<String> openElements) {
+    final StringBuilder closing = new StringBuilder();
+    for (int i = openElements.size() - 1; i >= 0; i--) {
+      closing.append("</").append(openElements.get(i)).append(">");
+    }
+    return closing.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * The parser positions binary data by characters read (plus the length of a byte order mark).
+   * Count the characters of the header the same way.
+   */
+  private static int countChars(byte[] header) {
+    final boolean bom = header.length >= UTF8_BOM.length && header[0] == UTF8_BOM[0]
+        && header[1] == UTF8_BOM[1] && header[2] == UTF8_BOM[2];
+    final int offset = bom ? UTF8_BOM.length : 0;
+    return new String(header, offset, header.length - offset, StandardCharsets.UTF_8).length()
+        + offset;
+  }
+
+  private static byte[] readBytes(ByteBufferInputStream mappedFile, long position, int length) {
+    final ByteBufferInputStream copy = mappedFile.copy();
+    copy.position(position);
+    final byte[] bytes = new byte[length];
+    int read = 0;
+    while (read < length) {
+      final int n = copy.read(bytes, read, length - read);
+      if (n <= 0) {
+        break;
+      }
+      read += n;
+    }
+    return bytes;
+  }
+
+  /**
+   * Hands out the scans in order and keeps at most maxBatchesAhead batches decoding or decoded
+   * ahead of the current scan.
+   */
+  private class DecodingIterator implements Iterator<MsScan> {
+
+    private final List<MsScan> scans;
+    private final int maxBatchesAhead;
+    private final ArrayDeque<Future<?>> batches = new ArrayDeque<>();
+    private int nextScan = 0;
+    private int nextBatchStart = 0;
+
+    private DecodingIterator(List<MsScan> scans, int maxBatchesAhead) {
+      this.scans = scans;
+      this.maxBatchesAhead = Math.max(1, maxBatchesAhead);
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (nextScan < scans.size()) {
+        return true;
+      }
+      // the consumer is done with the last batch
+      if (nextScan > 0) {
+        release((nextScan - 1) / DECODE_BATCH_SIZE * DECODE_BATCH_SIZE);
+      }
+      return false;
+    }
+
+    @Override
+    public MsScan next() {
+      if (nextScan >= scans.size()) {
+        throw new NoSuchElementException();
+      }
+      if (nextScan % DECODE_BATCH_SIZE == 0) {
+        // the consumer is done with the previous batch
+        release(nextScan - DECODE_BATCH_SIZE);
+        submitBatches();
+        await(batches.poll());
+        submitBatches();
+      }
+      return scans.get(nextScan++);
+    }
+
+    private void submitBatches() {
+      final ExecutorService executor = SubTaskExecutor.get();
+      while (batches.size() < maxBatchesAhead && nextBatchStart < scans.size()) {
+        final List<MsScan> batch = scans.subList(nextBatchStart,
+            Math.min(scans.size(), nextBatchStart + DECODE_BATCH_SIZE));
+        batches.add(executor.submit(() -> decodeBatch(batch)));
+        nextBatchStart += DECODE_BATCH_SIZE;
+      }
+    }
+
+    private void await(Future<?> batch) {
+      try {
+        batch.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while decoding " + importer.getMzMLFile(),
+            e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException re) {
+          throw re;
+        }
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    private void release(int batchStart) {
+      if (batchStart < 0) {
+        return;
+      }
+      for (MsScan scan : scans.subList(batchStart,
+          Math.min(scans.size(), batchStart + DECODE_BATCH_SIZE))) {
+        ((MzMLMsScan) scan).clearDecodedData();
+      }
+    }
+  }
+
+  /**
+   * Reads the range [start, end) of the memory mapped file with an independent position
+   */
+  private static class SliceInputStream extends InputStream {
+
+    private final ByteBufferInputStream stream;
+    private long remaining;
+
+    private SliceInputStream(ByteBufferInputStream mappedFile, long start, long end) {
+      stream = mappedFile.copy();
+      stream.position(start);
+      remaining = end - start;
+    }
+
+    @Override
+    public int read() {
+      if (remaining <= 0) {
+        return -1;
+      }
+      final byte[] single = new byte[1];
+      final int n = read(single, 0, 1);
+      return n <= 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (remaining <= 0) {
+        return -1;
+      }
+      final int n = stream.read(b, off, (int) Math.min(len, remaining));
+      if (n > 0) {
+        remaining -= n;
+      }
+      return n;
+    }
+  }
+}
@@ -32,6 +32,7 @@ import io.github.msdk.datamodel.MsScan;
 import io.github.msdk.datamodel.RawDataFile;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLParser;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRawDataFile;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.ByteBufferInputStream;
 import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.FileMemoryMapper;
 import java.io.File;
 import java.io.IOException;
@@ -61,6 +62,8 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
   private final InputStream inputStream;
   private MzMLRawDataFile newRawFile;
   private MzMLParser parser;
+  private IndexedMzMLParallelReader parallelReader;
+  private int numThreads = 1;
   private volatile boolean canceled;
   private int lastLoggedProgress;
   private final Logger logger = Logger.getLogger(this.getClass().getName());
@@ -227,7 +230,17 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
 
       if (mzMLFile != null) {
         logger.finest("Began parsing file: " + mzMLFile.getAbsolutePath());
-        is = FileMemoryMapper.mapToMemory(mzMLFile);
+        final ByteBufferInputStream mapped = FileMemoryMapper.mapToMemory(mzMLFile);
+        if (numThreads > 1) {
+          // indexedmzML files are parsed in parallel and decoded while the scans are consumed
+          parallelReader = IndexedMzMLParallelReader.create(this, mapped);
+          if (parallelReader != null) {
+            newRawFile = parallelReader.read(numThreads);
+            logger.finest("Parsing Complete");
+            return newRawFile;
+          }
+        }
+        is = mapped;
       } else if (inputStream != null) {
         logger.finest("Began parsing file from stream");
         is = inputStream;
@@ -291,6 +304,9 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
    */
   @Override
   public Float getFinishedPercentage() {
+    if (parallelReader != null) {
+      return parallelReader.getFinishedPercentage();
+    }
     if (parser == null) {
       return null;
     } else {
@@ -306,6 +322,22 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
     return newRawFile;
   }
 
+  /**
+   * <p>
+   * The scans of the result in their original order. Files read in parallel are decoded on
+   * worker threads ahead of the iteration and the decoded data of a scan is released once the
+   * iteration moved on, so each scan has to be converted before the next one is requested.
+   * </p>
+   *
+   * @return the scans of {@link #getResult()}
+   */
+  public Iterable<MsScan> getDecodedScans() {
+    if (parallelReader != null) {
+      return parallelReader.decodedScans(newRawFile.getScans());
+    }
+    return newRawFile.getScans();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -314,6 +346,22 @@ public class MzMLFileImportMethod implements MSDKMethod<RawDataFile> {
     this.canceled = true;
   }
 
+  boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * <p>
+   * Sets the number of threads. Files in the indexedmzML format are parsed and decoded in parallel
+   * (see {@link #getDecodedScans()}) if more than one thread is used and the source is a {@link File File}.
+   * </p>
+   *
+   * @param numThreads the number of threads, default is 1
+   */
+  public void setNumThreads(int numThreads) {
+    this.numThreads = Math.max(1, numThreads);
+  }
+
   /**
    * <p>
    * Getter for the field <code>msScanPredicate</code>.
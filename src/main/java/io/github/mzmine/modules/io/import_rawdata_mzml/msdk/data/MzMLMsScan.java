@@ -188,6 +188,17 @@ public class MzMLMsScan implements MsScan {
     this.inputStream = inputStream;
   }
 
+  /**
+   * <p>
+   * Releases the decoded m/z and intensity values. They are decoded again from the input stream
+   * on the next access.
+   * </p>
+   */
+  public void clearDecodedData() {
+    mzValues = null;
+    intensityValues = null;
+  }
+
   /**
    * <p>
    * getPrecursorList.
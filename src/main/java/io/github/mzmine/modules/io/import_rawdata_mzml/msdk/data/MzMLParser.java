@@ -53,6 +53,8 @@ public class MzMLParser {
   private TagTracker tracker;
   private final MzMLRawDataFile newRawFile;
   private final MzMLFileImportMethod importer;
+  // parses a part of an indexed mzML file into an existing raw data file
+  private final boolean partial;
   private int totalScans = 0, parsedScans = 0;
   private static final Logger logger = Logger.getLogger(MzMLParser.class.getName());
 
@@ -70,6 +72,27 @@ public class MzMLParser {
     this.importer = importer;
     this.newRawFile = new MzMLRawDataFile(importer.getMzMLFile(), vars.msFunctionsList,
         vars.spectrumList, vars.chromatogramsList);
+    this.partial = false;
+  }
+
+  /**
+   * <p>
+   * Constructor for a {@link MzMLParser MzMLParser} that parses a part of an indexed mzML file.
+   * Spectra and chromatograms reference the given raw data file but are only collected in this
+   * parser ({@link #getParsedSpectra()}, {@link #getParsedChromatograms()}). The attributes of the
+   * run are not applied to the raw data file.
+   * </p>
+   *
+   * @param importer an instance of an initialized {@link MzMLFileImportMethod
+   *                 MzMLFileImportMethod}
+   * @param rawFile  the raw data file of the whole mzML file
+   */
+  public MzMLParser(MzMLFileImportMethod importer, MzMLRawDataFile rawFile) {
+    this.vars = new Vars();
+    this.tracker = new TagTracker();
+    this.importer = importer;
+    this.newRawFile = rawFile;
+    this.partial = true;
   }
 
   /**
@@ -86,7 +109,7 @@ public class MzMLParser {
       CharArray openingTagName) {
     tracker.enter(openingTagName);
 
-    if (tracker.current().contentEquals((MzMLTags.TAG_RUN))) {
+    if (!partial && tracker.current().contentEquals((MzMLTags.TAG_RUN))) {
       final CharArray defaultInstrumentConfigurationRef = getRequiredAttribute(xmlStreamReader,
           MzMLTags.ATTR_DEFAULT_INSTRUMENT_CONFIGURATION_REF);
       newRawFile.setDefaultInstrumentConfiguration(defaultInstrumentConfigurationRef.toString());
@@ -688,6 +711,50 @@ public class MzMLParser {
     return newRawFile;
   }
 
+  /**
+   * @return the modifiable list of spectra parsed by this parser
+   */
+  public List<MsScan> getParsedSpectra() {
+    return vars.spectrumList;
+  }
+
+  /**
+   * @return the modifiable list of chromatograms parsed by this parser
+   */
+  public List<Chromatogram> getParsedChromatograms() {
+    return vars.chromatogramsList;
+  }
+
+  /**
+   * <p>
+   * Moves the binary data positions of all parsed spectra and chromatograms and sets the input
+   * stream to decode them. Used when a part of a file was parsed from a separate stream.
+   * </p>
+   *
+   * @param is    the {@link InputStream InputStream} of the whole file
+   * @param shift added to all binary data positions
+   */
+  public void relocateBinaryData(InputStream is, long shift) {
+    for (MsScan msScan : vars.spectrumList) {
+      final MzMLMsScan scan = (MzMLMsScan) msScan;
+      shiftPosition(scan.getMzBinaryDataInfo(), shift);
+      shiftPosition(scan.getIntensityBinaryDataInfo(), shift);
+      scan.setInputStream(is);
+    }
+    for (Chromatogram c : vars.chromatogramsList) {
+      final MzMLChromatogram chromatogram = (MzMLChromatogram) c;
+      shiftPosition(chromatogram.getRtBinaryDataInfo(), shift);
+      shiftPosition(chromatogram.getIntensityBinaryDataInfo(), shift);
+      chromatogram.setInputStream(is);
+    }
+  }
+
+  private static void shiftPosition(MzMLBinaryDataInfo info, long shift) {
+    if (info != null) {
+      info.setPosition(info.getPosition() + shift);
+    }
+  }
+
   /**
    * Static class for holding temporary instances of variables initialized while parsing
    */
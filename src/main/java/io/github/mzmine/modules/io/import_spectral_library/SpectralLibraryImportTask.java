@@ -104,6 +104,7 @@ public class SpectralLibraryImportTask extends AbstractTask {
     parser = new AutoLibraryParser(1000, (list, alreadyProcessed) -> entries.addAll(list));
     // return tasks
     parser.parse(this, dataBaseFile, library);
+    library.buildPrecursorIndex();
     return library;
   }
 
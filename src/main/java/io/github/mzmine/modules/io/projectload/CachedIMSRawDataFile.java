@@ -310,6 +310,16 @@ public class CachedIMSRawDataFile implements IMSRawDataFile {
     return originalFile.getAppliedMethods();
   }
 
+  @Override
+  public boolean isModified() {
+    return originalFile.isModified();
+  }
+
+  @Override
+  public void setModified(boolean modified) {
+    originalFile.setModified(modified);
+  }
+
   public RawDataFile getOriginalFile() {
     return originalFile;
   }
@@ -27,6 +27,7 @@ package io.github.mzmine.modules.io.projectload;
 
 import io.github.mzmine.parameters.Parameter;
 import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.BooleanParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import io.github.mzmine.parameters.parametertypes.filenames.FileSelectionType;
 import io.github.mzmine.util.ExitCode;
@@ -45,8 +46,13 @@ public class ProjectLoaderParameters extends SimpleParameterSet {
   public static final FileNameParameter projectFile = new FileNameParameter("Project file",
       "File name of project to be loaded", extensions, FileSelectionType.OPEN);
 
+  public static final BooleanParameter lazyFeatureLists = new BooleanParameter(
+      "Load feature lists on demand",
+      "Only reads the metadata of feature lists when opening the project. The rows of a feature "
+      + "list are loaded when it is accessed for the first time.", false);
+
   public ProjectLoaderParameters() {
-    super(new Parameter[]{projectFile});
+    super(new Parameter[]{projectFile, lazyFeatureLists});
   }
 
   @Override
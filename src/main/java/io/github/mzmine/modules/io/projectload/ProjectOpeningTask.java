@@ -64,6 +64,8 @@ public class ProjectOpeningTask extends AbstractTask {
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private File openFile;
+  // only read the metadata of feature lists, rows are loaded on first access
+  private final boolean lazyFeatureLists;
   private MZmineProjectImpl newProject;
 
   private RawDataFileOpenHandler rawDataFileOpenHandler;
@@ -82,11 +84,13 @@ public class ProjectOpeningTask extends AbstractTask {
   public ProjectOpeningTask(ParameterSet parameters, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
     this.openFile = parameters.getParameter(ProjectLoaderParameters.projectFile).getValue();
+    this.lazyFeatureLists = parameters.getValue(ProjectLoaderParameters.lazyFeatureLists);
   }
 
   public ProjectOpeningTask(File openFile, @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
     this.openFile = openFile;
+    this.lazyFeatureLists = false;
   }
 
   /**
@@ -178,6 +182,8 @@ public class ProjectOpeningTask extends AbstractTask {
         if (entryName.equals(ProjectSavingTask.VERSION_FILENAME)) {
           loadVersion(cis);
           versionInformationLoaded = true;
+        } else if (entryName.equals(ProjectSavingTask.PROJECT_FORMAT_FILENAME)) {
+          loadProjectFormat(cis);
         } else if (entryName.equals(ProjectSavingTask.CONFIG_FILENAME)) {
           loadConfiguration(cis);
         } else if (entryName.equals(ProjectSavingTask.PARAMETERS_FILENAME)) {
@@ -214,6 +220,9 @@ public class ProjectOpeningTask extends AbstractTask {
         return;
       }
 
+      // the loaded state equals the project file
+      newProject.clearModified();
+
       logger.info("Finished opening project " + openFile);
       setStatus(TaskStatus.FINISHED);
 
@@ -264,6 +273,27 @@ public class ProjectOpeningTask extends AbstractTask {
 
   }
 
+  /**
+   * Rejects projects that were saved in a newer project format than this MZmine can read. Projects
+   * without the format entry are of format 1.
+   */
+  private void loadProjectFormat(InputStream is) throws IOException {
+    final String formatString = new String(is.readAllBytes()).trim();
+    final int format;
+    try {
+      format = Integer.parseInt(formatString);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid project format " + formatString, e);
+    }
+
+    if (format > ProjectSavingTask.PROJECT_FORMAT_VERSION) {
+      throw new IOException("The project was saved in project format " + format
+          + " by a newer version of MZmine. MZmine " + MZmineCore.getMZmineVersion()
+          + " supports project formats up to " + ProjectSavingTask.PROJECT_FORMAT_VERSION
+          + ". Please update MZmine to open this project.");
+    }
+  }
+
   /**
    * Load the version info from the ZIP file and checks whether such version can be opened with this
    * MZmine
@@ -352,7 +382,8 @@ public class ProjectOpeningTask extends AbstractTask {
 
   private void loadFeatureList(ZipFile zipFile) {
 
-    FeatureListLoadTask task = new FeatureListLoadTask(MemoryMapStorage.forFeatureList(), newProject, zipFile);
+    FeatureListLoadTask task = new FeatureListLoadTask(MemoryMapStorage.forFeatureList(), newProject,
+        zipFile, lazyFeatureLists);
     MZmineCore.getTaskController().addTask(task);
     currentLoadedObjectName = "Feature lists";
     while(task.getStatus() != TaskStatus.FINISHED && !task.isCanceled() && ! isCanceled()) {
@@ -71,6 +71,7 @@ public class CONST {
   public static final String XML_DATE_CREATED_ATTR = "date";
   public static final String XML_DATA_TYPE_ELEMENT = "datatype";
   public static final String XML_DATA_TYPE_ID_ATTR = "type";
+  public static final String XML_SERIES_OFFSET_ATTR = "seriesoffset";
   public static final String XML_FEATURE_ELEMENT = "feature";
   public static final String XML_ROW_ELEMENT = "row";
   public static final String XML_FEATURE_LIST_ELEMENT = "featurelist";
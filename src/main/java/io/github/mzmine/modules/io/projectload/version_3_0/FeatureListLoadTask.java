@@ -25,6 +25,7 @@
 
 package io.github.mzmine.modules.io.projectload.version_3_0;
 
+import io.github.mzmine.datamodel.IMSRawDataFile;
 import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
@@ -48,6 +49,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
@@ -55,7 +57,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -89,7 +90,7 @@ public class FeatureListLoadTask extends AbstractTask {
   final String idTypeUniqueID = new IDType().getUniqueID();
   private final ZipFile zip;
   private final MZmineProject project;
-  private final AtomicInteger rowCounter = new AtomicInteger(0);
+  private final boolean lazy;
   private int totalRows = 1;
   private int processedRows = 0;
   private String currentFlist = "";
@@ -98,9 +99,18 @@ public class FeatureListLoadTask extends AbstractTask {
 
   public FeatureListLoadTask(@Nullable MemoryMapStorage storage, @NotNull MZmineProject project,
       ZipFile zip) {
+    this(storage, project, zip, false);
+  }
+
+  /**
+   * @param lazy only read the metadata of feature lists. Rows are loaded on first access.
+   */
+  public FeatureListLoadTask(@Nullable MemoryMapStorage storage, @NotNull MZmineProject project,
+      ZipFile zip, boolean lazy) {
     super(storage, Instant.now());
     this.project = project;
     this.zip = zip;
+    this.lazy = lazy;
   }
 
   /**
@@ -171,23 +181,39 @@ public class FeatureListLoadTask extends AbstractTask {
         if (isCanceled()) {
           return;
         }
-        rowCounter.set(0);
 
         final File metadataFile = new File(flistFile.toString()
             .replace(FeatureListSaveTask.DATA_FILE_SUFFIX,
                 FeatureListSaveTask.METADATA_FILE_SUFFIX));
-        ModularFeatureList flist = createRows(storage, flistFile, metadataFile);
+        final File seriesFile = new File(flistFile.toString()
+            .replace(FeatureListSaveTask.DATA_FILE_SUFFIX,
+                FeatureListSaveTask.SERIES_FILE_SUFFIX));
 
+        ModularFeatureList flist = readMetadataCreateFeatureList(metadataFile, storage);
         if (flist == null) {
-          logger.severe(
-              () -> "Cannot load feature list from files " + flistFile.getAbsolutePath() + " and "
-                    + metadataFile.getAbsolutePath());
-          continue;
+          throw new IllegalStateException("Cannot create feature list.");
         }
-        parseFeatureList(storage, project, flist, flistFile);
 
-        // disable buffering after the import (replace references to CachedIMSRawDataFiles with IMSRawDataFiles
-        flist.replaceCachedFilesAndScans();
+        if (lazy && canLoadLazily(flist)) {
+          // rows are loaded on first access
+          flist.setRowLoader(() -> loadRowsLazily(storage, flist, flistFile, seriesFile));
+        } else {
+          if (!createRows(flist, flistFile)) {
+            logger.severe(
+                () -> "Cannot load feature list from files " + flistFile.getAbsolutePath() + " and "
+                      + metadataFile.getAbsolutePath());
+            continue;
+          }
+          final FeatureSeriesBlockReader seriesReader = openSeriesReader(seriesFile);
+          try {
+            parseFeatureList(storage, project, flist, flistFile, seriesReader);
+          } catch (IOException | XMLStreamException e) {
+            logger.log(Level.WARNING, "Error opening file " + flistFile.getAbsolutePath(), e);
+          }
+
+          // disable buffering after the import (replace references to CachedIMSRawDataFiles with IMSRawDataFiles
+          flist.replaceCachedFilesAndScans();
+        }
 
         project.addFeatureList(flist);
         processedFlists++;
@@ -206,12 +232,18 @@ public class FeatureListLoadTask extends AbstractTask {
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * @param seriesReader binary series of the feature list. null for projects that store all series
+   *                     in xml.
+   */
   private void parseFeatureList(MemoryMapStorage storage, MZmineProject project,
-      ModularFeatureList flist, File flistFile) {
+      ModularFeatureList flist, File flistFile, @Nullable FeatureSeriesBlockReader seriesReader)
+      throws IOException, XMLStreamException {
     currentFlist = flist.getName();
     processedRows = 0;
     totalRows = flist.getNumberOfRows();
 
+    int rowIndex = 0;
     try (InputStream fis = new FileInputStream(flistFile)) {
       final XMLInputFactory xif = XMLInputFactory.newInstance();
       final XMLStreamReader reader = xif.createXMLStreamReader(fis);
@@ -233,38 +265,65 @@ public class FeatureListLoadTask extends AbstractTask {
                       .getAttributeValue(null, CONST.XML_FLIST_NAME_ATTR));
             }
           } else if (CONST.XML_ROW_ELEMENT.equals(localName)) {
-            parseRow(reader, storage, project, flist);
+            parseRow(reader, storage, project, flist, rowIndex, seriesReader);
+            rowIndex++;
             processedRows++;
           }
         }
       }
-
-    } catch (IOException | XMLStreamException e) {
-      logger.log(Level.WARNING, "Error opening file " + flistFile.getAbsolutePath(), e);
     }
   }
 
   /**
-   * Creates the modular feature list from the metadata file using {@link
-   * this#readMetadataCreateFeatureList(File, MemoryMapStorage)}.
-   * <p></p>
-   * Then passes the feature list data file once and creates the rows with the associated ids. No
-   * other data will be put into the rows. This is done so rows can reference each other by their id
-   * while being loaded to the feature list.
-   *
-   * @param storage      The storage for the feature list.
-   * @param dataFile     The file containing the feature list data.
-   * @param metadataFile The file containign the metadata associated with the feature list.
-   * @return The created feature list with empty rows (row ids are set)
+   * Feature lists of ion mobility data are loaded directly, because the import relies on cached
+   * ims files of the project.
    */
-  private ModularFeatureList createRows(MemoryMapStorage storage, File dataFile,
-      File metadataFile) {
+  private boolean canLoadLazily(ModularFeatureList flist) {
+    return flist.getRawDataFiles().stream().noneMatch(file -> file instanceof IMSRawDataFile);
+  }
 
-    ModularFeatureList flist = readMetadataCreateFeatureList(metadataFile, storage);
-    if (flist == null) {
-      throw new IllegalStateException("Cannot create feature list.");
+  /**
+   * Creates and parses the rows of a feature list that was loaded lazily. Called on the first
+   * access of the rows. All state of the parsing is local, so multiple feature lists can be loaded
+   * at the same time.
+   *
+   * @throws UncheckedIOException if the rows cannot be read. The feature list stays unloaded.
+   */
+  private void loadRowsLazily(MemoryMapStorage storage, ModularFeatureList flist, File dataFile,
+      File seriesFile) {
+    logger.fine(() -> "Loading rows of feature list " + flist.getName());
+    if (!createRows(flist, dataFile)) {
+      throw new UncheckedIOException(new IOException(
+          "Cannot load feature list from file " + dataFile.getAbsolutePath()));
     }
+    try {
+      parseFeatureList(storage, project, flist, dataFile, openSeriesReader(seriesFile));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot load rows of feature list " + flist.getName(), e);
+    } catch (XMLStreamException e) {
+      throw new UncheckedIOException("Cannot load rows of feature list " + flist.getName(),
+          new IOException(e));
+    }
+    // the loaded rows equal the project file
+    flist.setModified(false);
+  }
+
+  @Nullable
+  private static FeatureSeriesBlockReader openSeriesReader(File seriesFile) throws IOException {
+    return seriesFile.exists() ? new FeatureSeriesBlockReader(seriesFile) : null;
+  }
 
+  /**
+   * Passes the feature list data file once and creates the rows with the associated ids. No other
+   * data will be put into the rows. This is done so rows can reference each other by their id
+   * while being loaded to the feature list.
+   *
+   * @param flist    The feature list created by
+   *                 {@link this#readMetadataCreateFeatureList(File, MemoryMapStorage)}.
+   * @param dataFile The file containing the feature list data.
+   * @return true if the empty rows were created (row ids are set)
+   */
+  private boolean createRows(ModularFeatureList flist, File dataFile) {
     try (InputStream fis = new FileInputStream(dataFile)) {
       final XMLInputFactory xif = XMLInputFactory.newInstance();
       final XMLStreamReader reader = xif.createXMLStreamReader(fis);
@@ -281,12 +340,12 @@ public class FeatureListLoadTask extends AbstractTask {
       }
     } catch (IOException | XMLStreamException e) {
       logger.log(Level.WARNING, e.getMessage(), e);
-      return null;
+      return false;
     }
 
     logger.finest(
         () -> "Created " + flist.getNumberOfRows() + " rows in feature list " + flist.getName());
-    return flist;
+    return true;
   }
 
   /**
@@ -381,13 +440,14 @@ public class FeatureListLoadTask extends AbstractTask {
   }
 
   private void parseRow(XMLStreamReader reader, MemoryMapStorage storage, MZmineProject project,
-      ModularFeatureList flist) throws XMLStreamException {
+      ModularFeatureList flist, int rowIndex, @Nullable FeatureSeriesBlockReader seriesReader)
+      throws XMLStreamException {
     if (!reader.getLocalName().equals(CONST.XML_ROW_ELEMENT)) {
       throw new IllegalStateException("Cannot parse row if current element is not a row element");
     }
 
     int id = Integer.parseInt(reader.getAttributeValue(null, idTypeUniqueID));
-    final ModularFeatureListRow row = (ModularFeatureListRow) flist.getRow(rowCounter.get());
+    final ModularFeatureListRow row = (ModularFeatureListRow) flist.getRow(rowIndex);
     if (id != row.getID()) {
       throw new IllegalStateException("Row ids do not match.");
     }
@@ -404,7 +464,7 @@ public class FeatureListLoadTask extends AbstractTask {
                                  + ". File does not exist in project.");
             continue;
           }
-          parseFeature(reader, storage, project, flist, row, file);
+          parseFeature(reader, storage, project, flist, row, file, seriesReader);
         } else if (reader.getLocalName().equals(CONST.XML_DATA_TYPE_ELEMENT)) {
           DataType type = DataTypes.getTypeForId(
               reader.getAttributeValue(null, CONST.XML_DATA_TYPE_ID_ATTR));
@@ -423,12 +483,12 @@ public class FeatureListLoadTask extends AbstractTask {
         }
       }
     }
-    rowCounter.getAndIncrement();
   }
 
   private void parseFeature(@NotNull XMLStreamReader reader, @Nullable MemoryMapStorage storage,
       MZmineProject project, @NotNull ModularFeatureList flist, @NotNull ModularFeatureListRow row,
-      @NotNull RawDataFile file) throws XMLStreamException {
+      @NotNull RawDataFile file, @Nullable FeatureSeriesBlockReader seriesReader)
+      throws XMLStreamException {
 
     // create feature with original file, but use buffered file for data type loading.
     final RawDataFile originalFile =
@@ -445,7 +505,22 @@ public class FeatureListLoadTask extends AbstractTask {
         // the data types are responsible for loading their values
         DataType type = DataTypes.getTypeForId(
             reader.getAttributeValue(null, CONST.XML_DATA_TYPE_ID_ATTR));
-        Object value = parseDataType(reader, type, project, flist, row, feature, file);
+        final String seriesOffset = reader.getAttributeValue(null, CONST.XML_SERIES_OFFSET_ATTR);
+        Object value;
+        if (seriesOffset != null) {
+          if (seriesReader == null) {
+            throw new XMLStreamException(
+                "Feature list " + flist.getName() + " references a missing series file.");
+          }
+          try {
+            value = seriesReader.readSeries(Long.parseLong(seriesOffset), file);
+          } catch (IOException e) {
+            throw new XMLStreamException("Cannot read series of feature list " + flist.getName(),
+                e);
+          }
+        } else {
+          value = parseDataType(reader, type, project, flist, row, feature, file);
+        }
         if (type != null && value != null) {
           try {
             feature.set(type, value);
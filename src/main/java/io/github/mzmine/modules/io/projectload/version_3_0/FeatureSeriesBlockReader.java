@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectload.version_3_0;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.modules.io.projectload.CachedIMSFrame;
+import io.github.mzmine.modules.io.projectsave.FeatureSeriesBlockWriter;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads the series blocks written by {@link FeatureSeriesBlockWriter}. The file is memory mapped,
+ * so only the blocks that are actually read are paged in. The loaded series are backed by the
+ * mapped file and are not copied to the storage of the feature list, so the file must not be
+ * deleted or modified while the series are in use.
+ */
+public class FeatureSeriesBlockReader {
+
+  /**
+   * Version 1 files had no chunk size in the header.
+   */
+  private static final int V1_HEADER_BYTES = 8;
+  private static final long V1_CHUNK_SIZE = 1L << 30;
+
+  private final MappedByteBuffer[] chunks;
+  private final long chunkSize;
+
+  public FeatureSeriesBlockReader(@NotNull File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size < V1_HEADER_BYTES) {
+        throw new IOException("Series block file " + file + " is too small.");
+      }
+
+      final ByteBuffer header = ByteBuffer.allocate(FeatureSeriesBlockWriter.HEADER_BYTES);
+      channel.read(header, 0);
+      final int magic = header.getInt(0);
+      final int version = header.getInt(Integer.BYTES);
+      if (magic != FeatureSeriesBlockWriter.MAGIC) {
+        throw new IOException("File " + file + " is not a series block file.");
+      }
+      if (version > FeatureSeriesBlockWriter.VERSION) {
+        throw new IOException("Series block version " + version
+            + " is not supported. Please update MZmine to load this project.");
+      }
+      if (version == 1) {
+        chunkSize = V1_CHUNK_SIZE;
+      } else if (size < FeatureSeriesBlockWriter.HEADER_BYTES) {
+        throw new IOException("Series block file " + file + " is too small.");
+      } else {
+        chunkSize = header.getLong(2 * Integer.BYTES);
+        if (chunkSize < FeatureSeriesBlockWriter.HEADER_BYTES || chunkSize > Integer.MAX_VALUE) {
+          throw new IOException("Invalid chunk size " + chunkSize + " in file " + file);
+        }
+      }
+
+      chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+      for (int i = 0; i < chunks.length; i++) {
+        final long start = i * chunkSize;
+        chunks[i] = channel.map(MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+      }
+    }
+  }
+
+  /**
+   * @param offset the offset of the block, as returned by
+   *               {@link FeatureSeriesBlockWriter#write(SimpleIonTimeSeries, List)}.
+   * @param file   the raw data file of the feature.
+   * @return the series, backed by the mapped file.
+   */
+  public SimpleIonTimeSeries readSeries(long offset, @NotNull RawDataFile file) throws IOException {
+    final int chunkIndex = (int) (offset / chunkSize);
+    if (offset < 0 || chunkIndex >= chunks.length) {
+      throw new IOException("Series block offset " + offset + " is outside of the file.");
+    }
+    final ByteBuffer chunk = chunks[chunkIndex];
+    final int position = (int) (offset % chunkSize);
+
+    final int numValues = chunk.getInt(position);
+    final int indicesStart = position + Integer.BYTES;
+    final int mzsStart = indicesStart + numValues * Integer.BYTES;
+    final int intensitiesStart = mzsStart + numValues * Double.BYTES;
+    if (numValues < 0 || intensitiesStart + (long) numValues * Double.BYTES > chunk.limit()) {
+      throw new IOException("Invalid series block at offset " + offset);
+    }
+
+    final int[] indices = new int[numValues];
+    chunk.slice(indicesStart, numValues * Integer.BYTES).asIntBuffer().get(indices);
+    final DoubleBuffer mzs = chunk.slice(mzsStart, numValues * Double.BYTES).asDoubleBuffer();
+    final DoubleBuffer intensities = chunk.slice(intensitiesStart, numValues * Double.BYTES)
+        .asDoubleBuffer();
+
+    List<Scan> scans = ParsingUtils.getSublistFromIndices(file.getScans(), indices);
+    // if the scans were CachedFrames, we have to replace them when storing them to the series,
+    // otherwise, we would keep the refences to cached mobility scans alive.
+    if (!scans.isEmpty() && scans.get(0) instanceof CachedIMSFrame) {
+      scans = scans.stream().map(scan -> ((CachedIMSFrame) scan).getOriginalFrame())
+          .map(f -> (Scan) f).toList();
+    }
+
+    return new SimpleIonTimeSeries(mzs, intensities, scans);
+  }
+}
@@ -29,12 +29,14 @@ import com.sun.xml.txw2.output.IndentingXMLStreamWriter;
 import io.github.mzmine.datamodel.FeatureStatus;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
 import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
 import io.github.mzmine.datamodel.features.FeatureListRow;
 import io.github.mzmine.datamodel.features.ModularFeature;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureListRow;
 import io.github.mzmine.datamodel.features.types.DataType;
+import io.github.mzmine.datamodel.features.types.FeatureDataType;
 import io.github.mzmine.datamodel.features.types.FeaturesType;
 import io.github.mzmine.datamodel.features.types.numbers.IDType;
 import io.github.mzmine.modules.io.projectload.version_3_0.CONST;
@@ -42,6 +44,7 @@ import io.github.mzmine.taskcontrol.AbstractTask;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ParsingUtils;
 import io.github.mzmine.util.StreamCopy;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -76,20 +79,28 @@ public class FeatureListSaveTask extends AbstractTask {
 
   public static final String METADATA_FILE_SUFFIX = "_metadata.xml";
   public static final String DATA_FILE_SUFFIX = "_data.xml";
+  public static final String SERIES_FILE_SUFFIX = "_series.bin";
   public static final String FLIST_FOLDER = "featurelists/";
   private static final Logger logger = Logger.getLogger(FeatureListSaveTask.class.getName());
   private static final IDType idType = new IDType();
 
   private final ModularFeatureList flist;
-  private final ZipOutputStream zos;
   private final int rows;
   private final StreamCopy copy;
   private int processedRows = 0;
 
-  public FeatureListSaveTask(ModularFeatureList flist, ZipOutputStream zos) {
+  private File dataFile;
+  private File seriesFile;
+  private File metadataFile;
+  private FeatureSeriesBlockWriter seriesWriter;
+
+  /**
+   * Writes the feature list to temporary files. Multiple feature lists can be saved in parallel,
+   * the files are added to the project afterwards by {@link #copyToZip(ZipOutputStream)}.
+   */
+  public FeatureListSaveTask(ModularFeatureList flist) {
     super(null, Instant.now());
     this.flist = flist;
-    this.zos = zos;
     rows = flist.getNumberOfRows();
     copy = new StreamCopy();
   }
@@ -98,6 +109,10 @@ public class FeatureListSaveTask extends AbstractTask {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + DATA_FILE_SUFFIX;
   }
 
+  public static String getSeriesFileName(String flistname) {
+    return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + SERIES_FILE_SUFFIX;
+  }
+
   public static String getMetadataFileName(String flistname) {
     return FLIST_FOLDER + CONST.XML_FEATURE_LIST_ELEMENT + "_" + flistname + METADATA_FILE_SUFFIX;
   }
@@ -114,22 +129,74 @@ public class FeatureListSaveTask extends AbstractTask {
 
   @Override
   public void run() {
+    // canceled before it was started
+    if (isCanceled()) {
+      return;
+    }
     setStatus(TaskStatus.PROCESSING);
 
-    if (!saveFeatureData()) {
+    if (!saveFeatureData() || !saveAppliedMethods() || isCanceled()) {
+      deleteTempFiles();
       return;
     }
 
-    saveAppliedMethods();
-
     setStatus(TaskStatus.FINISHED);
   }
 
+  /**
+   * Cancels this task if it did not finish yet. Finished tasks keep their status, so their files
+   * can still be added by {@link #copyToZip(ZipOutputStream)}.
+   */
+  public void cancelIfUnfinished() {
+    if (getStatus() != TaskStatus.FINISHED && getStatus() != TaskStatus.ERROR) {
+      cancel();
+    }
+  }
+
+  /**
+   * Adds the previously written files of this feature list to the project zip. Must be called
+   * after this task finished.
+   *
+   * @param zos The zip stream of the project.
+   */
+  public void copyToZip(ZipOutputStream zos) throws IOException {
+    if (getStatus() != TaskStatus.FINISHED) {
+      throw new IllegalStateException(
+          "Feature list " + flist.getName() + " was not saved successfully.");
+    }
+
+    try {
+      copyEntry(zos, dataFile, getDataFileName(flist.getName()));
+      copyEntry(zos, seriesFile, getSeriesFileName(flist.getName()));
+      copyEntry(zos, metadataFile, getMetadataFileName(flist.getName()));
+    } finally {
+      deleteTempFiles();
+    }
+  }
+
+  private void copyEntry(ZipOutputStream zos, File file, String entryName) throws IOException {
+    zos.putNextEntry(new ZipEntry(entryName));
+    try (InputStream is = new FileInputStream(file)) {
+      copy.copy(is, zos);
+    }
+  }
+
+  /**
+   * Deletes the temporary files of this task. Called after the files were added to the zip or if
+   * the project saving was canceled or failed.
+   */
+  public void deleteTempFiles() {
+    for (File file : new File[]{dataFile, seriesFile, metadataFile}) {
+      if (file != null) {
+        file.delete();
+      }
+    }
+  }
+
   private boolean saveAppliedMethods() {
     logger.finest(() -> "Creating temporary file for feature list " + flist.getName() + ".");
-    File tempFile;
     try {
-      tempFile = File.createTempFile("mzmine_featurelist_applied_methods", ".tmp");
+      metadataFile = File.createTempFile("mzmine_featurelist_applied_methods", ".tmp");
     } catch (IOException e) {
       logger.log(Level.SEVERE, "Cannot create temporary file.", e);
       setStatus(TaskStatus.ERROR);
@@ -152,21 +219,11 @@ public class FeatureListSaveTask extends AbstractTask {
       transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
       transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
 
-      try (var stream = new FileOutputStream(tempFile)) {
+      try (var stream = new FileOutputStream(metadataFile)) {
         StreamResult result = new StreamResult(stream);
         DOMSource source = new DOMSource(document);
         transformer.transform(source, result);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-
-      zos.putNextEntry(new ZipEntry(getMetadataFileName(flist.getName())));
-
-      try (InputStream is = new FileInputStream(tempFile)) {
-        copy.copy(is, zos);
       }
-
-      tempFile.delete();
     } catch (ParserConfigurationException | TransformerException | IOException e) {
       logger.log(Level.SEVERE, e.getMessage(), e);
       setStatus(TaskStatus.ERROR);
@@ -228,16 +285,18 @@ public class FeatureListSaveTask extends AbstractTask {
 
   private boolean saveFeatureData() {
     logger.finest(() -> "Creating temporary file for feature list " + flist.getName() + ".");
-    File tempFile;
     try {
-      tempFile = File.createTempFile("mzmine_featurelist_data", ".tmp");
+      dataFile = File.createTempFile("mzmine_featurelist_data", ".tmp");
+      seriesFile = File.createTempFile("mzmine_featurelist_series", ".tmp");
     } catch (IOException e) {
       logger.log(Level.SEVERE, "Cannot create temporary file.", e);
       setStatus(TaskStatus.ERROR);
       return false;
     }
 
-    try (OutputStream os = new FileOutputStream(tempFile)) {
+    try (OutputStream os = new BufferedOutputStream(new FileOutputStream(dataFile));
+        FeatureSeriesBlockWriter blockWriter = new FeatureSeriesBlockWriter(seriesFile)) {
+      seriesWriter = blockWriter;
       final XMLOutputFactory xof = XMLOutputFactory.newInstance();
       final XMLStreamWriter writer = new IndentingXMLStreamWriter(xof.createXMLStreamWriter(os));
       writer.writeStartDocument("UTF-8", "1.0");
@@ -265,24 +324,11 @@ public class FeatureListSaveTask extends AbstractTask {
       logger.log(Level.SEVERE, e.getMessage(), e);
       setStatus(TaskStatus.ERROR);
       return false;
+    } finally {
+      seriesWriter = null;
     }
 
-    if (isCanceled()) {
-      tempFile.delete();
-      return false;
-    }
-
-    try (FileInputStream is = new FileInputStream(tempFile)) {
-      zos.putNextEntry(new ZipEntry(getDataFileName(flist.getName())));
-      copy.copy(is, zos);
-    } catch (IOException e) {
-      logger.log(Level.SEVERE, e.getMessage(), e);
-      setStatus(TaskStatus.ERROR);
-      return false;
-    }
-
-//    tempFile.delete();
-    return true;
+    return !isCanceled();
   }
 
   private void writeRow(XMLStreamWriter writer, ModularFeatureListRow row)
@@ -291,7 +337,7 @@ public class FeatureListSaveTask extends AbstractTask {
     writer.writeStartElement(CONST.XML_ROW_ELEMENT);
     writer.writeAttribute(idType.getUniqueID(), String.valueOf(row.getID()));
 
-    for (Entry<DataType, Object> entry : row.getMap().entrySet()) {
+    for (Entry<DataType, Object> entry : row.getValueMap().entrySet()) {
       DataType dataType = entry.getKey();
       Object value = entry.getValue();
       if (dataType instanceof FeaturesType) {
@@ -335,11 +381,35 @@ public class FeatureListSaveTask extends AbstractTask {
     writer.writeStartElement(CONST.XML_FEATURE_ELEMENT);
     writer.writeAttribute(CONST.XML_RAW_FILE_ELEMENT, rawDataFile.getName());
 
-    for (Entry<DataType, Object> entry : feature.getMap().entrySet()) {
+    for (Entry<DataType, Object> entry : feature.getValueMap().entrySet()) {
+      if (entry.getKey() instanceof FeatureDataType type
+          && entry.getValue() instanceof SimpleIonTimeSeries series) {
+        writeSeriesBlock(writer, type, series, rawDataFile);
+        continue;
+      }
       writeDataType(writer, entry.getKey(), entry.getValue(), flist, row, feature,
           rawDataFile);
     }
 
     writer.writeEndElement();
   }
+
+  /**
+   * Series are written to the binary series file, the data type element only references the
+   * offset of the block.
+   */
+  private void writeSeriesBlock(XMLStreamWriter writer, FeatureDataType type,
+      SimpleIonTimeSeries series, RawDataFile file) throws XMLStreamException {
+    final long offset;
+    try {
+      offset = seriesWriter.write(series, file.getScans());
+    } catch (IOException e) {
+      throw new XMLStreamException("Cannot write series block.", e);
+    }
+
+    writer.writeStartElement(CONST.XML_DATA_TYPE_ELEMENT);
+    writer.writeAttribute(CONST.XML_DATA_TYPE_ID_ATTR, type.getUniqueID());
+    writer.writeAttribute(CONST.XML_SERIES_OFFSET_ATTR, String.valueOf(offset));
+    writer.writeEndElement();
+  }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.util.ParsingUtils;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes the series data of a feature list as binary blocks of primitives into a separate file.
+ * The xml data file only references the offset of each block. Blocks never cross a chunk boundary,
+ * so the file can be memory mapped in chunks during loading and the loaded series are backed by
+ * the mapped file. Therefore, the file itself is not compressed, the project zip deflates it.
+ * <p></p>
+ * Only {@link SimpleIonTimeSeries} are written as blocks. Ion mobility series reference mobility
+ * scans and are still written to the xml file by their data type.
+ * <p></p>
+ * Header layout (big endian): {@link #MAGIC}, {@link #VERSION}, chunk size (long).
+ * <p></p>
+ * Block layout (big endian): number of values n, n scan indices (int), n m/z values (double), n
+ * intensities (double).
+ */
+public class FeatureSeriesBlockWriter implements Closeable {
+
+  public static final int MAGIC = 0x4D5A5342;
+  /**
+   * Increment on changes of the block layout
+   */
+  public static final int VERSION = 2;
+  public static final int HEADER_BYTES = 16;
+  public static final long CHUNK_SIZE = 1L << 30;
+
+  private final DataOutputStream out;
+  private final long chunkSize;
+  private long offset;
+
+  public FeatureSeriesBlockWriter(@NotNull File file) throws IOException {
+    this(file, CHUNK_SIZE);
+  }
+
+  /**
+   * @param chunkSize the maximum size of the mapped chunks. Smaller chunks are used in tests.
+   */
+  FeatureSeriesBlockWriter(@NotNull File file, long chunkSize) throws IOException {
+    if (chunkSize < HEADER_BYTES || chunkSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+    }
+    this.chunkSize = chunkSize;
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(chunkSize);
+    offset = HEADER_BYTES;
+  }
+
+  public static long getBlockLength(int numValues) {
+    return Integer.BYTES + (long) numValues * (Integer.BYTES + 2 * Double.BYTES);
+  }
+
+  /**
+   * @param series   the series to write.
+   * @param allScans all scans of the raw data file. The scans of the series are saved as indices.
+   * @return the offset of the block in the file.
+   */
+  public long write(@NotNull SimpleIonTimeSeries series, @NotNull List<Scan> allScans)
+      throws IOException {
+    final int numValues = series.getNumberOfValues();
+    final long length = getBlockLength(numValues);
+    if (length > chunkSize) {
+      throw new IOException("Series with " + numValues + " values exceeds the block size.");
+    }
+
+    // start a new chunk if the block does not fit into the current one
+    final long chunkEnd = (offset / chunkSize + 1) * chunkSize;
+    if (offset + length > chunkEnd) {
+      final byte[] padding = new byte[(int) Math.min(chunkEnd - offset, 1 << 16)];
+      while (offset < chunkEnd) {
+        final int len = (int) Math.min(padding.length, chunkEnd - offset);
+        out.write(padding, 0, len);
+        offset += len;
+      }
+    }
+
+    final long blockOffset = offset;
+    final int[] indices = numValues == 0 ? new int[0]
+        : ParsingUtils.getIndicesOfSubListElements(series.getSpectra(), allScans);
+    out.writeInt(numValues);
+    for (int index : indices) {
+      out.writeInt(index);
+    }
+    final DoubleBuffer mzs = series.getMZValueBuffer();
+    for (int i = 0; i < numValues; i++) {
+      out.writeDouble(mzs.get(i));
+    }
+    final DoubleBuffer intensities = series.getIntensityValueBuffer();
+    for (int i = 0; i < numValues; i++) {
+      out.writeDouble(intensities.get(i));
+    }
+    offset += length;
+    return blockOffset;
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -37,26 +37,53 @@ import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
 import io.github.mzmine.util.StreamCopy;
 import io.github.mzmine.util.files.FileAndPathUtil;
+import io.github.mzmine.util.io.ZipAppender;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerConfigurationException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.xml.sax.SAXException;
 
 public class ProjectSavingTask extends AbstractTask {
 
   public static final String VERSION_FILENAME = "MZMINE_VERSION";
+  /**
+   * Only exists in projects of format version 2 and higher.
+   */
+  public static final String PROJECT_FORMAT_FILENAME = "PROJECT_FORMAT";
+  /**
+   * Increment if older versions cannot read the project. Projects are rejected by readers that
+   * support lower format versions only.
+   * <p></p>
+   * 1: all feature list data in xml. 2: feature series in a binary block file, see
+   * {@link FeatureSeriesBlockWriter}.
+   */
+  public static final int PROJECT_FORMAT_VERSION = 2;
   public static final String STANDALONE_FILENAME = "STANDALONE"; // only exists if it's a standalone project.
   public static final String CONFIG_FILENAME = "configuration.xml";
   public static final String PARAMETERS_FILENAME = "User parameters.xml";
@@ -78,6 +105,18 @@ public class ProjectSavingTask extends AbstractTask {
   // This hashtable maps raw data files to their ID within the saved project
   private final Hashtable<RawDataFile, String> dataFilesIDMap;
 
+  /**
+   * Entries of the existing project file if only changed entries are saved. Null if the full
+   * project is written.
+   */
+  @Nullable
+  private Set<String> existingEntries;
+  private boolean rawDataFilesSaved;
+  /**
+   * The feature list save tasks that currently run, to cancel them with this task
+   */
+  private volatile List<FeatureListSaveTask> featureListSaveTasks = List.of();
+
   public ProjectSavingTask(MZmineProject project, ParameterSet parameters,
       @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
@@ -145,6 +184,8 @@ public class ProjectSavingTask extends AbstractTask {
       userParameterSaveHandler.cancel();
     }
 
+    featureListSaveTasks.forEach(FeatureListSaveTask::cancelIfUnfinished);
+
   }
 
   @Override
@@ -153,10 +194,15 @@ public class ProjectSavingTask extends AbstractTask {
       logger.info("Saving project to " + saveFile);
       setStatus(TaskStatus.PROCESSING);
 
+      final Boolean wasStandalone = savedProject.isStandalone();
       switch (projectType) {
         case STANDALONE -> savedProject.setStandalone(true);
         case REFERENCING -> savedProject.setStandalone(false);
       }
+      existingEntries = getEntriesForIncrementalSave(wasStandalone);
+      if (existingEntries != null) {
+        logger.info("Only saving changes to existing project file " + saveFile);
+      }
 
       // Prepare a temporary ZIP file. We create this file in the same
       // directory as the final saveFile to avoid moving between
@@ -189,7 +235,10 @@ public class ProjectSavingTask extends AbstractTask {
 
       // Stage 2 - save RawDataFile objects
       currentStage++;
-      saveRawDataFiles(zipStream);
+      if (existingEntries == null || isRawDataModified()) {
+        saveRawDataFiles(zipStream);
+        rawDataFilesSaved = true;
+      }
       if (isCanceled()) {
         zipStream.close();
         tempFile.delete();
@@ -225,19 +274,25 @@ public class ProjectSavingTask extends AbstractTask {
         return;
       }
 
-      // Move the temporary ZIP file to the final location
-      if (saveFile.exists() && !saveFile.delete()) {
-        throw new IOException("Could not delete old file " + saveFile);
-      }
+      if (existingEntries != null) {
+        // only replace the changed entries in the existing project file
+        mergeIntoProjectFile(tempFile);
+      } else {
+        // Move the temporary ZIP file to the final location
+        if (saveFile.exists() && !saveFile.delete()) {
+          throw new IOException("Could not delete old file " + saveFile);
+        }
 
-      boolean renameOK = tempFile.renameTo(saveFile);
-      if (!renameOK) {
-        throw new IOException(
-            "Could not move the temporary file " + tempFile + " to the final location " + saveFile);
+        boolean renameOK = tempFile.renameTo(saveFile);
+        if (!renameOK) {
+          throw new IOException("Could not move the temporary file " + tempFile
+              + " to the final location " + saveFile);
+        }
       }
 
       // Update the location of the project
       savedProject.setProjectFile(saveFile);
+      savedProject.clearModified();
 
       // Update the window title to reflect the new name of the project
       // if (MZmineCore.getDesktop() instanceof MainWindow) {
@@ -281,6 +336,8 @@ public class ProjectSavingTask extends AbstractTask {
 
     zipStream.write(MZmineVersion.getBytes());
 
+    zipStream.putNextEntry(new ZipEntry(PROJECT_FORMAT_FILENAME));
+    zipStream.write(String.valueOf(PROJECT_FORMAT_VERSION).getBytes());
   }
 
   private void saveStandalone(ZipOutputStream zipStream) throws IOException {
@@ -328,7 +385,8 @@ public class ProjectSavingTask extends AbstractTask {
 
     AtomicBoolean finished = new AtomicBoolean(false);
     rawDataFileSaveHandler = new RawDataFileSaveHandler(savedProject, zipStream,
-        Objects.requireNonNullElse(savedProject.isStandalone(), true), getModuleCallDate());
+        Objects.requireNonNullElse(savedProject.isStandalone(), true),
+        Objects.requireNonNullElse(existingEntries, Set.of()), getModuleCallDate());
     rawDataFileSaveHandler.addTaskStatusListener((task, newStatus, oldStatus) -> {
       switch (newStatus) {
         case WAITING, PROCESSING -> {
@@ -359,42 +417,85 @@ public class ProjectSavingTask extends AbstractTask {
   }
 
   /**
-   * Save the feature lists
-   *
-   * @throws SAXException
-   * @throws TransformerConfigurationException
+   * Save the feature lists. All feature lists are written to temporary files in parallel and then
+   * added to the zip one after another.
    */
-  private void savePeakLists(ZipOutputStream zipStream)
-      throws IOException, TransformerConfigurationException, SAXException {
+  private void savePeakLists(ZipOutputStream zipStream) throws IOException {
+
+    // unchanged feature lists are kept in the existing project file
+    final List<FeatureList> currentFeatureLists = savedProject.getCurrentFeatureLists().stream()
+        .filter(flist -> existingEntries == null || flist.isModified()
+            || !existingEntries.contains(FeatureListSaveTask.getDataFileName(flist.getName())))
+        .toList();
+    if (currentFeatureLists.isEmpty()) {
+      return;
+    }
+
+    final List<FeatureListSaveTask> saveTasks = currentFeatureLists.stream()
+        .map(flist -> new FeatureListSaveTask((ModularFeatureList) flist)).toList();
+    featureListSaveTasks = saveTasks;
+
+    final int threads = Math.max(1,
+        Math.min(saveTasks.size(), MZmineCore.getConfiguration().getNumOfThreads()));
+    final AtomicInteger threadCounter = new AtomicInteger(0);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "Feature list saving " + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
 
-    final List<FeatureList> currentFeatureLists = savedProject.getCurrentFeatureLists();
-    for (FeatureList featureList : currentFeatureLists) {
-      FeatureListSaveTask saveTask = new FeatureListSaveTask((ModularFeatureList) featureList,
-          zipStream);
-
-      AtomicBoolean finished = new AtomicBoolean(false);
-      saveTask.addTaskStatusListener((task, newStatus, oldStatus) -> {
-        switch (newStatus) {
-          case WAITING, PROCESSING -> {
-          }
-          case FINISHED, ERROR, CANCELED -> {
-            finished.set(true);
-          }
+    try {
+      final List<Future<?>> results = new ArrayList<>(saveTasks.size());
+      for (FeatureListSaveTask saveTask : saveTasks) {
+        results.add(executor.submit(saveTask));
+      }
+      // cancel() of this task cancels the sub tasks, so all futures complete
+      for (Future<?> result : results) {
+        result.get();
+      }
+
+      if (isCanceled()) {
+        return;
+      }
+      for (FeatureListSaveTask saveTask : saveTasks) {
+        if (!saveTask.isFinished()) {
+          throw new IOException(
+              "Error while saving feature lists: " + saveTask.getErrorMessage());
         }
-      });
-      MZmineCore.getTaskController().addTask(saveTask);
-
-      while (!finished.get()) {
-        try {
-          Thread.sleep(50);
-        } catch (InterruptedException e) {
-          e.printStackTrace();
+      }
+
+      for (FeatureListSaveTask saveTask : saveTasks) {
+        if (isCanceled()) {
+          return;
         }
+        saveTask.copyToZip(zipStream);
       }
+    } catch (ExecutionException e) {
+      throw new IOException("Error while saving feature lists.", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while saving feature lists.", e);
+    } finally {
+      saveTasks.forEach(FeatureListSaveTask::cancelIfUnfinished);
+      executor.shutdownNow();
+      awaitTermination(executor);
+      // remove the files of all sub tasks, also of those that finished before the cancel or error
+      saveTasks.forEach(FeatureListSaveTask::deleteTempFiles);
+      featureListSaveTasks = List.of();
+    }
+  }
 
-      if (isCanceled()) {
-        break;
+  /**
+   * Waits for running feature list save tasks, so their temporary files can be removed afterwards.
+   */
+  private static void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger.warning("Feature list saving did not stop within one minute.");
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(Level.WARNING, "Interrupted while waiting for feature list saving to stop.", e);
     }
   }
 
@@ -423,4 +524,91 @@ public class ProjectSavingTask extends AbstractTask {
 
   }
 
+  /**
+   * Changed entries are only replaced if the project is saved to the file it was loaded from or
+   * last saved to, with the same project type, MZmine version and project format.
+   *
+   * @param wasStandalone the project type before this save.
+   * @return the entries of the existing project file or null if the full project has to be saved.
+   */
+  @Nullable
+  private Set<String> getEntriesForIncrementalSave(@Nullable Boolean wasStandalone) {
+    final File projectFile = savedProject.getProjectFile();
+    if (projectFile == null || !saveFile.exists() || !saveFile.getAbsoluteFile()
+        .equals(projectFile.getAbsoluteFile()) || !Objects.equals(wasStandalone,
+        savedProject.isStandalone())) {
+      return null;
+    }
+
+    try (ZipFile zip = new ZipFile(saveFile)) {
+      final ZipEntry versionEntry = zip.getEntry(VERSION_FILENAME);
+      if (versionEntry == null) {
+        return null;
+      }
+      try (InputStream is = zip.getInputStream(versionEntry)) {
+        final String version = new String(is.readAllBytes());
+        if (!version.equals(String.valueOf(MZmineCore.getMZmineVersion()))) {
+          return null;
+        }
+      }
+      final ZipEntry formatEntry = zip.getEntry(PROJECT_FORMAT_FILENAME);
+      if (formatEntry == null) {
+        return null;
+      }
+      try (InputStream is = zip.getInputStream(formatEntry)) {
+        if (!new String(is.readAllBytes()).equals(String.valueOf(PROJECT_FORMAT_VERSION))) {
+          return null;
+        }
+      }
+      return zip.stream().map(ZipEntry::getName).collect(Collectors.toSet());
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Cannot read existing project file, saving the full project.", e);
+      return null;
+    }
+  }
+
+  private boolean isRawDataModified() {
+    return savedProject.isModified() || savedProject.getCurrentRawDataFiles().stream()
+        .anyMatch(RawDataFile::isModified);
+  }
+
+  /**
+   * Appends all entries of the temporary zip to the existing project file and removes the entries
+   * of removed or renamed feature lists and raw data files. Unchanged entries are neither
+   * serialized nor copied again, see {@link ZipAppender}.
+   *
+   * @param deltaFile the temporary zip file with the changed entries.
+   */
+  private void mergeIntoProjectFile(File deltaFile) throws IOException {
+    final Set<String> flistEntries = new HashSet<>();
+    for (FeatureList flist : savedProject.getCurrentFeatureLists()) {
+      flistEntries.add(FeatureListSaveTask.getDataFileName(flist.getName()));
+      flistEntries.add(FeatureListSaveTask.getSeriesFileName(flist.getName()));
+      flistEntries.add(FeatureListSaveTask.getMetadataFileName(flist.getName()));
+    }
+    final List<String> rawDataPaths = savedProject.getCurrentRawDataFiles().stream()
+        .filter(file -> file.getAbsolutePath() != null).map(RawDataFileSaveHandler::getZipPath)
+        .toList();
+
+    final boolean compacted = ZipAppender.mergeEntries(saveFile, deltaFile, entry -> {
+      if (entry.endsWith("/")) {
+        // directories
+        return false;
+      }
+      final boolean removedFlist = entry.startsWith(FeatureListSaveTask.FLIST_FOLDER)
+          && !flistEntries.contains(entry);
+      final boolean removedRaw =
+          rawDataFilesSaved && entry.startsWith(RawDataFileSaveHandler.DATA_FILES_FOLDER)
+              && rawDataPaths.stream()
+              .noneMatch(path -> entry.equals(path) || entry.startsWith(path + "/"));
+      return removedFlist || removedRaw;
+    });
+    if (compacted) {
+      logger.info("Compacted project file " + saveFile);
+    }
+
+    if (!deltaFile.delete()) {
+      logger.fine(() -> "Cannot delete temporary file " + deltaFile);
+    }
+  }
 }
@@ -53,6 +53,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -95,6 +96,8 @@ public class RawDataFileSaveHandler extends AbstractTask {
   private String description;
   private final int numSteps;
   private final double stepProgress;
+  // entries of the existing project file, contained raw data files are not copied again
+  private final Set<String> existingEntries;
 
   @Override
   public TaskPriority getTaskPriority() {
@@ -103,10 +106,21 @@ public class RawDataFileSaveHandler extends AbstractTask {
 
   public RawDataFileSaveHandler(MZmineProject project, ZipOutputStream zipOutputStream,
       boolean saveFilesInProject, @NotNull Instant moduleCallDate) {
+    this(project, zipOutputStream, saveFilesInProject, Set.of(), moduleCallDate);
+  }
+
+  /**
+   * @param existingEntries entries of the existing project file. Raw data files that are already
+   *                        contained in the project file are not copied again.
+   */
+  public RawDataFileSaveHandler(MZmineProject project, ZipOutputStream zipOutputStream,
+      boolean saveFilesInProject, @NotNull Set<String> existingEntries,
+      @NotNull Instant moduleCallDate) {
     super(null, moduleCallDate);
     this.project = project;
     this.zipStream = zipOutputStream;
     this.saveFilesInProject = saveFilesInProject;
+    this.existingEntries = existingEntries;
     files = List.of(project.getDataFiles());
     numSteps = 1 /*dissect + merge */ + (saveFilesInProject ? files.size() : 0) /*save files*/
         + 1 /*save batch file*/;
@@ -243,6 +257,12 @@ public class RawDataFileSaveHandler extends AbstractTask {
         continue;
       }
 
+      if (isContainedInProject(getZipPath(file))) {
+        logger.finest(() -> "Data file " + file.getAbsolutePath() + " is already in project file.");
+        progress += stepProgress;
+        continue;
+      }
+
       description = prefix + "Copying data file " + file.getAbsolutePath() + " to project file.";
       logger.finest(() -> "Copying data file " + file.getAbsolutePath() + " to project file.");
 
@@ -269,6 +289,19 @@ public class RawDataFileSaveHandler extends AbstractTask {
     }
   }
 
+  /**
+   * @param zipPath the zip path of a raw data file or directory.
+   * @return true if the file or directory is already contained in the existing project file.
+   */
+  private boolean isContainedInProject(String zipPath) {
+    if (existingEntries.isEmpty()) {
+      return false;
+    }
+    final String directory = zipPath.endsWith("/") ? zipPath : zipPath + "/";
+    return existingEntries.contains(zipPath) || existingEntries.stream()
+        .anyMatch(entry -> entry.startsWith(directory));
+  }
+
   /**
    * @return the progress of these functions saving the raw data information to the zip file.
    */
@@ -723,31 +723,54 @@ public class FeatureTableFX extends TreeTableView<ModularFeatureListRow> impleme
         getColumns().clear();
         rowItems.clear();
 
-        // remove the old listener
-        if (oldValue != null) {
+        // remove the old listener. Lists that are still loading were not shown yet
+        if (oldValue != null && !oldValue.isRowLoadingPending()) {
           oldValue.getRows().removeListener(this);
         }
-        addColumns(newValue);
-        // first check if feature list is too large
-        if (newValue.getNumberOfRawDataFiles() > 10) {
-          showCompactChromatographyColumns();
-        }
 
-        // add rows
-        for (FeatureListRow row : newValue.getRows()) {
-          final ModularFeatureListRow mrow = (ModularFeatureListRow) row;
-          rowItems.add(new TreeItem<>(mrow));
+        if (newValue.isRowLoadingPending()) {
+          // rows and types of the project are loaded in the background, never on the fx thread
+          setPlaceholder(new Label("Loading feature list " + newValue.getName() + "..."));
+          newValue.loadRowsInBackground().whenComplete((result, error) -> MZmineCore.runLater(() -> {
+            if (getFeatureList() != newValue) {
+              return;
+            }
+            if (error != null) {
+              setPlaceholder(new Label("Cannot load feature list " + newValue.getName()));
+              return;
+            }
+            showFeatureList(newValue);
+          }));
+          return;
         }
-
-        TreeItem<ModularFeatureListRow> root = getRoot();
-        root.getChildren().addAll(filteredRowItems);
-
-        // reflect the changes to the feature list in the table
-        newValue.getRows().addListener(this);
+        showFeatureList(newValue);
       });
     });
   }
 
+  /**
+   * Adds the columns and rows of the feature list to the cleared table.
+   */
+  private void showFeatureList(@NotNull ModularFeatureList flist) {
+    addColumns(flist);
+    // first check if feature list is too large
+    if (flist.getNumberOfRawDataFiles() > 10) {
+      showCompactChromatographyColumns();
+    }
+
+    // add rows
+    for (FeatureListRow row : flist.getRows()) {
+      final ModularFeatureListRow mrow = (ModularFeatureListRow) row;
+      rowItems.add(new TreeItem<>(mrow));
+    }
+
+    TreeItem<ModularFeatureListRow> root = getRoot();
+    root.getChildren().addAll(filteredRowItems);
+
+    // reflect the changes to the feature list in the table
+    flist.getRows().addListener(this);
+  }
+
   private void showCompactChromatographyColumns() {
     // disable all feature types but height
     featureTypesParameter.setAll(false);
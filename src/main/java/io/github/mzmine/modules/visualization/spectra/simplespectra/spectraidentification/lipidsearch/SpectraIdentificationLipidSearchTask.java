@@ -284,7 +284,7 @@ public class SpectraIdentificationLipidSearchTask extends AbstractTask {
 
         // If search for MSMS fragments is selected search for fragments
         if (searchForMSMSFragments.booleanValue()) {
-          searchMsmsFragments(ionization, lipid);
+          searchMsmsFragments(ionization, lipid, lipidIonMass);
         }
 
         logger.info("Found lipid: " + lipid.getAnnotation() + ", Δ "
@@ -294,14 +294,15 @@ public class SpectraIdentificationLipidSearchTask extends AbstractTask {
 
   }
 
-  private void searchMsmsFragments(IonizationType ionization, ILipidAnnotation lipid) {
+  private void searchMsmsFragments(IonizationType ionization, ILipidAnnotation lipid,
+      double lipidIonMass) {
     MSMSLipidTools msmsLipidTools = new MSMSLipidTools();
     LipidFragmentationRule[] rules = lipid.getLipidClass().getFragmentationRules();
     if (rules.length > 0) {
       for (int i = 0; i < massList.length; i++) {
         Range<Double> mzTolRange = mzTolerance.getToleranceRange(massList[i].getMZ());
         LipidFragment annotatedFragment = msmsLipidTools.checkForClassSpecificFragment(mzTolRange,
-            lipid, ionization, rules, massList[i], currentScan);
+            lipid, ionization, lipidIonMass, rules, massList[i], currentScan);
         if (annotatedFragment != null) {
           double relMassDev = ((annotatedFragment.getMzExact() - massList[i].getMZ())
               / annotatedFragment.getMzExact()) * 1000000;
@@ -162,6 +162,18 @@ public class MinimumFeatureFilter {
            && (!excludeEstimatedFeatures || !f.getFeatureStatus().equals(FeatureStatus.ESTIMATED));
   }
 
+  /**
+   * @param totalRaws number of raw data files passed to
+   *                  {@link #filterMinFeaturesOverlap(CachedFeatureDataAccess, List, FeatureListRow,
+   *                  FeatureListRow, RTTolerance)}
+   * @return true if the overlap filter only accepts rows with at least one pair of features within
+   * the RT tolerance. Rows without overlapping RT ranges can then be skipped.
+   */
+  public boolean requiresFeatureOverlap(int totalRaws) {
+    return (minFInSamples.isGreaterZero() && minFInSamples.getMaximumValue(totalRaws) > 0) || (
+        filterGroups && sgroupSize != null && minFInGroups.isGreaterZero());
+  }
+
   /**
    * Check for overlapping features in two rows (features in the same RawDataFile with
    * height>minHeight and within rtTolerance)
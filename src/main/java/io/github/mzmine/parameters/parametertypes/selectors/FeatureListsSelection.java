@@ -26,12 +26,14 @@
 package io.github.mzmine.parameters.parametertypes.selectors;
 
 import com.google.common.base.Strings;
+import io.github.mzmine.datamodel.MZmineProject;
 import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.TextUtils;
 import java.util.ArrayList;
 import java.util.stream.Stream;
+import org.jetbrains.annotations.Nullable;
 
 public class FeatureListsSelection implements Cloneable {
 
@@ -39,6 +41,10 @@ public class FeatureListsSelection implements Cloneable {
   private ModularFeatureList[] specificFeatureLists;
   private String namePattern;
   private ModularFeatureList[] batchLastFeatureLists;
+  /**
+   * The project to select feature lists from, null for the current project
+   */
+  private MZmineProject project;
 
 
   /**
@@ -65,8 +71,7 @@ public class FeatureListsSelection implements Cloneable {
         return Stream.of(MZmineCore.getDesktop().getSelectedPeakLists())
             .map(ModularFeatureList.class::cast).toArray(ModularFeatureList[]::new);
       case ALL_FEATURELISTS:
-        return MZmineCore.getProjectManager().getCurrentProject().getCurrentFeatureLists()
-            .toArray(ModularFeatureList[]::new);
+        return getProject().getCurrentFeatureLists().toArray(ModularFeatureList[]::new);
       case SPECIFIC_FEATURELISTS:
         if (specificFeatureLists == null) {
           return new ModularFeatureList[0];
@@ -77,8 +82,8 @@ public class FeatureListsSelection implements Cloneable {
           return new ModularFeatureList[0];
         }
         ArrayList<ModularFeatureList> matchingFeatureLists = new ArrayList<>();
-        ModularFeatureList allFeatureLists[] = MZmineCore.getProjectManager().getCurrentProject()
-            .getCurrentFeatureLists().toArray(ModularFeatureList[]::new);
+        ModularFeatureList allFeatureLists[] = getProject().getCurrentFeatureLists()
+            .toArray(ModularFeatureList[]::new);
 
         plCheck:
         for (ModularFeatureList pl : allFeatureLists) {
@@ -107,6 +112,24 @@ public class FeatureListsSelection implements Cloneable {
 
   }
 
+  /**
+   * @return the project to select feature lists from
+   */
+  private MZmineProject getProject() {
+    return project != null ? project : MZmineCore.getProjectManager().getCurrentProject();
+  }
+
+  /**
+   * Selects all feature lists and feature lists by name pattern from the given project instead of
+   * the current project, e.g., from the project of a batch dataset that is processed in parallel
+   * to others.
+   *
+   * @param project the project or null to use the current project
+   */
+  public void setProject(@Nullable MZmineProject project) {
+    this.project = project;
+  }
+
   public FeatureListsSelectionType getSelectionType() {
     return selectionType;
   }
@@ -144,6 +167,7 @@ public class FeatureListsSelection implements Cloneable {
     newSelection.selectionType = selectionType;
     newSelection.specificFeatureLists = specificFeatureLists;
     newSelection.namePattern = namePattern;
+    newSelection.project = project;
     return newSelection;
   }
 
@@ -86,7 +86,14 @@ public class RawDataFilePlaceholder implements RawDataFile {
    */
   @Nullable
   public RawDataFile getMatchingFile() {
-    final MZmineProject proj = MZmineCore.getProjectManager().getCurrentProject();
+    return getMatchingFile(MZmineCore.getProjectManager().getCurrentProject());
+  }
+
+  /**
+   * @return The first matching raw data file of the given project.
+   */
+  @Nullable
+  public RawDataFile getMatchingFile(@Nullable final MZmineProject proj) {
     if (proj == null) {
       return null;
     }
@@ -301,6 +308,18 @@ public class RawDataFilePlaceholder implements RawDataFile {
         "This class is only to be used in the RawDataFilesSelection and does not support the required operation.");
   }
 
+  @Override
+  public boolean isModified() {
+    throw new UnsupportedOperationException(
+        "This class is only to be used in the RawDataFilesSelection and does not support the required operation.");
+  }
+
+  @Override
+  public void setModified(boolean modified) {
+    throw new UnsupportedOperationException(
+        "This class is only to be used in the RawDataFilesSelection and does not support the required operation.");
+  }
+
   @Override
   public @NotNull StringProperty nameProperty() {
     throw new UnsupportedOperationException(
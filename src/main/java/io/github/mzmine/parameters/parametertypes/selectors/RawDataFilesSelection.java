@@ -35,6 +35,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.logging.Logger;
+import org.jetbrains.annotations.Nullable;
 
 public class RawDataFilesSelection implements Cloneable {
 
@@ -45,6 +46,10 @@ public class RawDataFilesSelection implements Cloneable {
   private RawDataFile[] batchLastFiles;
   private RawDataFilePlaceholder[] specificFiles;
   private RawDataFilePlaceholder[] evaluatedSelection = null;
+  /**
+   * The project to select files from, null for the current project
+   */
+  private MZmineProject project;
 
   public RawDataFilesSelection() {
     this(RawDataFilesSelectionType.GUI_SELECTED_FILES);
@@ -64,7 +69,9 @@ public class RawDataFilesSelection implements Cloneable {
   public RawDataFile[] getMatchingRawDataFiles() {
 
     if (evaluatedSelection != null) {
-      var value = Arrays.stream(evaluatedSelection).map(RawDataFilePlaceholder::getMatchingFile)
+      final MZmineProject currentProject = getProject();
+      var value = Arrays.stream(evaluatedSelection)
+          .map(placeholder -> placeholder.getMatchingFile(currentProject))
           .toArray(RawDataFile[]::new);
       for (var raw : value) {
         if (raw == null) {
@@ -82,16 +89,14 @@ public class RawDataFilesSelection implements Cloneable {
     final RawDataFile[] matchingFiles;
     switch (selectionType) {
       case GUI_SELECTED_FILES -> matchingFiles = MZmineCore.getDesktop().getSelectedDataFiles();
-      case ALL_FILES -> matchingFiles = MZmineCore.getProjectManager().getCurrentProject()
-          .getDataFiles();
+      case ALL_FILES -> matchingFiles = getProject().getDataFiles();
       case SPECIFIC_FILES -> matchingFiles = getSpecificFiles();
       case NAME_PATTERN -> {
         if (Strings.isNullOrEmpty(namePattern)) {
           return new RawDataFile[0];
         }
         ArrayList<RawDataFile> matchingDataFiles = new ArrayList<>();
-        RawDataFile[] allDataFiles = MZmineCore.getProjectManager().getCurrentProject()
-            .getDataFiles();
+        RawDataFile[] allDataFiles = getProject().getDataFiles();
 
         fileCheck:
         for (RawDataFile file : allDataFiles) {
@@ -142,8 +147,27 @@ public class RawDataFilesSelection implements Cloneable {
     evaluatedSelection = null;
   }
 
+  /**
+   * @return the project to select files from
+   */
+  private MZmineProject getProject() {
+    return project != null ? project : MZmineCore.getProjectManager().getCurrentProject();
+  }
+
+  /**
+   * Selects all files, files by name pattern and specific files from the given project instead of
+   * the current project, e.g., from the project of a batch dataset that is processed in parallel
+   * to others.
+   *
+   * @param project the project or null to use the current project
+   */
+  public void setProject(@Nullable MZmineProject project) {
+    resetSelection();
+    this.project = project;
+  }
+
   RawDataFile[] getSpecificFiles() {
-    MZmineProject currentProject = MZmineCore.getProjectManager().getCurrentProject();
+    MZmineProject currentProject = getProject();
     if (currentProject == null) {
       return new RawDataFile[0];
     }
@@ -153,8 +177,7 @@ public class RawDataFilesSelection implements Cloneable {
     }
 
     return Arrays.stream(specificFiles).<RawDataFile>mapMulti((specificFile, c) -> {
-      for (RawDataFile file : MZmineCore.getProjectManager().getCurrentProject()
-          .getCurrentRawDataFiles()) {
+      for (RawDataFile file : currentProject.getCurrentRawDataFiles()) {
         if (file.getName().equals(specificFile.getName()) && (file.getAbsolutePath() == null
                                                               || specificFile.getAbsolutePath()
                                                                  == null || file.getAbsolutePath()
@@ -205,6 +228,7 @@ public class RawDataFilesSelection implements Cloneable {
     newSelection.selectionType = selectionType;
     newSelection.specificFiles = specificFiles;
     newSelection.namePattern = namePattern;
+    newSelection.project = project;
     return newSelection;
   }
 
@@ -214,6 +238,7 @@ public class RawDataFilesSelection implements Cloneable {
     newSelection.specificFiles = specificFiles;
     newSelection.namePattern = namePattern;
     newSelection.evaluatedSelection = evaluatedSelection;
+    newSelection.project = project;
     return newSelection;
   }
 
@@ -30,12 +30,16 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import java.io.File;
 import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class SpectralLibrarySelection {
 
   private final SpectralLibrarySelectionType selectionType;
   // only used when asked for specific libraries
   private final List<File> specificLibraryNames;
+  // the project to select libraries from, null for the current project
+  private final MZmineProject project;
 
   public SpectralLibrarySelection() {
     this(SpectralLibrarySelectionType.ALL_IMPORTED, List.of());
@@ -43,14 +47,35 @@ public class SpectralLibrarySelection {
 
   public SpectralLibrarySelection(SpectralLibrarySelectionType selectionType,
       List<File> specificLibraryNames) {
+    this(selectionType, specificLibraryNames, null);
+  }
+
+  private SpectralLibrarySelection(SpectralLibrarySelectionType selectionType,
+      List<File> specificLibraryNames, @Nullable MZmineProject project) {
     this.selectionType = selectionType;
     this.specificLibraryNames = specificLibraryNames;
+    this.project = project;
+  }
+
+  /**
+   * Selects libraries from the given project instead of the current project, e.g., from the
+   * project of a batch dataset that is processed in parallel to others.
+   *
+   * @param project the project or null to use the current project
+   * @return a copy of this selection
+   */
+  @NotNull
+  public SpectralLibrarySelection withProject(@Nullable MZmineProject project) {
+    return new SpectralLibrarySelection(selectionType, specificLibraryNames, project);
+  }
+
+  private MZmineProject getProject() {
+    return project != null ? project : MZmineCore.getProjectManager().getCurrentProject();
   }
 
   public List<SpectralLibrary> getMatchingLibraries() {
     return switch (selectionType) {
-      case ALL_IMPORTED -> MZmineCore.getProjectManager().getCurrentProject()
-          .getCurrentSpectralLibraries().stream().toList();
+      case ALL_IMPORTED -> getProject().getCurrentSpectralLibraries().stream().toList();
       case SPECIFIC -> getMatchingSpecificFiles();
     };
   }
@@ -60,7 +85,7 @@ public class SpectralLibrarySelection {
   }
 
   private List<SpectralLibrary> getMatchingSpecificFiles() {
-    MZmineProject currentProject = MZmineCore.getProjectManager().getCurrentProject();
+    MZmineProject currentProject = getProject();
     if (currentProject == null || specificLibraryNames == null || specificLibraryNames.isEmpty()) {
       return List.of();
     }
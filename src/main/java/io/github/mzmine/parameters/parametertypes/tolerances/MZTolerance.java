@@ -90,6 +90,23 @@ public class MZTolerance {
     return Range.closed(mzValue - absoluteTolerance, mzValue + absoluteTolerance);
   }
 
+  /**
+   * The inverse of {@link #getToleranceRange(double)}: the range of all reference m/z values whose
+   * tolerance range contains the given m/z. The relative tolerance is applied to the reference
+   * m/z, so the range is slightly asymmetric. Used to search sorted reference values that are
+   * checked by {@link #checkWithinTolerance(double, double)} with the reference as first argument.
+   *
+   * @param mzValue the query m/z
+   * @return the range of reference m/z values that match the query m/z
+   */
+  public Range<Double> getReferenceRangeContaining(final double mzValue) {
+    final double relative = ppmTolerance / MILLION;
+    final double lower = Math.min(mzValue - mzTolerance, mzValue / (1d + relative));
+    final double upper = relative < 1d ? Math.max(mzValue + mzTolerance,
+        mzValue / (1d - relative)) : Double.POSITIVE_INFINITY;
+    return Range.closed(lower, upper);
+  }
+
   public Range<Double> getToleranceRange(final Range<Double> mzRange) {
     return Range.closed(mzRange.lowerEndpoint() - getMzToleranceForMass(mzRange.lowerEndpoint()),
         mzRange.upperEndpoint() + getMzToleranceForMass(mzRange.upperEndpoint()));
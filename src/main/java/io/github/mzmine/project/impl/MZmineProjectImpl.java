@@ -40,6 +40,7 @@ import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
@@ -75,6 +76,8 @@ public class MZmineProjectImpl implements MZmineProject {
 
   @Nullable
   private Boolean standalone;
+  // files, feature lists or parameters changed since the project was saved or loaded
+  private volatile boolean modified = false;
 
   public MZmineProjectImpl() {
     projectParametersAndValues = new Hashtable<>();
@@ -107,12 +110,14 @@ public class MZmineProjectImpl implements MZmineProject {
   @Override
   public void setProjectMetadata(MetadataTable metadata) {
     this.projectMetadata = metadata;
+    modified = true;
   }
 
   @Override
   public void setProjectParametersAndValues(
       Hashtable<UserParameter<?, ?>, Hashtable<RawDataFile, Object>> projectParametersAndValues) {
     this.projectParametersAndValues = projectParametersAndValues;
+    modified = true;
   }
 
   @Nullable
@@ -136,12 +141,14 @@ public class MZmineProjectImpl implements MZmineProject {
 
     Hashtable<RawDataFile, Object> parameterValues = new Hashtable<>();
     projectParametersAndValues.put(parameter, parameterValues);
+    modified = true;
 
   }
 
   @Override
   public void removeParameter(UserParameter<?, ?> parameter) {
     projectParametersAndValues.remove(parameter);
+    modified = true;
   }
 
   @Override
@@ -178,6 +185,7 @@ public class MZmineProjectImpl implements MZmineProject {
     } else {
       parameterValues.put(rawDataFile, value);
     }
+    modified = true;
   }
 
   @Override
@@ -216,6 +224,7 @@ public class MZmineProjectImpl implements MZmineProject {
 
       rawDataFiles.add(newFile);
       projectMetadata.addFile(newFile);
+      modified = true;
 
       fireDataFilesChangeEvent(List.of(newFile), Type.ADDED);
     } finally {
@@ -229,6 +238,7 @@ public class MZmineProjectImpl implements MZmineProject {
       rawLock.writeLock().lock();
 
       rawDataFiles.removeAll(file);
+      modified = true;
       fireDataFilesChangeEvent(List.of(file), Type.REMOVED);
 
       for (RawDataFile f : file) {
@@ -270,6 +280,7 @@ public class MZmineProjectImpl implements MZmineProject {
         featureList.setName(getUniqueName(featureList.getName(), names));
       }
       featureLists.add(featureList);
+      modified = true;
       fireFeatureListsChangeEvent(List.of(featureList), Type.ADDED);
     } finally {
       featureLock.writeLock().unlock();
@@ -278,14 +289,18 @@ public class MZmineProjectImpl implements MZmineProject {
 
   @Override
   public void removeFeatureList(@NotNull final FeatureList... featureList) {
+    final List<FeatureList> removed;
     try {
       featureLock.writeLock().lock();
 
+      removed = List.of(featureList).stream().filter(featureLists::contains).toList();
       featureLists.removeAll(featureList);
+      modified = true;
       fireFeatureListsChangeEvent(List.of(featureList), Type.REMOVED);
     } finally {
       featureLock.writeLock().unlock();
     }
+    disposeFeatureLists(removed);
   }
 
   @Override
@@ -311,14 +326,30 @@ public class MZmineProjectImpl implements MZmineProject {
 
   @Override
   public void removeFeatureLists(@NotNull List<FeatureList> featureLists) {
+    final List<FeatureList> removed;
     try {
       featureLock.writeLock().lock();
 
+      removed = featureLists.stream().filter(this.featureLists::contains).toList();
       this.featureLists.removeAll(featureLists);
+      modified = true;
       fireFeatureListsChangeEvent(List.copyOf(featureLists), Type.REMOVED);
     } finally {
       featureLock.writeLock().unlock();
     }
+    disposeFeatureLists(removed);
+  }
+
+  /**
+   * Releases the storages of removed feature lists, unless they are still used by other feature
+   * lists or raw data files.
+   */
+  private void disposeFeatureLists(@NotNull Collection<? extends FeatureList> removed) {
+    for (FeatureList flist : removed) {
+      if (flist instanceof ModularFeatureList mfl) {
+        mfl.dispose();
+      }
+    }
   }
 
   @Override
@@ -380,6 +411,16 @@ public class MZmineProjectImpl implements MZmineProject {
   public void setStandalone(Boolean standalone) {
     this.standalone = standalone;
   }
+  @Override
+  public boolean isModified() {
+    return modified;
+  }
+
+  @Override
+  public void setModified(boolean modified) {
+    this.modified = modified;
+  }
+
 
   @Override
   public void setProjectLoadImsImportCaching(boolean enabled) {
@@ -33,7 +33,10 @@ import io.github.mzmine.datamodel.MassSpectrumType;
 import io.github.mzmine.datamodel.PolarityType;
 import io.github.mzmine.datamodel.RawDataFile;
 import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.ScanIndex;
+import io.github.mzmine.datamodel.features.FeatureList;
 import io.github.mzmine.datamodel.features.FeatureList.FeatureListAppliedMethod;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
 import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.util.MemoryMapStorage;
 import io.github.mzmine.util.files.FileAndPathUtil;
@@ -41,11 +44,14 @@ import io.github.mzmine.util.javafx.FxColorUtil;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javafx.beans.property.ObjectProperty;
@@ -53,6 +59,7 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.paint.Color;
 import org.jetbrains.annotations.NotNull;
@@ -78,11 +85,12 @@ public class RawDataFileImpl implements RawDataFile {
   // for ease of use we have a javafx safe copy of name
   private final StringProperty nameProperty = new SimpleStringProperty("");
   private final Map<Integer, Range<Double>> dataMZRange = new HashMap<>();
-  private final Map<Integer, Range<Float>> dataRTRange = new HashMap<>();
   private final Int2DoubleOpenHashMap dataMaxBasePeakIntensity = new Int2DoubleOpenHashMap(2);
   private final Int2DoubleOpenHashMap dataMaxTIC = new Int2DoubleOpenHashMap(2);
   // Temporary file for scan data storage
   private final MemoryMapStorage storageMemoryMap;
+  // storages retained by this file, e.g., the scan data storage and the storages of mass lists
+  private final Set<MemoryMapStorage> retainedStorages = ConcurrentHashMap.newKeySet();
   private final ObjectProperty<Color> color = new SimpleObjectProperty<>();
   // maximum number of data points and centroid data points in all scans
   protected int maxRawDataPoints = -1;
@@ -95,6 +103,10 @@ public class RawDataFileImpl implements RawDataFile {
   private boolean containsEmptyScans;
   private MassSpectrumType spectraType;
   private LocalDateTime startTimeStamp;
+  // built on demand and replaced when scans change
+  private volatile ScanIndex scanIndex;
+  // changed since the project was saved or loaded
+  private volatile boolean modified = true;
 
   public RawDataFileImpl(@NotNull final String dataFileName, @Nullable final String absolutePath,
       @Nullable final MemoryMapStorage storage) {
@@ -106,9 +118,16 @@ public class RawDataFileImpl implements RawDataFile {
       @Nullable final MemoryMapStorage storage, @NotNull Color color) {
     setName(dataFileName);
     this.storageMemoryMap = storage;
+    retainStorage(storage);
     this.absolutePath = absolutePath;
 
     scans = FXCollections.observableArrayList();
+    scans.addListener((ListChangeListener<Scan>) change -> {
+      scanIndex = null;
+      setModified(true);
+    });
+    appliedMethods.addListener(
+        (ListChangeListener<FeatureListAppliedMethod>) change -> setModified(true));
 
     this.color.setValue(color);
   }
@@ -156,50 +175,47 @@ public class RawDataFileImpl implements RawDataFile {
   /**
    * @param rt      The rt
    * @param mslevel The ms level
-   * @return The scan number at a given retention time within a range of 2 (min/sec?) or -1 if no
-   * scan can be found.
+   * @return The closest scan of this ms level within {@link ScanIndex#MAX_RT_DIFFERENCE} or null
+   * if no scan can be found.
    */
   @Override
   public Scan getScanNumberAtRT(float rt, int mslevel) {
     if (rt > getDataRTRange(mslevel).upperEndpoint()) {
       return null;
     }
-    Range<Float> range = Range.closed(rt - 2, rt + 2);
-    Scan[] scanNumbers = getScanNumbers(mslevel, range);
-    double minDiff = 10E6;
-
-    for (int i = 0; i < scanNumbers.length; i++) {
-      Scan scanNum = scanNumbers[i];
-      double diff = Math.abs(rt - scanNum.getRetentionTime());
-      if (diff < minDiff) {
-        minDiff = diff;
-      } else if (diff > minDiff) { // not triggered in first run
-        return scanNumbers[i - 1]; // the previous one was better
-      }
-    }
-    return null;
+    return getScanIndex().getScanAtRT(rt, mslevel);
   }
 
   /**
    * @param rt The rt
-   * @return The scan at a given retention time within a range of 2 (min/sec?) or null if no scan
-   * can be found.
+   * @return The closest scan at a given retention time or null if no scan can be found.
    */
   @Override
   public Scan getScanNumberAtRT(float rt) {
     if (rt > getDataRTRange().upperEndpoint()) {
       return null;
     }
-    double minDiff = 10E10;
-    for (Scan scan : scans) {
-      double diff = Math.abs(rt - scan.getRetentionTime());
-      if (diff < minDiff) {
-        minDiff = diff;
-      } else if (diff > minDiff) { // not triggered in first run
-        return scan;
+    return getScanIndex().getScanAtRT(rt);
+  }
+
+  /**
+   * The index is built once after scans were added and shared by all lookups.
+   *
+   * @return the current scan index
+   */
+  @Override
+  public @NotNull ScanIndex getScanIndex() {
+    ScanIndex index = scanIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = scanIndex;
+        if (index == null) {
+          index = new ScanIndex(scans);
+          scanIndex = index;
+        }
       }
     }
-    return null;
+    return index;
   }
 
   /**
@@ -208,7 +224,8 @@ public class RawDataFileImpl implements RawDataFile {
   @Override
   @NotNull
   public List<Scan> getScanNumbers(int msLevel) {
-    return scans.stream().filter(s -> s.getMSLevel() == msLevel).collect(Collectors.toList());
+    // copy as the list may be changed by the caller. Use getScanIndex for an unmodifiable list
+    return new ArrayList<>(getScanIndex().getScans(msLevel));
   }
 
   /**
@@ -216,9 +233,7 @@ public class RawDataFileImpl implements RawDataFile {
    */
   @Override
   public @NotNull Scan[] getScanNumbers(int msLevel, @NotNull Range<Float> rtRange) {
-    return scans.stream()
-        .filter(s -> s.getMSLevel() == msLevel && rtRange.contains(s.getRetentionTime()))
-        .toArray(Scan[]::new);
+    return getScanIndex().getScans(msLevel, rtRange);
   }
 
   /**
@@ -227,7 +242,7 @@ public class RawDataFileImpl implements RawDataFile {
   @Override
   @NotNull
   public int[] getMSLevels() {
-    return scans.stream().mapToInt(Scan::getMSLevel).distinct().sorted().toArray();
+    return getScanIndex().getMSLevels().clone();
   }
 
   /**
@@ -239,12 +254,7 @@ public class RawDataFileImpl implements RawDataFile {
     return dataMaxBasePeakIntensity.computeIfAbsent(msLevel, key -> {
       double max = Double.NEGATIVE_INFINITY;
       // find the value
-      for (Scan scan : scans) {
-        // ignore scans of other ms levels
-        if (scan.getMSLevel() != msLevel) {
-          continue;
-        }
-
+      for (Scan scan : getScanIndex().getScans(msLevel)) {
         Double basePeakIntensity = scan.getBasePeakIntensity();
         if (basePeakIntensity != null && basePeakIntensity > max) {
           max = scan.getTIC();
@@ -263,12 +273,7 @@ public class RawDataFileImpl implements RawDataFile {
     return dataMaxTIC.computeIfAbsent(msLevel, key -> {
       double max = Double.NEGATIVE_INFINITY;
       // find the value
-      for (Scan scan : scans) {
-        // ignore scans of other ms levels
-        if (scan.getMSLevel() != msLevel) {
-          continue;
-        }
-
+      for (Scan scan : getScanIndex().getScans(msLevel)) {
         if (scan.getTIC() > max) {
           max = scan.getTIC();
         }
@@ -323,7 +328,6 @@ public class RawDataFileImpl implements RawDataFile {
     }
     // Remove cached values
     dataMZRange.clear();
-    dataRTRange.clear();
     dataMaxBasePeakIntensity.clear();
     dataMaxTIC.clear();
   }
@@ -402,41 +406,14 @@ public class RawDataFileImpl implements RawDataFile {
     if (msLevel == null) {
       return getDataRTRange();
     }
-    // check if we have this value already cached
-    Range<Float> rtRange = dataRTRange.get(msLevel);
-    if (rtRange != null) {
-      return rtRange;
-    }
-
-    // find the value
-    for (Scan scan : scans) {
-
-      // ignore scans of other ms levels
-      if ((msLevel != 0) && (scan.getMSLevel() != msLevel)) {
-        continue;
-      }
-
-      if (rtRange == null) {
-        rtRange = Range.singleton(scan.getRetentionTime());
-      } else {
-        rtRange = rtRange.span(Range.singleton(scan.getRetentionTime()));
-      }
-
-    }
-
-    // cache the value
-    if (rtRange != null) {
-      dataRTRange.put(msLevel, rtRange);
-    } else {
-      rtRange = Range.singleton(0.0f);
-    }
-
-    return rtRange;
+    // cached in the scan index
+    Range<Float> rtRange = getScanIndex().getRTRange(msLevel);
+    return rtRange != null ? rtRange : Range.singleton(0.0f);
   }
 
   @Override
   public int getNumOfScans(int msLevel) {
-    return getScanNumbers(msLevel).size();
+    return getScanIndex().getNumberOfScans(msLevel);
   }
 
   @NotNull
@@ -467,9 +444,48 @@ public class RawDataFileImpl implements RawDataFile {
     return color;
   }
 
+  /**
+   * Keeps the storage alive until this file is closed, e.g., the storage of mass lists that were
+   * detected for the scans of this file. Feature lists of this file also retain the storage,
+   * because their scans reference the stored mass lists after this file was removed.
+   *
+   * @param storage the storage or null, if the data is stored in ram
+   */
+  public void retainStorage(@Nullable MemoryMapStorage storage) {
+    if (storage == null || !retainedStorages.add(storage)) {
+      return;
+    }
+    storage.retain();
+
+    final MZmineProject project = MZmineCore.getProjectManager().getCurrentProject();
+    if (project != null) {
+      for (FeatureList flist : project.getCurrentFeatureLists()) {
+        if (flist instanceof ModularFeatureList mfl && flist.hasRawDataFile(this)) {
+          mfl.retainStorage(storage);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the storages currently retained by this file
+   */
+  @NotNull
+  public Set<MemoryMapStorage> getRetainedStorages() {
+    return Collections.unmodifiableSet(retainedStorages);
+  }
+
+  /**
+   * Releases the storages of this file. Storages that are still used by feature lists are released
+   * once these feature lists are disposed.
+   */
   @Override
   public synchronized void close() {
-
+    for (MemoryMapStorage storage : List.copyOf(retainedStorages)) {
+      if (retainedStorages.remove(storage)) {
+        storage.releaseOwner(null);
+      }
+    }
   }
 
   @Override
@@ -501,9 +517,16 @@ public class RawDataFileImpl implements RawDataFile {
   @Override
   public String setNameNoChecks(@NotNull String name) {
     this.name = name;
+    setModified(true);
 
     final MZmineProject project = MZmineCore.getProjectManager().getCurrentProject();
     if (project != null) {
+      // feature lists reference the file by its name and have to be saved again
+      for (FeatureList flist : project.getCurrentFeatureLists()) {
+        if (flist.hasRawDataFile(this)) {
+          flist.setModified(true);
+        }
+      }
       project.fireDataFilesChangeEvent(List.of(this), ProjectChangeEvent.Type.RENAMED);
     }
     MZmineCore.runLater(() -> nameProperty.set(this.name));
@@ -527,6 +550,18 @@ public class RawDataFileImpl implements RawDataFile {
     return appliedMethods;
   }
 
+  @Override
+  public boolean isModified() {
+    return modified;
+  }
+
+  @Override
+  public void setModified(boolean modified) {
+    if (this.modified != modified) {
+      this.modified = modified;
+    }
+  }
+
   @Override
   public StringProperty nameProperty() {
     return nameProperty;
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.taskcontrol;
+
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One bounded pool of worker threads shared by all tasks that split their own work into smaller
+ * units, e.g., parsing or mass detection during data import. The number of threads follows the
+ * number of threads in the preferences, so concurrent tasks cannot multiply the number of busy
+ * threads.
+ * <p>
+ * Work submitted to this pool must never wait for other work of this pool, otherwise the pool may
+ * run out of threads. Tasks wait for their sub tasks on their own thread and cancel their own
+ * futures, the pool itself is never shut down.
+ */
+public final class SubTaskExecutor {
+
+  private static final Logger logger = Logger.getLogger(SubTaskExecutor.class.getName());
+  private static final AtomicInteger threadCounter = new AtomicInteger(0);
+  private static ThreadPoolExecutor executor;
+
+  private SubTaskExecutor() {
+  }
+
+  /**
+   * @return the shared executor, resized to the current number of threads in the preferences
+   */
+  @NotNull
+  public static synchronized ExecutorService get() {
+    final int numThreads = getNumThreads();
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(numThreads, numThreads, 30L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "sub-task-worker-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.allowCoreThreadTimeOut(true);
+    } else if (executor.getMaximumPoolSize() != numThreads) {
+      // the core size must never exceed the maximum size
+      if (numThreads > executor.getMaximumPoolSize()) {
+        executor.setMaximumPoolSize(numThreads);
+        executor.setCorePoolSize(numThreads);
+      } else {
+        executor.setCorePoolSize(numThreads);
+        executor.setMaximumPoolSize(numThreads);
+      }
+    }
+    return executor;
+  }
+
+  private static int getNumThreads() {
+    try {
+      return Math.max(1, MZmineCore.getConfiguration().getPreferences()
+          .getParameter(MZminePreferences.numOfThreads).getValue());
+    } catch (Exception | AssertionError e) {
+      // no configuration, e.g., in unit tests
+      logger.log(Level.FINEST, "Cannot read the number of threads, using all processors", e);
+      return Runtime.getRuntime().availableProcessors();
+    }
+  }
+}
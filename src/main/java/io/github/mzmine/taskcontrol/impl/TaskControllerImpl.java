@@ -39,12 +39,33 @@ import io.github.mzmine.taskcontrol.TaskPriority;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.Vector;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Task controller implementation
+ * Task controller implementation. Waiting tasks are kept in a priority queue ordered by
+ * {@link TaskPriority} and submission order and are dispatched to a bounded executor as soon as
+ * they are submitted or a running task finishes. The number of concurrently running tasks of
+ * {@link TaskPriority#NORMAL} priority is limited by the number of threads in the preferences.
+ * {@link TaskPriority#HIGH} tasks are never limited and start right away on a separate pool:
+ * many of them are master tasks that wait for their sub tasks, which may be HIGH priority tasks
+ * themselves, and others are short GUI previews. A separate timer only refreshes the task
+ * progress.
  */
 public class TaskControllerImpl implements TaskController, Runnable {
 
@@ -53,33 +74,73 @@ public class TaskControllerImpl implements TaskController, Runnable {
    * Update the task progress window every 300 ms
    */
   private final int TASKCONTROLLER_THREAD_SLEEP = 300;
-  ArrayList<TaskControlListener> listeners = new ArrayList<>();
-  private Thread taskControllerThread;
+  List<TaskControlListener> listeners = new CopyOnWriteArrayList<>();
 
   private TaskQueue taskQueue;
 
   /**
-   * This vector contains references to all running threads of NORMAL priority. Maximum number of
-   * concurrent threads is specified in the preferences dialog.
+   * Tasks that were submitted but not yet started, HIGH priority first and then in order of
+   * submission. A task needs to be removed before its priority changes. Modified while holding
+   * this.
    */
-  private Vector<WorkerThread> runningThreads;
+  private final PriorityBlockingQueue<WrappedTask> waitingTasks = new PriorityBlockingQueue<>(64,
+      Comparator.comparing(WrappedTask::getPriority)
+          .thenComparingLong(WrappedTask::getSubmissionIndex));
+
+  /**
+   * All running workers and the running workers of NORMAL priority. Maximum number of concurrent
+   * NORMAL workers is specified in the preferences dialog. Guarded by this.
+   */
+  private final Set<TaskWorker> runningWorkers = new HashSet<>();
+  private final Set<TaskWorker> runningNormalWorkers = new HashSet<>();
+
+  /**
+   * Bounded pool for the NORMAL priority slots, resized when the preferences change
+   */
+  private ThreadPoolExecutor platformExecutor;
+  /**
+   * Unbounded pool for HIGH priority tasks, idle threads are reused
+   */
+  private ExecutorService highPriorityExecutor;
+  private ExecutorService virtualExecutor;
+  private ScheduledExecutorService progressUpdater;
+
+  private int previousQueueSize = -1;
+  private int previousPercentDone = -1;
 
   /**
    * Initialize the task controller
    */
   public void initModule() {
 
-    logger.finest("Starting task controller thread");
+    logger.finest("Starting task controller");
     taskQueue = new TaskQueue();
 
-    runningThreads = new Vector<>();
-
-    // Create a low-priority thread that will manage the queue and start
-    // worker threads for tasks
-    taskControllerThread = new Thread(this, "Task controller thread");
-    taskControllerThread.setPriority(Thread.MIN_PRIORITY);
-    taskControllerThread.start();
-
+    final AtomicInteger workerCounter = new AtomicInteger(0);
+    final ThreadFactory workerFactory = r -> {
+      Thread thread = new Thread(r, "Task worker " + workerCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    // idle threads are reused for the next task and released after 60 s. The dispatcher never
+    // starts more tasks than slots, the queue only bridges a finishing worker and its thread.
+    // The preferences are not available while MZmineCore is created, the pool is resized to the
+    // number of threads from the preferences on dispatch
+    final int slots = Runtime.getRuntime().availableProcessors();
+    platformExecutor = new ThreadPoolExecutor(slots, slots, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), workerFactory);
+    platformExecutor.allowCoreThreadTimeOut(true);
+    highPriorityExecutor = Executors.newCachedThreadPool(workerFactory);
+
+    // Create a low-priority thread that will update the progress of the queue. Not a daemon
+    // to keep MZmine alive in headless mode with keepRunning
+    progressUpdater = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "Task controller thread");
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+    progressUpdater.scheduleWithFixedDelay(this, TASKCONTROLLER_THREAD_SLEEP,
+        TASKCONTROLLER_THREAD_SLEEP, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -130,24 +191,117 @@ public class TaskControllerImpl implements TaskController, Runnable {
       // task.getTaskDescription());
     }
 
-    // Wake up the task controller thread
     synchronized (this) {
-      this.notifyAll();
+      waitingTasks.addAll(Arrays.asList(wrappedTasks));
+      dispatch();
     }
     return wrappedTasks;
   }
 
   /**
-   * Task controller thread main method.
+   * Starts all waiting HIGH priority tasks and waiting NORMAL priority tasks in the order of the
+   * queue while there are free slots. Called on submission, when a task finishes and when the
+   * priority of a task changes.
    */
-  @Override
-  public void run() {
+  private synchronized void dispatch() {
+    if (waitingTasks.isEmpty()) {
+      return;
+    }
 
-    int previousQueueSize = -1;
-    int previousPercentDone = -1;
+    final int maxNormalTasks = getMaxNormalTasks();
+    resizePlatformExecutor(maxNormalTasks);
+    final boolean virtual = MZmineCore.getConfiguration().getPreferences()
+        .getValue(MZminePreferences.virtualThreadTasks);
+
+    WrappedTask task;
+    while ((task = waitingTasks.peek()) != null) {
+      final boolean normalPriority = task.getPriority() == TaskPriority.NORMAL;
+      if (normalPriority && runningNormalWorkers.size() >= maxNormalTasks
+          && task.getActualTask().getStatus() != TaskStatus.CANCELED) {
+        // HIGH priority tasks come first, all remaining tasks are NORMAL tasks
+        break;
+      }
+      waitingTasks.poll();
+      // Skip canceled tasks
+      if (task.getActualTask().getStatus() == TaskStatus.CANCELED) {
+        continue;
+      }
+
+      TaskWorker worker = new TaskWorker(task, this::workerFinished);
+      task.markAssigned();
+      runningWorkers.add(worker);
+      if (normalPriority) {
+        runningNormalWorkers.add(worker);
+      }
 
-    while (true) {
+      // track task use
+      GoogleAnalyticsTracker.trackTaskRun(task.getActualTask());
+
+      try {
+        getExecutor(virtual, normalPriority).execute(worker);
+      } catch (RejectedExecutionException e) {
+        logger.log(Level.SEVERE, "Cannot start task " + task, e);
+        runningWorkers.remove(worker);
+        runningNormalWorkers.remove(worker);
+      }
+    }
+  }
+
+  /**
+   * @return the maximum number of concurrent NORMAL priority tasks from the preferences
+   */
+  private int getMaxNormalTasks() {
+    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads);
+    if (parameter.isAutomatic() || (parameter.getValue() == null)) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+    return Math.max(1, parameter.getValue());
+  }
+
+  private void resizePlatformExecutor(int slots) {
+    if (platformExecutor.getMaximumPoolSize() == slots) {
+      return;
+    }
+    // the core size must never exceed the maximum size
+    if (slots > platformExecutor.getMaximumPoolSize()) {
+      platformExecutor.setMaximumPoolSize(slots);
+      platformExecutor.setCorePoolSize(slots);
+    } else {
+      platformExecutor.setCorePoolSize(slots);
+      platformExecutor.setMaximumPoolSize(slots);
+    }
+  }
+
+  private synchronized void workerFinished(TaskWorker worker) {
+    runningWorkers.remove(worker);
+    runningNormalWorkers.remove(worker);
+    dispatch();
+  }
+
+  /**
+   * @param virtual        use virtual threads instead of platform threads. Virtual threads are
+   *                       cheap and suit tasks that mostly wait for I/O, CPU bound tasks are still
+   *                       limited by the number of threads.
+   * @param normalPriority the bounded pool for NORMAL tasks or the unbounded pool for HIGH tasks
+   */
+  private synchronized ExecutorService getExecutor(boolean virtual, boolean normalPriority) {
+    if (!virtual) {
+      return normalPriority ? platformExecutor : highPriorityExecutor;
+    }
+    if (virtualExecutor == null) {
+      virtualExecutor = Executors.newThreadPerTaskExecutor(
+          Thread.ofVirtual().name("Task worker (virtual) ", 1).factory());
+    }
+    return virtualExecutor;
+  }
 
+  /**
+   * Task controller thread main method, updates the progress and the tasks window.
+   */
+  @Override
+  public void run() {
+    try {
       final int waitingTasks = taskQueue.getNumOfWaitingTasks();
       final int percentDone = taskQueue.getTotalPercentComplete();
       if ((waitingTasks != previousQueueSize) || (percentDone != previousPercentDone)) {
@@ -158,69 +312,14 @@ public class TaskControllerImpl implements TaskController, Runnable {
         }
       }
 
-      // If the queue is empty, we can sleep. When new task is added into
-      // the queue, we will be awaken by notify()
-      synchronized (this) {
-        while (taskQueue.isEmpty()) {
-          try {
-            this.wait(100);
-          } catch (InterruptedException e) {
-            // Ignore
-          }
-        }
+      if (taskQueue.isEmpty()) {
+        return;
       }
 
       // Check if all tasks in the queue are finished
       if (taskQueue.allTasksFinished()) {
         taskQueue.clear();
-        continue;
-      }
-
-      // Remove already finished threads from runningThreads
-      Iterator<WorkerThread> threadIterator = runningThreads.iterator();
-      while (threadIterator.hasNext()) {
-        WorkerThread thread = threadIterator.next();
-        if (thread.isFinished()) {
-          threadIterator.remove();
-        }
-      }
-
-      // Get a snapshot of the queue
-      WrappedTask[] queueSnapshot = taskQueue.getQueueSnapshot();
-
-      // Obtain the settings of max concurrent threads
-      NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
-          .getParameter(MZminePreferences.numOfThreads);
-      int maxRunningThreads;
-      if (parameter.isAutomatic() || (parameter.getValue() == null)) {
-        maxRunningThreads = Runtime.getRuntime().availableProcessors();
-      } else {
-        maxRunningThreads = parameter.getValue();
-      }
-
-      // Check all tasks in the queue
-      for (WrappedTask task : queueSnapshot) {
-
-        // Skip assigned and canceled tasks
-        if (task.isAssigned() || (task.getActualTask().getStatus() == TaskStatus.CANCELED)) {
-          continue;
-        }
-
-        // Create a new thread if the task is high-priority or if we
-        // have less then maximum # of threads running
-        if ((task.getPriority() == TaskPriority.HIGH) || (runningThreads.size()
-            < maxRunningThreads)) {
-          WorkerThread newThread = new WorkerThread(task);
-
-          // track task use
-          GoogleAnalyticsTracker.trackTaskRun(task.getActualTask());
-
-          if (task.getPriority() == TaskPriority.NORMAL) {
-            runningThreads.add(newThread);
-          }
-
-          newThread.start();
-        }
+        return;
       }
 
       // Refresh the tasks window
@@ -228,16 +327,10 @@ public class TaskControllerImpl implements TaskController, Runnable {
       if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
         desktop.getTasksView().refresh();
       }
-
-      // Sleep for a while until next update
-      try {
-        Thread.sleep(TASKCONTROLLER_THREAD_SLEEP);
-      } catch (InterruptedException e) {
-        // Ignore
-      }
-
+    } catch (Exception e) {
+      // keep the scheduled updates alive
+      logger.log(Level.WARNING, "Error while updating the task progress", e);
     }
-
   }
 
   @Override
@@ -252,10 +345,20 @@ public class TaskControllerImpl implements TaskController, Runnable {
       if (wrappedTask.getActualTask() == task) {
         logger.finest(
             "Setting priority of task \"" + task.getTaskDescription() + "\" to " + priority);
-        wrappedTask.setPriority(priority);
+        // the queue is ordered by priority, re-insert waiting tasks with the new priority
+        synchronized (this) {
+          final boolean waiting = waitingTasks.remove(wrappedTask);
+          wrappedTask.setPriority(priority);
+          if (waiting) {
+            waitingTasks.add(wrappedTask);
+          }
+        }
       }
     }
 
+    // a waiting task may now be allowed to start
+    dispatch();
+
     // Refresh the tasks window
     Desktop desktop = MZmineCore.getDesktop();
     if ((desktop != null) && (!(desktop instanceof HeadLessDesktop))) {
@@ -277,9 +380,14 @@ public class TaskControllerImpl implements TaskController, Runnable {
       }
     }
 
-    var running = runningThreads.toArray(WorkerThread[]::new);
-    for (WorkerThread runningThread : running) {
-      if (clazz.isInstance(runningThread.getWrappedTask().getActualTask())) {
+    // the queue is updated on the FX thread and may not contain the latest tasks yet
+    final List<WrappedTask> tasks = new ArrayList<>();
+    synchronized (this) {
+      tasks.addAll(waitingTasks);
+      runningWorkers.forEach(worker -> tasks.add(worker.getWrappedTask()));
+    }
+    for (WrappedTask wrappedTask : tasks) {
+      if (clazz.isInstance(wrappedTask.getActualTask())) {
         return true;
       }
     }
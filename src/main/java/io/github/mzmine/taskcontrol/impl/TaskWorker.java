@@ -29,23 +29,25 @@ import io.github.mzmine.main.MZmineCore;
 import io.github.mzmine.taskcontrol.Task;
 import io.github.mzmine.taskcontrol.TaskStatus;
 import io.github.mzmine.util.ExceptionUtils;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Task controller worker thread, this thread will process one task and then finish
+ * Task controller worker, processes one task on a thread of the task executor and then reports
+ * back to the controller so the next waiting task can be dispatched right away.
  */
-class WorkerThread extends Thread {
+class TaskWorker implements Runnable {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
-  private WrappedTask wrappedTask;
-  private boolean finished = false;
+  private final WrappedTask wrappedTask;
+  private final Consumer<TaskWorker> onFinished;
+  private volatile boolean finished = false;
 
-  WorkerThread(WrappedTask wrappedTask) {
-    super("Thread executing task " + wrappedTask);
+  TaskWorker(WrappedTask wrappedTask, Consumer<TaskWorker> onFinished) {
     this.wrappedTask = wrappedTask;
-    wrappedTask.assignTo(this);
+    this.onFinished = onFinished;
   }
 
   /**
@@ -55,6 +57,12 @@ class WorkerThread extends Thread {
 
     Task actualTask = wrappedTask.getActualTask();
 
+    // executor threads are reused, name and priority are set for every task
+    final Thread thread = Thread.currentThread();
+    final String threadName = thread.getName();
+    thread.setName("Thread executing task " + wrappedTask);
+    wrappedTask.assignTo(thread);
+
     try {
 
       // Log the start (INFO level events go to the Status bar, too)
@@ -102,13 +110,16 @@ class WorkerThread extends Thread {
       MZmineCore.getDesktop().displayErrorMessage("Unhandled exception in task "
           + actualTask.getTaskDescription() + ": " + ExceptionUtils.exceptionToString(e));
 
+    } finally {
+      /*
+       * Mark this worker as finished and release the executor thread
+       */
+      wrappedTask.assignTo(null);
+      thread.setName(threadName);
+      finished = true;
+      onFinished.accept(this);
     }
 
-    /*
-     * Mark this thread as finished
-     */
-    finished = true;
-
   }
 
   boolean isFinished() {
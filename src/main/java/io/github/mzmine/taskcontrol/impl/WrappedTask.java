@@ -31,6 +31,7 @@ import io.github.mzmine.taskcontrol.TaskPriority;
 import javafx.beans.property.Property;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
+import java.util.concurrent.atomic.AtomicLong;
 import javafx.beans.property.StringProperty;
 
 /**
@@ -38,6 +39,8 @@ import javafx.beans.property.StringProperty;
  */
 public class WrappedTask {
 
+  private static final AtomicLong submissionCounter = new AtomicLong(0);
+
   private StringProperty name = new SimpleStringProperty("");
 
   public final String getName() {
@@ -54,33 +57,52 @@ public class WrappedTask {
 
   private Task task;
   private Property<TaskPriority> priority;
-  private WorkerThread assignedTo;
+  private volatile TaskPriority currentPriority;
+  private volatile boolean assigned = false;
+  private volatile Thread assignedTo;
+  private final long submissionIndex = submissionCounter.getAndIncrement();
 
   public WrappedTask(Task task, TaskPriority priority) {
     this.task = task;
     this.priority = new SimpleObjectProperty<>(priority);
+    this.currentPriority = priority;
   }
 
   /**
    * @return Returns the priority.
    */
   TaskPriority getPriority() {
-    return priority.getValue();
+    // the property is updated on the FX thread, the controller needs the value right away
+    return currentPriority;
   }
 
   /**
    * @param priority The priority to set.
    */
   void setPriority(TaskPriority priority) {
+    currentPriority = priority;
     MZmineCore.runLater(() -> this.priority.setValue(priority));
-    if (assignedTo != null) {
-      switch (priority) {
-        case HIGH -> assignedTo.setPriority(Thread.MAX_PRIORITY);
-        case NORMAL -> assignedTo.setPriority(Thread.NORM_PRIORITY);
-      }
+    final Thread thread = assignedTo;
+    if (thread != null) {
+      applyThreadPriority(thread);
+    }
+  }
+
+  private void applyThreadPriority(Thread thread) {
+    switch (currentPriority) {
+      case HIGH -> thread.setPriority(Thread.MAX_PRIORITY);
+      case NORMAL -> thread.setPriority(Thread.NORM_PRIORITY);
     }
   }
 
+  /**
+   * @return increasing number in order of creation, tasks of the same priority are started in this
+   * order
+   */
+  long getSubmissionIndex() {
+    return submissionIndex;
+  }
+
   public Property<TaskPriority> priorityProperty() {
     return priority;
   }
@@ -89,11 +111,26 @@ public class WrappedTask {
    * @return Returns the assigned.
    */
   boolean isAssigned() {
-    return assignedTo != null;
+    return assigned;
   }
 
-  void assignTo(WorkerThread thread) {
+  /**
+   * Marks this task as dispatched to the executor, before it actually starts running.
+   */
+  void markAssigned() {
+    assigned = true;
+  }
+
+  /**
+   * @param thread the executor thread running this task or null once the task is done. Threads
+   *               are reused, so the thread priority is reset to the task priority.
+   */
+  void assignTo(Thread thread) {
     assignedTo = thread;
+    if (thread != null) {
+      assigned = true;
+      applyThreadPriority(thread);
+    }
   }
 
   /**
@@ -102,6 +102,10 @@ public class GUIUtils {
    * Close all open MZmine windows, except the main (project) window
    */
   public static void closeAllWindows() {
+    // no windows and no JavaFX toolkit in headless mode
+    if (MZmineCore.isHeadLessMode()) {
+      return;
+    }
     // Close AWT windows
     SwingUtilities.invokeLater(() -> {
       for (java.awt.Window window : java.awt.Window.getWindows()) {
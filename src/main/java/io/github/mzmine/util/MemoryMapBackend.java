@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util;
+
+/**
+ * The way {@link MemoryMapStorage} maps its temporary files into memory.
+ */
+public enum MemoryMapBackend {
+
+  /**
+   * {@link java.nio.MappedByteBuffer}s of up to 1 GB per temporary file.
+   */
+  BYTE_BUFFER,
+  /**
+   * Foreign memory segments ({@link java.lang.foreign.MemorySegment}) with larger temporary files,
+   * deterministic unmapping and native byte order.
+   */
+  FOREIGN_MEMORY;
+
+  @Override
+  public String toString() {
+    return switch (this) {
+      case BYTE_BUFFER -> "Mapped byte buffers";
+      case FOREIGN_MEMORY -> "Foreign memory segments";
+    };
+  }
+
+  /**
+   * Apply this backend to all {@link MemoryMapStorage}s that are created from now on.
+   */
+  public void enforceToMemoryMapping() {
+    MemoryMapStorage.setDefaultBackend(this);
+  }
+}
@@ -29,16 +29,23 @@ import io.github.mzmine.main.MZmineCore;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.MemorySession;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Deque;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -50,14 +57,34 @@ import sun.misc.Unsafe;
  * buffer is directly bound to the memory-mapped portion of the file so the data can be directly
  * accessed without loading it into another intermediate primitive type array.
  * <p>
- * The size of each temporary file is STORAGE_FILE_CAPACITY bytes. When the file is full, a new file
- * is automatically created using the createNewMappedFile() function. The size of each temporary
- * file in the filesystem may show as 1GB, but actually only a portion of that space is occupied on
- * the disk, depending on the amount of stored data (this can be examined using the 'du -hs' Linux
- * command.
+ * The storage is split into segments of STORAGE_FILE_CAPACITY bytes, each backed by one temporary
+ * file. Space within the current segment is handed out by a lock-free bump allocator, so multiple
+ * threads can store data into the same storage concurrently. Only switching to a new segment is
+ * synchronized. The size of each temporary file in the filesystem may show as 1GB, but actually
+ * only a portion of that space is occupied on the disk, depending on the amount of stored data
+ * (this can be examined using the 'du -hs' Linux command.
  * <p>
- * There is no support for removing data from the file - we assume such operation is rare and
- * therefore the data can be left on the disk until the whole temporary file is discarded.
+ * There is no support for removing single arrays from a segment. Instead, a storage that is no
+ * longer used (e.g., the storage of an intermediate feature list or a temporary storage of a task)
+ * can be released by {@link #release(Unsafe)}. Segments of the
+ * {@link MemoryMapBackend#FOREIGN_MEMORY} backend are then put into a {@link SegmentPool} and
+ * reused by other storages, so the temporary disk usage does not grow with every processing step.
+ * Pooled segments are mapped again with a new memory session, so a stale buffer of the released
+ * storage fails with an {@link IllegalStateException} instead of reading the data of the next
+ * storage. Mapped byte buffers of the {@link MemoryMapBackend#BYTE_BUFFER} backend cannot be
+ * invalidated without crashing the JVM. Their segments are never pooled, the temporary file is
+ * deleted and the mapping is removed once all buffers are garbage-collected.
+ * <p>
+ * Storages that are shared by multiple objects (e.g., feature lists and raw data files that
+ * reference the same stored series or mass lists) are reference counted. Each owner calls
+ * {@link #retain()} and {@link #releaseOwner(Unsafe)}, the storage is released once the last owner
+ * is gone. Buffers of a released storage must not be accessed anymore.
+ * <p>
+ * Two backends are available (see {@link MemoryMapBackend}): mapped byte buffers, limited to
+ * segments below 2 GB and unmapped via {@link Unsafe}, and foreign memory segments, which allow
+ * larger segments, are unmapped deterministically by closing their memory session and expose the
+ * data in native byte order, so bulk reads do not need to swap bytes. The backend is selected in
+ * the preferences and applies to storages created afterwards.
  * <p>
  * There is a limit on the number of open file descriptors (e.g. 1024 by default on Linux). With 1
  * GB per temporary file, this would give us about 1 TB of storage space, so perhaps it is okay.
@@ -74,14 +101,49 @@ public class MemoryMapStorage {
    * One temporary file can store STORAGE_FILE_CAPACITY bytes. We need to fit within 2GB limit for a
    * single MappedByteBuffer. 1 GB per file seems like a good start.
    */
-  private static final long STORAGE_FILE_CAPACITY = 1_000_000_000L;
-  private final Logger logger = Logger.getLogger(this.getClass().getName());
-  private final Set<File> temporaryFiles = new HashSet<>();
-  private final List<MappedByteBuffer> mappedByteBufferList = new ArrayList<>();
+  private static final int STORAGE_FILE_CAPACITY = 1_000_000_000;
+  /**
+   * Capacity of one temporary file in the {@link MemoryMapBackend#FOREIGN_MEMORY} backend. Memory
+   * segments are not limited to 2 GB, so fewer files are needed.
+   */
+  private static final long FOREIGN_STORAGE_FILE_CAPACITY = 4_000_000_000L;
+  /**
+   * Maximum number of released segments that are kept for reuse. Segments exceeding this number
+   * are unmapped and deleted when a storage is released.
+   */
+  private static final int MAX_POOLED_SEGMENTS = 8;
+  /**
+   * Released segments that can be reused by any storage.
+   */
+  private static final SegmentPool globalPool = new SegmentPool(MAX_POOLED_SEGMENTS);
+
+  private static final Logger logger = Logger.getLogger(MemoryMapStorage.class.getName());
 
   private static boolean storeFeaturesInRam = false;
   private static boolean storeRawFilesInRam = false;
   private static boolean storeMassListsInRam = false;
+  private static MemoryMapBackend defaultBackend = MemoryMapBackend.BYTE_BUFFER;
+
+  /**
+   * The backend of this storage. Fixed at creation, so all segments are of the same type.
+   */
+  private final MemoryMapBackend backend;
+  /**
+   * Released segments are put into this pool and new segments are taken from it.
+   */
+  private final SegmentPool pool;
+  /**
+   * All segments of this storage, including the current one.
+   */
+  private final List<Segment> segments = new CopyOnWriteArrayList<>();
+  /**
+   * The segment that we are currently writing into.
+   */
+  private volatile Segment currentSegment = null;
+  /**
+   * The number of owners that retain this storage, see {@link #retain()}.
+   */
+  private final AtomicInteger owners = new AtomicInteger(0);
 
   /**
    * @return The {@link MemoryMapStorage} or null, if the data shall be stored in ram.
@@ -109,40 +171,56 @@ public class MemoryMapStorage {
 
   @NotNull
   public static MemoryMapStorage create() {
-    return new MemoryMapStorage();
+    return new MemoryMapStorage(defaultBackend, globalPool);
+  }
+
+  /**
+   * Creates a storage that reuses segments of the given pool instead of the global pool, e.g., to
+   * isolate storages in tests.
+   *
+   * @param backend the backend of the storage
+   * @param pool    the pool of released segments
+   */
+  @NotNull
+  public static MemoryMapStorage create(@NotNull MemoryMapBackend backend,
+      @NotNull SegmentPool pool) {
+    return new MemoryMapStorage(backend, pool);
   }
 
   private MemoryMapStorage() {
+    this(defaultBackend, globalPool);
+  }
+
+  private MemoryMapStorage(@NotNull MemoryMapBackend backend, @NotNull SegmentPool pool) {
+    this.backend = backend;
+    this.pool = pool;
     // register this storage to MZmineCore, so we can delete all temp files later.
     MZmineCore.registerStorage(this);
   }
 
   /**
-   * The file that we are currently writing into.
-   */
-  private MappedByteBuffer currentMappedFile = null;
-
-  /**
-   * Creates a new temporary file, maps it into memory, and returns the corresponding
-   * MappedByteBuffer. The capacity of the buffer is STORAGE_FILE_CAPACITY bytes.
+   * Creates a new temporary file, maps it into memory, and returns the corresponding segment. The
+   * capacity of the segment depends on the backend.
    *
-   * @return a MappedByteBuffer corresponding to the memory-mapped temporary file
+   * @param backend the backend used to map the file
+   * @return a segment corresponding to the memory-mapped temporary file
    * @throws IOException
    */
-  private MappedByteBuffer createNewMappedFile() throws IOException {
+  private static Segment createNewSegment(@NotNull MemoryMapBackend backend) throws IOException {
 
     // Create the temporary storage file
     File storageFileName = File.createTempFile("mzmine", ".tmp");
-    temporaryFiles.add(storageFileName);
     logger.finest("Created a temporary file " + storageFileName);
 
     // Open the file for writing
     RandomAccessFile storageFile = new RandomAccessFile(storageFileName, "rw");
 
     // Map the file into memory
-    MappedByteBuffer mappedFileBuffer =
-        storageFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, STORAGE_FILE_CAPACITY);
-    mappedByteBufferList.add(mappedFileBuffer);
+    final Segment segment = switch (backend) {
+      case BYTE_BUFFER -> new MappedSegment(storageFileName, storageFile.getChannel()
+          .map(FileChannel.MapMode.READ_WRITE, 0, STORAGE_FILE_CAPACITY));
+      case FOREIGN_MEMORY -> ForeignSegment.map(storageFileName, storageFile);
+    };
 
     // Close the temporary file, the memory mapping will remain
     storageFile.close();
@@ -152,8 +230,42 @@ public class MemoryMapStorage {
     // shutdown hook registered in the main.ShutDownHook class.
     storageFileName.deleteOnExit();
 
-    return mappedFileBuffer;
+    return segment;
+  }
+
+  /**
+   * Reserves the given number of bytes in the current segment. If the current segment is full, a
+   * pooled segment is reused or a new one is created.
+   *
+   * @param bytes the number of bytes to reserve
+   * @return a byte buffer spanning exactly the reserved bytes
+   * @throws IOException if a new temporary file cannot be created
+   */
+  private ByteBuffer allocate(final int bytes) throws IOException {
+    final long segmentCapacity = getSegmentCapacity();
+    if (bytes < 0 || bytes > segmentCapacity) {
+      throw new IllegalArgumentException(
+          "Cannot store " + bytes + " bytes in a segment of " + segmentCapacity + " bytes");
+    }
+
+    while (true) {
+      final Segment segment = currentSegment;
+      if (segment != null) {
+        final ByteBuffer reserved = segment.tryAllocate(bytes);
+        if (reserved != null) {
+          return reserved;
+        }
+      }
 
+      // the current segment is full (or not yet created), only one thread switches the segment
+      synchronized (this) {
+        if (currentSegment == segment) {
+          final Segment next = pool.take(backend);
+          segments.add(next);
+          currentSegment = next;
+        }
+      }
+    }
   }
 
   /**
@@ -165,8 +277,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[])
-      throws IOException {
+  public DoubleBuffer storeData(@NotNull final double data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -181,36 +292,14 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized DoubleBuffer storeData(@NotNull final double data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Double.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Double.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
-
-    // Create a double view of the memory-mapped byte buffer
-    DoubleBuffer sliceDoubleView = slice.asDoubleBuffer();
-
-    // Copy the data to the memory mapped storage
+  public DoubleBuffer storeData(@NotNull final double data[], int offset, int length)
+      throws IOException {
+    // Create a double view of the reserved bytes and copy the data to the memory mapped storage
+    final DoubleBuffer sliceDoubleView = allocate(length * Double.BYTES).asDoubleBuffer();
     sliceDoubleView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Double.BYTES);
-
     // Create a read-only version of the new buffer slice
-    final DoubleBuffer readOnlySlice = sliceDoubleView.asReadOnlyBuffer();
-
-    return readOnlySlice;
-
+    return sliceDoubleView.asReadOnlyBuffer();
   }
 
   /**
@@ -222,8 +311,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[])
-      throws IOException {
+  public FloatBuffer storeData(@NotNull final float data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -238,36 +326,27 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized FloatBuffer storeData(@NotNull final float data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Float.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Float.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
-
-    // Create a float view of the memory-mapped byte buffer
-    FloatBuffer sliceFloatView = slice.asFloatBuffer();
-
-    // Copy the data to the memory mapped storage
+  public FloatBuffer storeData(@NotNull final float data[], int offset, int length)
+      throws IOException {
+    // Create a float view of the reserved bytes and copy the data to the memory mapped storage
+    final FloatBuffer sliceFloatView = allocate(length * Float.BYTES).asFloatBuffer();
     sliceFloatView.put(data, offset, length);
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Float.BYTES);
-
     // Create a read-only version of the new buffer slice
-    final FloatBuffer readOnlySlice = sliceFloatView.asReadOnlyBuffer();
-
-    return readOnlySlice;
+    return sliceFloatView.asReadOnlyBuffer();
+  }
 
+  /**
+   * Reserve a writable FloatBuffer in a memory-mapped temporary file, e.g., for large intermediate
+   * results that are modified after allocation. The initial content is undefined.
+   *
+   * @param length the number of float values
+   * @return a writable FloatBuffer that is directly mapped to the reserved space on the disk
+   * @throws IOException
+   */
+  @NotNull
+  public FloatBuffer allocateFloats(final int length) throws IOException {
+    return allocate(length * Float.BYTES).asFloatBuffer();
   }
 
   /**
@@ -279,7 +358,7 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[]) throws IOException {
+  public IntBuffer storeData(@NotNull final int data[]) throws IOException {
     return storeData(data, 0, data.length);
   }
 
@@ -294,59 +373,163 @@ public class MemoryMapStorage {
    * @throws IOException
    */
   @NotNull
-  public synchronized IntBuffer storeData(@NotNull final int data[], int offset,
-      int length) throws IOException {
-
-    // If we have no storage file or if the current file is full, create a new one
-    if ((currentMappedFile == null)
-        || (currentMappedFile.position() + (length * Integer.BYTES) > STORAGE_FILE_CAPACITY)) {
-      currentMappedFile = createNewMappedFile();
-    }
-
-    // Save the current position in the storage file
-    final int savedPosition = currentMappedFile.position();
-
-    // Set the limit to the end of the new array and create a buffer slice
-    currentMappedFile.limit(savedPosition + length * Integer.BYTES);
-    final ByteBuffer slice = currentMappedFile.slice();
+  public IntBuffer storeData(@NotNull final int data[], int offset, int length)
+      throws IOException {
+    // Create an int view of the reserved bytes and copy the data to the memory mapped storage
+    final IntBuffer sliceIntView = allocate(length * Integer.BYTES).asIntBuffer();
+    sliceIntView.put(data, offset, length);
 
-    // Create an int view of the memory-mapped byte buffer
-    IntBuffer sliceIntView = slice.asIntBuffer();
+    // Create a read-only version of the new buffer slice
+    return sliceIntView.asReadOnlyBuffer();
+  }
 
-    // Copy the data to the memory mapped storage
-    sliceIntView.put(data, offset, length);
+  /**
+   * Registers a new owner of this storage. Every call must be matched by a call to
+   * {@link #releaseOwner(Unsafe)}, once the owner does not access its stored data anymore.
+   *
+   * @return this storage
+   */
+  @NotNull
+  public MemoryMapStorage retain() {
+    owners.incrementAndGet();
+    return this;
+  }
 
-    // Update the position and the main buffer so we are ready to store the next array
-    currentMappedFile.position(savedPosition + length * Integer.BYTES);
+  /**
+   * Removes an owner of this storage. The storage is released by {@link #release(Unsafe)} when the
+   * last owner is removed.
+   *
+   * @param theUnsafe used to unmap segments that are not pooled. May be null.
+   */
+  public void releaseOwner(@Nullable Unsafe theUnsafe) {
+    final int remaining = owners.decrementAndGet();
+    if (remaining < 0) {
+      owners.incrementAndGet();
+      throw new IllegalStateException("Storage was released by more owners than retained it.");
+    }
+    if (remaining == 0) {
+      release(theUnsafe);
+    }
+  }
 
-    // Create a read-only version of the new buffer slice
-    final IntBuffer readOnlySlice = sliceIntView.asReadOnlyBuffer();
+  /**
+   * @return the number of owners that currently retain this storage
+   */
+  public int getNumOwners() {
+    return owners.get();
+  }
 
-    return readOnlySlice;
+  /**
+   * Releases all segments of this storage. Foreign memory segments are put into the segment pool,
+   * so other storages can reuse the mapped temporary files. All other segments are unmapped (if
+   * this is safe) and deleted. The storage remains usable afterwards and will acquire new segments
+   * on demand.
+   * <p>
+   * All buffers previously returned by this storage must not be accessed after this call (see the
+   * class documentation). Storages that are retained by owners can only be released by
+   * {@link #releaseOwner(Unsafe)}.
+   *
+   * @param theUnsafe used to unmap foreign segments that are not pooled. May be null. Mapped byte
+   *                  buffers are never unmapped here, because stale buffers would crash the JVM.
+   * @throws IllegalStateException if the storage is still retained by an owner
+   */
+  public synchronized void release(@Nullable Unsafe theUnsafe) {
+    if (owners.get() > 0) {
+      throw new IllegalStateException(
+          "Cannot release a storage that is still retained by " + owners.get() + " owners.");
+    }
+    final List<Segment> released = new ArrayList<>(segments);
+    segments.clear();
+    currentSegment = null;
 
+    for (Segment segment : released) {
+      if (!pool.offer(segment, theUnsafe)) {
+        segment.releaseUnpooled(theUnsafe);
+      }
+    }
+    logger.finest(() -> "Released " + released.size() + " segments, " + pool.size()
+        + " segments are pooled for reuse.");
   }
 
   /**
    * Discard this memory-mapped storage and remove all the associated temporary files.
    */
   public synchronized void discard(Unsafe theUnsafe) throws IOException {
-
-    if (theUnsafe != null) {
-      for (MappedByteBuffer mappedByteBuffer : mappedByteBufferList) {
-        theUnsafe.invokeCleaner(mappedByteBuffer);
-      }
+    for (Segment segment : segments) {
+      segment.discard(theUnsafe);
     }
+    segments.clear();
+    currentSegment = null;
+  }
 
-    for (File tmpFile : temporaryFiles) {
-      if (!tmpFile.delete()) {
-        logger.warning("Could not delete temporary file " + tmpFile.getAbsolutePath());
+  /**
+   * Discard all segments of the global pool and remove the associated temporary files.
+   */
+  public static void discardSegmentPool(@Nullable Unsafe theUnsafe) {
+    globalPool.discard(theUnsafe);
+  }
+
+  /**
+   * @return the current allocation statistics of this storage.
+   */
+  @NotNull
+  public StorageStats getStats() {
+    final Segment current = currentSegment;
+    long allocated = 0;
+    long live = 0;
+    long fragmented = 0;
+    for (Segment segment : segments) {
+      final long used = Math.min(segment.position.get(), segment.capacity);
+      allocated += segment.capacity;
+      live += used;
+      if (segment != current) {
+        // the remaining space of full segments cannot be used anymore
+        fragmented += segment.capacity - used;
       }
     }
+    return new StorageStats(segments.size(), allocated, live, fragmented);
+  }
 
-    temporaryFiles.clear();
-    currentMappedFile = null;
+  /**
+   * @return The number of segments that are currently pooled for reuse in the global pool.
+   */
+  public static int getNumPooledSegments() {
+    return globalPool.size();
   }
 
+  /**
+   * @return the capacity of one segment (temporary file) in bytes. An allocation that does not fit
+   * into the rest of the current segment starts a new segment.
+   */
+  public long getSegmentCapacity() {
+    return switch (backend) {
+      case BYTE_BUFFER -> STORAGE_FILE_CAPACITY;
+      case FOREIGN_MEMORY -> FOREIGN_STORAGE_FILE_CAPACITY;
+    };
+  }
+
+  /**
+   * @return the backend of this storage
+   */
+  @NotNull
+  public MemoryMapBackend getBackend() {
+    return backend;
+  }
+
+  /**
+   * @return the backend used for storages created from now on
+   */
+  @NotNull
+  public static MemoryMapBackend getDefaultBackend() {
+    return defaultBackend;
+  }
+
+  /**
+   * Sets the backend for all storages created from now on. Existing storages keep their backend.
+   */
+  public static void setDefaultBackend(@NotNull MemoryMapBackend backend) {
+    MemoryMapStorage.defaultBackend = backend;
+  }
 
   public static boolean isStoreFeaturesInRam() {
     return storeFeaturesInRam;
@@ -371,6 +554,7 @@ public class MemoryMapStorage {
   public static void setStoreMassListsInRam(boolean storeMassListsInRam) {
     MemoryMapStorage.storeMassListsInRam = storeMassListsInRam;
   }
+
   /**
    * Store everything in RAM instead of using MemoryMapStorage
    *
@@ -381,4 +565,294 @@ public class MemoryMapStorage {
     storeMassListsInRam = state;
     storeRawFilesInRam = state;
   }
+
+  /**
+   * Allocation statistics of a {@link MemoryMapStorage}.
+   *
+   * @param numSegments     the number of mapped segments
+   * @param allocatedBytes  the total capacity of all mapped segments
+   * @param liveBytes       the number of bytes occupied by stored data
+   * @param fragmentedBytes the number of bytes at the end of full segments that cannot be used
+   */
+  public record StorageStats(int numSegments, long allocatedBytes, long liveBytes,
+                             long fragmentedBytes) {
+
+  }
+
+  /**
+   * Released segments that are reused by the storages of this pool. Only segments that can be
+   * invalidated for the buffers of the released storage are pooled, see
+   * {@link Segment#recycle(Unsafe)}.
+   */
+  public static final class SegmentPool {
+
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ConcurrentLinkedDeque<>();
+
+    /**
+     * @param maxSegments the maximum number of pooled segments
+     */
+    public SegmentPool(int maxSegments) {
+      this.maxSegments = maxSegments;
+    }
+
+    /**
+     * @return A released segment of the given backend from the pool or a new segment.
+     */
+    @NotNull
+    private Segment take(@NotNull MemoryMapBackend backend) throws IOException {
+      for (Segment pooled : segments) {
+        if (pooled.backend() == backend && segments.remove(pooled)) {
+          pooled.position.set(0);
+          return pooled;
+        }
+      }
+      return createNewSegment(backend);
+    }
+
+    /**
+     * Recycles and pools the segment if it is recyclable and the pool is not full.
+     *
+     * @return true if the segment was taken over by the pool, false if the caller has to release
+     * the unchanged segment
+     */
+    private boolean offer(@NotNull Segment segment, @Nullable Unsafe theUnsafe) {
+      if (segments.size() >= maxSegments || !segment.isRecyclable()) {
+        return false;
+      }
+      final Segment recycled = segment.recycle(theUnsafe);
+      if (recycled == null) {
+        // the old mapping is already closed, only the file remains
+        segment.deleteFile();
+        return true;
+      }
+      segments.addLast(recycled);
+      return true;
+    }
+
+    /**
+     * @return The number of segments that are currently pooled for reuse.
+     */
+    public int size() {
+      return segments.size();
+    }
+
+    /**
+     * Discard all pooled segments and remove the associated temporary files.
+     */
+    public void discard(@Nullable Unsafe theUnsafe) {
+      Segment segment;
+      while ((segment = segments.pollFirst()) != null) {
+        segment.discard(theUnsafe);
+      }
+    }
+  }
+
+  /**
+   * One memory-mapped temporary file with a bump allocation cursor.
+   */
+  private abstract static class Segment {
+
+    protected final File file;
+    protected final long capacity;
+    protected final AtomicLong position = new AtomicLong(0);
+
+    private Segment(File file, long capacity) {
+      this.file = file;
+      this.capacity = capacity;
+    }
+
+    /**
+     * @param bytes the number of bytes to reserve
+     * @return a buffer spanning the reserved bytes or null if the segment is full
+     */
+    @Nullable
+    private ByteBuffer tryAllocate(int bytes) {
+      final int reserved = alignedSize(bytes);
+      long pos;
+      do {
+        pos = position.get();
+        if (pos + reserved > capacity) {
+          return null;
+        }
+      } while (!position.compareAndSet(pos, pos + reserved));
+      return slice(pos, bytes);
+    }
+
+    /**
+     * @return the number of bytes actually reserved for an allocation of the given size
+     */
+    protected int alignedSize(int bytes) {
+      return bytes;
+    }
+
+    @NotNull
+    protected abstract ByteBuffer slice(long offset, int bytes);
+
+    @NotNull
+    protected abstract MemoryMapBackend backend();
+
+    /**
+     * @return true if buffers of a released storage can be invalidated, so the segment can be
+     * reused by another storage
+     */
+    protected abstract boolean isRecyclable();
+
+    /**
+     * Invalidates all buffers of this segment and prepares it for reuse by another storage. Only
+     * called if {@link #isRecyclable()}.
+     *
+     * @return the segment to put into the pool or null if the file cannot be mapped again
+     */
+    @Nullable
+    protected abstract Segment recycle(@Nullable Unsafe theUnsafe);
+
+    /**
+     * Unmaps the segment.
+     */
+    protected abstract void unmap(@Nullable Unsafe theUnsafe);
+
+    /**
+     * Releases a segment that is not pooled. Buffers of the released storage may still be
+     * referenced, so the segment is only unmapped if this cannot crash the JVM.
+     */
+    protected abstract void releaseUnpooled(@Nullable Unsafe theUnsafe);
+
+    protected void discard(@Nullable Unsafe theUnsafe) {
+      unmap(theUnsafe);
+      deleteFile();
+    }
+
+    protected void deleteFile() {
+      if (!file.delete()) {
+        logger.warning("Could not delete temporary file " + file.getAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * A segment backed by a {@link MappedByteBuffer}. Buffers use the default big-endian byte order.
+   */
+  private static final class MappedSegment extends Segment {
+
+    private final MappedByteBuffer buffer;
+
+    private MappedSegment(File file, MappedByteBuffer buffer) {
+      super(file, buffer.capacity());
+      this.buffer = buffer;
+    }
+
+    @Override
+    protected @NotNull ByteBuffer slice(long offset, int bytes) {
+      return buffer.slice((int) offset, bytes);
+    }
+
+    @Override
+    protected @NotNull MemoryMapBackend backend() {
+      return MemoryMapBackend.BYTE_BUFFER;
+    }
+
+    @Override
+    protected boolean isRecyclable() {
+      // cannot be invalidated, old buffers would silently read the data of the next storage
+      return false;
+    }
+
+    @Override
+    protected @Nullable Segment recycle(@Nullable Unsafe theUnsafe) {
+      throw new UnsupportedOperationException("Mapped byte buffers cannot be recycled");
+    }
+
+    @Override
+    protected void unmap(@Nullable Unsafe theUnsafe) {
+      if (theUnsafe != null) {
+        theUnsafe.invokeCleaner(buffer);
+      }
+    }
+
+    @Override
+    protected void releaseUnpooled(@Nullable Unsafe theUnsafe) {
+      // unmapping would crash the JVM on access of stale buffers. The mapping is removed once all
+      // buffers are garbage-collected. Deleting a mapped file fails on Windows, the file is
+      // removed by the temp file cleanup then.
+      if (!file.delete()) {
+        logger.finest(() -> "Temporary file " + file.getAbsolutePath()
+            + " is still mapped and will be deleted later");
+      }
+    }
+  }
+
+  /**
+   * A segment backed by a mapped {@link MemorySegment}. Allocations are aligned to 8 bytes and the
+   * buffers use the native byte order, so bulk gets and puts are plain memory copies. The mapping is
+   * released by closing the session, access to released buffers fails instead of crashing the JVM.
+   * Recycled segments map the same file again in a new session, so buffers of the released storage
+   * cannot read or write the data of the next storage.
+   */
+  private static final class ForeignSegment extends Segment {
+
+    private static final int ALIGNMENT = Long.BYTES;
+
+    private final MemorySession session;
+    private final MemorySegment segment;
+
+    private ForeignSegment(File file, MemorySession session, MemorySegment segment) {
+      super(file, segment.byteSize());
+      this.session = session;
+      this.segment = segment;
+    }
+
+    /**
+     * Maps the file in a new shared session.
+     */
+    private static ForeignSegment map(File file, RandomAccessFile storageFile) throws IOException {
+      final MemorySession session = MemorySession.openShared();
+      return new ForeignSegment(file, session, storageFile.getChannel()
+          .map(FileChannel.MapMode.READ_WRITE, 0, FOREIGN_STORAGE_FILE_CAPACITY, session));
+    }
+
+    @Override
+    protected int alignedSize(int bytes) {
+      return (bytes + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    @Override
+    protected @NotNull ByteBuffer slice(long offset, int bytes) {
+      return segment.asSlice(offset, bytes).asByteBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    protected @NotNull MemoryMapBackend backend() {
+      return MemoryMapBackend.FOREIGN_MEMORY;
+    }
+
+    @Override
+    protected boolean isRecyclable() {
+      return true;
+    }
+
+    @Override
+    protected @Nullable Segment recycle(@Nullable Unsafe theUnsafe) {
+      unmap(theUnsafe);
+      try (RandomAccessFile storageFile = new RandomAccessFile(file, "rw")) {
+        return map(file, storageFile);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot map temporary file " + file + " again", e);
+        return null;
+      }
+    }
+
+    @Override
+    protected void unmap(@Nullable Unsafe theUnsafe) {
+      if (session.isAlive()) {
+        session.close();
+      }
+    }
+
+    @Override
+    protected void releaseUnpooled(@Nullable Unsafe theUnsafe) {
+      // stale buffers fail with an exception once the session is closed
+      discard(theUnsafe);
+    }
+  }
 }
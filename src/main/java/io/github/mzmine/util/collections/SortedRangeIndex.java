@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Maps non-overlapping closed-open ranges [lower, upper) of double values to objects. The bounds
+ * are kept in sorted primitive arrays, split into blocks of limited size, so inserts only shift a
+ * single block and lookups are two binary searches without any allocation.
+ * <p>
+ * The semantics of {@link #put(double, double, Object)} follow
+ * {@link com.google.common.collect.RangeMap#put(com.google.common.collect.Range, Object)}:
+ * existing ranges that overlap the new range are trimmed (or removed, if they are fully covered).
+ * <p>
+ * Lookups return a position handle that is only valid until the next modification. Not thread
+ * safe.
+ *
+ * @param <T> the value type
+ */
+public class SortedRangeIndex<T> {
+
+  private static final int BLOCK_CAPACITY = 512;
+
+  private final List<Block<T>> blocks = new ArrayList<>();
+  /**
+   * The lowest lower bound of each block, used to find the block of a value.
+   */
+  private double[] blockFirstLower = new double[16];
+  private int size = 0;
+
+  /**
+   * @param value the value to look up
+   * @return a position handle of the range containing the value or -1 if no range contains it.
+   */
+  public long find(double value) {
+    final long pos = lastWithLowerAtMost(value);
+    if (pos < 0) {
+      return -1;
+    }
+    final Block<T> block = blocks.get(blockIndex(pos));
+    return value < block.upper[itemIndex(pos)] ? pos : -1;
+  }
+
+  /**
+   * @param value the value to look up
+   * @return the value mapped to the range containing the given value or null.
+   */
+  @Nullable
+  public T get(double value) {
+    final long pos = find(value);
+    return pos < 0 ? null : valueAt(pos);
+  }
+
+  public double lowerAt(long pos) {
+    return blocks.get(blockIndex(pos)).lower[itemIndex(pos)];
+  }
+
+  public double upperAt(long pos) {
+    return blocks.get(blockIndex(pos)).upper[itemIndex(pos)];
+  }
+
+  @SuppressWarnings("unchecked")
+  public T valueAt(long pos) {
+    return (T) blocks.get(blockIndex(pos)).values[itemIndex(pos)];
+  }
+
+  /**
+   * Maps the range [lower, upper) to the value. Overlapping parts of existing ranges are removed.
+   * Empty ranges are ignored.
+   */
+  public void put(double lower, double upper, @NotNull T value) {
+    if (!(lower < upper)) {
+      return;
+    }
+
+    // remove overlapping ranges and keep the parts outside the new range
+    long pos;
+    while ((pos = lastWithLowerBelow(upper)) >= 0 && upperAt(pos) > lower) {
+      final double oldLower = lowerAt(pos);
+      final double oldUpper = upperAt(pos);
+      final T oldValue = valueAt(pos);
+      removeAt(pos);
+      if (oldLower < lower) {
+        insert(oldLower, lower, oldValue);
+      }
+      if (oldUpper > upper) {
+        insert(upper, oldUpper, oldValue);
+      }
+    }
+
+    insert(lower, upper, value);
+  }
+
+  /**
+   * @return the number of ranges
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Iterates all values in ascending order of their ranges. A value that is mapped to multiple
+   * ranges is visited multiple times.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEachValue(@NotNull Consumer<? super T> consumer) {
+    for (Block<T> block : blocks) {
+      for (int i = 0; i < block.size; i++) {
+        consumer.accept((T) block.values[i]);
+      }
+    }
+  }
+
+  /**
+   * @return all values in ascending order of their ranges.
+   */
+  @NotNull
+  public List<T> values() {
+    final List<T> values = new ArrayList<>(size);
+    forEachValue(values::add);
+    return values;
+  }
+
+  /**
+   * Inserts a range that does not overlap with any existing range.
+   */
+  private void insert(double lower, double upper, T value) {
+    if (blocks.isEmpty()) {
+      blocks.add(new Block<>());
+      blockFirstLower[0] = lower;
+    }
+
+    final int b = Math.max(0, lastBlockWithFirstAtMost(lower));
+    final Block<T> block = blocks.get(b);
+    final int index = block.insertionIndex(lower);
+    block.insert(index, lower, upper, value);
+    if (index == 0) {
+      blockFirstLower[b] = lower;
+    }
+    size++;
+
+    if (block.size == BLOCK_CAPACITY) {
+      splitBlock(b);
+    }
+  }
+
+  private void removeAt(long pos) {
+    final int b = blockIndex(pos);
+    final Block<T> block = blocks.get(b);
+    block.remove(itemIndex(pos));
+    size--;
+
+    if (block.size == 0) {
+      blocks.remove(b);
+      System.arraycopy(blockFirstLower, b + 1, blockFirstLower, b, blocks.size() - b);
+    } else {
+      blockFirstLower[b] = block.lower[0];
+    }
+  }
+
+  private void splitBlock(int b) {
+    final Block<T> block = blocks.get(b);
+    final Block<T> upperHalf = block.splitUpperHalf();
+    blocks.add(b + 1, upperHalf);
+
+    if (blocks.size() > blockFirstLower.length) {
+      blockFirstLower = Arrays.copyOf(blockFirstLower, blockFirstLower.length * 2);
+    }
+    System.arraycopy(blockFirstLower, b + 1, blockFirstLower, b + 2, blocks.size() - b - 2);
+    blockFirstLower[b + 1] = upperHalf.lower[0];
+  }
+
+  /**
+   * @return the position of the last range with lower bound <= value or -1.
+   */
+  private long lastWithLowerAtMost(double value) {
+    final int b = lastBlockWithFirstAtMost(value);
+    if (b < 0) {
+      return -1;
+    }
+    final Block<T> block = blocks.get(b);
+    return position(b, block.insertionIndex(value) - 1);
+  }
+
+  /**
+   * @return the position of the last range with lower bound < value or -1.
+   */
+  private long lastWithLowerBelow(double value) {
+    int b = lastBlockWithFirstAtMost(value);
+    if (b < 0) {
+      return -1;
+    }
+    int index = blocks.get(b).firstIndexWithLowerAtLeast(value) - 1;
+    if (index < 0) {
+      // all ranges in this block start at value, the previous block ends below
+      b--;
+      if (b < 0) {
+        return -1;
+      }
+      index = blocks.get(b).size - 1;
+    }
+    return position(b, index);
+  }
+
+  /**
+   * @return the index of the last block with a first lower bound <= value or -1.
+   */
+  private int lastBlockWithFirstAtMost(double value) {
+    int low = 0;
+    int high = blocks.size() - 1;
+    int result = -1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (blockFirstLower[mid] <= value) {
+        result = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  private static long position(int block, int index) {
+    return ((long) block << 32) | index;
+  }
+
+  private static int blockIndex(long pos) {
+    return (int) (pos >>> 32);
+  }
+
+  private static int itemIndex(long pos) {
+    return (int) pos;
+  }
+
+  private static final class Block<T> {
+
+    private final double[] lower = new double[BLOCK_CAPACITY];
+    private final double[] upper = new double[BLOCK_CAPACITY];
+    private final Object[] values = new Object[BLOCK_CAPACITY];
+    private int size = 0;
+
+    /**
+     * @return the index of the first range with lower bound > value
+     */
+    private int insertionIndex(double value) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (lower[mid] <= value) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the index of the first range with lower bound >= value
+     */
+    private int firstIndexWithLowerAtLeast(double value) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (lower[mid] < value) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private void insert(int index, double lo, double up, Object value) {
+      final int moved = size - index;
+      System.arraycopy(lower, index, lower, index + 1, moved);
+      System.arraycopy(upper, index, upper, index + 1, moved);
+      System.arraycopy(values, index, values, index + 1, moved);
+      lower[index] = lo;
+      upper[index] = up;
+      values[index] = value;
+      size++;
+    }
+
+    private void remove(int index) {
+      final int moved = size - index - 1;
+      System.arraycopy(lower, index + 1, lower, index, moved);
+      System.arraycopy(upper, index + 1, upper, index, moved);
+      System.arraycopy(values, index + 1, values, index, moved);
+      size--;
+      values[size] = null;
+    }
+
+    private Block<T> splitUpperHalf() {
+      final Block<T> other = new Block<>();
+      final int half = size / 2;
+      final int moved = size - half;
+      System.arraycopy(lower, half, other.lower, 0, moved);
+      System.arraycopy(upper, half, other.upper, 0, moved);
+      System.arraycopy(values, half, other.values, 0, moved);
+      Arrays.fill(values, half, size, null);
+      other.size = moved;
+      size = half;
+      return other;
+    }
+  }
+}
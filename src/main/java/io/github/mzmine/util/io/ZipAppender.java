@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.zip.ZipException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Replaces entries of an existing zip file without rewriting the unchanged entries. The entries of
+ * a delta zip are appended to the end of the file together with a new central directory, the old
+ * entries stay where they are. Replaced and removed entries remain as unreferenced bytes in the
+ * file until these make up more than half of the file. Then the file is compacted by copying the
+ * compressed bytes of all referenced entries to a new file.
+ * <p>
+ * The new central directory keeps the order of the existing entries, replaced entries keep their
+ * position and new entries are added at the end. Readers that rely on the entry order (like the
+ * project import) therefore see the same order as before.
+ */
+public class ZipAppender {
+
+  private static final Logger logger = Logger.getLogger(ZipAppender.class.getName());
+
+  private static final int LOC_SIG = 0x04034b50;
+  private static final int CEN_SIG = 0x02014b50;
+  private static final int END_SIG = 0x06054b50;
+  private static final int ZIP64_END_SIG = 0x06064b50;
+  private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+  private static final int EXT_SIG = 0x08074b50;
+
+  private static final int LOC_HEADER = 30;
+  private static final int CEN_HEADER = 46;
+  private static final int END_HEADER = 22;
+  private static final int ZIP64_END_HEADER = 56;
+  private static final int ZIP64_LOCATOR_HEADER = 20;
+  private static final int ZIP64_EXTRA_TAG = 0x0001;
+  private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+  private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+  private ZipAppender() {
+  }
+
+  /**
+   * Adds all entries of the delta zip to the zip file. Entries with the same name are replaced.
+   *
+   * @param zipFile     the zip file to change
+   * @param deltaFile   zip file with the new entries
+   * @param removeEntry entries of the zip file that are removed
+   * @return true if the file was compacted, false if the entries were appended
+   * @throws IOException if one of the files cannot be read or written. The zip file stays
+   *                     unchanged if the entries cannot be appended.
+   */
+  public static boolean mergeEntries(@NotNull File zipFile, @NotNull File deltaFile,
+      @NotNull Predicate<String> removeEntry) throws IOException {
+    try (FileChannel target = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE); FileChannel delta = FileChannel.open(deltaFile.toPath(),
+        StandardOpenOption.READ)) {
+      final CentralDirectory existing = readCentralDirectory(target);
+      final CentralDirectory added = readCentralDirectory(delta);
+
+      // replaced entries keep their position in the directory
+      final Map<String, CenEntry> merged = new LinkedHashMap<>();
+      for (CenEntry entry : existing.entries()) {
+        if (!removeEntry.test(entry.name())) {
+          merged.put(entry.name(), entry);
+        }
+      }
+      final Map<String, CenEntry> addedEntries = new LinkedHashMap<>();
+      for (CenEntry entry : added.entries()) {
+        merged.put(entry.name(), entry);
+        addedEntries.put(entry.name(), entry);
+      }
+
+      long liveBytes = 0;
+      for (CenEntry entry : merged.values()) {
+        liveBytes += entry.estimatedLocalLength();
+      }
+      final long deltaData = added.cenOffset();
+      final long garbage = existing.cenOffset() - (liveBytes - deltaData);
+
+      if (garbage > liveBytes) {
+        compact(zipFile, target, delta, merged, addedEntries, deltaData);
+        return true;
+      }
+
+      final long appendOffset = target.size();
+      try {
+        transferFully(delta, 0, deltaData, target, appendOffset);
+        final List<byte[]> records = new ArrayList<>(merged.size());
+        for (CenEntry entry : merged.values()) {
+          records.add(addedEntries.get(entry.name()) == entry ? entry.withOffset(
+              entry.offset() + appendOffset) : entry.record());
+        }
+        writeCentralDirectory(target, appendOffset + deltaData, records);
+        target.force(false);
+      } catch (IOException | RuntimeException e) {
+        // the old end of central directory is at the end of the file again
+        target.truncate(appendOffset);
+        throw e;
+      }
+      logger.finest(() -> "Appended " + deltaData + " bytes to " + zipFile);
+      return false;
+    }
+  }
+
+  /**
+   * Copies the local records of the referenced entries of the zip file and the delta file to a new
+   * file that replaces the zip file.
+   */
+  private static void compact(@NotNull File zipFile, FileChannel target, FileChannel delta,
+      Map<String, CenEntry> merged, Map<String, CenEntry> addedEntries, long deltaData)
+      throws IOException {
+    final Path path = zipFile.toPath();
+    final Path temp = Files.createTempFile(path.toAbsolutePath().getParent(),
+        zipFile.getName(), ".tmp");
+    try {
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        long position = 0;
+        final List<byte[]> records = new ArrayList<>(merged.size());
+        final long deltaOffset;
+        // existing entries first, the delta data is copied as one block
+        final Map<CenEntry, Long> newOffsets = new IdentityHashMap<>();
+        for (CenEntry entry : merged.values()) {
+          if (addedEntries.get(entry.name()) == entry) {
+            continue;
+          }
+          final long length = entry.localLength(target);
+          transferFully(target, entry.offset(), length, out, position);
+          newOffsets.put(entry, position);
+          position += length;
+        }
+        deltaOffset = position;
+        transferFully(delta, 0, deltaData, out, position);
+        position += deltaData;
+
+        for (CenEntry entry : merged.values()) {
+          final Long offset = newOffsets.get(entry);
+          records.add(entry.withOffset(offset != null ? offset : entry.offset() + deltaOffset));
+        }
+        writeCentralDirectory(out, position, records);
+        out.force(false);
+      }
+      // release the file before it is replaced
+      target.close();
+      try {
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+      }
+      logger.finest(() -> "Compacted zip file " + zipFile);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void transferFully(FileChannel src, long srcPosition, long length,
+      FileChannel dst, long dstPosition) throws IOException {
+    long done = 0;
+    while (done < length) {
+      final long n = src.transferTo(srcPosition + done, length - done,
+          dst.position(dstPosition + done));
+      if (n <= 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+      done += n;
+    }
+  }
+
+  private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (ch.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+    }
+    return buffer.flip();
+  }
+
+  private static void write(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      ch.write(buffer, position + buffer.position());
+    }
+  }
+
+  /**
+   * Reads the central directory. Archive comments are dropped when the directory is written
+   * again.
+   */
+  static CentralDirectory readCentralDirectory(FileChannel ch) throws IOException {
+    final long size = ch.size();
+    final int tail = (int) Math.min(size, END_HEADER + 0xFFFF);
+    final ByteBuffer end = read(ch, size - tail, tail);
+    int endPos = -1;
+    for (int i = tail - END_HEADER; i >= 0; i--) {
+      if (end.getInt(i) == END_SIG && i + END_HEADER + (end.getShort(i + 20) & 0xFFFF) == tail) {
+        endPos = i;
+        break;
+      }
+    }
+    if (endPos < 0) {
+      throw new ZipException("End of central directory not found");
+    }
+
+    long count = end.getShort(endPos + 10) & 0xFFFF;
+    long cenSize = end.getInt(endPos + 12) & ZIP64_MAGIC;
+    long cenOffset = end.getInt(endPos + 16) & ZIP64_MAGIC;
+    final long endOffset = size - tail + endPos;
+    if (count == ZIP64_MAGIC_COUNT || cenSize == ZIP64_MAGIC || cenOffset == ZIP64_MAGIC) {
+      final ByteBuffer locator = read(ch, endOffset - ZIP64_LOCATOR_HEADER,
+          ZIP64_LOCATOR_HEADER);
+      if (locator.getInt(0) == ZIP64_LOCATOR_SIG) {
+        final ByteBuffer zip64End = read(ch, locator.getLong(8), ZIP64_END_HEADER);
+        if (zip64End.getInt(0) != ZIP64_END_SIG) {
+          throw new ZipException("Invalid zip64 end of central directory");
+        }
+        count = zip64End.getLong(32);
+        cenSize = zip64End.getLong(40);
+        cenOffset = zip64End.getLong(48);
+      }
+    }
+    if (cenSize > Integer.MAX_VALUE || cenOffset + cenSize > endOffset) {
+      throw new ZipException("Invalid central directory");
+    }
+
+    final ByteBuffer cen = read(ch, cenOffset, (int) cenSize);
+    final List<CenEntry> entries = new ArrayList<>((int) Math.min(count, 1 << 16));
+    int pos = 0;
+    for (long i = 0; i < count; i++) {
+      if (cen.getInt(pos) != CEN_SIG) {
+        throw new ZipException("Invalid central directory header");
+      }
+      final int length = CEN_HEADER + (cen.getShort(pos + 28) & 0xFFFF) + (cen.getShort(pos + 30)
+          & 0xFFFF) + (cen.getShort(pos + 32) & 0xFFFF);
+      final byte[] record = new byte[length];
+      cen.get(pos, record);
+      entries.add(CenEntry.of(record));
+      pos += length;
+    }
+    return new CentralDirectory(entries, cenOffset);
+  }
+
+  private static void writeCentralDirectory(FileChannel ch, long cenOffset, List<byte[]> records)
+      throws IOException {
+    long cenSize = 0;
+    for (byte[] record : records) {
+      cenSize += record.length;
+    }
+    final boolean zip64 = records.size() >= ZIP64_MAGIC_COUNT || cenSize >= ZIP64_MAGIC
+        || cenOffset >= ZIP64_MAGIC;
+    final int endLength =
+        END_HEADER + (zip64 ? ZIP64_END_HEADER + ZIP64_LOCATOR_HEADER : 0);
+    final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(cenSize + endLength))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    for (byte[] record : records) {
+      buffer.put(record);
+    }
+    if (zip64) {
+      final long zip64EndOffset = cenOffset + cenSize;
+      buffer.putInt(ZIP64_END_SIG).putLong(ZIP64_END_HEADER - 12).putShort((short) 45)
+          .putShort((short) 45).putInt(0).putInt(0).putLong(records.size())
+          .putLong(records.size()).putLong(cenSize).putLong(cenOffset);
+      buffer.putInt(ZIP64_LOCATOR_SIG).putInt(0).putLong(zip64EndOffset).putInt(1);
+    }
+    buffer.putInt(END_SIG).putShort((short) 0).putShort((short) 0);
+    final short count = (short) Math.min(records.size(), ZIP64_MAGIC_COUNT);
+    buffer.putShort(count).putShort(count);
+    buffer.putInt((int) Math.min(cenSize, ZIP64_MAGIC))
+        .putInt((int) Math.min(cenOffset, ZIP64_MAGIC)).putShort((short) 0);
+    write(ch, buffer, cenOffset);
+    ch.truncate(cenOffset + buffer.limit());
+  }
+
+  record CentralDirectory(List<CenEntry> entries, long cenOffset) {
+
+  }
+
+  /**
+   * A central directory record
+   */
+  record CenEntry(byte[] record, String name, int flag, long size, long compressedSize,
+                  long offset) {
+
+    static CenEntry of(byte[] record) {
+      final ByteBuffer cen = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+      final int nameLength = cen.getShort(28) & 0xFFFF;
+      final long[] values = zip64Values(cen);
+      return new CenEntry(record,
+          new String(record, CEN_HEADER, nameLength, StandardCharsets.UTF_8),
+          cen.getShort(8) & 0xFFFF, values[0], values[1], values[2]);
+    }
+
+    /**
+     * @return size, compressed size and local header offset, resolved from the zip64 extra field
+     */
+    private static long[] zip64Values(ByteBuffer cen) {
+      final long[] values = {cen.getInt(24) & ZIP64_MAGIC, cen.getInt(20) & ZIP64_MAGIC,
+          cen.getInt(42) & ZIP64_MAGIC};
+      final int extraStart = CEN_HEADER + (cen.getShort(28) & 0xFFFF);
+      final int extraEnd = extraStart + (cen.getShort(30) & 0xFFFF);
+      for (int pos = extraStart; pos + 4 <= extraEnd; ) {
+        final int tag = cen.getShort(pos) & 0xFFFF;
+        final int length = cen.getShort(pos + 2) & 0xFFFF;
+        if (tag == ZIP64_EXTRA_TAG) {
+          int valuePos = pos + 4;
+          for (int i = 0; i < values.length; i++) {
+            if (values[i] == ZIP64_MAGIC && valuePos + 8 <= pos + 4 + length) {
+              values[i] = cen.getLong(valuePos);
+              valuePos += 8;
+            }
+          }
+        }
+        pos += 4 + length;
+      }
+      return values;
+    }
+
+    /**
+     * @return the local header, data and data descriptor length without reading the local header.
+     */
+    long estimatedLocalLength() {
+      return LOC_HEADER + record.length - CEN_HEADER + compressedSize + ((flag & 8) != 0 ? 24 : 0);
+    }
+
+    /**
+     * @return the exact length of the local header, data and data descriptor
+     */
+    long localLength(FileChannel ch) throws IOException {
+      final ByteBuffer loc = read(ch, offset, LOC_HEADER);
+      if (loc.getInt(0) != LOC_SIG) {
+        throw new ZipException("Invalid local header of entry " + name);
+      }
+      long length = LOC_HEADER + (loc.getShort(26) & 0xFFFF) + (loc.getShort(28) & 0xFFFF)
+          + compressedSize;
+      if ((flag & 8) != 0) {
+        // data descriptor with optional signature, zip64 sizes for large entries
+        final boolean signature = read(ch, offset + length, 4).getInt(0) == EXT_SIG;
+        final boolean zip64 = compressedSize >= ZIP64_MAGIC || size >= ZIP64_MAGIC;
+        length += (signature ? 4 : 0) + 4 + (zip64 ? 16 : 8);
+      }
+      return length;
+    }
+
+    /**
+     * @return a copy of this record with a new local header offset. A zip64 extra field is added
+     * if the offset does not fit into 32 bit.
+     */
+    byte[] withOffset(long newOffset) {
+      final ByteBuffer cen = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+      final int nameLength = cen.getShort(28) & 0xFFFF;
+      final int extraLength = cen.getShort(30) & 0xFFFF;
+      final int commentLength = cen.getShort(32) & 0xFFFF;
+      final boolean zip64Size = (cen.getInt(24) & ZIP64_MAGIC) == ZIP64_MAGIC;
+      final boolean zip64CompressedSize = (cen.getInt(20) & ZIP64_MAGIC) == ZIP64_MAGIC;
+      final boolean zip64Offset = newOffset >= ZIP64_MAGIC;
+      final boolean zip64Disk = (cen.getShort(34) & 0xFFFF) == ZIP64_MAGIC_COUNT;
+
+      // other extra fields are kept, the zip64 field is written again
+      final ByteBuffer otherExtra = ByteBuffer.allocate(extraLength)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      int diskStart = 0;
+      final int extraStart = CEN_HEADER + nameLength;
+      for (int pos = extraStart; pos + 4 <= extraStart + extraLength; ) {
+        final int tag = cen.getShort(pos) & 0xFFFF;
+        final int length = Math.min(cen.getShort(pos + 2) & 0xFFFF,
+            extraStart + extraLength - pos - 4);
+        if (tag == ZIP64_EXTRA_TAG) {
+          final int skipped =
+              ((zip64Size ? 1 : 0) + (zip64CompressedSize ? 1 : 0) + (
+                  (cen.getInt(42) & ZIP64_MAGIC) == ZIP64_MAGIC ? 1 : 0)) * 8;
+          if (zip64Disk && skipped + 4 <= length) {
+            diskStart = cen.getInt(pos + 4 + skipped);
+          }
+        } else {
+          otherExtra.put(record, pos, 4 + length);
+        }
+        pos += 4 + length;
+      }
+
+      final int zip64Length =
+          ((zip64Size ? 1 : 0) + (zip64CompressedSize ? 1 : 0) + (zip64Offset ? 1 : 0)) * 8 + (
+              zip64Disk ? 4 : 0);
+      final int newExtraLength = otherExtra.position() + (zip64Length > 0 ? 4 + zip64Length : 0);
+      final ByteBuffer out = ByteBuffer.allocate(
+          CEN_HEADER + nameLength + newExtraLength + commentLength).order(ByteOrder.LITTLE_ENDIAN);
+      out.put(record, 0, CEN_HEADER + nameLength);
+      out.putShort(30, (short) newExtraLength);
+      out.putInt(42, (int) Math.min(newOffset, ZIP64_MAGIC));
+      if (zip64Length > 0) {
+        out.putShort((short) ZIP64_EXTRA_TAG).putShort((short) zip64Length);
+        if (zip64Size) {
+          out.putLong(size);
+        }
+        if (zip64CompressedSize) {
+          out.putLong(compressedSize);
+        }
+        if (zip64Offset) {
+          out.putLong(newOffset);
+        }
+        if (zip64Disk) {
+          out.putInt(diskStart);
+        }
+        if ((out.getShort(6) & 0xFFFF) < 45) {
+          out.putShort(6, (short) 45);
+        }
+      }
+      out.put(otherExtra.array(), 0, otherExtra.position());
+      out.put(record, CEN_HEADER + nameLength + extraLength, commentLength);
+      return out.array();
+    }
+  }
+}
@@ -205,6 +205,20 @@ public class ScanUtils {
    */
   @Nullable
   public static DataPoint findBasePeak(@NotNull Scan scan, @NotNull Range<Double> mzRange) {
+    return findBasePeak(scan, mzRange, 0);
+  }
+
+  /**
+   * Same as {@link #findBasePeak(Scan, Range)} but starts the search at the given data point index.
+   * Used when the first data point within the m/z range is already known, e.g., from a binary
+   * search.
+   *
+   * @param fromIndex index of the first data point that may be within the m/z range
+   * @return The base peak or null
+   */
+  @Nullable
+  public static DataPoint findBasePeak(@NotNull Scan scan, @NotNull Range<Double> mzRange,
+      final int fromIndex) {
     final Double scanBasePeakMz = scan.getBasePeakMz();
     if (scanBasePeakMz != null && mzRange.contains(scanBasePeakMz)) {
       return new SimpleDataPoint(scanBasePeakMz, scan.getBasePeakIntensity());
@@ -217,7 +231,7 @@ public class ScanUtils {
     double baseMz = 0d;
     double baseIntensity = 0d;
 
-    for (int i = 0; i < scan.getNumberOfDataPoints(); i++) {
+    for (int i = fromIndex; i < scan.getNumberOfDataPoints(); i++) {
       double mz = scan.getMzValue(i);
       if (mz < lower) {
         continue;
@@ -704,8 +718,9 @@ public class ScanUtils {
       @Nullable Range<Float> rtRange, @NotNull Range<Double> mzRange,
       @Nullable Comparator<Scan> sorter) {
 
-    final Stream<Scan> stream = dataFile.getScanNumbers(2).stream()
-        .filter(s -> matchesMS2Scan(s, rtRange, mzRange));
+    // range query on the precursor index, same result as matchesMS2Scan on all MS2 scans
+    final Stream<Scan> stream = dataFile.getScanIndex().getMs2PrecursorIndex()
+        .find(mzRange, rtRange).stream();
     return sorter == null ? stream : stream.sorted(sorter);
   }
 
@@ -36,6 +36,7 @@ import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import io.github.mzmine.util.scans.ScanAlignment;
 import io.github.mzmine.util.scans.similarity.impl.composite.CompositeCosineSpectralSimilarity;
 import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.impl.packed.PackedCosineSpectralSimilarity;
 
 /**
  * Abstract class to implement differnt spactal similarity functions to match 2 spectra
@@ -48,11 +49,13 @@ public abstract class SpectralSimilarityFunction implements MZmineModule {
       .getModuleInstance(WeightedCosineSpectralSimilarity.class);
   public static final CompositeCosineSpectralSimilarity compositeCosine = MZmineCore
       .getModuleInstance(CompositeCosineSpectralSimilarity.class);
+  public static final PackedCosineSpectralSimilarity packedCosine = MZmineCore
+      .getModuleInstance(PackedCosineSpectralSimilarity.class);
   /**
    * The collection of SpectralSImilarityFunctions
    */
   public static SpectralSimilarityFunction[] FUNCTIONS = new SpectralSimilarityFunction[]{
-      weightedCosine, compositeCosine};
+      weightedCosine, compositeCosine, packedCosine};
 
   /**
    * @param parameters
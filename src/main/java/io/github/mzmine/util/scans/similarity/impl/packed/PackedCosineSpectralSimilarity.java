@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity.impl.packed;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.ScanAlignment;
+import io.github.mzmine.util.scans.similarity.HandleUnmatchedSignalOptions;
+import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.SpectralSimilarityFunction;
+import io.github.mzmine.util.scans.similarity.Weights;
+import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarity;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Weighted (mz and intensity) cosine similarity on packed primitive spectra. Computes the same
+ * alignment and score as {@link WeightedCosineSpectralSimilarity}: library signals are matched in
+ * the order of descending intensity, each to the most intense query signal within the m/z tolerance
+ * that was not matched before (see {@link ScanAlignment#align(MZTolerance, DataPoint[],
+ * DataPoint[])}). The query candidates are found by a binary search in the m/z sorted query
+ * instead of a scan over all remaining signals, and the aligned data point list is only created
+ * for successful matches. Spectra that are compared many times should be packed once and passed to
+ * {@link #getSimilarity(ParameterSet, MZTolerance, int, PackedSpectrum, PackedSpectrum,
+ * boolean)}.
+ */
+public class PackedCosineSpectralSimilarity extends SpectralSimilarityFunction {
+
+  // reused per thread, grown on demand and reset after each comparison
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  /**
+   * @return the weights of the parameters. Spectra need to be packed with these weights.
+   */
+  @NotNull
+  public static Weights getWeights(ParameterSet parameters) {
+    return parameters.getParameter(PackedCosineSpectralSimilarityParameters.weight).getValue();
+  }
+
+  @Override
+  public @Nullable SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol,
+      int minMatch, DataPoint[] library, DataPoint[] query) {
+    if (library.length < minMatch || query.length < minMatch) {
+      return null;
+    }
+    final Weights weights = getWeights(parameters);
+    return getSimilarity(parameters, mzTol, minMatch, new PackedSpectrum(library, weights),
+        new PackedSpectrum(query, weights), false);
+  }
+
+  /**
+   * Same as {@link #getSimilarity(ParameterSet, MZTolerance, int, DataPoint[], DataPoint[])} for
+   * packed spectra. Cropping does not copy the packed spectra, it only limits the compared signals
+   * to the same range as {@link ScanAlignment#cropToOverlap(MZTolerance, DataPoint[],
+   * DataPoint[])}.
+   *
+   * @param lib           library spectrum, packed with {@link #getWeights(ParameterSet)}
+   * @param qry           query spectrum, packed with {@link #getWeights(ParameterSet)}
+   * @param cropToOverlap crop both spectra to their overlapping m/z range
+   * @return the similarity or null if the spectra do not match. The spectra of the result are the
+   * (cropped) m/z sorted data points of the packed spectra.
+   */
+  public @Nullable SpectralSimilarity getSimilarity(ParameterSet parameters, MZTolerance mzTol,
+      int minMatch, PackedSpectrum lib, PackedSpectrum qry, boolean cropToOverlap) {
+    final Weights weights = getWeights(parameters);
+    if (lib.getWeights() != weights || qry.getWeights() != weights) {
+      throw new IllegalArgumentException(
+          "Spectra were packed with weights " + lib.getWeights() + " and " + qry.getWeights()
+              + " but the parameters use " + weights);
+    }
+    if (lib.size() == 0 || qry.size() == 0) {
+      // never an overlap
+      return null;
+    }
+
+    int libFrom = 0;
+    int libTo = lib.size();
+    int qryFrom = 0;
+    int qryTo = qry.size();
+    if (cropToOverlap) {
+      // same range as ScanAlignment.getOverlapMZ
+      final double min = Math.max(lib.mz(0), qry.mz(0));
+      final double max = Math.min(lib.mz(lib.size() - 1), qry.mz(qry.size() - 1));
+      if (min > max) {
+        return null;
+      }
+      final double lower = mzTol.getToleranceRange(min).lowerEndpoint();
+      final double upper = mzTol.getToleranceRange(max).upperEndpoint();
+      libFrom = lib.firstIndexAtLeast(lower);
+      libTo = lib.firstIndexAbove(upper);
+      qryFrom = qry.firstIndexAtLeast(lower);
+      qryTo = qry.firstIndexAbove(upper);
+    }
+
+    if (libTo - libFrom < minMatch || qryTo - qryFrom < minMatch) {
+      return null;
+    }
+
+    final double minCos = parameters.getParameter(
+        PackedCosineSpectralSimilarityParameters.minCosine).getValue();
+    final HandleUnmatchedSignalOptions handleUnmatched = parameters.getParameter(
+        PackedCosineSpectralSimilarityParameters.handleUnmatched).getValue();
+
+    // library signals in the order of the original alignment, signals outside of the range are
+    // skipped
+    final int[] libOrder = lib.intensityOrder();
+
+    final Scratch scratch = SCRATCH.get();
+    final int[] queryMatches = scratch.queryMatches(lib.size());
+    final boolean[] matchedQuery = scratch.matchedQuery(qry.size());
+    try {
+      final int overlap = match(lib, libFrom, libTo, qry, qryFrom, qryTo, libOrder, mzTol,
+          queryMatches, matchedQuery);
+      if (overlap < minMatch || overlap == 0) {
+        return null;
+      }
+
+      final boolean keepLibrary = keepsLibrary(handleUnmatched);
+      final boolean keepQuery = keepsQuery(handleUnmatched);
+
+      // dot product and norms of the remaining signals after handling unmatched signals
+      double dot = 0d;
+      double libNorm = 0d;
+      double queryNorm = 0d;
+      for (int i : libOrder) {
+        if (i < libFrom || i >= libTo) {
+          continue;
+        }
+        final double a = lib.weighted(i);
+        final int j = queryMatches[i];
+        if (j != -1) {
+          final double b = qry.weighted(j);
+          dot += a * b;
+          libNorm += a * a;
+          queryNorm += b * b;
+        } else if (keepLibrary) {
+          libNorm += a * a;
+        }
+      }
+      if (keepQuery) {
+        for (int j = qryFrom; j < qryTo; j++) {
+          if (!matchedQuery[j]) {
+            queryNorm += qry.weighted(j) * qry.weighted(j);
+          }
+        }
+      }
+
+      final double denominator = Math.sqrt(libNorm) * Math.sqrt(queryNorm);
+      if (denominator <= 0d) {
+        return null;
+      }
+      final double cosine = dot / denominator;
+      if (cosine < minCos) {
+        return null;
+      }
+
+      final List<DataPoint[]> aligned = createAligned(lib, libFrom, libTo, qry, libOrder,
+          queryMatches, overlap);
+      return new SpectralSimilarity(getName(), cosine, overlap,
+          lib.getDataPoints(libFrom, libTo), qry.getDataPoints(qryFrom, qryTo), aligned);
+    } finally {
+      scratch.reset(libFrom, libTo, queryMatches, matchedQuery);
+    }
+  }
+
+  /**
+   * Matches every library signal in the given order to the most intense unmatched query signal
+   * within the m/z tolerance of the library signal. Only signals within the from (inclusive) and
+   * to (exclusive) indices are matched.
+   *
+   * @param queryMatches output: the matched query signal of each library signal or -1
+   * @param matchedQuery output: true for all matched query signals
+   * @return the number of matched signals
+   */
+  private static int match(PackedSpectrum lib, int libFrom, int libTo, PackedSpectrum qry,
+      int qryFrom, int qryTo, int[] libOrder, MZTolerance mzTol, int[] queryMatches,
+      boolean[] matchedQuery) {
+    int matches = 0;
+    for (int i : libOrder) {
+      if (i < libFrom || i >= libTo) {
+        continue;
+      }
+      // same range as MZTolerance.checkWithinTolerance(library mz, query mz)
+      final double mz = lib.mz(i);
+      final double tolerance = mzTol.getMzToleranceForMass(mz);
+      final double lower = mz - tolerance;
+      final double upper = mz + tolerance;
+
+      int best = -1;
+      for (int j = Math.max(qryFrom, qry.firstIndexAtLeast(lower));
+          j < qryTo && qry.mz(j) <= upper; j++) {
+        if (!matchedQuery[j] && (best == -1 || qry.compareByIntensity(j, best) < 0)) {
+          best = j;
+        }
+      }
+
+      queryMatches[i] = best;
+      if (best != -1) {
+        matchedQuery[best] = true;
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Only the matched pairs are created, because {@link SpectralSimilarity} removes unaligned
+   * signals anyway.
+   */
+  private static List<DataPoint[]> createAligned(PackedSpectrum lib, int libFrom, int libTo,
+      PackedSpectrum qry, int[] libOrder, int[] queryMatches, int overlap) {
+    final List<DataPoint[]> aligned = new ArrayList<>(overlap);
+    for (int i : libOrder) {
+      if (i < libFrom || i >= libTo) {
+        continue;
+      }
+      final int j = queryMatches[i];
+      if (j != -1) {
+        aligned.add(new DataPoint[]{lib.dataPoint(i), qry.dataPoint(j)});
+      }
+    }
+    return aligned;
+  }
+
+  private static boolean keepsLibrary(HandleUnmatchedSignalOptions handleUnmatched) {
+    return handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_LIBRARY_SIGNALS;
+  }
+
+  private static boolean keepsQuery(HandleUnmatchedSignalOptions handleUnmatched) {
+    return handleUnmatched == HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO
+        || handleUnmatched == HandleUnmatchedSignalOptions.KEEP_EXPERIMENTAL_SIGNALS;
+  }
+
+  @Override
+  @NotNull
+  public String getName() {
+    return "Weighted cosine (packed spectra)";
+  }
+
+  @Override
+  public @Nullable Class<? extends ParameterSet> getParameterSetClass() {
+    return PackedCosineSpectralSimilarityParameters.class;
+  }
+
+  /**
+   * Match buffers of one thread. The buffers only grow and are kept clean between comparisons:
+   * only the query signals that were matched are reset, so the cost does not depend on the largest
+   * spectrum seen before.
+   */
+  private static final class Scratch {
+
+    private int[] queryMatches = new int[0];
+    private boolean[] matchedQuery = new boolean[0];
+
+    private int[] queryMatches(int size) {
+      if (queryMatches.length < size) {
+        queryMatches = new int[Math.max(size, queryMatches.length * 2)];
+      }
+      return queryMatches;
+    }
+
+    private boolean[] matchedQuery(int size) {
+      if (matchedQuery.length < size) {
+        matchedQuery = new boolean[Math.max(size, matchedQuery.length * 2)];
+      }
+      return matchedQuery;
+    }
+
+    /**
+     * Clears all query signals matched by library signals within from (inclusive) and to
+     * (exclusive). Entries of signals that were not reached are stale but point to signals that
+     * are already cleared.
+     */
+    private void reset(int libFrom, int libTo, int[] queryMatches, boolean[] matchedQuery) {
+      for (int i = libFrom; i < libTo; i++) {
+        final int j = queryMatches[i];
+        if (j >= 0) {
+          matchedQuery[j] = false;
+        }
+      }
+    }
+  }
+}
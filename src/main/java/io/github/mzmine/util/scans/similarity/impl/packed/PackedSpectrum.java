@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity.impl.packed;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.util.scans.similarity.Weights;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Primitive representation of a spectrum for the {@link PackedCosineSpectralSimilarity}. Signals
+ * are sorted by ascending m/z and the weighted intensities are computed once on creation. A
+ * spectrum that is compared to many other spectra (e.g., a library entry or the mass list of a
+ * row) should be packed once and reused. The source data points are not modified.
+ */
+public final class PackedSpectrum {
+
+  private final Weights weights;
+  // data points sorted by m/z, independent of later changes to the order of the source array
+  private final DataPoint[] dataPoints;
+  private final int size;
+  private final double[] mzs;
+  private final double[] intensities;
+  private final double[] weighted;
+  // signal indices by descending intensity, created on demand for library spectra
+  private volatile int[] intensityOrder;
+
+  /**
+   * @param dps     the data points of the spectrum, not modified
+   * @param weights the weights of the intensities, see {@link Weights#apply(double, double)}
+   */
+  public PackedSpectrum(@NotNull DataPoint[] dps, @NotNull Weights weights) {
+    final int n = dps.length;
+    this.weights = weights;
+    size = n;
+    dataPoints = dps.clone();
+    mzs = new double[n];
+    intensities = new double[n];
+    weighted = new double[n];
+
+    boolean sorted = true;
+    double last = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < n; i++) {
+      final double mz = dps[i].getMZ();
+      sorted &= mz >= last;
+      last = mz;
+    }
+
+    // mass lists are usually sorted by m/z already, the stable sort keeps the order of equal m/z
+    if (!sorted) {
+      Arrays.sort(dataPoints, (a, b) -> Double.compare(a.getMZ(), b.getMZ()));
+    }
+
+    for (int i = 0; i < n; i++) {
+      mzs[i] = dataPoints[i].getMZ();
+      intensities[i] = dataPoints[i].getIntensity();
+      weighted[i] = weights.apply(mzs[i], intensities[i]);
+    }
+  }
+
+  /**
+   * @return the number of signals
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the weights used for the weighted intensities
+   */
+  @NotNull
+  public Weights getWeights() {
+    return weights;
+  }
+
+  /**
+   * @return a copy of the data points sorted by ascending m/z
+   */
+  @NotNull
+  public DataPoint[] getDataPoints() {
+    return dataPoints.clone();
+  }
+
+  /**
+   * @param from first signal, inclusive
+   * @param to   last signal, exclusive
+   * @return a copy of the data points in the range, sorted by ascending m/z
+   */
+  DataPoint[] getDataPoints(int from, int to) {
+    return Arrays.copyOfRange(dataPoints, from, to);
+  }
+
+  double mz(int i) {
+    return mzs[i];
+  }
+
+  double weighted(int i) {
+    return weighted[i];
+  }
+
+  /**
+   * @return the original data point of the packed signal i
+   */
+  DataPoint dataPoint(int i) {
+    return dataPoints[i];
+  }
+
+  /**
+   * The order of {@link io.github.mzmine.util.scans.ScanAlignment#sorter}: descending intensity,
+   * equal intensities by descending m/z.
+   *
+   * @return negative if signal a comes first
+   */
+  int compareByIntensity(int a, int b) {
+    final int cmp = Double.compare(intensities[b], intensities[a]);
+    return cmp != 0 ? cmp : Double.compare(mzs[b], mzs[a]);
+  }
+
+  /**
+   * @return the signal indices sorted by {@link #compareByIntensity(int, int)}. Shared, must not be
+   * modified.
+   */
+  int[] intensityOrder() {
+    int[] order = intensityOrder;
+    if (order == null) {
+      // concurrent callers compute the same order
+      order = new int[size];
+      Arrays.setAll(order, i -> i);
+      IntArrays.quickSort(order, 0, size, this::compareByIntensity);
+      intensityOrder = order;
+    }
+    return order;
+  }
+
+  /**
+   * @return index of the first signal with m/z >= the given value or {@link #size()}
+   */
+  int firstIndexAtLeast(double mz) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (mzs[mid] < mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return index of the first signal with m/z > the given value or {@link #size()}
+   */
+  int firstIndexAbove(double mz) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (mzs[mid] <= mz) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -46,13 +46,15 @@ public class SpectralLibrary {
   private final @NotNull String name;
   private final @NotNull File path;
   // spectra
-  private final @NotNull List<SpectralLibraryEntry> entries = new ArrayList<>();
+  private final @NotNull EntryList entries = new EntryList();
 
   // internals
   @Nullable
   private final MemoryMapStorage storage;
   private final ObservableMap<Class<? extends DataType>, DataType> types = FXCollections.observableMap(
       new LinkedHashMap<>());
+  // entries sorted by precursor m/z, rebuilt when the entries were changed
+  private volatile SpectralLibraryPrecursorIndex precursorIndex;
 
   public SpectralLibrary(@Nullable MemoryMapStorage storage, @NotNull File path) {
     this(storage, path.getName(), path);
@@ -70,6 +72,41 @@ public class SpectralLibrary {
     return entries;
   }
 
+  /**
+   * Builds the precursor m/z index of all entries. Called once the library is loaded, otherwise the
+   * index is built on the first query.
+   */
+  public synchronized void buildPrecursorIndex() {
+    precursorIndex = SpectralLibraryPrecursorIndex.build(entries, entries.getVersion());
+  }
+
+  /**
+   * @param lower lower bound of the precursor m/z (inclusive)
+   * @param upper upper bound of the precursor m/z (inclusive)
+   * @return all entries with a precursor m/z within the range, in the order of
+   * {@link #getEntries()}. Entries without precursor m/z are never returned.
+   */
+  @NotNull
+  public List<SpectralLibraryEntry> getEntriesInPrecursorRange(double lower, double upper) {
+    SpectralLibraryPrecursorIndex index = precursorIndex;
+    if (index == null || !index.isValidFor(entries.getVersion())) {
+      synchronized (this) {
+        index = precursorIndex;
+        if (index == null || !index.isValidFor(entries.getVersion())) {
+          index = SpectralLibraryPrecursorIndex.build(entries, entries.getVersion());
+          precursorIndex = index;
+        }
+      }
+    }
+
+    final int[] indices = index.getEntryIndices(lower, upper);
+    final List<SpectralLibraryEntry> result = new ArrayList<>(indices.length);
+    for (int i : indices) {
+      result.add(entries.get(i));
+    }
+    return result;
+  }
+
   @NotNull
   public File getPath() {
     return path;
@@ -116,4 +153,24 @@ public class SpectralLibrary {
   public boolean equalSources(SpectralLibrary lib) {
     return lib != null && lib.getPath().equals(this.getPath());
   }
+
+  /**
+   * List of entries with a version that changes on every modification, so the precursor index is
+   * rebuilt if entries are added, removed or replaced through {@link #getEntries()}.
+   */
+  private static final class EntryList extends ArrayList<SpectralLibraryEntry> {
+
+    // replacing elements is not a structural modification and does not change the modCount
+    private int replaced = 0;
+
+    private int getVersion() {
+      return modCount + replaced;
+    }
+
+    @Override
+    public SpectralLibraryEntry set(int index, SpectralLibraryEntry element) {
+      replaced++;
+      return super.set(index, element);
+    }
+  }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index of library entries sorted by precursor m/z. Queries return the indices of all entries with
+ * a precursor m/z within a range by two binary searches instead of a scan over all entries. Entries
+ * without precursor m/z are not indexed.
+ */
+class SpectralLibraryPrecursorIndex {
+
+  /**
+   * Version of the library entries at the time the index was built
+   */
+  private final int version;
+  // sorted precursor m/z and the index of the corresponding entry in the library
+  private final double[] precursorMzs;
+  private final int[] entryIndices;
+
+  private SpectralLibraryPrecursorIndex(int version, double[] precursorMzs,
+      int[] entryIndices) {
+    this.version = version;
+    this.precursorMzs = precursorMzs;
+    this.entryIndices = entryIndices;
+  }
+
+  /**
+   * @param entries the library entries
+   * @param version the version of the entries, changes whenever entries are added, removed or
+   *                replaced
+   */
+  @NotNull
+  static SpectralLibraryPrecursorIndex build(@NotNull List<SpectralLibraryEntry> entries,
+      int version) {
+    final int size = entries.size();
+    final double[] mzs = new double[size];
+    final int[] indices = new int[size];
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      final Double precursorMz = entries.get(i).getPrecursorMZ();
+      if (precursorMz != null) {
+        mzs[n] = precursorMz;
+        indices[n] = i;
+        n++;
+      }
+    }
+
+    // sort by precursor m/z, equal m/z by entry index
+    final int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    IntArrays.quickSort(order, 0, n, (a, b) -> {
+      final int result = Double.compare(mzs[a], mzs[b]);
+      return result != 0 ? result : Integer.compare(indices[a], indices[b]);
+    });
+
+    final double[] sortedMzs = new double[n];
+    final int[] sortedIndices = new int[n];
+    for (int i = 0; i < n; i++) {
+      sortedMzs[i] = mzs[order[i]];
+      sortedIndices[i] = indices[order[i]];
+    }
+    return new SpectralLibraryPrecursorIndex(version, sortedMzs, sortedIndices);
+  }
+
+  /**
+   * @return true if the index was built for this version of the library entries
+   */
+  boolean isValidFor(int version) {
+    return this.version == version;
+  }
+
+  /**
+   * @param lower lower bound of the precursor m/z (inclusive)
+   * @param upper upper bound of the precursor m/z (inclusive)
+   * @return the library indices of all entries within the range in ascending order
+   */
+  @NotNull
+  int[] getEntryIndices(double lower, double upper) {
+    final int from = firstIndexAtLeast(lower);
+    int to = from;
+    while (to < precursorMzs.length && precursorMzs[to] <= upper) {
+      to++;
+    }
+    final int[] result = Arrays.copyOfRange(entryIndices, from, to);
+    // restore library order
+    Arrays.sort(result);
+    return result;
+  }
+
+  private int firstIndexAtLeast(double value) {
+    int low = 0;
+    int high = precursorMzs.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (precursorMzs[mid] < value) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
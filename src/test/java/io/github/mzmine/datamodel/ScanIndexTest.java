@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ScanIndexTest {
+
+  private static Scan scan(RawDataFile file, int number, int msLevel, float rt) {
+    return new SimpleScan(file, number, msLevel, rt, null, new double[]{100d},
+        new double[]{1000d}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+        Range.closed(100d, 100d));
+  }
+
+  private static RawDataFile file(List<Scan> scans) throws IOException {
+    RawDataFile file = new RawDataFileImpl("test", null, null, Color.BLACK);
+    for (Scan scan : scans) {
+      file.addScan(new SimpleScan(file, scan, new double[]{100d}, new double[]{1000d}));
+    }
+    return file;
+  }
+
+  /**
+   * The closest scan by a linear search, the later scan on equal distance
+   */
+  private static Scan closest(List<Scan> scans, float rt, int msLevel, float maxDiff) {
+    Scan best = null;
+    float minDiff = Float.POSITIVE_INFINITY;
+    for (Scan scan : scans) {
+      if (msLevel != 0 && scan.getMSLevel() != msLevel) {
+        continue;
+      }
+      float diff = Math.abs(rt - scan.getRetentionTime());
+      if (diff <= minDiff) {
+        minDiff = diff;
+        best = scan;
+      }
+    }
+    return minDiff > maxDiff ? null : best;
+  }
+
+  @Test
+  void testEmptyFile() throws IOException {
+    RawDataFile file = file(List.of());
+    ScanIndex index = file.getScanIndex();
+
+    Assertions.assertEquals(0, index.getMSLevels().length);
+    Assertions.assertEquals(0, index.getNumberOfScans(1));
+    Assertions.assertTrue(index.getScans(1).isEmpty());
+    Assertions.assertEquals(0, index.getScans(1, Range.closed(0f, 10f)).length);
+    Assertions.assertNull(index.getRTRange(0));
+    Assertions.assertNull(index.getRTRange(1));
+    Assertions.assertNull(index.getScanAtRT(0f));
+    Assertions.assertNull(index.getScanAtRT(0f, 1));
+    Assertions.assertEquals(0, index.getMs2PrecursorIndex().size());
+
+    Assertions.assertNull(file.getScanNumberAtRT(0f));
+    Assertions.assertNull(file.getScanNumberAtRT(0f, 1));
+    Assertions.assertNull(file.getScanNumberAtRT(-1f, 1));
+    Assertions.assertEquals(Range.singleton(0f), file.getDataRTRange(1));
+    Assertions.assertEquals(0, file.getNumOfScans(1));
+    Assertions.assertEquals(0, file.getScanNumbers(1, Range.closed(0f, 10f)).length);
+  }
+
+  @Test
+  void testBoundaries() throws IOException {
+    RawDataFile file = new RawDataFileImpl("test", null, null, Color.BLACK);
+    Scan ms1a = scan(file, 0, 1, 1f);
+    Scan ms2a = scan(file, 1, 2, 1.5f);
+    Scan ms1b = scan(file, 2, 1, 2f);
+    Scan ms2b = scan(file, 3, 2, 2.5f);
+    Scan ms1c = scan(file, 4, 1, 3f);
+    for (Scan scan : List.of(ms1a, ms2a, ms1b, ms2b, ms1c)) {
+      file.addScan(scan);
+    }
+    ScanIndex index = file.getScanIndex();
+
+    Assertions.assertArrayEquals(new int[]{1, 2}, index.getMSLevels());
+    Assertions.assertEquals(List.of(ms1a, ms1b, ms1c), index.getScans(1));
+    Assertions.assertEquals(Range.closed(1f, 3f), index.getRTRange(0));
+    Assertions.assertEquals(Range.closed(1.5f, 2.5f), index.getRTRange(2));
+
+    // before the first, on the first and on the last scan
+    Assertions.assertSame(ms1a, index.getScanAtRT(0f));
+    Assertions.assertSame(ms1a, index.getScanAtRT(1f));
+    Assertions.assertSame(ms1c, index.getScanAtRT(3f));
+    Assertions.assertSame(ms1a, file.getScanNumberAtRT(-5f));
+    Assertions.assertSame(ms1c, file.getScanNumberAtRT(3f));
+    Assertions.assertSame(ms2a, file.getScanNumberAtRT(1f, 2));
+    Assertions.assertSame(ms2b, file.getScanNumberAtRT(2.5f, 2));
+    Assertions.assertSame(ms1c, file.getScanNumberAtRT(3f, 1));
+
+    // after the last scan: the index has no limit for all levels, the file returns null
+    Assertions.assertSame(ms1c, index.getScanAtRT(10f));
+    Assertions.assertNull(file.getScanNumberAtRT(3.1f));
+    Assertions.assertNull(file.getScanNumberAtRT(2.6f, 2));
+
+    // the window of one ms level
+    Assertions.assertSame(ms1c, index.getScanAtRT(3f + ScanIndex.MAX_RT_DIFFERENCE, 1));
+    Assertions.assertNull(index.getScanAtRT(3.5f + ScanIndex.MAX_RT_DIFFERENCE, 1));
+    Assertions.assertSame(ms1a, file.getScanNumberAtRT(1f - ScanIndex.MAX_RT_DIFFERENCE, 1));
+    Assertions.assertNull(file.getScanNumberAtRT(0.5f - ScanIndex.MAX_RT_DIFFERENCE, 1));
+    Assertions.assertNull(index.getScanAtRT(2f, 3));
+
+    // equal distance returns the later scan
+    Assertions.assertSame(ms1b, index.getScanAtRT(1.5f, 1));
+    Assertions.assertSame(ms2b, index.getScanAtRT(2f, 2));
+    Assertions.assertSame(ms2a, index.getScanAtRT(1.25f));
+
+    // closed and open range bounds
+    Assertions.assertArrayEquals(new Scan[]{ms1a, ms1b, ms1c},
+        file.getScanNumbers(1, Range.closed(1f, 3f)));
+    Assertions.assertArrayEquals(new Scan[]{ms1b}, file.getScanNumbers(1, Range.open(1f, 3f)));
+    Assertions.assertArrayEquals(new Scan[]{ms1b, ms1c},
+        file.getScanNumbers(1, Range.greaterThan(1f)));
+    Assertions.assertArrayEquals(new Scan[]{ms1a}, file.getScanNumbers(1, Range.lessThan(2f)));
+    Assertions.assertArrayEquals(new Scan[0], file.getScanNumbers(1, Range.open(3f, 5f)));
+    Assertions.assertArrayEquals(new Scan[0], file.getScanNumbers(2, Range.closed(1.6f, 2.4f)));
+    Assertions.assertArrayEquals(new Scan[]{ms2a, ms2b}, file.getScanNumbers(2, Range.all()));
+
+    // a new scan replaces the index
+    Scan ms1d = scan(file, 5, 1, 4f);
+    file.addScan(ms1d);
+    Assertions.assertNotSame(index, file.getScanIndex());
+    Assertions.assertSame(ms1d, file.getScanNumberAtRT(4f));
+    Assertions.assertEquals(4, file.getNumOfScans(1));
+  }
+
+  @Test
+  void testEqualRetentionTimes() throws IOException {
+    RawDataFile file = new RawDataFileImpl("test", null, null, Color.BLACK);
+    Scan ms1a = scan(file, 0, 1, 1f);
+    Scan ms2a = scan(file, 1, 2, 1f);
+    Scan ms2b = scan(file, 2, 2, 1f);
+    Scan ms1b = scan(file, 3, 1, 2f);
+    Scan ms2c = scan(file, 4, 2, 2f);
+    for (Scan scan : List.of(ms1a, ms2a, ms2b, ms1b, ms2c)) {
+      file.addScan(scan);
+    }
+    ScanIndex index = file.getScanIndex();
+
+    // the last scan of equal retention times
+    Assertions.assertSame(ms2b, index.getScanAtRT(1f));
+    Assertions.assertSame(ms2b, index.getScanAtRT(0.5f));
+    Assertions.assertSame(ms2b, index.getScanAtRT(1f, 2));
+    Assertions.assertSame(ms1a, index.getScanAtRT(1f, 1));
+    Assertions.assertSame(ms2c, index.getScanAtRT(2f));
+    Assertions.assertSame(ms2c, index.getScanAtRT(1.5f));
+
+    // ranges contain all scans of equal retention times
+    Assertions.assertArrayEquals(new Scan[]{ms2a, ms2b},
+        index.getScans(2, Range.singleton(1f)));
+    Assertions.assertArrayEquals(new Scan[]{ms2a, ms2b, ms2c},
+        index.getScans(2, Range.closed(1f, 2f)));
+    Assertions.assertArrayEquals(new Scan[]{ms2c}, index.getScans(2, Range.openClosed(1f, 2f)));
+    Assertions.assertArrayEquals(new Scan[]{ms2a, ms2b},
+        index.getScans(2, Range.closedOpen(1f, 2f)));
+  }
+
+  @Test
+  void testSortedAndUnsortedMatchLinearSearch() throws IOException {
+    final Random random = new Random(42);
+    final RawDataFile dummy = new RawDataFileImpl("test", null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>();
+    float rt = 0f;
+    for (int i = 0; i < 500; i++) {
+      // some scans share retention times, some gaps exceed the window
+      rt += random.nextInt(10) == 0 ? 0f : random.nextFloat() * (i % 50 == 0 ? 5f : 0.1f);
+      scans.add(scan(dummy, i, random.nextInt(3) == 0 ? 2 : 1, rt));
+    }
+    final List<Scan> shuffled = new ArrayList<>(scans);
+    Collections.shuffle(shuffled, random);
+
+    for (List<Scan> list : List.of(scans, shuffled)) {
+      final ScanIndex index = new ScanIndex(list);
+      for (int i = 0; i < 2000; i++) {
+        final float query = random.nextFloat() * (rt + 10f) - 5f;
+        Assertions.assertSame(closest(list, query, 0, Float.POSITIVE_INFINITY),
+            index.getScanAtRT(query));
+        for (int level = 1; level <= 2; level++) {
+          Assertions.assertSame(closest(list, query, level, ScanIndex.MAX_RT_DIFFERENCE),
+              index.getScanAtRT(query, level));
+
+          final Range<Float> range = Range.closed(query, query + random.nextFloat() * 3f);
+          final int msLevel = level;
+          final Scan[] expected = list.stream()
+              .filter(s -> s.getMSLevel() == msLevel && range.contains(s.getRetentionTime()))
+              .toArray(Scan[]::new);
+          Assertions.assertArrayEquals(expected, index.getScans(level, range));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ModularFeatureListRowLoaderTest {
+
+  private static ModularFeatureList createList() {
+    return new ModularFeatureList("List", null, List.<RawDataFile>of());
+  }
+
+  @Test
+  void testRowsLoadedOnFirstAccess() {
+    final ModularFeatureList flist = createList();
+    final AtomicInteger calls = new AtomicInteger(0);
+    flist.setRowLoader(() -> {
+      calls.incrementAndGet();
+      flist.addRow(new ModularFeatureListRow(flist, 1));
+      flist.addRow(new ModularFeatureListRow(flist, 2));
+    });
+
+    Assertions.assertTrue(flist.isRowLoadingPending());
+    Assertions.assertEquals(0, calls.get());
+
+    Assertions.assertEquals(2, flist.getNumberOfRows());
+    Assertions.assertEquals(2, flist.getRows().size());
+    Assertions.assertEquals(1, calls.get());
+    Assertions.assertFalse(flist.isRowLoadingPending());
+    Assertions.assertFalse(flist.isRowLoadingFailed());
+  }
+
+  @Test
+  void testAddTypeLoadsRows() {
+    final ModularFeatureList flist = createList();
+    final AtomicInteger calls = new AtomicInteger(0);
+    flist.setRowLoader(calls::incrementAndGet);
+
+    flist.addRowType(new MZType());
+    Assertions.assertEquals(1, calls.get());
+    flist.addFeatureType(new MZType());
+    Assertions.assertEquals(1, calls.get());
+  }
+
+  @Test
+  void testFailedLoadKeepsListUnloaded() {
+    final ModularFeatureList flist = createList();
+    final AtomicInteger calls = new AtomicInteger(0);
+    flist.setRowLoader(() -> {
+      calls.incrementAndGet();
+      flist.addRow(new ModularFeatureListRow(flist, 1));
+      throw new UncheckedIOException(new IOException("broken file"));
+    });
+
+    Assertions.assertThrows(UncheckedIOException.class, flist::getRows);
+    Assertions.assertTrue(flist.isRowLoadingPending());
+    Assertions.assertTrue(flist.isRowLoadingFailed());
+
+    // following accesses fail as well and do not return the partially loaded rows
+    final IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class,
+        flist::getNumberOfRows);
+    Assertions.assertInstanceOf(UncheckedIOException.class, ex.getCause());
+    Assertions.assertEquals(1, calls.get());
+  }
+
+  /**
+   * Loader that adds two rows after the release latch was counted down.
+   */
+  private static Runnable blockingLoader(ModularFeatureList flist, AtomicInteger calls,
+      CountDownLatch started, CountDownLatch release) {
+    return () -> {
+      calls.incrementAndGet();
+      started.countDown();
+      try {
+        Assertions.assertTrue(release.await(30, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      flist.addRow(new ModularFeatureListRow(flist, 1));
+      flist.addRow(new ModularFeatureListRow(flist, 2));
+    };
+  }
+
+  @Test
+  void testBackgroundLoadingDoesNotBlock()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    final ModularFeatureList flist = createList();
+    final AtomicInteger calls = new AtomicInteger(0);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    flist.setRowLoader(blockingLoader(flist, calls, started, release));
+
+    final CompletableFuture<Void> loaded = flist.loadRowsInBackground();
+    Assertions.assertTrue(started.await(30, TimeUnit.SECONDS));
+    Assertions.assertFalse(loaded.isDone());
+    Assertions.assertTrue(flist.isRowLoadingPending());
+    // the loader does not hold the monitor of the list
+    Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+      synchronized (flist) {
+        Assertions.assertFalse(flist.isRowLoadingFailed());
+      }
+    });
+
+    release.countDown();
+    loaded.get(30, TimeUnit.SECONDS);
+    Assertions.assertFalse(flist.isRowLoadingPending());
+    Assertions.assertEquals(2, flist.getNumberOfRows());
+    Assertions.assertEquals(1, calls.get());
+  }
+
+  @Test
+  void testConcurrentAccessLoadsOnce()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    final ModularFeatureList flist = createList();
+    final AtomicInteger calls = new AtomicInteger(0);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    flist.setRowLoader(blockingLoader(flist, calls, started, release));
+
+    final List<CompletableFuture<Integer>> accesses = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      accesses.add(CompletableFuture.supplyAsync(flist::getNumberOfRows));
+    }
+    Assertions.assertTrue(started.await(30, TimeUnit.SECONDS));
+    release.countDown();
+
+    for (CompletableFuture<Integer> access : accesses) {
+      Assertions.assertEquals(2, access.get(30, TimeUnit.SECONDS));
+    }
+    Assertions.assertEquals(1, calls.get());
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.features.columnar;
+
+import io.github.mzmine.datamodel.features.types.annotations.CommentType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.IDType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ColumnarValueMapTest {
+
+  private final MZType mz = new MZType();
+  private final HeightType height = new HeightType();
+  private final IDType id = new IDType();
+  private final CommentType comment = new CommentType();
+
+  @Test
+  void testSetGetRemoveRoundTrip() {
+    final DataTypeColumns columns = new DataTypeColumns();
+    final ColumnarValueMap first = new ColumnarValueMap(columns);
+    final ColumnarValueMap second = new ColumnarValueMap(columns);
+
+    Assertions.assertNull(first.put(mz, 200.5));
+    Assertions.assertNull(first.put(height, 1E5f));
+    Assertions.assertNull(first.put(id, 7));
+    Assertions.assertNull(first.put(comment, "a comment"));
+    second.put(mz, 300.25);
+
+    Assertions.assertEquals(200.5, first.get(mz));
+    Assertions.assertEquals(1E5f, first.get(height));
+    Assertions.assertEquals(7, first.get(id));
+    Assertions.assertEquals("a comment", first.get(comment));
+    Assertions.assertEquals(4, first.size());
+    Assertions.assertEquals(300.25, second.get(mz));
+    Assertions.assertNull(second.get(height));
+
+    // replace, remove and set null
+    Assertions.assertEquals(200.5, first.put(mz, 201.0));
+    Assertions.assertEquals(201.0, first.get(mz));
+    Assertions.assertEquals(1E5f, first.remove(height));
+    Assertions.assertNull(first.get(height));
+    Assertions.assertFalse(first.containsKey(height));
+    Assertions.assertEquals(7, first.put(id, null));
+    Assertions.assertNull(first.get(id));
+    Assertions.assertEquals("a comment", first.remove(comment));
+    Assertions.assertEquals(1, first.size());
+
+    // values of unexpected classes are kept as objects
+    Assertions.assertNull(first.put(height, 5d));
+    Assertions.assertEquals(5d, first.get(height));
+    Assertions.assertEquals(5d, first.put(height, 6f));
+    Assertions.assertEquals(6f, first.get(height));
+
+    first.clear();
+    Assertions.assertTrue(first.isEmpty());
+    Assertions.assertEquals(300.25, second.get(mz));
+  }
+
+  @Test
+  void testReleasedIndicesAreReused() {
+    final DataTypeColumns columns = new DataTypeColumns();
+    final List<ColumnarValueMap> maps = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      final ColumnarValueMap map = new ColumnarValueMap(columns);
+      map.put(mz, (double) i);
+      map.put(id, i);
+      maps.add(map);
+    }
+    Assertions.assertEquals(100, columns.size());
+
+    // remove every second map, like removed rows
+    for (int i = 0; i < 50; i++) {
+      maps.remove(i).detach();
+    }
+    Assertions.assertEquals(50, columns.size());
+    Assertions.assertEquals(100, columns.getCapacity());
+
+    // new maps reuse the released indices and do not see old values
+    for (int i = 0; i < 50; i++) {
+      final ColumnarValueMap map = new ColumnarValueMap(columns);
+      Assertions.assertTrue(map.isEmpty());
+      Assertions.assertNull(map.get(mz));
+      map.put(mz, -1d);
+      maps.add(map);
+    }
+    Assertions.assertEquals(100, columns.size());
+    Assertions.assertEquals(100, columns.getCapacity());
+
+    // the remaining maps keep their values
+    for (int i = 0; i < 50; i++) {
+      Assertions.assertEquals((double) (2 * i + 1), maps.get(i).get(mz));
+      Assertions.assertEquals(2 * i + 1, maps.get(i).get(id));
+    }
+    for (int i = 50; i < 100; i++) {
+      Assertions.assertEquals(-1d, maps.get(i).get(mz));
+      Assertions.assertNull(maps.get(i).get(id));
+    }
+  }
+
+  @Test
+  void testDetachKeepsValuesAndAttachRestoresColumns() {
+    final DataTypeColumns columns = new DataTypeColumns();
+    final ColumnarValueMap map = new ColumnarValueMap(columns);
+    map.put(mz, 200.5);
+    map.put(id, 3);
+    map.put(comment, "a comment");
+
+    map.detach();
+    Assertions.assertFalse(map.isAttached());
+    Assertions.assertEquals(0, columns.size());
+    Assertions.assertEquals(200.5, map.get(mz));
+    Assertions.assertEquals(3, map.get(id));
+    Assertions.assertEquals("a comment", map.get(comment));
+
+    // the released index is reused and does not see the detached values
+    final ColumnarValueMap other = new ColumnarValueMap(columns);
+    Assertions.assertTrue(other.isEmpty());
+    other.put(mz, 1d);
+
+    // detached maps are still writable
+    Assertions.assertEquals(3, map.put(id, 4));
+    Assertions.assertEquals(1d, other.get(mz));
+
+    map.attach();
+    Assertions.assertTrue(map.isAttached());
+    Assertions.assertEquals(2, columns.size());
+    Assertions.assertEquals(200.5, map.get(mz));
+    Assertions.assertEquals(4, map.get(id));
+    Assertions.assertEquals("a comment", map.get(comment));
+    Assertions.assertEquals(3, map.size());
+    Assertions.assertEquals(1d, other.get(mz));
+  }
+
+  /**
+   * Maps of neighbouring indices share the pages and presence words of the columns
+   */
+  @Test
+  void testConcurrentWritesToNeighbouringIndices() {
+    final DataTypeColumns columns = new DataTypeColumns();
+    final int n = 3 * DataTypeColumns.PAGE_SIZE + 17;
+    final List<ColumnarValueMap> maps = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      maps.add(new ColumnarValueMap(columns));
+    }
+
+    IntStream.range(0, n).parallel().forEach(i -> {
+      final ColumnarValueMap map = maps.get(i);
+      for (int k = 0; k < 20; k++) {
+        map.put(mz, (double) i + k);
+        map.put(height, (float) k);
+        map.put(id, i);
+        if (k % 2 == 0) {
+          map.remove(height);
+        }
+      }
+    });
+
+    for (int i = 0; i < n; i++) {
+      final ColumnarValueMap map = maps.get(i);
+      Assertions.assertEquals((double) i + 19, map.get(mz));
+      Assertions.assertEquals(19f, map.get(height));
+      Assertions.assertEquals(i, map.get(id));
+    }
+  }
+}
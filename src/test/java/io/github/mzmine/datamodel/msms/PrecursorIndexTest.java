@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.datamodel.msms;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.impl.DDAMsMsInfoImpl;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.util.scans.ScanUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PrecursorIndexTest {
+
+  private static List<Scan> createScans(Random random) {
+    final RawDataFile file = new RawDataFileImpl("test", null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      final float rt = random.nextFloat() * 30f;
+      final int type = random.nextInt(20);
+      // mostly real precursors, some scans without, with 0, negative or NaN precursor m/z
+      final Double precursorMz = switch (type) {
+        case 0 -> null;
+        case 1 -> 0d;
+        case 2 -> -random.nextDouble() * 10d;
+        case 3 -> Double.NaN;
+        // equal precursors of repeated fragmentation
+        case 4, 5 -> 500d;
+        default -> 100d + random.nextDouble() * 900d;
+      };
+      final MsMsInfo info = precursorMz == null ? null
+          : new DDAMsMsInfoImpl(precursorMz, null, null, null, null, 2, ActivationMethod.CID,
+              null);
+      scans.add(new SimpleScan(file, i, 2, rt, info, new double[]{100d}, new double[]{1000d},
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(100d, 100d)));
+    }
+    return scans;
+  }
+
+  @Test
+  void testScansMatchLinearSearch() {
+    final Random random = new Random(42);
+    final List<Scan> scans = createScans(random);
+    final PrecursorIndex<Scan> index = PrecursorIndex.ofScans(scans);
+    Assertions.assertEquals(scans.stream().filter(s -> s.getPrecursorMz() != null).count(),
+        index.size());
+
+    final List<Range<Double>> mzRanges = new ArrayList<>(
+        List.of(Range.all(), Range.singleton(500d), Range.closed(-5d, 0d), Range.atLeast(900d),
+            Range.atMost(0d), Range.open(500d, 600d), Range.closedOpen(0d, 100d)));
+    for (int i = 0; i < 200; i++) {
+      final double lower = random.nextDouble() * 1000d - 10d;
+      mzRanges.add(Range.closed(lower, lower + random.nextDouble() * 20d));
+    }
+    final List<Range<Float>> rtRanges = new ArrayList<>();
+    rtRanges.add(null);
+    rtRanges.add(Range.all());
+    rtRanges.add(Range.closed(5f, 10f));
+    rtRanges.add(Range.openClosed(20f, 30f));
+
+    for (Range<Double> mzRange : mzRanges) {
+      for (Range<Float> rtRange : rtRanges) {
+        final List<Scan> expected = scans.stream()
+            .filter(s -> ScanUtils.matchesMS2Scan(s, rtRange, mzRange)).toList();
+        Assertions.assertEquals(expected, index.find(mzRange, rtRange),
+            () -> "m/z " + mzRange + " rt " + rtRange);
+      }
+    }
+  }
+
+  /**
+   * The MS2 grouping of features: m/z tolerance and rt tolerance per feature, with an additional
+   * filter
+   */
+  @Test
+  void testGroupingMatchesLinearSearch() {
+    final Random random = new Random(7);
+    final List<Scan> scans = createScans(random);
+    final PrecursorIndex<Scan> index = PrecursorIndex.create(
+        scans.stream().filter(s -> s.getPrecursorMz() != null && s.getPrecursorMz() != 0).toList(),
+        Scan::getPrecursorMz, Scan::getRetentionTime);
+    final MZTolerance mzTol = new MZTolerance(0.005, 10);
+    final Predicate<Scan> evenScanNumber = s -> s.getScanNumber() % 2 == 0;
+
+    for (int i = 0; i < 1000; i++) {
+      // features close to precursor m/z values and at random m/z values
+      final Double precursorMz = scans.get(random.nextInt(scans.size())).getPrecursorMz();
+      final double mz = i % 2 == 0 && precursorMz != null && precursorMz > 0 ? precursorMz
+          + (random.nextDouble() - 0.5d) * 0.02d : 100d + random.nextDouble() * 900d;
+      final float rt = random.nextFloat() * 30f;
+      final Range<Float> rtRange = Range.closed(rt - 0.5f, rt + 0.5f);
+      final Range<Double> mzRange = mzTol.getToleranceRange(mz);
+
+      final List<Scan> expected = scans.stream().filter(s -> {
+        final Double scanMz = s.getPrecursorMz();
+        return scanMz != null && scanMz != 0 && mzTol.checkWithinTolerance(mz, scanMz) && rtRange.contains(s.getRetentionTime()) && evenScanNumber.test(s);
+      }).toList();
+      Assertions.assertEquals(expected, index.find(mzRange, rtRange, evenScanNumber));
+    }
+  }
+
+  @Test
+  void testEmpty() {
+    final PrecursorIndex<Scan> index = PrecursorIndex.ofScans(List.of());
+    Assertions.assertEquals(0, index.size());
+    Assertions.assertTrue(index.find(Range.all(), null).isEmpty());
+    Assertions.assertTrue(index.find(Range.closed(100d, 200d), Range.closed(0f, 1f)).isEmpty());
+  }
+}
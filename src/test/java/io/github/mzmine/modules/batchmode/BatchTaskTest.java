@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.batchmode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineModuleCategory;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.impl.MZmineProcessingStepImpl;
+import io.github.mzmine.parameters.Parameter;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.impl.SimpleParameterSet;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
+import io.github.mzmine.parameters.parametertypes.selectors.RawDataFilesSelectionType;
+import io.github.mzmine.parameters.parametertypes.selectors.SpectralLibrarySelectionParameter;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.Task;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import io.github.mzmine.util.ExitCode;
+import io.github.mzmine.util.spectraldb.entry.SpectralLibrary;
+import java.io.File;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import javafx.scene.paint.Color;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class BatchTaskTest {
+
+  /**
+   * Both datasets wait for each other, so they must run at the same time
+   */
+  private static final CyclicBarrier bothDatasetsRunning = new CyclicBarrier(2);
+  /**
+   * Names of the selected files, feature lists and libraries of each dataset project
+   */
+  private static final Map<MZmineProject, List<String>> selected = new ConcurrentHashMap<>();
+
+  @BeforeAll
+  void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  private static MZmineProject createDatasetProject(String name, int numFiles) {
+    final MZmineProject project = new MZmineProjectImpl();
+    final RawDataFile[] files = new RawDataFile[numFiles];
+    for (int i = 0; i < numFiles; i++) {
+      files[i] = new RawDataFileImpl(name + " file " + i, null, null, Color.BLACK);
+      project.addFile(files[i]);
+    }
+    project.addFeatureList(new ModularFeatureList(name + " list", null, files));
+    project.addSpectralLibrary(new SpectralLibrary(null, new File(name + " library")));
+    return project;
+  }
+
+  private static BatchQueue createQueue() {
+    final ParameterSet parameters = new SelectionParameters().cloneParameterSet();
+    parameters.getParameter(SelectionParameters.files)
+        .setValue(RawDataFilesSelectionType.ALL_FILES);
+    parameters.getParameter(SelectionParameters.featureLists)
+        .setValue(FeatureListsSelectionType.ALL_FEATURELISTS);
+    final BatchQueue queue = new BatchQueue();
+    queue.add(new MZmineProcessingStepImpl<>(new SelectionModule(), parameters));
+    return queue;
+  }
+
+  @Test
+  void testParallelDatasetsSelectFromTheirProject() throws Exception {
+    // data in the current project must not be selected by the datasets
+    final MZmineProject current = MZmineCore.getProjectManager().getCurrentProject();
+    final RawDataFile currentFile = new RawDataFileImpl("current file", null, null, Color.BLACK);
+    final ModularFeatureList currentList = new ModularFeatureList("current list", null,
+        currentFile);
+    current.addFile(currentFile);
+    current.addFeatureList(currentList);
+
+    final MZmineProject a = createDatasetProject("A", 2);
+    final MZmineProject b = createDatasetProject("B", 1);
+    final BatchQueue queue = createQueue();
+    final BatchTask taskA = new BatchTask(a, queue.clone(), Instant.now());
+    final BatchTask taskB = new BatchTask(b, queue.clone(), Instant.now());
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<?> runA = executor.submit(taskA);
+      final Future<?> runB = executor.submit(taskB);
+      runA.get(1, TimeUnit.MINUTES);
+      runB.get(1, TimeUnit.MINUTES);
+    } finally {
+      executor.shutdownNow();
+      current.removeFeatureList(currentList);
+      current.removeFile(currentFile);
+    }
+
+    assertEquals(TaskStatus.FINISHED, taskA.getStatus(), taskA.getErrorMessage());
+    assertEquals(TaskStatus.FINISHED, taskB.getStatus(), taskB.getErrorMessage());
+    assertEquals(List.of("A file 0", "A file 1", "A list", "A library"), selected.get(a));
+    assertEquals(List.of("B file 0", "B list", "B library"), selected.get(b));
+
+    // results are added to the project of the dataset
+    assertNotNull(a.getFeatureList("A result"));
+    assertNotNull(b.getFeatureList("B result"));
+    assertFalse(current.getCurrentFeatureLists().stream().map(FeatureList::getName)
+        .anyMatch(name -> name.endsWith("result")));
+  }
+
+  public static class SelectionParameters extends SimpleParameterSet {
+
+    public static final RawDataFilesParameter files = new RawDataFilesParameter();
+    public static final FeatureListsParameter featureLists = new FeatureListsParameter();
+    public static final SpectralLibrarySelectionParameter libraries = new SpectralLibrarySelectionParameter();
+
+    public SelectionParameters() {
+      super(new Parameter[]{files, featureLists, libraries});
+    }
+  }
+
+  public static class SelectionModule implements MZmineProcessingModule {
+
+    @Override
+    public @NotNull String getName() {
+      return "Selection test";
+    }
+
+    @Override
+    public @Nullable Class<? extends ParameterSet> getParameterSetClass() {
+      return SelectionParameters.class;
+    }
+
+    @Override
+    public @NotNull String getDescription() {
+      return "Resolves the selections on a task thread";
+    }
+
+    @Override
+    public @NotNull ExitCode runModule(@NotNull MZmineProject project,
+        @NotNull ParameterSet parameters, @NotNull Collection<Task> tasks,
+        @NotNull Instant moduleCallDate) {
+      tasks.add(new SelectionTask(project, parameters, moduleCallDate));
+      return ExitCode.OK;
+    }
+
+    @Override
+    public @NotNull MZmineModuleCategory getModuleCategory() {
+      return MZmineModuleCategory.TOOLS;
+    }
+  }
+
+  /**
+   * Resolves the selections in a parallel stream and adds a result feature list to its project
+   */
+  private static class SelectionTask extends AbstractTask {
+
+    private final MZmineProject project;
+    private final ParameterSet parameters;
+
+    SelectionTask(MZmineProject project, ParameterSet parameters, Instant moduleCallDate) {
+      super(null, moduleCallDate);
+      this.project = project;
+      this.parameters = parameters;
+    }
+
+    @Override
+    public String getTaskDescription() {
+      return "Selection test";
+    }
+
+    @Override
+    public double getFinishedPercentage() {
+      return 0;
+    }
+
+    @Override
+    public TaskPriority getTaskPriority() {
+      // both tasks need to run at the same time, independent of the number of threads
+      return TaskPriority.HIGH;
+    }
+
+    @Override
+    public void run() {
+      setStatus(TaskStatus.PROCESSING);
+      try {
+        bothDatasetsRunning.await(30, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        setErrorMessage("Datasets did not run in parallel: " + e);
+        setStatus(TaskStatus.ERROR);
+        return;
+      }
+
+      final List<String> names = IntStream.range(0, 8).parallel().mapToObj(i -> {
+        final RawDataFile[] files = parameters.getValue(SelectionParameters.files)
+            .getMatchingRawDataFiles();
+        final ModularFeatureList[] flists = parameters.getValue(SelectionParameters.featureLists)
+            .getMatchingFeatureLists();
+        final List<SpectralLibrary> libraries = parameters.getValue(
+            SelectionParameters.libraries).getMatchingLibraries();
+        return Arrays.asList(
+            Arrays.stream(files).map(RawDataFile::getName).sorted().toList(),
+            Arrays.stream(flists).map(FeatureList::getName).toList(),
+            libraries.stream().map(library -> library.getPath().getName()).toList());
+      }).distinct().flatMap(List::stream).flatMap(List::stream).toList();
+      selected.put(project, names);
+
+      final String dataset = names.get(0).substring(0, 1);
+      project.addFeatureList(new ModularFeatureList(dataset + " result", null, List.of()));
+      setStatus(TaskStatus.FINISHED);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.dataprocessing.align_hierarchical;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.util.MemoryMapStorage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.gnf.clustering.DistanceMatrix;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ToleranceWindowDistanceMatrixTest {
+
+  private static final double MZ_MAX_DIFF = 0.4;
+  private static final double RT_MAX_DIFF = 0.5;
+  private static final double MIN_SCORE = 0.1;
+  private static final double MAX_SCORE = 10d;
+
+  private List<FeatureListRow> rows;
+  private RowVsRowDistanceProvider distProvider;
+
+  private static FeatureListRow row(RawDataFile file, double mz, float rt) {
+    final Feature feature = mock(Feature.class);
+    when(feature.getMZ()).thenReturn(mz);
+    when(feature.getRT()).thenReturn(rt);
+    final FeatureListRow row = mock(FeatureListRow.class);
+    when(row.getRawDataFiles()).thenReturn(List.of(file));
+    when(row.getBestFeature()).thenReturn(feature);
+    return row;
+  }
+
+  @BeforeEach
+  void createRows() {
+    final Random random = new Random(42);
+    final List<RawDataFile> files = List.of(mock(RawDataFile.class), mock(RawDataFile.class),
+        mock(RawDataFile.class));
+    rows = new ArrayList<>();
+    for (int i = 0; i < 80; i++) {
+      rows.add(row(files.get(random.nextInt(files.size())), 100d + random.nextDouble() * 3d,
+          1f + random.nextFloat() * 3f));
+    }
+
+    // the score needs scans, replace it by an asymmetric function of the row indices. The window
+    // checks of the ranked distance are the real ones
+    distProvider = spy(new RowVsRowDistanceProvider(null, rows, 1d, 1d, MAX_SCORE));
+    doAnswer(invocation -> {
+      final int i = invocation.getArgument(0);
+      final int j = invocation.getArgument(1);
+      final RowVsRowScoreGC score = mock(RowVsRowScoreGC.class);
+      // some scores are below the minimum score
+      when(score.getScore()).thenReturn(((i * 7 + j * 3) % 50) / 5d);
+      return score;
+    }).when(distProvider).getScore(anyInt(), anyInt(), anyDouble(), anyDouble());
+  }
+
+  /**
+   * The dense matrix as it was calculated before, all distances of rows x < y.
+   */
+  private float expected(int x, int y) {
+    final int row = Math.min(x, y);
+    final int column = Math.max(x, y);
+    return (float) distProvider.getRankedDistance(row, column, MZ_MAX_DIFF, RT_MAX_DIFF,
+        MIN_SCORE);
+  }
+
+  private void assertEqualsDense(DistanceMatrix matrix) {
+    for (int x = 0; x < rows.size(); x++) {
+      for (int y = 0; y < rows.size(); y++) {
+        Assertions.assertEquals(expected(x, y), matrix.getValue(x, y), "row " + x + " col " + y);
+      }
+    }
+  }
+
+  @Test
+  void testEqualsDenseMatrix() {
+    final ToleranceWindowDistanceMatrix matrix = ToleranceWindowDistanceMatrix.create(rows,
+        distProvider, MZ_MAX_DIFF, RT_MAX_DIFF, MIN_SCORE);
+
+    Assertions.assertEquals(rows.size(), matrix.getRowCount());
+    assertEqualsDense(matrix);
+    // only the window is stored
+    Assertions.assertTrue(matrix.getNumberOfStoredValues() > 0);
+    Assertions.assertTrue(
+        matrix.getNumberOfStoredValues() < rows.size() * (rows.size() - 1) / 2 / 4);
+  }
+
+  @Test
+  void testCopyTo() throws IOException {
+    final ToleranceWindowDistanceMatrix matrix = ToleranceWindowDistanceMatrix.create(rows,
+        distProvider, MZ_MAX_DIFF, RT_MAX_DIFF, MIN_SCORE);
+
+    final DistanceMatrixTriangular1D2D heap = new DistanceMatrixTriangular1D2D(rows.size());
+    matrix.copyTo(heap);
+    assertEqualsDense(heap);
+
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    try {
+      final DistanceMatrixTriangular1D2D mapped = new DistanceMatrixTriangular1D2D(rows.size(),
+          storage);
+      matrix.copyTo(mapped);
+      assertEqualsDense(mapped);
+    } finally {
+      storage.release(null);
+    }
+  }
+
+  @Test
+  void testSetConstantValueRemovesEntry() {
+    final ToleranceWindowDistanceMatrix matrix = ToleranceWindowDistanceMatrix.create(rows,
+        distProvider, MZ_MAX_DIFF, RT_MAX_DIFF, MIN_SCORE);
+    final int stored = matrix.getNumberOfStoredValues();
+
+    // find two rows of different files outside the window
+    for (int x = 0; x < rows.size(); x++) {
+      for (int y = x + 1; y < rows.size(); y++) {
+        if (expected(x, y) == RowVsRowDistanceProvider.OUT_OF_WINDOW_DISTANCE) {
+          matrix.setValue(y, x, 5f);
+          Assertions.assertEquals(5f, matrix.getValue(x, y));
+          Assertions.assertEquals(stored + 1, matrix.getNumberOfStoredValues());
+
+          matrix.setValue(x, y, RowVsRowDistanceProvider.OUT_OF_WINDOW_DISTANCE);
+          Assertions.assertEquals(stored, matrix.getNumberOfStoredValues());
+          return;
+        }
+      }
+    }
+    Assertions.fail("No rows outside the window");
+  }
+
+  @Test
+  void testMappedChunksFillSegments() {
+    for (long capacity : new long[]{1_000_000_000L, 4_000_000_000L}) {
+      final long chunkBytes = (long) LargeArrayFloat.getMappedChunkSize(capacity) * Float.BYTES;
+      Assertions.assertTrue(chunkBytes <= Integer.MAX_VALUE);
+      Assertions.assertEquals(0, capacity % chunkBytes, "capacity " + capacity);
+    }
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    final long chunkBytes =
+        (long) LargeArrayFloat.getMappedChunkSize(storage.getSegmentCapacity()) * Float.BYTES;
+    Assertions.assertEquals(0, storage.getSegmentCapacity() % chunkBytes);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.align_join;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.DetectionType;
+import io.github.mzmine.datamodel.features.types.RawFileType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.parameters.parametertypes.selectors.FeatureListsSelection;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+class JoinAlignerTaskTest {
+
+  /**
+   * Feature lists of one raw data file each. Rows are placed on a coarse m/z and RT grid in a few
+   * m/z clusters, so that many rows compete for the same base rows with equal scores.
+   */
+  private static ModularFeatureList[] createFeatureLists(Random random) {
+    final int[] numRows = {120, 90, 150, 60, 150};
+    final ModularFeatureList[] flists = new ModularFeatureList[numRows.length];
+    int height = 1;
+    for (int f = 0; f < numRows.length; f++) {
+      final RawDataFile raw = Mockito.mock(RawDataFile.class);
+      final ModularFeatureList flist = new ModularFeatureList("list " + f, null, raw);
+      for (int i = 0; i < numRows[f]; i++) {
+        final double mz = 100d * (1 + random.nextInt(5)) + random.nextInt(40) * 0.001d;
+        final float rt = 5f + random.nextInt(8) * 0.05f;
+        final ModularFeature feature = new ModularFeature(flist);
+        feature.set(RawFileType.class, raw);
+        feature.set(MZType.class, mz);
+        feature.set(RTType.class, rt);
+        // features of UNKNOWN status are replaced in aligned rows
+        feature.set(DetectionType.class, FeatureStatus.DETECTED);
+        // identifies the original feature in the aligned list
+        feature.set(HeightType.class, (float) height++);
+        flist.addRow(new ModularFeatureListRow(flist, i + 1, feature));
+      }
+      flists[f] = flist;
+    }
+    return flists;
+  }
+
+  /**
+   * @return the aligned rows as sorted lists of the original feature heights
+   */
+  private static List<String> align(ModularFeatureList[] flists, boolean sharded) {
+    final ParameterSet parameters = new JoinAlignerParameters();
+    parameters.getParameter(JoinAlignerParameters.peakLists)
+        .setValue(new FeatureListsSelection(flists));
+    parameters.setParameter(JoinAlignerParameters.peakListName, "aligned");
+    parameters.setParameter(JoinAlignerParameters.MZTolerance, new MZTolerance(0.002, 5));
+    parameters.setParameter(JoinAlignerParameters.MZWeight, 3d);
+    parameters.setParameter(JoinAlignerParameters.RTTolerance,
+        new RTTolerance(0.1f, Unit.MINUTES));
+    parameters.setParameter(JoinAlignerParameters.RTWeight, 1d);
+    parameters.setParameter(JoinAlignerParameters.mobilityTolerance, false);
+    parameters.setParameter(JoinAlignerParameters.mobilityWeight, 0d);
+    parameters.setParameter(JoinAlignerParameters.SameChargeRequired, false);
+    parameters.setParameter(JoinAlignerParameters.SameIDRequired, false);
+    parameters.setParameter(JoinAlignerParameters.compareIsotopePattern, false);
+    parameters.setParameter(JoinAlignerParameters.compareSpectraSimilarity, false);
+    parameters.setParameter(JoinAlignerParameters.mzShardedAlignment, sharded);
+    parameters.setParameter(JoinAlignerParameters.handleOriginal, OriginalFeatureListOption.KEEP);
+
+    final MZmineProject project = Mockito.mock(MZmineProject.class);
+    final JoinAlignerTask task = new JoinAlignerTask(project, parameters, null, Instant.now());
+    task.run();
+    assertEquals(TaskStatus.FINISHED, task.getStatus());
+
+    final ArgumentCaptor<FeatureList> aligned = ArgumentCaptor.forClass(FeatureList.class);
+    Mockito.verify(project).addFeatureList(aligned.capture());
+    final List<String> rows = new ArrayList<>();
+    for (FeatureListRow row : aligned.getValue().getRows()) {
+      rows.add(row.getFeatures().stream().map(feature -> feature.getHeight().intValue()).sorted()
+          .map(String::valueOf).collect(Collectors.joining(",")));
+    }
+    rows.sort(null);
+    return rows;
+  }
+
+  @Test
+  void testShardedAndUnshardedAlignmentsAreEqual() {
+    for (long seed = 0; seed < 3; seed++) {
+      final ModularFeatureList[] flists = createFeatureLists(new Random(seed));
+      final int totalFeatures = (int) List.of(flists).stream()
+          .mapToLong(FeatureList::getNumberOfRows).sum();
+
+      final List<String> unsharded = align(flists, false);
+      final List<String> sharded = align(flists, true);
+      assertEquals(unsharded, sharded, "seed " + seed);
+      // ties are resolved deterministically
+      assertEquals(unsharded, align(flists, false), "seed " + seed);
+      assertEquals(totalFeatures,
+          unsharded.stream().mapToInt(row -> row.split(",").length).sum());
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.FeatureDataUtils;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.features.Feature;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.minimumsearch.MinimumSearchFeatureResolverParameters;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.OriginalFeatureListHandlingParameter.OriginalFeatureListOption;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class FeatureResolverTaskTest {
+
+  private static final int NUM_SCANS = 200;
+  private static final int NUM_CHROMATOGRAMS = 60;
+
+  @BeforeAll
+  void initialise() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  @AfterAll
+  void resetProject() {
+    MZmineCore.getProjectManager().setCurrentProject(new MZmineProjectImpl());
+  }
+
+  private static double gauss(double x, double mu, double sigma) {
+    return Math.exp(-(x - mu) * (x - mu) / (2 * sigma * sigma));
+  }
+
+  /**
+   * @return chromatograms with one to three peaks each.
+   */
+  private static ModularFeatureList createChromatograms() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("resolver test", null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < NUM_SCANS; i++) {
+      final SimpleScan scan = new SimpleScan(file, i, 1, i * 0.05f, null, new double[]{100d},
+          new double[]{1d}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(100d, 1000d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+
+    final ModularFeatureList flist = new ModularFeatureList("chromatograms", null, file);
+    flist.setSelectedScans(file, scans);
+    final Random random = new Random(11);
+    for (int c = 0; c < NUM_CHROMATOGRAMS; c++) {
+      final double mz = 100d + c * 10.1;
+      final int numPeaks = 1 + random.nextInt(3);
+      final double[] apexes = new double[numPeaks];
+      final double[] heights = new double[numPeaks];
+      for (int p = 0; p < numPeaks; p++) {
+        apexes[p] = 1d + random.nextDouble() * 8d;
+        heights[p] = 1E4 + random.nextDouble() * 1E6;
+      }
+
+      final double[] mzs = new double[NUM_SCANS];
+      final double[] intensities = new double[NUM_SCANS];
+      for (int i = 0; i < NUM_SCANS; i++) {
+        final double rt = scans.get(i).getRetentionTime();
+        mzs[i] = mz + (random.nextDouble() - 0.5) * 0.001;
+        intensities[i] = random.nextDouble() * 100;
+        for (int p = 0; p < numPeaks; p++) {
+          intensities[i] += heights[p] * gauss(rt, apexes[p], 0.1);
+        }
+      }
+
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, c + 1);
+      final ModularFeature feature = new ModularFeature(flist, file,
+          new SimpleIonTimeSeries(null, mzs, intensities, scans), FeatureStatus.DETECTED);
+      row.addFeature(file, feature);
+      flist.addRow(row);
+    }
+    return flist;
+  }
+
+  private static ParameterSet createParameters() {
+    final ParameterSet parameters = new MinimumSearchFeatureResolverParameters().cloneParameterSet();
+    parameters.setParameter(GeneralResolverParameters.SUFFIX, "r");
+    parameters.setParameter(GeneralResolverParameters.handleOriginal,
+        OriginalFeatureListOption.KEEP);
+    parameters.setParameter(GeneralResolverParameters.dimension,
+        ResolvingDimension.RETENTION_TIME);
+    parameters.setParameter(GeneralResolverParameters.groupMS2Parameters, false);
+    parameters.setParameter(GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS, 4);
+    parameters.setParameter(
+        MinimumSearchFeatureResolverParameters.CHROMATOGRAPHIC_THRESHOLD_LEVEL, 0.5);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.SEARCH_RT_RANGE, 0.2);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_RELATIVE_HEIGHT, 0d);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_ABSOLUTE_HEIGHT, 1E3);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.MIN_RATIO, 1.8);
+    parameters.setParameter(MinimumSearchFeatureResolverParameters.PEAK_DURATION,
+        Range.closed(0d, 2d));
+    return parameters;
+  }
+
+  private static FeatureList resolve(ModularFeatureList flist, int minChunkSize) {
+    final MZmineProjectImpl project = new MZmineProjectImpl();
+    final FeatureResolverTask task = new FeatureResolverTask(project, null, flist,
+        createParameters(), FeatureDataUtils.DEFAULT_CENTER_FUNCTION, Instant.now(),
+        minChunkSize);
+    task.run();
+    Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+    Assertions.assertEquals(1d, task.getFinishedPercentage());
+    Assertions.assertEquals(1, project.getCurrentFeatureLists().size());
+    return project.getCurrentFeatureLists().get(0);
+  }
+
+  @Test
+  void testChunkedResolvingMatchesSequential() throws IOException {
+    final ModularFeatureList flist = createChromatograms();
+
+    // a single chunk resolves all rows sequentially
+    final FeatureList sequential = resolve(flist, Integer.MAX_VALUE);
+    final FeatureList chunked = resolve(flist, 4);
+
+    // most chromatograms have more than one peak
+    Assertions.assertTrue(sequential.getNumberOfRows() > NUM_CHROMATOGRAMS);
+    Assertions.assertEquals(sequential.getNumberOfRows(), chunked.getNumberOfRows());
+    final RawDataFile file = flist.getRawDataFile(0);
+    for (int i = 0; i < sequential.getNumberOfRows(); i++) {
+      final FeatureListRow expected = sequential.getRow(i);
+      final FeatureListRow actual = chunked.getRow(i);
+      Assertions.assertEquals(expected.getID(), actual.getID());
+      Assertions.assertEquals(expected.getAverageMZ(), actual.getAverageMZ());
+      Assertions.assertEquals(expected.getAverageRT(), actual.getAverageRT());
+
+      final Feature expectedFeature = expected.getFeature(file);
+      final Feature actualFeature = actual.getFeature(file);
+      Assertions.assertEquals(expectedFeature.getHeight(), actualFeature.getHeight());
+      Assertions.assertEquals(expectedFeature.getArea(), actualFeature.getArea());
+      Assertions.assertEquals(expectedFeature.getFeatureData(), actualFeature.getFeatureData());
+    }
+  }
+}
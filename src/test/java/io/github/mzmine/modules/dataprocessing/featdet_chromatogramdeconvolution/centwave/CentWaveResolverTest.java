@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.MZmineProcessingModule;
+import io.github.mzmine.modules.MZmineProcessingStep;
+import io.github.mzmine.modules.batchmode.BatchQueue;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.GeneralResolverParameters;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.ResolvingDimension;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolver.Ridge;
+import io.github.mzmine.modules.dataprocessing.featdet_chromatogramdeconvolution.centwave.CentWaveResolverParameters.PeakIntegrationMethod;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.w3c.dom.Element;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class CentWaveResolverTest {
+
+  @BeforeAll
+  void initialise() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  private static double gauss(double x, double mu, double sigma) {
+    return Math.exp(-(x - mu) * (x - mu) / (2 * sigma * sigma));
+  }
+
+  private static double mexicanHat(double t) {
+    return 2d / (Math.sqrt(3d) * Math.pow(Math.PI, 0.25)) * (1 - t * t) * Math.exp(-t * t / 2);
+  }
+
+  @Test
+  void testMexicanHatTransformMatchesDefinition() {
+    final int length = 120;
+    final double[] y = new double[length];
+    for (int i = 0; i < length; i++) {
+      y[i] = 1000 * gauss(i, 60, 6) + 200 * gauss(i, 20, 2);
+    }
+
+    for (int scale : new int[]{1, 3, 8, 15}) {
+      final double[] coefficients = new double[length];
+      CentWaveResolver.mexicanHatTransform(y, 0, length - 1, scale, coefficients);
+      for (int i = 0; i < length; i++) {
+        // untruncated wavelet, values outside the region are zero
+        double expected = 0;
+        for (int k = 0; k < length; k++) {
+          expected += y[k] * mexicanHat((k - i) / (double) scale) / Math.sqrt(scale);
+        }
+        // the wavelet is truncated at 4 scales, where it is below 0.5 % of its maximum
+        Assertions.assertEquals(expected, coefficients[i], 1E-2 * 1000 * Math.sqrt(scale),
+            "scale " + scale + " index " + i);
+      }
+    }
+  }
+
+  @Test
+  void testMexicanHatTransformOfRegion() {
+    final Random random = new Random(5);
+    final double[] y = new double[200];
+    for (int i = 0; i < y.length; i++) {
+      y[i] = random.nextDouble() * 100;
+    }
+    final int start = 40;
+    final int end = 139;
+    final double[] region = new double[end - start + 1];
+    System.arraycopy(y, start, region, 0, region.length);
+
+    // the values outside of the region of interest must not contribute
+    final double[] expected = new double[region.length];
+    final double[] actual = new double[region.length];
+    CentWaveResolver.mexicanHatTransform(region, 0, region.length - 1, 5, expected);
+    CentWaveResolver.mexicanHatTransform(y, start, end, 5, actual);
+    Assertions.assertArrayEquals(expected, actual, 1E-9);
+  }
+
+  @Test
+  void testMexicanHatTransformIgnoresConstantOffset() {
+    final int length = 200;
+    final int scale = 10;
+    final double[] peak = new double[length];
+    final double[] offset = new double[length];
+    for (int i = 0; i < length; i++) {
+      peak[i] = 1000 * gauss(i, 100, 8);
+      offset[i] = peak[i] + 500;
+    }
+    final double[] peakCoefficients = new double[length];
+    final double[] offsetCoefficients = new double[length];
+    CentWaveResolver.mexicanHatTransform(peak, 0, length - 1, scale, peakCoefficients);
+    CentWaveResolver.mexicanHatTransform(offset, 0, length - 1, scale, offsetCoefficients);
+
+    // the wavelet has a zero mean, so a constant offset barely changes coefficients away from the
+    // borders
+    for (int i = 4 * scale; i < length - 4 * scale; i++) {
+      Assertions.assertEquals(peakCoefficients[i], offsetCoefficients[i],
+          1E-2 * peakCoefficients[100], "index " + i);
+    }
+    Assertions.assertEquals(100, argMax(peakCoefficients, 0, length));
+  }
+
+  @Test
+  void testScales() {
+    Assertions.assertArrayEquals(new int[]{3}, CentWaveResolver.getScales(3, 3));
+    Assertions.assertArrayEquals(new int[]{3}, CentWaveResolver.getScales(5, 3));
+    Assertions.assertArrayEquals(new int[]{2, 4, 6, 8, 10}, CentWaveResolver.getScales(2, 10));
+
+    // the number of scales is limited, the largest scale is not exceeded
+    final int[] scales = CentWaveResolver.getScales(1, 500);
+    Assertions.assertTrue(scales.length <= 33);
+    Assertions.assertEquals(1, scales[0]);
+    Assertions.assertTrue(scales[scales.length - 1] <= 500);
+    Assertions.assertTrue(scales[scales.length - 1] > 500 - (scales[1] - scales[0]));
+  }
+
+  @Test
+  void testRidgesFollowPeaks() {
+    final int length = 400;
+    final double[] y = new double[length];
+    for (int i = 0; i < length; i++) {
+      y[i] = 1 + 1000 * gauss(i, 100, 4) + 600 * gauss(i, 280, 16);
+    }
+
+    final int[] scales = CentWaveResolver.getScales(2, 40);
+    final double[][] coefficients = new double[scales.length][length];
+    for (int s = 0; s < scales.length; s++) {
+      CentWaveResolver.mexicanHatTransform(y, 0, length - 1, scales[s], coefficients[s]);
+    }
+    final List<Ridge> ridges = CentWaveResolver.findRidges(coefficients, scales, length);
+
+    final Ridge narrow = ridges.stream().filter(r -> Math.abs(r.bestPosition - 100) <= 2)
+        .findFirst().orElse(null);
+    final Ridge wide = ridges.stream().filter(r -> Math.abs(r.bestPosition - 280) <= 2)
+        .findFirst().orElse(null);
+    Assertions.assertNotNull(narrow);
+    Assertions.assertNotNull(wide);
+    // ridges span multiple scales and the wider peak responds best at a larger scale
+    Assertions.assertTrue(narrow.length > 1);
+    Assertions.assertTrue(wide.length > 1);
+    Assertions.assertTrue(scales[wide.bestScaleIndex] > scales[narrow.bestScaleIndex]);
+    // the best coefficient is the maximum along the best scale
+    Assertions.assertEquals(narrow.bestCoefficient,
+        coefficients[narrow.bestScaleIndex][narrow.bestPosition]);
+  }
+
+  @Test
+  void testResolveTwoPeaks() {
+    final RawDataFile file = new RawDataFileImpl("test", null, null, Color.BLACK);
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+
+    final int numValues = 501;
+    final double[] rts = new double[numValues];
+    final double[] intensities = new double[numValues];
+    final Random random = new Random(1);
+    for (int i = 0; i < numValues; i++) {
+      rts[i] = i * 0.02;
+      intensities[i] = 1 + random.nextDouble() * 0.5 + 1000 * gauss(rts[i], 3, 0.1)
+          + 500 * gauss(rts[i], 7, 0.2);
+    }
+
+    for (PeakIntegrationMethod method : PeakIntegrationMethod.values()) {
+      final ParameterSet parameters = new CentWaveResolverParameters().cloneParameterSet();
+      parameters.setParameter(GeneralResolverParameters.dimension,
+          ResolvingDimension.RETENTION_TIME);
+      parameters.setParameter(CentWaveResolverParameters.SN_THRESHOLD, 5d);
+      parameters.setParameter(CentWaveResolverParameters.PEAK_SCALES, Range.closed(0.25, 5d));
+      parameters.setParameter(CentWaveResolverParameters.PEAK_DURATION, Range.closed(0d, 10d));
+      parameters.setParameter(CentWaveResolverParameters.INTEGRATION_METHOD, method);
+      parameters.setParameter(GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS, 3);
+
+      final List<Range<Double>> ranges = new CentWaveResolver(parameters, flist).resolve(rts,
+          intensities);
+      Assertions.assertEquals(2, ranges.size(), method.toString());
+      Assertions.assertTrue(ranges.get(0).contains(3d));
+      Assertions.assertTrue(ranges.get(1).contains(7d));
+      Assertions.assertFalse(ranges.get(0).isConnected(ranges.get(1)));
+
+      // the smaller peak is below a higher signal to noise threshold
+      parameters.setParameter(CentWaveResolverParameters.SN_THRESHOLD, 10d);
+      final List<Range<Double>> intense = new CentWaveResolver(parameters, flist).resolve(rts,
+          intensities);
+      Assertions.assertEquals(1, intense.size());
+      Assertions.assertTrue(intense.get(0).contains(3d));
+    }
+  }
+
+  /**
+   * Batch files of older versions contain the R engine parameter and no resolving dimension.
+   */
+  @Test
+  void testLoadBatchWithREngine() throws Exception {
+    final String xml = """
+        <?xml version="1.0" encoding="UTF-8"?>
+        <batch>
+          <batchstep method="%s">
+            <parameter name="Feature lists" type="BATCH_LAST_FEATURELISTS"/>
+            <parameter name="Suffix">r</parameter>
+            <parameter name="S/N threshold">7.5</parameter>
+            <parameter name="Wavelet scales"><min>0.1</min><max>2.0</max></parameter>
+            <parameter name="Peak duration range"><min>0.05</min><max>3.0</max></parameter>
+            <parameter name="Peak integration method">Use raw data</parameter>
+            <parameter name="R engine">RCaller</parameter>
+            <parameter name="Min # of data points">4</parameter>
+          </batchstep>
+        </batch>
+        """.formatted(CentWaveResolverModule.class.getName());
+    final Element element = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+        .getDocumentElement();
+
+    final BatchQueue queue = BatchQueue.loadFromXml(element);
+    Assertions.assertEquals(1, queue.size());
+    final MZmineProcessingStep<MZmineProcessingModule> step = queue.get(0);
+    Assertions.assertInstanceOf(CentWaveResolverModule.class, step.getModule());
+
+    final ParameterSet parameters = step.getParameterSet();
+    Assertions.assertEquals(ResolvingDimension.RETENTION_TIME,
+        parameters.getValue(GeneralResolverParameters.dimension));
+    Assertions.assertEquals(7.5, parameters.getValue(CentWaveResolverParameters.SN_THRESHOLD));
+    Assertions.assertEquals(Range.closed(0.1, 2.0),
+        parameters.getValue(CentWaveResolverParameters.PEAK_SCALES));
+    Assertions.assertEquals(PeakIntegrationMethod.UseRawData,
+        parameters.getValue(CentWaveResolverParameters.INTEGRATION_METHOD));
+    Assertions.assertEquals(4,
+        parameters.getValue(GeneralResolverParameters.MIN_NUMBER_OF_DATAPOINTS));
+
+    final RawDataFile file = new RawDataFileImpl("test", null, null, Color.BLACK);
+    final ModularFeatureList flist = new ModularFeatureList("flist", null, file);
+    Assertions.assertInstanceOf(CentWaveResolver.class,
+        ((CentWaveResolverParameters) parameters).getResolver(parameters, flist));
+  }
+
+  private static int argMax(double[] values, int from, int to) {
+    int max = from;
+    for (int i = from + 1; i < to; i++) {
+      if (values[i] > values[max]) {
+        max = i;
+      }
+    }
+    return max;
+  }
+}
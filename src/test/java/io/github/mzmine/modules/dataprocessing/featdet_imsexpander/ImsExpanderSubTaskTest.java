@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.featdet_imsexpander;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityScan;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.featuredata.IonMobilitySeries;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the trace assignment of the frame sweep in {@link ImsExpanderSubTask} with the previous
+ * per data point lookup, which walked a cursor over the traces sorted by m/z for every mobility scan
+ * and offered the point to each trace until one accepted it.
+ */
+public class ImsExpanderSubTaskTest {
+
+  private static final double NOISE_LEVEL = 10d;
+  private static final int NUM_FRAMES = 12;
+  private static final int NUM_MOBILITY_SCANS = 6;
+
+  // {lower mz, upper mz, first rt, last rt}, frame i has rt i
+  private static final double[][] TRACES = { //
+      {100.0, 100.4, 0, 3}, //
+      {100.2, 100.6, 2, 7}, //
+      {99.8, 103.0, 3, 11}, // wide, overlaps most others
+      {101.0, 101.2, 0, 11}, //
+      {101.05, 101.6, 5, 8}, //
+      {102.0, 102.5, 7, 9}, //
+      {102.3, 102.4, 7, 7}, // single frame at a border
+      {103.5, 103.9, 20, 30}}; // outside of all frames
+
+  private IMSRawDataFile file;
+  private List<Frame> frames;
+  private ParameterSet parameters;
+  private ModularFeatureList flist;
+
+  private static ExpandingTrace trace(double lowerMz, double upperMz, float firstRt,
+      float lastRt) {
+    final ModularFeature feature = mock(ModularFeature.class);
+    when(feature.getRawDataPointsRTRange()).thenReturn(Range.closed(firstRt, lastRt));
+    final ModularFeatureListRow row = mock(ModularFeatureListRow.class);
+    when(row.getBestFeature()).thenReturn(feature);
+    when(row.getAverageMZ()).thenReturn((lowerMz + upperMz) / 2);
+    return new ExpandingTrace(row, Range.closed(lowerMz, upperMz));
+  }
+
+  private static Frame frame(IMSRawDataFile file, int index, List<BuildingMobilityScan> scans)
+      throws IOException {
+    final SimpleFrame frame = new SimpleFrame(file, index, 1, index, new double[]{0d},
+        new double[]{1d}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "test",
+        Range.closed(0d, 200d), MobilityType.TIMS, null, null);
+    final double[] mobilities = new double[scans.size()];
+    for (int i = 0; i < mobilities.length; i++) {
+      mobilities[i] = 1.5 - i * 0.01;
+    }
+    frame.setMobilities(mobilities);
+    frame.setMobilityScans(scans, false);
+    file.addScan(frame);
+    return frame;
+  }
+
+  @BeforeEach
+  void createFrames() throws IOException {
+    file = new IMSRawDataFileImpl("ims expander test", null, null, Color.WHITE);
+    final Random random = new Random(42);
+    frames = new ArrayList<>();
+    for (int f = 0; f < NUM_FRAMES; f++) {
+      final List<BuildingMobilityScan> scans = new ArrayList<>();
+      for (int s = 0; s < NUM_MOBILITY_SCANS; s++) {
+        // dense enough that several points fall into the same trace of one mobility scan
+        final double[] mzs = random.doubles(40, 99.5, 104d).sorted().toArray();
+        final double[] intensities = random.doubles(mzs.length, 0d, 100d).toArray();
+        scans.add(new BuildingMobilityScan(s, mzs, intensities));
+      }
+      frames.add(frame(file, f, scans));
+    }
+
+    parameters = new ImsExpanderParameters().cloneParameterSet();
+    parameters.getParameter(ImsExpanderParameters.useRawData).setValue(true);
+    parameters.getParameter(ImsExpanderParameters.useRawData).getEmbeddedParameter()
+        .setValue(NOISE_LEVEL);
+    flist = mock(ModularFeatureList.class);
+    when(flist.getName()).thenReturn("flist");
+  }
+
+  private List<ExpandingTrace> createTracesByMz() {
+    final List<ExpandingTrace> traces = new ArrayList<>();
+    for (double[] t : TRACES) {
+      traces.add(trace(t[0], t[1], (float) t[2], (float) t[3]));
+    }
+    traces.sort(Comparator.comparingDouble(t -> t.getRow().getAverageMZ()));
+    final float[] frameRts = new float[frames.size()];
+    for (int i = 0; i < frameRts.length; i++) {
+      frameRts[i] = frames.get(i).getRetentionTime();
+    }
+    traces.forEach(t -> t.initFrameSlots(frameRts));
+    return traces;
+  }
+
+  /**
+   * The previous per data point lookup, applied to the traces within the rt range of each frame.
+   *
+   * @return the assigned {mz, intensity} per mobility scan for each trace.
+   */
+  private List<Map<MobilityScan, double[]>> assignPerPoint(List<ExpandingTrace> tracesByMz,
+      double noiseLevel) {
+    final List<Map<MobilityScan, double[]>> assigned = new ArrayList<>();
+    tracesByMz.forEach(t -> assigned.add(new LinkedHashMap<>()));
+
+    for (Frame frame : frames) {
+      final List<Integer> active = new ArrayList<>();
+      for (int i = 0; i < tracesByMz.size(); i++) {
+        if (tracesByMz.get(i).getRtRange().contains(frame.getRetentionTime())) {
+          active.add(i);
+        }
+      }
+      final int numTraces = active.size();
+      if (numTraces == 0) {
+        continue;
+      }
+
+      for (MobilityScan scan : frame.getMobilityScans()) {
+        int traceIndex = 0;
+        for (int dpIndex = 0; dpIndex < scan.getNumberOfDataPoints(); dpIndex++) {
+          final double mz = scan.getMzValue(dpIndex);
+          final double intensity = scan.getIntensityValue(dpIndex);
+          if (intensity < noiseLevel) {
+            continue;
+          }
+          while (tracesByMz.get(active.get(traceIndex)).getMzRange().upperEndpoint() < mz
+              && traceIndex < numTraces - 1) {
+            traceIndex++;
+          }
+          if (tracesByMz.get(active.get(traceIndex)).getMzRange().lowerEndpoint() > mz) {
+            continue;
+          }
+          while (tracesByMz.get(active.get(traceIndex)).getMzRange().contains(mz)
+              && assigned.get(active.get(traceIndex))
+              .putIfAbsent(scan, new double[]{mz, intensity}) != null
+              && traceIndex < numTraces - 1) {
+            traceIndex++;
+          }
+        }
+      }
+    }
+    return assigned;
+  }
+
+  private void expand(List<ExpandingTrace> tracesByMz, int... frameBorders) {
+    for (int i = 0; i < frameBorders.length - 1; i++) {
+      final ImsExpanderSubTask task = new ImsExpanderSubTask(null, parameters, frames,
+          frameBorders[i], frameBorders[i + 1], flist, tracesByMz, file);
+      task.run();
+      Assertions.assertEquals(TaskStatus.FINISHED, task.getStatus());
+    }
+  }
+
+  private static void assertAssignment(List<Map<MobilityScan, double[]>> expected,
+      List<ExpandingTrace> actual) {
+    Assertions.assertEquals(expected.size(), actual.size());
+    for (int t = 0; t < expected.size(); t++) {
+      final List<Entry<MobilityScan, double[]>> expectedPoints = new ArrayList<>(
+          expected.get(t).entrySet());
+      final List<IonMobilitySeries> mobilograms = actual.get(t).createMobilograms();
+      Assertions.assertEquals(expectedPoints.size(), actual.get(t).getNumberOfMobilityScans(),
+          "trace " + t);
+
+      int p = 0;
+      for (IonMobilitySeries mobilogram : mobilograms) {
+        for (int i = 0; i < mobilogram.getNumberOfValues(); i++, p++) {
+          final Entry<MobilityScan, double[]> point = expectedPoints.get(p);
+          // mobility scans are created on access, compare frame and scan number
+          Assertions.assertSame(point.getKey().getFrame(), mobilogram.getSpectrum(i).getFrame(),
+              "trace " + t);
+          Assertions.assertEquals(point.getKey().getMobilityScanNumber(),
+              mobilogram.getSpectrum(i).getMobilityScanNumber(), "trace " + t);
+          Assertions.assertEquals(point.getValue()[0], mobilogram.getMZ(i), "trace " + t);
+          Assertions.assertEquals(point.getValue()[1], mobilogram.getIntensity(i), "trace " + t);
+        }
+      }
+      Assertions.assertEquals(expectedPoints.size(), p, "trace " + t);
+    }
+  }
+
+  @Test
+  void testSingleTaskMatchesPerPointLookup() {
+    final List<ExpandingTrace> traces = createTracesByMz();
+    final List<Map<MobilityScan, double[]>> expected = assignPerPoint(traces, NOISE_LEVEL);
+    // make sure the synthetic data covers the interesting cases
+    Assertions.assertTrue(expected.stream().filter(m -> !m.isEmpty()).count() >= 7);
+    Assertions.assertTrue(expected.get(expected.size() - 1).isEmpty());
+
+    expand(traces, 0, NUM_FRAMES);
+    assertAssignment(expected, traces);
+  }
+
+  @Test
+  void testFrameSplitsMatchPerPointLookup() {
+    // borders at the first and last frames of traces
+    final List<ExpandingTrace> traces = createTracesByMz();
+    final List<Map<MobilityScan, double[]>> expected = assignPerPoint(traces, NOISE_LEVEL);
+    expand(traces, 0, 3, 4, 7, 8, NUM_FRAMES);
+    assertAssignment(expected, traces);
+
+    // one task per frame
+    final List<ExpandingTrace> singleFrameTraces = createTracesByMz();
+    final int[] borders = new int[NUM_FRAMES + 1];
+    Arrays.setAll(borders, i -> i);
+    expand(singleFrameTraces, borders);
+    assertAssignment(expected, singleFrameTraces);
+  }
+
+  /**
+   * A point may only reach a trace behind an occupied one if the cursor moved past the occupied
+   * traces with the previous points of the mobility scan.
+   */
+  @Test
+  void testCursorMovesPastOccupiedTraces() throws IOException {
+    frames = List.of(frame(file, NUM_FRAMES, List.of(
+        new BuildingMobilityScan(0, new double[]{101.02, 101.1, 101.3},
+            new double[]{50d, 50d, 50d}))));
+    final List<ExpandingTrace> traces = new ArrayList<>(
+        List.of(trace(99d, 103d, 0f, 100f), trace(101.0, 101.2, 0f, 100f),
+            trace(101.05, 101.6, 0f, 100f)));
+    traces.forEach(t -> t.initFrameSlots(new float[]{NUM_FRAMES}));
+
+    final List<Map<MobilityScan, double[]>> expected = assignPerPoint(traces, NOISE_LEVEL);
+    expand(traces, 0, 1);
+    assertAssignment(expected, traces);
+    Assertions.assertEquals(101.3,
+        traces.get(2).createMobilograms().get(0).getMZ(0));
+  }
+}
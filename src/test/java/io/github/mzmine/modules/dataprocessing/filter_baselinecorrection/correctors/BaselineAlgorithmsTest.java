@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.filter_baselinecorrection.correctors;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the baseline algorithms with straightforward reference implementations.
+ */
+public class BaselineAlgorithmsTest {
+
+  private static final double EPSILON = 1E-6;
+
+  /**
+   * Solves (W + lambda D'D) z = W y with a dense Gaussian elimination.
+   */
+  private static double[] denseWhittaker(double[] y, double[] weights, double lambda) {
+    final int n = y.length;
+    final double[][] a = new double[n][n + 1];
+    for (int i = 0; i < n; i++) {
+      a[i][i] = weights[i];
+      a[i][n] = weights[i] * y[i];
+    }
+    // D'D, where the row r of D has the entries 1, -2, 1 at r, r + 1, r + 2
+    final double[] d = {1, -2, 1};
+    for (int r = 0; r < n - 2; r++) {
+      for (int i = 0; i < 3; i++) {
+        for (int j = 0; j < 3; j++) {
+          a[r + i][r + j] += lambda * d[i] * d[j];
+        }
+      }
+    }
+
+    for (int col = 0; col < n; col++) {
+      int pivot = col;
+      for (int row = col + 1; row < n; row++) {
+        if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+          pivot = row;
+        }
+      }
+      final double[] tmp = a[col];
+      a[col] = a[pivot];
+      a[pivot] = tmp;
+      for (int row = col + 1; row < n; row++) {
+        final double factor = a[row][col] / a[col][col];
+        for (int k = col; k <= n; k++) {
+          a[row][k] -= factor * a[col][k];
+        }
+      }
+    }
+    final double[] z = new double[n];
+    for (int row = n - 1; row >= 0; row--) {
+      double sum = a[row][n];
+      for (int k = row + 1; k < n; k++) {
+        sum -= a[row][k] * z[k];
+      }
+      z[row] = sum / a[row][row];
+    }
+    return z;
+  }
+
+  private static double[] randomChromatogram(Random random, int n) {
+    final double[] y = new double[n];
+    for (int i = 0; i < n; i++) {
+      // sloped baseline, noise and a peak in the middle
+      y[i] = 100 + 2 * i + random.nextDouble() * 10
+          + 1000 * Math.exp(-Math.pow(i - n / 2d, 2) / (2 * Math.pow(n / 20d + 1, 2)));
+    }
+    return y;
+  }
+
+  private static void assertArrayEquals(double[] expected, double[] actual) {
+    Assertions.assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      final double tolerance = EPSILON * Math.max(1d, Math.abs(expected[i]));
+      Assertions.assertEquals(expected[i], actual[i], tolerance, "index " + i);
+    }
+  }
+
+  @Test
+  void testWhittakerSmoothMatchesDenseSolution() {
+    final Random random = new Random(42);
+    for (int n : new int[]{3, 4, 5, 10, 57, 200}) {
+      for (double lambda : new double[]{0.1, 10, 1E4}) {
+        final double[] y = randomChromatogram(random, n);
+        final double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+          weights[i] = random.nextDouble() < 0.3 ? 0.01 : random.nextDouble();
+        }
+        // at least two points with full weight
+        weights[0] = 1;
+        weights[n - 1] = 1;
+
+        assertArrayEquals(denseWhittaker(y, weights, lambda),
+            BaselineAlgorithms.whittakerSmooth(y, weights, lambda));
+      }
+    }
+  }
+
+  @Test
+  void testWhittakerSmoothKeepsLinearData() {
+    final int n = 50;
+    final double[] y = new double[n];
+    final double[] weights = new double[n];
+    for (int i = 0; i < n; i++) {
+      y[i] = 3.5 * i - 20;
+      weights[i] = i % 3 == 0 ? 1 : 0.2;
+    }
+    // the second order difference penalty of a straight line is zero
+    assertArrayEquals(y, BaselineAlgorithms.whittakerSmooth(y, weights, 1E6));
+  }
+
+  @Test
+  void testAsymmetricLeastSquaresMatchesReference() {
+    final Random random = new Random(7);
+    for (int n : new int[]{5, 30, 150}) {
+      final double[] y = randomChromatogram(random, n);
+      final double lambda = 1E3;
+      final double p = 0.01;
+
+      // reference with the dense solver
+      final double[] weights = new double[n];
+      Arrays.fill(weights, 1d);
+      double[] expected = y;
+      for (int iteration = 0; iteration < 25; iteration++) {
+        expected = denseWhittaker(y, weights, lambda);
+        boolean changed = false;
+        for (int i = 0; i < n; i++) {
+          final double w = y[i] > expected[i] ? p : 1 - p;
+          changed |= w != weights[i];
+          weights[i] = w;
+        }
+        if (!changed) {
+          break;
+        }
+      }
+
+      final double[] baseline = BaselineAlgorithms.asymmetricLeastSquares(y, lambda, p);
+      assertArrayEquals(expected, baseline);
+      // the baseline stays well below the apex of the peak
+      Assertions.assertTrue(baseline[n / 2] < y[n / 2] - 500);
+    }
+  }
+
+  @Test
+  void testRollingBallMatchesBruteForce() {
+    final Random random = new Random(3);
+    for (int n : new int[]{1, 2, 7, 40, 300}) {
+      final double[] y = randomChromatogram(random, n);
+      for (int wm : new int[]{0, 1, 3, 25}) {
+        for (int ws : new int[]{0, 2, 10}) {
+          final double[] min = new double[n];
+          for (int i = 0; i < n; i++) {
+            min[i] = Double.POSITIVE_INFINITY;
+            for (int k = Math.max(0, i - wm); k <= Math.min(n - 1, i + wm); k++) {
+              min[i] = Math.min(min[i], y[k]);
+            }
+          }
+          final double[] max = new double[n];
+          for (int i = 0; i < n; i++) {
+            max[i] = Double.NEGATIVE_INFINITY;
+            for (int k = Math.max(0, i - wm); k <= Math.min(n - 1, i + wm); k++) {
+              max[i] = Math.max(max[i], min[k]);
+            }
+          }
+          final double[] expected = new double[n];
+          for (int i = 0; i < n; i++) {
+            final int from = Math.max(0, i - ws);
+            final int to = Math.min(n - 1, i + ws);
+            for (int k = from; k <= to; k++) {
+              expected[i] += max[k];
+            }
+            expected[i] /= to - from + 1;
+          }
+
+          assertArrayEquals(expected, BaselineAlgorithms.rollingBall(y, wm, ws));
+        }
+      }
+    }
+  }
+
+  @Test
+  void testRubberBandMatchesBruteForceHull() {
+    final Random random = new Random(11);
+    for (int n : new int[]{3, 4, 20, 120}) {
+      final double[] y = randomChromatogram(random, n);
+      for (double bendFactor : new double[]{0, 500}) {
+        final double[] bend = new double[n];
+        final double[] bent = new double[n];
+        for (int i = 0; i < n; i++) {
+          final double x = i / (double) (n - 1);
+          bend[i] = bendFactor * x * x;
+          bent[i] = y[i] + bend[i];
+        }
+
+        // the lower convex hull is the lowest line between two points left and right of i
+        final double[] expected = new double[n];
+        for (int i = 0; i < n; i++) {
+          double lowest = bent[i];
+          for (int a = 0; a <= i; a++) {
+            for (int b = i; b < n; b++) {
+              if (a != b) {
+                lowest = Math.min(lowest, bent[a] + (bent[b] - bent[a]) * (i - a) / (b - a));
+              }
+            }
+          }
+          expected[i] = lowest - bend[i];
+        }
+
+        final double[] baseline = BaselineAlgorithms.rubberBand(y, 0, 0, false, bendFactor);
+        assertArrayEquals(expected, baseline);
+        for (int i = 0; i < n; i++) {
+          Assertions.assertTrue(baseline[i] <= y[i] + EPSILON);
+        }
+        // the end points are always part of the hull
+        Assertions.assertEquals(y[0], baseline[0], EPSILON);
+        Assertions.assertEquals(y[n - 1], baseline[n - 1], EPSILON);
+      }
+    }
+  }
+
+  @Test
+  void testRubberBandSplineFollowsLinearBaseline() {
+    final int n = 200;
+    final double[] y = new double[n];
+    for (int i = 0; i < n; i++) {
+      y[i] = 50 + 0.5 * i + 800 * Math.exp(-Math.pow(i - 100, 2) / 50d);
+    }
+    // the supporting points lie on the line, the smoothing spline through them is the line itself
+    final double[] baseline = BaselineAlgorithms.rubberBand(y, 0, 10, true, 0);
+    for (int i = 0; i < n; i++) {
+      Assertions.assertEquals(50 + 0.5 * i, baseline[i], 1E-3, "index " + i);
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.gapfill_peakfinder;
+
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.Frame;
+import io.github.mzmine.datamodel.IMSRawDataFile;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.MobilityType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.data_access.BinningMobilogramDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.MobilityScanDataType;
+import io.github.mzmine.datamodel.data_access.EfficientDataAccess.ScanDataType;
+import io.github.mzmine.datamodel.data_access.MobilityScanDataAccess;
+import io.github.mzmine.datamodel.data_access.ScanDataAccess;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.impl.BuildingMobilityScan;
+import io.github.mzmine.datamodel.impl.SimpleFrame;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.dataprocessing.gapfill_peakfinder.multithreaded.ImsGap;
+import io.github.mzmine.project.impl.IMSRawDataFileImpl;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the gaps filled by the {@link GapSweepLine} with the previous loop that offered every
+ * scan to every gap.
+ */
+public class GapSweepLineTest {
+
+  private static final double INT_TOLERANCE = 0.2;
+
+  // {mz, apex rt, rt width, height}
+  private static final double[][] SIGNALS = { //
+      {200.00, 1.5, 0.3, 1E4}, //
+      {200.02, 2.5, 0.3, 5E3}, //
+      {300.00, 3.0, 0.4, 8E3}, //
+      {300.01, 3.2, 0.2, 2E3}, //
+      {450.00, 4.5, 0.3, 6E3}};
+
+  // {lower mz, upper mz, lower rt, upper rt}
+  private static final double[][] GAPS = { //
+      {199.99, 200.01, 1.2, 1.8}, //
+      {199.98, 200.03, 1.0, 3.0}, // overlaps the gaps before and after in m/z and rt
+      {200.015, 200.025, 2.2, 2.8}, //
+      {299.99, 300.02, 2.7, 3.5}, //
+      {299.995, 300.015, 2.9, 3.1}, //
+      {449.99, 450.01, 4.3, 4.7}, //
+      {449.99, 450.01, 4.4, 5.9}, // same lower m/z bound, open until the last scan
+      {500, 501, 0, 5.9}, // no signal
+      {100, 600, 0.5, 0.6}}; // contains the base peak of the scans
+
+  // {lower mz, upper mz, lower rt, upper rt}, the first gap ends before its peak does
+  private static final double[][] IMS_GAPS = { //
+      {299.99, 300.01, 0.8, 1.3}, //
+      {299.98, 300.02, 1.0, 2.0}, //
+      {300.005, 300.03, 1.1, 1.6}, //
+      {399.99, 400.01, 1.5, 2.2}, //
+      {399.99, 400.01, 0.0, 0.4}};
+
+  private static double rtProfile(double[] signal, double rt) {
+    final double x = (rt - signal[1]) / signal[2];
+    return signal[3] * Math.exp(-x * x / 2);
+  }
+
+  /**
+   * @return data points {mzs, intensities} of the signals and random noise (m/z 150-480), sorted
+   * by m/z.
+   */
+  private static double[][] spectrum(double[][] signals, double rt, double factor,
+      Random random) {
+    final int numNoise = 30;
+    final double[][] points = new double[signals.length + numNoise][];
+    for (int i = 0; i < signals.length; i++) {
+      points[i] = new double[]{signals[i][0], rtProfile(signals[i], rt) * factor};
+    }
+    for (int i = 0; i < numNoise; i++) {
+      points[signals.length + i] = new double[]{150d + random.nextDouble() * 330d,
+          random.nextDouble() * 20d};
+    }
+    Arrays.sort(points, (a, b) -> Double.compare(a[0], b[0]));
+    final double[][] data = new double[2][points.length];
+    for (int i = 0; i < points.length; i++) {
+      data[0][i] = points[i][0];
+      data[1][i] = points[i][1];
+    }
+    return data;
+  }
+
+  private static <T extends Gap> void finish(List<T> gaps) {
+    // same as noMoreOffers, without creating the feature
+    for (Gap gap : gaps) {
+      if (gap.currentPeakDataPoints != null) {
+        gap.checkCurrentPeak();
+        gap.currentPeakDataPoints = null;
+      }
+    }
+  }
+
+  private static <T extends Gap> void assertSameResult(List<T> expected, List<T> actual) {
+    Assertions.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      final List<GapDataPoint> expectedPeak = expected.get(i).bestPeakDataPoints;
+      final List<GapDataPoint> actualPeak = actual.get(i).bestPeakDataPoints;
+      if (expectedPeak == null) {
+        Assertions.assertNull(actualPeak, "gap " + i);
+        continue;
+      }
+      Assertions.assertNotNull(actualPeak, "gap " + i);
+      Assertions.assertEquals(expectedPeak.size(), actualPeak.size(), "gap " + i);
+      for (int j = 0; j < expectedPeak.size(); j++) {
+        Assertions.assertEquals(expectedPeak.get(j).getRT(), actualPeak.get(j).getRT(), "gap " + i);
+        Assertions.assertEquals(expectedPeak.get(j).getMZ(), actualPeak.get(j).getMZ(), "gap " + i);
+        Assertions.assertEquals(expectedPeak.get(j).getIntensity(),
+            actualPeak.get(j).getIntensity(), "gap " + i);
+      }
+    }
+  }
+
+  private static List<Scan> createScans(RawDataFile file) throws IOException {
+    final Random random = new Random(42);
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      final float rt = i * 0.1f;
+      final double[][] data = spectrum(SIGNALS, rt, 1d, random);
+      final SimpleScan scan = new SimpleScan(file, i, 1, rt, null, data[0], data[1],
+          MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "", Range.closed(100d, 600d));
+      file.addScan(scan);
+      scans.add(scan);
+    }
+    return scans;
+  }
+
+  private static List<Gap> createGaps(RawDataFile file) {
+    final List<Gap> gaps = new ArrayList<>();
+    for (double[] g : GAPS) {
+      gaps.add(new Gap(null, file, Range.closed(g[0], g[1]), Range.closed((float) g[2],
+          (float) g[3]), INT_TOLERANCE));
+    }
+    return gaps;
+  }
+
+  private static void offerToAllGaps(ScanDataAccess access, List<? extends Gap> gaps) {
+    while (access.hasNextScan()) {
+      access.nextScan();
+      for (Gap gap : gaps) {
+        gap.offerNextScan(access);
+      }
+    }
+  }
+
+  @Test
+  void testSweepLineFillsSameGaps() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("gap sweep test", null, null, Color.BLACK);
+    final List<Scan> scans = createScans(file);
+
+    final List<Gap> expected = createGaps(file);
+    offerToAllGaps(EfficientDataAccess.of(file, ScanDataType.RAW, scans), expected);
+    finish(expected);
+    // the data covers gaps with and without peaks
+    Assertions.assertTrue(expected.stream().filter(g -> g.bestPeakDataPoints != null).count() >= 6);
+    Assertions.assertNull(expected.get(7).bestPeakDataPoints);
+
+    final List<Gap> actual = createGaps(file);
+    final GapSweepLine<Gap> sweepLine = new GapSweepLine<>(actual);
+    final ScanDataAccess access = EfficientDataAccess.of(file, ScanDataType.RAW, scans);
+    while (access.hasNextScan()) {
+      access.nextScan();
+      sweepLine.offerNextScan(access);
+    }
+    finish(actual);
+    Assertions.assertEquals(2, sweepLine.getNumberOfActiveGaps(),
+        "only the gaps open until the last scan may be active");
+
+    assertSameResult(expected, actual);
+  }
+
+  @Test
+  void testUnsortedScansFallBackToAllGaps() throws IOException {
+    final RawDataFile file = new RawDataFileImpl("gap sweep test", null, null, Color.BLACK);
+    final List<Scan> scans = new ArrayList<>(createScans(file));
+    // swap two scans within the rt range of several gaps
+    final Scan scan = scans.set(14, scans.get(16));
+    scans.set(16, scan);
+
+    final List<Gap> expected = createGaps(file);
+    offerToAllGaps(EfficientDataAccess.of(file, ScanDataType.RAW, scans), expected);
+    finish(expected);
+
+    final List<Gap> actual = createGaps(file);
+    final GapSweepLine<Gap> sweepLine = new GapSweepLine<>(actual);
+    final ScanDataAccess access = EfficientDataAccess.of(file, ScanDataType.RAW, scans);
+    while (access.hasNextScan()) {
+      access.nextScan();
+      sweepLine.offerNextScan(access);
+    }
+    finish(actual);
+    Assertions.assertEquals(actual.size(), sweepLine.getNumberOfActiveGaps());
+
+    assertSameResult(expected, actual);
+  }
+
+  private static List<Frame> createFrames(IMSRawDataFile file) throws IOException {
+    // {mz, apex rt, rt width, height}, decreasing slowly after the first ims gap
+    final double[][] signals = {{300.00, 1.1, 0.3, 1E4}, {300.02, 1.4, 0.2, 4E3},
+        {400.00, 1.8, 0.2, 5E3}};
+    final Random random = new Random(7);
+    final int numMobilityScans = 10;
+    final double[] mobilities = new double[numMobilityScans];
+    for (int i = 0; i < numMobilityScans; i++) {
+      mobilities[i] = 1.5 - i * 0.01;
+    }
+
+    final List<Frame> frames = new ArrayList<>();
+    for (int f = 0; f < 30; f++) {
+      final float rt = f * 0.1f;
+      final SimpleFrame frame = new SimpleFrame(file, f, 1, rt, new double[]{0d},
+          new double[]{1d}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "test",
+          Range.closed(100d, 600d), MobilityType.TIMS, null, null);
+      final List<BuildingMobilityScan> scans = new ArrayList<>();
+      for (int s = 0; s < numMobilityScans; s++) {
+        // mobility peak in the middle of the frame
+        final double factor = Math.exp(-(s - 4.5) * (s - 4.5) / 8d);
+        final double[][] data = spectrum(signals, rt, factor, random);
+        scans.add(new BuildingMobilityScan(s, data[0], data[1]));
+      }
+      frame.setMobilities(mobilities);
+      frame.setMobilityScans(scans, false);
+      file.addScan(frame);
+      frames.add(frame);
+    }
+    return frames;
+  }
+
+  private static List<ImsGap> createImsGaps(RawDataFile file) {
+    final BinningMobilogramDataAccess binning = mock(BinningMobilogramDataAccess.class);
+    final List<ImsGap> gaps = new ArrayList<>();
+    for (double[] g : IMS_GAPS) {
+      gaps.add(new ImsGap(mock(FeatureListRow.class), file, Range.closed(g[0], g[1]),
+          Range.closed((float) g[2], (float) g[3]), Range.closed(1.42f, 1.48f), INT_TOLERANCE,
+          binning));
+    }
+    return gaps;
+  }
+
+  @Test
+  void testSweepLineFillsSameImsGaps() throws IOException {
+    final IMSRawDataFile file = new IMSRawDataFileImpl("ims gap sweep test", null, null,
+        Color.BLACK);
+    final List<Frame> frames = createFrames(file);
+
+    // the previous loop of the MultiThreadPeakFinderTask
+    final List<ImsGap> expected = createImsGaps(file);
+    final MobilityScanDataAccess expectedAccess = new MobilityScanDataAccess(file,
+        MobilityScanDataType.RAW, frames);
+    while (expectedAccess.hasNextFrame()) {
+      expectedAccess.nextFrame();
+      for (ImsGap gap : expected) {
+        expectedAccess.resetMobilityScan();
+        gap.offerNextScan(expectedAccess);
+      }
+    }
+    finish(expected);
+
+    final List<ImsGap> actual = createImsGaps(file);
+    final GapSweepLine<ImsGap> sweepLine = new GapSweepLine<>(actual);
+    final MobilityScanDataAccess access = new MobilityScanDataAccess(file,
+        MobilityScanDataType.RAW, frames);
+    boolean firstGapActiveAfterRange = false;
+    while (access.hasNextFrame()) {
+      final Frame frame = access.nextFrame();
+      final List<ImsGap> activeGaps = sweepLine.advanceTo(frame.getRetentionTime());
+      for (ImsGap gap : activeGaps) {
+        access.resetMobilityScan();
+        gap.offerNextScan(access);
+      }
+      if (frame.getRetentionTime() > IMS_GAPS[0][3] && activeGaps.contains(actual.get(0))) {
+        firstGapActiveAfterRange = true;
+      }
+    }
+    finish(actual);
+
+    // the peak of the first gap extends beyond its rt range, ImsGap.isFinishedAt keeps it active
+    Assertions.assertTrue(firstGapActiveAfterRange);
+    final List<GapDataPoint> firstPeak = expected.get(0).bestPeakDataPoints;
+    Assertions.assertNotNull(firstPeak);
+    Assertions.assertTrue(firstPeak.get(firstPeak.size() - 1).getRT() > IMS_GAPS[0][3]);
+    Assertions.assertTrue(
+        expected.stream().filter(g -> g.bestPeakDataPoints != null).count() >= 4);
+
+    assertSameResult(expected, actual);
+  }
+}
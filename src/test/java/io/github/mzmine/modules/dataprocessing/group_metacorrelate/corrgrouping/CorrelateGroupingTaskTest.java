@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.group_metacorrelate.corrgrouping;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.FeatureStatus;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.features.FeatureListRow;
+import io.github.mzmine.datamodel.features.ModularFeature;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.correlation.R2RMap;
+import io.github.mzmine.datamodel.features.types.DetectionType;
+import io.github.mzmine.datamodel.features.types.RawFileType;
+import io.github.mzmine.datamodel.features.types.numbers.HeightType;
+import io.github.mzmine.datamodel.features.types.numbers.RTType;
+import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter;
+import io.github.mzmine.parameters.parametertypes.MinimumFeatureFilter.OverlapResult;
+import io.github.mzmine.parameters.parametertypes.absoluterelative.AbsoluteNRelativeInt;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import io.github.mzmine.parameters.parametertypes.tolerances.RTTolerance.Unit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class CorrelateGroupingTaskTest {
+
+  /**
+   * Rows in RT order with features in some of the raw data files. RTs of the features of a row
+   * scatter around the row RT.
+   */
+  private static FeatureListRow[] createRows(Random random, List<RawDataFile> raws) {
+    final ModularFeatureList flist = new ModularFeatureList("list", null, raws);
+    final FeatureListRow[] rows = new FeatureListRow[400];
+    float rt = 1f;
+    for (int i = 0; i < rows.length; i++) {
+      rt += random.nextFloat() * 0.05f;
+      final ModularFeatureListRow row = new ModularFeatureListRow(flist, i + 1);
+      for (RawDataFile raw : raws) {
+        if (random.nextInt(4) == 0) {
+          continue;
+        }
+        final ModularFeature feature = new ModularFeature(flist);
+        feature.set(RawFileType.class, raw);
+        feature.set(DetectionType.class, FeatureStatus.DETECTED);
+        feature.set(RTType.class, rt + (random.nextFloat() - 0.5f) * 0.2f);
+        feature.set(HeightType.class, 1000f);
+        row.addFeature(raw, feature);
+      }
+      rows[i] = row;
+    }
+    return rows;
+  }
+
+  /**
+   * Same R2R map with and without the RT window sweep, for the pairs that pass the overlap filter
+   */
+  private static void assertSamePairs(FeatureListRow[] rows, List<RawDataFile> raws,
+      MinimumFeatureFilter filter, RTTolerance rtTolerance) {
+    assertTrue(filter.requiresFeatureOverlap(raws.size()));
+
+    final R2RMap<Boolean> full = new R2RMap<>();
+    final List<int[]> fullPairs = new ArrayList<>();
+    for (int i = 0; i < rows.length - 1; i++) {
+      for (int x = i + 1; x < rows.length; x++) {
+        if (filter.filterMinFeaturesOverlap(null, raws, rows[i], rows[x], rtTolerance)
+            .equals(OverlapResult.TRUE)) {
+          full.add(rows[i], rows[x], true);
+          fullPairs.add(new int[]{i, x});
+        }
+      }
+    }
+
+    final R2RMap<Boolean> pruned = new R2RMap<>();
+    final AtomicInteger compared = new AtomicInteger();
+    final CorrelateGroupingTask.RTWindows windows = new CorrelateGroupingTask.RTWindows(rows,
+        rtTolerance);
+    for (int s = 0; s < rows.length; s++) {
+      windows.forEachOverlappingPair(s, (i, x) -> {
+        assertTrue(i < x);
+        compared.incrementAndGet();
+        if (filter.filterMinFeaturesOverlap(null, raws, rows[i], rows[x], rtTolerance)
+            .equals(OverlapResult.TRUE)) {
+          pruned.add(rows[i], rows[x], true);
+        }
+        return true;
+      });
+    }
+
+    assertTrue(full.size() > 0);
+    assertEquals(full.size(), pruned.size());
+    for (int[] pair : fullPairs) {
+      assertNotNull(pruned.get(rows[pair[0]], rows[pair[1]]));
+    }
+    // the sweep skips most pairs
+    assertTrue(compared.get() < rows.length * (rows.length - 1) / 4);
+  }
+
+  @Test
+  void testRTWindowsFindAllOverlappingPairs() {
+    final List<RawDataFile> raws = List.of(Mockito.mock(RawDataFile.class),
+        Mockito.mock(RawDataFile.class), Mockito.mock(RawDataFile.class));
+    final FeatureListRow[] rows = createRows(new Random(42), raws);
+
+    final MinimumFeatureFilter oneSample = new MinimumFeatureFilter(
+        new AbsoluteNRelativeInt(1, 0), new AbsoluteNRelativeInt(0, 0), 0, 0, false);
+    final MinimumFeatureFilter twoSamples = new MinimumFeatureFilter(
+        new AbsoluteNRelativeInt(2, 0), new AbsoluteNRelativeInt(0, 0), 0, 0, false);
+    for (MinimumFeatureFilter filter : List.of(oneSample, twoSamples)) {
+      assertSamePairs(rows, raws, filter, new RTTolerance(0.1f, Unit.MINUTES));
+      assertSamePairs(rows, raws, filter, new RTTolerance(3f, Unit.SECONDS));
+      assertSamePairs(rows, raws, filter, new RTTolerance(2f, Unit.PERCENT));
+    }
+  }
+
+  @Test
+  void testWithoutToleranceAllPairsAreCompared() {
+    final List<RawDataFile> raws = List.of(Mockito.mock(RawDataFile.class));
+    final FeatureListRow[] rows = createRows(new Random(1), raws);
+    final CorrelateGroupingTask.RTWindows windows = new CorrelateGroupingTask.RTWindows(rows,
+        null);
+    final AtomicInteger compared = new AtomicInteger();
+    for (int s = 0; s < rows.length; s++) {
+      windows.forEachOverlappingPair(s, (i, x) -> {
+        compared.incrementAndGet();
+        return true;
+      });
+    }
+    assertEquals(rows.length * (rows.length - 1) / 2, compared.get());
+  }
+}
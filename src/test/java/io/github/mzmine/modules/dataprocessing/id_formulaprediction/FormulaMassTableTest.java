@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_formulaprediction;
+
+import com.google.common.collect.Range;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openscience.cdk.config.IsotopeFactory;
+import org.openscience.cdk.config.Isotopes;
+import org.openscience.cdk.formula.MolecularFormulaGenerator;
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
+
+/**
+ * Compares the formulas of the {@link FormulaMassTable} with the CDK
+ * {@link MolecularFormulaGenerator} that was used for each row before.
+ */
+public class FormulaMassTableTest {
+
+  private static final double PPM = 5;
+
+  private final IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+  @TempDir
+  Path tempDir;
+
+  /**
+   * The default element ranges of the formula prediction
+   */
+  private static MolecularFormulaRange chnops() throws IOException {
+    final IsotopeFactory iFac = Isotopes.getInstance();
+    final MolecularFormulaRange range = new MolecularFormulaRange();
+    range.addIsotope(iFac.getMajorIsotope("C"), 0, 100);
+    range.addIsotope(iFac.getMajorIsotope("H"), 0, 100);
+    range.addIsotope(iFac.getMajorIsotope("N"), 0, 50);
+    range.addIsotope(iFac.getMajorIsotope("O"), 0, 50);
+    range.addIsotope(iFac.getMajorIsotope("P"), 0, 30);
+    range.addIsotope(iFac.getMajorIsotope("S"), 0, 30);
+    return range;
+  }
+
+  private static MolecularFormulaRange withMinimumCounts() throws IOException {
+    final IsotopeFactory iFac = Isotopes.getInstance();
+    final MolecularFormulaRange range = new MolecularFormulaRange();
+    range.addIsotope(iFac.getMajorIsotope("C"), 5, 60);
+    range.addIsotope(iFac.getMajorIsotope("H"), 4, 120);
+    range.addIsotope(iFac.getMajorIsotope("N"), 0, 6);
+    range.addIsotope(iFac.getMajorIsotope("O"), 1, 15);
+    range.addIsotope(iFac.getMajorIsotope("Na"), 0, 1);
+    range.addIsotope(iFac.getMajorIsotope("Cl"), 0, 3);
+    range.addIsotope(iFac.getMajorIsotope("Br"), 0, 2);
+    return range;
+  }
+
+  @Test
+  void testDefaultElementsMatchGenerator() throws IOException {
+    final MolecularFormulaRange elements = chnops();
+    final double[] masses = {74.0368, 180.0634, 301.1410, 524.3711};
+    final FormulaMassTable table = new FormulaMassTable(elements, 530);
+    for (double mass : masses) {
+      assertSameFormulas(elements, table, ppmRange(mass));
+    }
+    Assertions.assertTrue(
+        formulaStrings(table.getFormulas(ppmRange(180.0634), builder)).contains("C6H12O6"));
+  }
+
+  @Test
+  void testMinimumCountsAndHalogensMatchGenerator() throws IOException {
+    final MolecularFormulaRange elements = withMinimumCounts();
+    final double[] masses = {151.0633, 249.9822, 410.1245, 612.2671, 799.9};
+    final FormulaMassTable table = new FormulaMassTable(elements, 800);
+    for (double mass : masses) {
+      assertSameFormulas(elements, table, ppmRange(mass));
+    }
+  }
+
+  @Test
+  void testSingleElement() throws IOException {
+    final MolecularFormulaRange elements = new MolecularFormulaRange();
+    elements.addIsotope(Isotopes.getInstance().getMajorIsotope("C"), 1, 20);
+    final FormulaMassTable table = new FormulaMassTable(elements, 250);
+    assertSameFormulas(elements, table, Range.closed(119.999, 120.001));
+    Assertions.assertTrue(table.getFormulas(Range.closed(121d, 130d), builder).isEmpty());
+  }
+
+  @Test
+  void testCachedTableIsReused() throws IOException {
+    final MolecularFormulaRange elements = withMinimumCounts();
+    final File cacheDir = tempDir.resolve("cache").toFile();
+
+    final FormulaMassTable built = FormulaMassTable.loadOrBuild(elements, 500, cacheDir);
+    final File[] files = cacheDir.listFiles();
+    Assertions.assertNotNull(files);
+    Assertions.assertEquals(1, files.length);
+
+    // a lower maximum mass is covered by the cached table
+    final FormulaMassTable cached = FormulaMassTable.loadOrBuild(elements, 400, cacheDir);
+    Assertions.assertEquals(500, cached.getMaxMass());
+    Assertions.assertEquals(built.size(), cached.size());
+    for (double mass : new double[]{151.0633, 249.9822, 399.5}) {
+      Assertions.assertEquals(formulaStrings(built.getFormulas(ppmRange(mass), builder)),
+          formulaStrings(cached.getFormulas(ppmRange(mass), builder)));
+    }
+
+    // a higher maximum mass replaces the cached table
+    final FormulaMassTable larger = FormulaMassTable.loadOrBuild(elements, 700, cacheDir);
+    Assertions.assertEquals(700, larger.getMaxMass());
+    Assertions.assertEquals(1, cacheDir.listFiles().length);
+    Assertions.assertEquals(700,
+        FormulaMassTable.loadOrBuild(elements, 600, cacheDir).getMaxMass());
+    assertSameFormulas(elements, FormulaMassTable.loadOrBuild(elements, 650, cacheDir),
+        ppmRange(612.2671));
+
+    // other element ranges do not use the same cache file
+    FormulaMassTable.loadOrBuild(chnops(), 200, cacheDir);
+    Assertions.assertEquals(2, cacheDir.listFiles().length);
+  }
+
+  @Test
+  void testCorruptCacheIsRebuilt() throws IOException {
+    final MolecularFormulaRange elements = withMinimumCounts();
+    final File cacheDir = tempDir.resolve("corrupt").toFile();
+    final FormulaMassTable built = FormulaMassTable.loadOrBuild(elements, 300, cacheDir);
+
+    final File file = cacheDir.listFiles()[0];
+    final byte[] data = Files.readAllBytes(file.toPath());
+    Files.write(file.toPath(), Arrays.copyOf(data, data.length / 2));
+
+    final FormulaMassTable rebuilt = FormulaMassTable.loadOrBuild(elements, 300, cacheDir);
+    Assertions.assertEquals(built.size(), rebuilt.size());
+    Assertions.assertEquals(data.length, file.length());
+  }
+
+  private Range<Double> ppmRange(double mass) {
+    final double delta = mass * PPM / 1E6;
+    return Range.closed(mass - delta, mass + delta);
+  }
+
+  private void assertSameFormulas(MolecularFormulaRange elements, FormulaMassTable table,
+      Range<Double> massRange) {
+    final MolecularFormulaGenerator generator = new MolecularFormulaGenerator(builder,
+        massRange.lowerEndpoint(), massRange.upperEndpoint(), elements);
+    final Set<String> expected = new TreeSet<>();
+    IMolecularFormula formula;
+    while ((formula = generator.getNextFormula()) != null) {
+      expected.add(MolecularFormulaManipulator.getString(formula));
+    }
+
+    final Set<String> actual = formulaStrings(table.getFormulas(massRange, builder));
+    Assertions.assertEquals(expected, actual, "Formulas in " + massRange);
+  }
+
+  private static Set<String> formulaStrings(List<IMolecularFormula> formulas) {
+    final Set<String> strings = new TreeSet<>();
+    for (IMolecularFormula formula : formulas) {
+      Assertions.assertTrue(strings.add(MolecularFormulaManipulator.getString(formula)),
+          "Duplicate formula " + MolecularFormulaManipulator.getString(formula));
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.dataprocessing.id_lipididentification.lipididentificationtools;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.IonizationType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.LipidAnnotationLevel;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.LipidClasses;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipids.LipidFragment;
+import io.github.mzmine.modules.dataprocessing.id_lipididentification.lipidutils.LipidChainType;
+import io.github.mzmine.util.FormulaUtils;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the precomputed fragment masses with matching every chain formula one after another, as
+ * MSMSLipidTools did before the masses were indexed.
+ */
+public class LipidFragmentationRuleMassesTest {
+
+  private static final double[] PRECURSORS = {524.3711, 760.5851, 885.5499, 1012.1234};
+  private static final double TOLERANCE = 0.005;
+
+  private final PerFormulaReference reference = new PerFormulaReference();
+
+  @Test
+  void testAllRuleTypesMatchReference() {
+    final Set<LipidFragmentationRuleType> tested = EnumSet.noneOf(
+        LipidFragmentationRuleType.class);
+    for (LipidFragmentationRuleType type : LipidFragmentationRuleType.values()) {
+      for (PolarityType polarity : new PolarityType[]{PolarityType.POSITIVE,
+          PolarityType.NEGATIVE}) {
+        final IonizationType ionization =
+            polarity == PolarityType.POSITIVE ? IonizationType.POSITIVE_HYDROGEN
+                : IonizationType.NEGATIVE_HYDROGEN;
+        final String formula = switch (type) {
+          case HEADGROUP_FRAGMENT -> polarity == PolarityType.POSITIVE ? "C5H15NO4P+" : "C3H6O5P-";
+          case HEADGROUP_FRAGMENT_NL -> "C3H9N";
+          default -> "C2H5O4P";
+        };
+        compareRule(new LipidFragmentationRule(polarity, ionization, type,
+            LipidAnnotationLevel.MOLECULAR_SPECIES_LEVEL, formula));
+        tested.add(type);
+      }
+    }
+    Assertions.assertEquals(EnumSet.allOf(LipidFragmentationRuleType.class), tested);
+  }
+
+  @Test
+  void testLipidClassRulesMatchReference() {
+    for (LipidClasses lipidClass : LipidClasses.values()) {
+      for (LipidFragmentationRule rule : lipidClass.getFragmentationRules()) {
+        if (rule.getLipidFragmentationRuleType() != null) {
+          compareRule(rule);
+        }
+      }
+    }
+  }
+
+  private void compareRule(LipidFragmentationRule rule) {
+    final LipidFragmentationRuleMasses masses = LipidFragmentationRuleMasses.of(rule);
+    Assertions.assertNotNull(masses, rule.toString());
+    final Random random = new Random(17);
+
+    for (double precursor : PRECURSORS) {
+      final List<Range<Double>> queries = new ArrayList<>();
+      final List<Double> candidates = reference.candidates(rule, precursor);
+      // limit the number of candidates of rules with two chains
+      final int step = Math.max(1, candidates.size() / 100);
+      // CDK sums the isotope masses of ionic formulas in hash order, so the last bit of
+      // calculateMzRatio differs between calls and the borders cannot be compared exactly
+      final boolean exactBorders =
+          rule.getLipidFragmentationRuleType() != LipidFragmentationRuleType.HEADGROUP_FRAGMENT;
+      for (int i = 0; i < candidates.size(); i += step) {
+        final double mz = candidates.get(i);
+        queries.add(Range.closed(mz - TOLERANCE, mz + TOLERANCE));
+        if (!exactBorders) {
+          continue;
+        }
+        // the candidate exactly on the borders of the tolerance range
+        queries.add(Range.closed(mz, mz + 2 * TOLERANCE));
+        queries.add(Range.closed(mz - 2 * TOLERANCE, mz));
+        // the candidate just outside of the range
+        queries.add(Range.closed(Math.nextUp(mz), mz + 2 * TOLERANCE));
+        queries.add(Range.closed(mz - 2 * TOLERANCE, Math.nextDown(mz)));
+      }
+      for (int i = 0; i < 200; i++) {
+        final double mz = 50 + random.nextDouble() * 1000;
+        queries.add(Range.closed(mz - TOLERANCE, mz + TOLERANCE));
+      }
+
+      for (Range<Double> range : queries) {
+        final LipidFragment expected = reference.match(rule, range, precursor);
+        final LipidFragment actual = masses.findFragment(range, precursor, null, null, null);
+        assertSameFragment(expected, actual, rule + " precursor " + precursor + " " + range);
+      }
+    }
+  }
+
+  private static void assertSameFragment(LipidFragment expected, LipidFragment actual,
+      String message) {
+    if (expected == null) {
+      Assertions.assertNull(actual, message);
+      return;
+    }
+    Assertions.assertNotNull(actual, message);
+    Assertions.assertEquals(expected.getRuleType(), actual.getRuleType(), message);
+    Assertions.assertEquals(expected.getMzExact(), actual.getMzExact(), 1E-9, message);
+    Assertions.assertEquals(expected.getChainLength(), actual.getChainLength(), message);
+    Assertions.assertEquals(expected.getNumberOfDBEs(), actual.getNumberOfDBEs(), message);
+    Assertions.assertEquals(expected.getLipidChainType(), actual.getLipidChainType(), message);
+  }
+
+  /**
+   * Matches the chain formulas one after another and returns the first match.
+   */
+  private static class PerFormulaReference {
+
+    private final ChainTools chainTools = new ChainTools();
+    private final List<String> fattyAcids = chainTools.calculateFattyAcidFormulas();
+    private final List<String> hydroCarbons = chainTools.calculateHydroCarbonFormulas();
+    private final Map<String, Double> masses = new HashMap<>();
+
+    private double mass(String formula) {
+      return masses.computeIfAbsent(formula, FormulaUtils::calculateExactMass);
+    }
+
+    /**
+     * @return the m/z that is checked against the tolerance range for each chain formula.
+     */
+    List<Double> candidates(LipidFragmentationRule rule, double precursor) {
+      final List<Double> candidates = new ArrayList<>();
+      final LipidFragmentationRuleType type = rule.getLipidFragmentationRuleType();
+      if (type == LipidFragmentationRuleType.TWO_ACYLCHAINS_PLUS_FORMULA_FRAGMENT) {
+        final double fragment = mass(rule.getMolecularFormula());
+        for (String one : fattyAcids) {
+          for (String two : fattyAcids) {
+            candidates.add(mass(one) + mass(two) + fragment);
+          }
+        }
+        return candidates;
+      }
+      final List<String> chains = switch (type) {
+        case HEADGROUP_FRAGMENT, HEADGROUP_FRAGMENT_NL -> List.of("");
+        case ACYLCHAIN_FRAGMENT, ACYLCHAIN_FRAGMENT_NL, ACYLCHAIN_MINUS_FORMULA_FRAGMENT,
+            ACYLCHAIN_MINUS_FORMULA_FRAGMENT_NL, ACYLCHAIN_PLUS_FORMULA_FRAGMENT,
+            ACYLCHAIN_PLUS_FORMULA_FRAGMENT_NL -> fattyAcids;
+        default -> hydroCarbons;
+      };
+      for (String chain : chains) {
+        final Double mz = checkedMz(rule, chain, precursor);
+        if (mz != null) {
+          candidates.add(mz);
+        }
+      }
+      return candidates;
+    }
+
+    /**
+     * @return the m/z of the chain formula that is checked against the tolerance range, or null if
+     * the rule does not apply.
+     */
+    private Double checkedMz(LipidFragmentationRule rule, String chain, double precursor) {
+      final boolean negative = rule.getPolarityType().equals(PolarityType.NEGATIVE);
+      final String formula = rule.getMolecularFormula();
+      return switch (rule.getLipidFragmentationRuleType()) {
+        case HEADGROUP_FRAGMENT -> FormulaUtils.calculateMzRatio(formula);
+        case HEADGROUP_FRAGMENT_NL -> precursor - FormulaUtils.calculateExactMass(formula);
+        case ACYLCHAIN_FRAGMENT ->
+            negative ? mass(chain) + IonizationType.NEGATIVE_HYDROGEN.getAddedMass() : null;
+        case ACYLCHAIN_FRAGMENT_NL, ALKYLCHAIN_FRAGMENT_NL -> precursor - mass(chain);
+        case ACYLCHAIN_MINUS_FORMULA_FRAGMENT -> negative ? mass(chain) - mass(formula) : null;
+        case ACYLCHAIN_MINUS_FORMULA_FRAGMENT_NL, ALKYLCHAIN_MINUS_FORMULA_FRAGMENT_NL ->
+            precursor - mass(chain) - mass(formula);
+        case ACYLCHAIN_PLUS_FORMULA_FRAGMENT, ALKYLCHAIN_PLUS_FORMULA_FRAGMENT ->
+            LipidFragmentationRuleMasses.ionizeFragmentBasedOnPolarity(
+                mass(chain) + mass(formula), rule.getPolarityType());
+        case ACYLCHAIN_PLUS_FORMULA_FRAGMENT_NL, ALKYLCHAIN_PLUS_FORMULA_FRAGMENT_NL ->
+            precursor - mass(chain) + mass(formula);
+        case ALKYLCHAIN_FRAGMENT ->
+            LipidFragmentationRuleMasses.ionizeFragmentBasedOnPolarity(mass(chain),
+                rule.getPolarityType());
+        case ALKYLCHAIN_MINUS_FORMULA_FRAGMENT -> negative ? FormulaUtils.calculateExactMass(
+            chain + IonizationType.NEGATIVE_HYDROGEN.getAddedMass()) - mass(formula) : null;
+        case TWO_ACYLCHAINS_PLUS_FORMULA_FRAGMENT -> throw new IllegalArgumentException();
+      };
+    }
+
+    LipidFragment match(LipidFragmentationRule rule, Range<Double> range, double precursor) {
+      final LipidFragmentationRuleType type = rule.getLipidFragmentationRuleType();
+      if (type == LipidFragmentationRuleType.TWO_ACYLCHAINS_PLUS_FORMULA_FRAGMENT) {
+        final double fragment = mass(rule.getMolecularFormula());
+        for (String one : fattyAcids) {
+          for (String two : fattyAcids) {
+            final double mz = mass(one) + mass(two) + fragment;
+            if (range.contains(mz)) {
+              return new LipidFragment(type, rule.getLipidFragmentInformationLevelType(),
+                  LipidFragmentationRuleMasses.ionizeFragmentBasedOnPolarity(mz,
+                      rule.getPolarityType()), null, null, null, null, null, null);
+            }
+          }
+        }
+        return null;
+      }
+      if (type == LipidFragmentationRuleType.HEADGROUP_FRAGMENT
+          || type == LipidFragmentationRuleType.HEADGROUP_FRAGMENT_NL) {
+        final Double mz = checkedMz(rule, "", precursor);
+        if (mz == null || !range.contains(mz)) {
+          return null;
+        }
+        return new LipidFragment(type, rule.getLipidFragmentInformationLevelType(), mz, null,
+            null, null, null,
+            type == LipidFragmentationRuleType.HEADGROUP_FRAGMENT_NL ? LipidChainType.ACYL_CHAIN
+                : null, null);
+      }
+
+      final boolean acyl = type.name().startsWith("ACYL");
+      final LipidChainType chainType = switch (type) {
+        // as in the original implementation
+        case ALKYLCHAIN_FRAGMENT, ALKYLCHAIN_FRAGMENT_NL, ALKYLCHAIN_MINUS_FORMULA_FRAGMENT ->
+            LipidChainType.ALKYL_CHAIN;
+        default -> LipidChainType.ACYL_CHAIN;
+      };
+      for (String chain : acyl ? fattyAcids : hydroCarbons) {
+        final Double mz = checkedMz(rule, chain, precursor);
+        if (mz != null && range.contains(mz)) {
+          return new LipidFragment(type, rule.getLipidFragmentInformationLevelType(), mz, null,
+              null, chainTools.getChainLengthFromFormula(chain),
+              chainTools.getNumberOfDoubleBondsFromFormula(chain), chainType, null);
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.import_rawdata_mzml.msdk;
+
+import io.github.msdk.datamodel.MsScan;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.data.MzMLRawDataFile;
+import io.github.mzmine.modules.io.import_rawdata_mzml.msdk.util.FileMemoryMapper;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IndexedMzMLParallelReaderTest {
+
+  private static final int NUM_SPECTRA = 97;
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void testParallelReaderMatchesSequentialParser() throws Exception {
+    final File file = writeIndexedMzML(tempDir.resolve("parallel.mzML"), new Random(17));
+    Assertions.assertNotNull(
+        IndexedMzMLParallelReader.create(new MzMLFileImportMethod(file),
+            FileMemoryMapper.mapToMemory(file)), "The index of the test file was not accepted");
+
+    final MzMLRawDataFile sequential = read(file, 1);
+    final MzMLRawDataFile parallel = read(file, 4);
+
+    final List<MsScan> expected = sequential.getScans();
+    final List<MsScan> actual = parallel.getScans();
+    Assertions.assertEquals(NUM_SPECTRA, expected.size());
+    Assertions.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      final MsScan e = expected.get(i);
+      final MsScan a = actual.get(i);
+      Assertions.assertEquals(e.getScanNumber(), a.getScanNumber());
+      Assertions.assertEquals(e.getMsLevel(), a.getMsLevel());
+      Assertions.assertEquals(e.getRetentionTime(), a.getRetentionTime());
+      Assertions.assertArrayEquals(e.getMzValues(), a.getMzValues());
+      Assertions.assertArrayEquals(e.getIntensityValues(), a.getIntensityValues());
+    }
+  }
+
+  @Test
+  void testDecodedScansAreStreamedInOrder() throws Exception {
+    final File file = writeIndexedMzML(tempDir.resolve("streamed.mzML"), new Random(23));
+    final List<MsScan> expected = read(file, 1).getScans();
+
+    final MzMLFileImportMethod importer = new MzMLFileImportMethod(file);
+    importer.setNumThreads(4);
+    final MzMLRawDataFile parallel = importer.execute();
+
+    int i = 0;
+    for (MsScan scan : importer.getDecodedScans()) {
+      final MsScan e = expected.get(i);
+      Assertions.assertSame(parallel.getScans().get(i), scan);
+      Assertions.assertEquals(e.getScanNumber(), scan.getScanNumber());
+      Assertions.assertArrayEquals(e.getMzValues(), scan.getMzValues());
+      Assertions.assertArrayEquals(e.getIntensityValues(), scan.getIntensityValues());
+      i++;
+    }
+    Assertions.assertEquals(NUM_SPECTRA, i);
+
+    // released data is decoded again on access
+    for (int s = 0; s < expected.size(); s++) {
+      Assertions.assertArrayEquals(expected.get(s).getMzValues(),
+          parallel.getScans().get(s).getMzValues());
+    }
+  }
+
+  private static MzMLRawDataFile read(File file, int numThreads) throws Exception {
+    final MzMLFileImportMethod importer = new MzMLFileImportMethod(file);
+    importer.setNumThreads(numThreads);
+    return importer.execute();
+  }
+
+  /**
+   * Writes an indexedmzML file with uncompressed 64-bit m/z and 32-bit intensity arrays of
+   * different lengths, alternating MS1 and MS2 spectra.
+   */
+  private static File writeIndexedMzML(Path path, Random random) throws Exception {
+    final StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    xml.append("<indexedmzML xmlns=\"http://psi.hupo.org/ms/mzml\">\n");
+    xml.append("<mzML xmlns=\"http://psi.hupo.org/ms/mzml\" version=\"1.1.0\">\n");
+    xml.append("<run id=\"test\" defaultInstrumentConfigurationRef=\"IC1\">\n");
+    xml.append("<spectrumList count=\"").append(NUM_SPECTRA)
+        .append("\" defaultDataProcessingRef=\"DP1\">\n");
+
+    final List<Integer> offsets = new ArrayList<>();
+    for (int i = 0; i < NUM_SPECTRA; i++) {
+      final int numValues = 1 + random.nextInt(200);
+      final ByteBuffer mzs = ByteBuffer.allocate(numValues * 8).order(ByteOrder.LITTLE_ENDIAN);
+      final ByteBuffer intensities = ByteBuffer.allocate(numValues * 4)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      double mz = 50;
+      for (int v = 0; v < numValues; v++) {
+        mz += random.nextDouble() * 5;
+        mzs.putDouble(mz);
+        intensities.putFloat(random.nextFloat() * 1E6f);
+      }
+
+      offsets.add(xml.length());
+      xml.append("<spectrum index=\"").append(i).append("\" id=\"scan=").append(i + 1)
+          .append("\" defaultArrayLength=\"").append(numValues).append("\">\n");
+      xml.append("<cvParam accession=\"MS:1000511\" name=\"ms level\" value=\"")
+          .append(i % 2 + 1).append("\"/>\n");
+      xml.append("<scanList count=\"1\"><scan>");
+      xml.append("<cvParam accession=\"MS:1000016\" name=\"scan start time\" value=\"")
+          .append(String.format(Locale.ENGLISH, "%.4f", i * 0.01))
+          .append("\" unitAccession=\"UO:0000031\"/>");
+      xml.append("</scan></scanList>\n");
+      xml.append("<binaryDataArrayList count=\"2\">\n");
+      appendBinaryArray(xml, mzs.array(), "MS:1000523", "MS:1000514");
+      appendBinaryArray(xml, intensities.array(), "MS:1000521", "MS:1000515");
+      xml.append("</binaryDataArrayList>\n</spectrum>\n");
+    }
+    xml.append("</spectrumList>\n</run>\n</mzML>\n");
+
+    final int indexListOffset = xml.length();
+    xml.append("<indexList count=\"1\">\n<index name=\"spectrum\">\n");
+    for (int i = 0; i < offsets.size(); i++) {
+      xml.append("<offset idRef=\"scan=").append(i + 1).append("\">").append(offsets.get(i))
+          .append("</offset>\n");
+    }
+    xml.append("</index>\n</indexList>\n");
+    xml.append("<indexListOffset>").append(indexListOffset).append("</indexListOffset>\n");
+    xml.append("</indexedmzML>\n");
+
+    // ASCII only, so the offsets in characters are offsets in bytes
+    Files.writeString(path, xml, StandardCharsets.US_ASCII);
+    return path.toFile();
+  }
+
+  private static void appendBinaryArray(StringBuilder xml, byte[] data, String bitLength,
+      String arrayType) {
+    final String encoded = Base64.getEncoder().encodeToString(data);
+    xml.append("<binaryDataArray encodedLength=\"").append(encoded.length()).append("\">\n");
+    xml.append("<cvParam accession=\"").append(bitLength).append("\"/>\n");
+    xml.append("<cvParam accession=\"MS:1000576\" name=\"no compression\"/>\n");
+    xml.append("<cvParam accession=\"").append(arrayType).append("\"/>\n");
+    xml.append("<binary>").append(encoded).append("</binary>\n</binaryDataArray>\n");
+  }
+}
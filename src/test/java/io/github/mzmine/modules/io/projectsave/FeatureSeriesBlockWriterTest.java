@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.mzmine.modules.io.projectsave;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.datamodel.MassSpectrumType;
+import io.github.mzmine.datamodel.PolarityType;
+import io.github.mzmine.datamodel.RawDataFile;
+import io.github.mzmine.datamodel.Scan;
+import io.github.mzmine.datamodel.featuredata.impl.SimpleIonTimeSeries;
+import io.github.mzmine.datamodel.impl.SimpleScan;
+import io.github.mzmine.modules.io.projectload.version_3_0.FeatureSeriesBlockReader;
+import io.github.mzmine.project.impl.RawDataFileImpl;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FeatureSeriesBlockWriterTest {
+
+  /**
+   * Fits two blocks of 5 values (104 bytes) after the header, the third one starts a new chunk.
+   */
+  private static final long CHUNK_SIZE = 256;
+
+  @TempDir
+  Path dir;
+
+  private RawDataFile file;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    file = new RawDataFileImpl("test", null, null, Color.BLACK);
+    for (int i = 0; i < 20; i++) {
+      file.addScan(new SimpleScan(file, i + 1, 1, i * 0.1f, null, new double[]{100d},
+          new double[]{1000d}, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(100d, 100d)));
+    }
+  }
+
+  private SimpleIonTimeSeries series(int firstScan, int numValues) {
+    final double[] mzs = new double[numValues];
+    final double[] intensities = new double[numValues];
+    final List<Scan> scans = new ArrayList<>();
+    for (int i = 0; i < numValues; i++) {
+      mzs[i] = 100d + firstScan + i * 0.001;
+      intensities[i] = 1000d * (i + 1);
+      scans.add(file.getScan(firstScan + i));
+    }
+    return new SimpleIonTimeSeries(null, mzs, intensities, scans);
+  }
+
+  private static void assertSeriesEquals(SimpleIonTimeSeries expected,
+      SimpleIonTimeSeries actual) {
+    assertEquals(expected.getSpectra(), actual.getSpectra());
+    assertArrayEquals(expected.getMzValues(new double[0]), actual.getMzValues(new double[0]));
+    assertArrayEquals(expected.getIntensityValues(new double[0]),
+        actual.getIntensityValues(new double[0]));
+  }
+
+  @Test
+  void testRoundTripAcrossChunks() throws IOException {
+    final File blockFile = dir.resolve("series.bin").toFile();
+    final List<SimpleIonTimeSeries> series = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      // includes empty series and blocks of 5 values that do not fit into the rest of a chunk
+      series.add(series(i, i % 6));
+    }
+
+    final long[] offsets = new long[series.size()];
+    try (FeatureSeriesBlockWriter writer = new FeatureSeriesBlockWriter(blockFile, CHUNK_SIZE)) {
+      for (int i = 0; i < series.size(); i++) {
+        offsets[i] = writer.write(series.get(i), file.getScans());
+      }
+    }
+
+    for (int i = 0; i < offsets.length; i++) {
+      final long length = FeatureSeriesBlockWriter.getBlockLength(
+          series.get(i).getNumberOfValues());
+      assertTrue(offsets[i] % CHUNK_SIZE + length <= CHUNK_SIZE,
+          "Block " + i + " crosses a chunk boundary");
+    }
+    assertTrue(offsets[offsets.length - 1] >= 2 * CHUNK_SIZE);
+    // the block of 5 values starts a new chunk
+    assertEquals(CHUNK_SIZE, offsets[5]);
+
+    final FeatureSeriesBlockReader reader = new FeatureSeriesBlockReader(blockFile);
+    for (int i = series.size() - 1; i >= 0; i--) {
+      assertSeriesEquals(series.get(i), reader.readSeries(offsets[i], file));
+    }
+  }
+
+  @Test
+  void testBlockLargerThanChunk() throws IOException {
+    final File blockFile = dir.resolve("series.bin").toFile();
+    try (FeatureSeriesBlockWriter writer = new FeatureSeriesBlockWriter(blockFile, CHUNK_SIZE)) {
+      assertThrows(IOException.class, () -> writer.write(series(0, 13), file.getScans()));
+    }
+  }
+
+  @Test
+  void testRejectsWrongMagic() throws IOException {
+    final File blockFile = dir.resolve("series.bin").toFile();
+    try (FeatureSeriesBlockWriter writer = new FeatureSeriesBlockWriter(blockFile, CHUNK_SIZE)) {
+      writer.write(series(0, 3), file.getScans());
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(blockFile, "rw")) {
+      raf.writeInt(FeatureSeriesBlockWriter.MAGIC + 1);
+    }
+    assertThrows(IOException.class, () -> new FeatureSeriesBlockReader(blockFile));
+  }
+
+  @Test
+  void testRejectsNewerVersion() throws IOException {
+    final File blockFile = dir.resolve("series.bin").toFile();
+    try (FeatureSeriesBlockWriter writer = new FeatureSeriesBlockWriter(blockFile, CHUNK_SIZE)) {
+      writer.write(series(0, 3), file.getScans());
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(blockFile, "rw")) {
+      raf.seek(Integer.BYTES);
+      raf.writeInt(FeatureSeriesBlockWriter.VERSION + 1);
+    }
+    assertThrows(IOException.class, () -> new FeatureSeriesBlockReader(blockFile));
+  }
+
+  @Test
+  void testReadsVersion1() throws IOException {
+    // version 1 had no chunk size in the header
+    final File blockFile = dir.resolve("series.bin").toFile();
+    final SimpleIonTimeSeries expected = series(2, 4);
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(blockFile))) {
+      out.writeInt(FeatureSeriesBlockWriter.MAGIC);
+      out.writeInt(1);
+      out.writeInt(expected.getNumberOfValues());
+      for (int i = 0; i < expected.getNumberOfValues(); i++) {
+        out.writeInt(2 + i);
+      }
+      for (int i = 0; i < expected.getNumberOfValues(); i++) {
+        out.writeDouble(expected.getMZ(i));
+      }
+      for (int i = 0; i < expected.getNumberOfValues(); i++) {
+        out.writeDouble(expected.getIntensity(i));
+      }
+    }
+
+    assertSeriesEquals(expected, new FeatureSeriesBlockReader(blockFile).readSeries(8, file));
+  }
+}
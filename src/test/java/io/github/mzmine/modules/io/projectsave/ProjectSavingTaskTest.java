@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.modules.io.projectsave;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.datamodel.MZmineProject;
+import io.github.mzmine.datamodel.features.FeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureList;
+import io.github.mzmine.datamodel.features.ModularFeatureListRow;
+import io.github.mzmine.datamodel.features.types.numbers.MZType;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.modules.io.projectload.ProjectOpeningTask;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.project.impl.MZmineProjectImpl;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class ProjectSavingTaskTest {
+
+  @TempDir
+  Path dir;
+
+  @BeforeAll
+  void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+  }
+
+  @AfterAll
+  void cleanProject() {
+    // the reopened project is the current project. Otherwise next tests will see its objects
+    MZmineCore.getProjectManager().setCurrentProject(new MZmineProjectImpl());
+  }
+
+  private static ModularFeatureList createFeatureList(String name, double... mzs) {
+    final ModularFeatureList flist = new ModularFeatureList(name, null, List.of());
+    for (int i = 0; i < mzs.length; i++) {
+      addRow(flist, i + 1, mzs[i]);
+    }
+    return flist;
+  }
+
+  private static void addRow(ModularFeatureList flist, int id, double mz) {
+    final ModularFeatureListRow row = new ModularFeatureListRow(flist, id);
+    row.set(MZType.class, mz);
+    flist.addRow(row);
+  }
+
+  private static void save(MZmineProject project, File file) {
+    final ParameterSet parameters = new ProjectSaveAsParameters().cloneParameterSet();
+    parameters.getParameter(ProjectSaveAsParameters.projectFile).setValue(file);
+    parameters.getParameter(ProjectSaveAsParameters.option).setValue(ProjectSaveOption.REFERENCING);
+    final ProjectSavingTask task = new ProjectSavingTask(project, parameters, Instant.now());
+    task.run();
+    assertEquals(TaskStatus.FINISHED, task.getStatus(), task.getErrorMessage());
+  }
+
+  private static long crc(File file, String entryName) throws IOException {
+    try (ZipFile zip = new ZipFile(file)) {
+      final ZipEntry entry = zip.getEntry(entryName);
+      assertNotNull(entry, entryName);
+      return entry.getCrc();
+    }
+  }
+
+  @Test
+  void testSaveOnlyModifiedFeatureList() throws IOException {
+    final File file = dir.resolve("project.mzmine").toFile();
+    final MZmineProjectImpl project = new MZmineProjectImpl();
+    final ModularFeatureList a = createFeatureList("A", 100d, 200d);
+    final ModularFeatureList b = createFeatureList("B", 300d);
+    project.addFeatureList(a);
+    project.addFeatureList(b);
+    assertTrue(project.isModified());
+
+    save(project, file);
+    assertFalse(project.isModified());
+    assertFalse(a.isModified());
+    assertFalse(b.isModified());
+    assertEquals(file, project.getProjectFile());
+
+    // only A changes
+    addRow(a, 3, 400d);
+    assertTrue(a.isModified());
+    assertFalse(b.isModified());
+
+    final byte[] before = Files.readAllBytes(file.toPath());
+    final String dataA = FeatureListSaveTask.getDataFileName(a.getName());
+    final String dataB = FeatureListSaveTask.getDataFileName(b.getName());
+    final long crcA = crc(file, dataA);
+    final long crcB = crc(file, dataB);
+
+    save(project, file);
+    assertFalse(a.isModified());
+
+    // the existing container was not rewritten, only changes were appended
+    final byte[] after = Files.readAllBytes(file.toPath());
+    assertTrue(after.length > before.length);
+    assertArrayEquals(before, Arrays.copyOf(after, before.length));
+    assertEquals(crcB, crc(file, dataB));
+    assertNotEquals(crcA, crc(file, dataA));
+
+    // reload
+    final ProjectOpeningTask open = new ProjectOpeningTask(file, Instant.now());
+    open.run();
+    assertEquals(TaskStatus.FINISHED, open.getStatus(), open.getErrorMessage());
+    final MZmineProject loaded = MZmineCore.getProjectManager().getCurrentProject();
+    assertEquals(2, loaded.getCurrentFeatureLists().size());
+    final FeatureList loadedA = loaded.getFeatureList(a.getName());
+    final FeatureList loadedB = loaded.getFeatureList(b.getName());
+    assertNotNull(loadedA);
+    assertNotNull(loadedB);
+    assertEquals(3, loadedA.getNumberOfRows());
+    assertEquals(1, loadedB.getNumberOfRows());
+    assertEquals(400d, loadedA.getRows().get(2).getAverageMZ(), 1E-8);
+    assertEquals(300d, loadedB.getRows().get(0).getAverageMZ(), 1E-8);
+    assertFalse(loaded.isModified());
+  }
+
+  @Test
+  void testRemovedFeatureListIsRemovedFromFile() throws IOException {
+    final File file = dir.resolve("removed.mzmine").toFile();
+    final MZmineProjectImpl project = new MZmineProjectImpl();
+    final ModularFeatureList a = createFeatureList("A", 100d);
+    final ModularFeatureList b = createFeatureList("B", 300d);
+    project.addFeatureList(a);
+    project.addFeatureList(b);
+    save(project, file);
+
+    project.removeFeatureList(b);
+    assertTrue(project.isModified());
+    save(project, file);
+
+    try (ZipFile zip = new ZipFile(file)) {
+      assertNotNull(zip.getEntry(FeatureListSaveTask.getDataFileName(a.getName())));
+      assertNull(zip.getEntry(FeatureListSaveTask.getDataFileName(b.getName())));
+    }
+  }
+
+  @Test
+  void testRejectsNewerProjectFormat() throws IOException {
+    final File file = dir.resolve("format.mzmine").toFile();
+    final MZmineProjectImpl project = new MZmineProjectImpl();
+    project.addFeatureList(createFeatureList("A", 100d));
+    save(project, file);
+
+    try (ZipFile zip = new ZipFile(file)) {
+      final ZipEntry formatEntry = zip.getEntry(ProjectSavingTask.PROJECT_FORMAT_FILENAME);
+      assertNotNull(formatEntry);
+      try (InputStream is = zip.getInputStream(formatEntry)) {
+        assertEquals(String.valueOf(ProjectSavingTask.PROJECT_FORMAT_VERSION),
+            new String(is.readAllBytes()));
+      }
+    }
+
+    // same project, saved by a future version in a newer format
+    final File newer = dir.resolve("newer.mzmine").toFile();
+    try (ZipFile zip = new ZipFile(file);
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(newer))) {
+      for (ZipEntry entry : zip.stream().toList()) {
+        zos.putNextEntry(new ZipEntry(entry.getName()));
+        if (entry.getName().equals(ProjectSavingTask.PROJECT_FORMAT_FILENAME)) {
+          zos.write(String.valueOf(ProjectSavingTask.PROJECT_FORMAT_VERSION + 1).getBytes());
+        } else {
+          try (InputStream is = zip.getInputStream(entry)) {
+            is.transferTo(zos);
+          }
+        }
+      }
+    }
+
+    final ProjectOpeningTask open = new ProjectOpeningTask(file, Instant.now());
+    open.run();
+    assertEquals(TaskStatus.FINISHED, open.getStatus(), open.getErrorMessage());
+
+    final ProjectOpeningTask openNewer = new ProjectOpeningTask(newer, Instant.now());
+    openNewer.run();
+    assertEquals(TaskStatus.ERROR, openNewer.getStatus());
+    assertTrue(openNewer.getErrorMessage().contains("project format"),
+        openNewer.getErrorMessage());
+  }
+}
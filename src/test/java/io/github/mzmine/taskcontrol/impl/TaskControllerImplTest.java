@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.taskcontrol.impl;
+
+import io.github.mzmine.gui.preferences.MZminePreferences;
+import io.github.mzmine.main.MZmineCore;
+import io.github.mzmine.taskcontrol.AbstractTask;
+import io.github.mzmine.taskcontrol.TaskPriority;
+import io.github.mzmine.taskcontrol.TaskStatus;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+@TestInstance(Lifecycle.PER_CLASS)
+public class TaskControllerImplTest {
+
+  private TaskControllerImpl controller;
+  private int threads;
+
+  @BeforeAll
+  void init() {
+    MZmineCore.main(new String[]{"-r", "-m", "all"});
+    threads = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads).getValue();
+    controller = new TaskControllerImpl();
+    controller.initModule();
+  }
+
+  /**
+   * Master tasks of HIGH priority wait for HIGH priority sub tasks, e.g., project import or
+   * parallel batch datasets. All masters need to run at the same time, more than the number of
+   * threads.
+   */
+  @Test
+  void testNestedHighPriorityTasksExceedThreads() throws InterruptedException {
+    final int masters = 2 * Math.max(threads, 4) + 1;
+    final CountDownLatch mastersRunning = new CountDownLatch(masters);
+    final CountDownLatch mastersDone = new CountDownLatch(masters);
+    final AtomicInteger finishedSubTasks = new AtomicInteger();
+
+    for (int i = 0; i < masters; i++) {
+      controller.addTask(new TestTask(TaskPriority.HIGH, () -> {
+        mastersRunning.countDown();
+        if (!mastersRunning.await(30, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("Not all master tasks were started");
+        }
+        final CountDownLatch subTaskDone = new CountDownLatch(1);
+        controller.addTask(new TestTask(TaskPriority.HIGH, () -> {
+          finishedSubTasks.incrementAndGet();
+          subTaskDone.countDown();
+        }));
+        if (!subTaskDone.await(30, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("Sub task was not started");
+        }
+        mastersDone.countDown();
+      }));
+    }
+
+    Assertions.assertTrue(mastersDone.await(60, TimeUnit.SECONDS),
+        "Nested HIGH priority tasks blocked each other");
+    Assertions.assertEquals(masters, finishedSubTasks.get());
+  }
+
+  /**
+   * NORMAL priority tasks are limited by the number of threads, HIGH priority tasks start anyway
+   */
+  @Test
+  void testNormalTasksAreLimitedAndHighTasksStart() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final int normalTasks = threads + 3;
+    final CountDownLatch normalDone = new CountDownLatch(normalTasks);
+
+    for (int i = 0; i < normalTasks; i++) {
+      controller.addTask(new TestTask(TaskPriority.NORMAL, () -> {
+        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+          release.await(30, TimeUnit.SECONDS);
+        } finally {
+          running.decrementAndGet();
+          normalDone.countDown();
+        }
+      }));
+    }
+
+    // all NORMAL slots are taken, a HIGH task still starts right away
+    final CountDownLatch highDone = new CountDownLatch(1);
+    controller.addTask(new TestTask(TaskPriority.HIGH, highDone::countDown));
+    Assertions.assertTrue(highDone.await(10, TimeUnit.SECONDS));
+
+    release.countDown();
+    Assertions.assertTrue(normalDone.await(60, TimeUnit.SECONDS));
+    Assertions.assertTrue(maxRunning.get() <= threads,
+        "Running NORMAL tasks " + maxRunning.get() + " exceeded the threads " + threads);
+  }
+
+  @FunctionalInterface
+  private interface Work {
+
+    void run() throws Exception;
+  }
+
+  private static class TestTask extends AbstractTask {
+
+    private final TaskPriority priority;
+    private final Work work;
+
+    private TestTask(TaskPriority priority, Work work) {
+      super(null, Instant.now());
+      this.priority = priority;
+      this.work = work;
+    }
+
+    @Override
+    public TaskPriority getTaskPriority() {
+      return priority;
+    }
+
+    @Override
+    public String getTaskDescription() {
+      return "Test task " + priority;
+    }
+
+    @Override
+    public double getFinishedPercentage() {
+      return 0;
+    }
+
+    @Override
+    public void run() {
+      setStatus(TaskStatus.PROCESSING);
+      try {
+        work.run();
+        setStatus(TaskStatus.FINISHED);
+      } catch (Exception e) {
+        setErrorMessage(e.getMessage());
+        setStatus(TaskStatus.ERROR);
+      }
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.mzmine.util.io.ZipAppender.CenEntry;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ZipAppenderTest {
+
+  @TempDir
+  Path dir;
+
+  private static byte[] data(int seed, int length) {
+    final byte[] data = new byte[length];
+    new Random(seed).nextBytes(data);
+    // partly compressible
+    Arrays.fill(data, 0, length / 2, (byte) seed);
+    return data;
+  }
+
+  private File zip(String name, Map<String, byte[]> entries, boolean stored) throws IOException {
+    final File file = dir.resolve(name).toFile();
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+      for (var entry : entries.entrySet()) {
+        final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+        if (stored) {
+          final CRC32 crc = new CRC32();
+          crc.update(entry.getValue());
+          zipEntry.setMethod(ZipEntry.STORED);
+          zipEntry.setSize(entry.getValue().length);
+          zipEntry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(zipEntry);
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+    return file;
+  }
+
+  private static Map<String, byte[]> read(File file) throws IOException {
+    final Map<String, byte[]> entries = new LinkedHashMap<>();
+    try (ZipFile zip = new ZipFile(file)) {
+      for (ZipEntry entry : zip.stream().toList()) {
+        try (InputStream is = zip.getInputStream(entry)) {
+          entries.put(entry.getName(), is.readAllBytes());
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static void assertEntries(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+    assertEquals(List.copyOf(expected.keySet()), List.copyOf(actual.keySet()));
+    expected.forEach((name, data) -> assertArrayEquals(data, actual.get(name), name));
+  }
+
+  @Test
+  void testReplaceRemoveAndAdd() throws IOException {
+    final Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put("version", "3.0".getBytes(StandardCharsets.UTF_8));
+    entries.put("rawdata/batch.xml", data(1, 200_000));
+    entries.put("featurelists/a.xml", data(2, 100_000));
+    entries.put("featurelists/b.xml", data(3, 100_000));
+    entries.put("parameters.xml", data(4, 1000));
+    final File file = zip("project.mzmine", entries, false);
+    final byte[] before = Files.readAllBytes(file.toPath());
+
+    final Map<String, byte[]> changes = new LinkedHashMap<>();
+    changes.put("version", "3.0".getBytes(StandardCharsets.UTF_8));
+    changes.put("featurelists/a.xml", data(5, 50_000));
+    changes.put("featurelists/c.xml", data(6, 10_000));
+    changes.put("parameters.xml", data(7, 2000));
+    final File delta = zip("delta.zip", changes, false);
+
+    assertFalse(ZipAppender.mergeEntries(file, delta, "featurelists/b.xml"::equals));
+
+    // the unchanged entries were not written again
+    final byte[] after = Files.readAllBytes(file.toPath());
+    assertTrue(after.length > before.length);
+    assertArrayEquals(before, Arrays.copyOf(after, before.length));
+
+    // replaced entries keep their order, new entries are added at the end
+    final Map<String, byte[]> expected = new LinkedHashMap<>();
+    expected.put("version", changes.get("version"));
+    expected.put("rawdata/batch.xml", entries.get("rawdata/batch.xml"));
+    expected.put("featurelists/a.xml", changes.get("featurelists/a.xml"));
+    expected.put("parameters.xml", changes.get("parameters.xml"));
+    expected.put("featurelists/c.xml", changes.get("featurelists/c.xml"));
+    assertEntries(expected, read(file));
+  }
+
+  @Test
+  void testCompactAfterRepeatedChanges() throws IOException {
+    final Map<String, byte[]> expected = new LinkedHashMap<>();
+    expected.put("rawdata/batch.xml", data(1, 10_000));
+    expected.put("featurelists/a.xml", data(2, 100_000));
+    // stored entries have no data descriptor
+    final File file = zip("project.mzmine", expected, true);
+
+    boolean compacted = false;
+    for (int i = 0; i < 5 && !compacted; i++) {
+      final Map<String, byte[]> changes = Map.of("featurelists/a.xml", data(10 + i, 100_000));
+      expected.putAll(changes);
+      compacted = ZipAppender.mergeEntries(file, zip("delta" + i + ".zip", changes, i % 2 == 0),
+          name -> false);
+      assertEntries(expected, read(file));
+    }
+    assertTrue(compacted);
+
+    // only the referenced entries remain
+    long dataLength = 0;
+    try (ZipFile zip = new ZipFile(file)) {
+      for (ZipEntry entry : zip.stream().toList()) {
+        dataLength += entry.getCompressedSize();
+      }
+    }
+    assertTrue(file.length() < dataLength + 1000, file.length() + " " + dataLength);
+  }
+
+  @Test
+  void testInvalidDeltaKeepsFile() throws IOException {
+    final File file = zip("project.mzmine", Map.of("a", data(1, 1000)), false);
+    final byte[] before = Files.readAllBytes(file.toPath());
+    final File delta = dir.resolve("delta.zip").toFile();
+    Files.write(delta.toPath(), data(2, 100));
+
+    assertThrows(ZipException.class, () -> ZipAppender.mergeEntries(file, delta, name -> false));
+    assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+  }
+
+  @Test
+  void testZip64Offset() throws IOException {
+    final File file = zip("project.mzmine", Map.of("featurelists/a.xml", data(1, 1000)), false);
+    final CenEntry entry;
+    try (FileChannel ch = FileChannel.open(file.toPath())) {
+      entry = ZipAppender.readCentralDirectory(ch).entries().get(0);
+    }
+
+    final long offset = 5_000_000_000L;
+    final CenEntry moved = CenEntry.of(entry.withOffset(offset));
+    assertEquals(offset, moved.offset());
+    assertEquals(entry.name(), moved.name());
+    assertEquals(entry.size(), moved.size());
+    assertEquals(entry.compressedSize(), moved.compressedSize());
+
+    // and back without the zip64 field
+    final CenEntry back = CenEntry.of(moved.withOffset(entry.offset()));
+    assertEquals(entry.record().length, back.record().length);
+    assertEquals(entry.offset(), back.offset());
+  }
+
+  @Test
+  void testZip64Directory() throws IOException {
+    // more entries than fit into the end of central directory record
+    final Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (int i = 0; i < 0x10010; i++) {
+      entries.put("rawdata/" + i, new byte[]{(byte) i});
+    }
+    final File file = zip("project.mzmine", entries, false);
+
+    final Map<String, byte[]> changes = Map.of("rawdata/5", data(1, 100), "parameters.xml",
+        data(2, 100));
+    final File delta = zip("delta.zip", changes, false);
+    assertFalse(ZipAppender.mergeEntries(file, delta, "rawdata/7"::equals));
+
+    entries.remove("rawdata/7");
+    entries.putAll(changes);
+    assertEntries(entries, read(file));
+  }
+}
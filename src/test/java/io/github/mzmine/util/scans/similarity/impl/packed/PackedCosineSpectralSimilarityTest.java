@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.scans.similarity.impl.packed;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import io.github.mzmine.parameters.ParameterSet;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import io.github.mzmine.util.scans.ScanAlignment;
+import io.github.mzmine.util.scans.similarity.HandleUnmatchedSignalOptions;
+import io.github.mzmine.util.scans.similarity.SpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.Weights;
+import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarity;
+import io.github.mzmine.util.scans.similarity.impl.cosine.WeightedCosineSpectralSimilarityParameters;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PackedCosineSpectralSimilarityTest {
+
+  private static final MZTolerance MZ_TOL = new MZTolerance(0.005, 10);
+
+  /**
+   * Random spectrum with clustered m/z values, so that multiple signals fall within the tolerance
+   * and the greedy intensity order matters. Contains duplicate intensities.
+   */
+  private static DataPoint[] randomSpectrum(Random random, double[] centers) {
+    final int n = 5 + random.nextInt(40);
+    final DataPoint[] dps = new DataPoint[n];
+    for (int i = 0; i < n; i++) {
+      final double mz = centers[random.nextInt(centers.length)] + random.nextGaussian() * 0.004;
+      final double intensity = 1 + random.nextInt(20) * 50;
+      dps[i] = new SimpleDataPoint(mz, intensity);
+    }
+    return dps;
+  }
+
+  @Test
+  void testEqualsWeightedCosine() {
+    final Random random = new Random(123);
+    final WeightedCosineSpectralSimilarity weighted = new WeightedCosineSpectralSimilarity();
+    final PackedCosineSpectralSimilarity packed = new PackedCosineSpectralSimilarity();
+
+    int compared = 0;
+    for (Weights weights : List.of(Weights.MASSBANK, Weights.NIST11, Weights.NONE)) {
+      for (HandleUnmatchedSignalOptions handle : HandleUnmatchedSignalOptions.values()) {
+        final ParameterSet weightedParam = new WeightedCosineSpectralSimilarityParameters();
+        weightedParam.setParameter(WeightedCosineSpectralSimilarityParameters.weight, weights);
+        weightedParam.setParameter(WeightedCosineSpectralSimilarityParameters.minCosine, 0d);
+        weightedParam.setParameter(WeightedCosineSpectralSimilarityParameters.handleUnmatched,
+            handle);
+        final ParameterSet packedParam = new PackedCosineSpectralSimilarityParameters();
+        packedParam.setParameter(PackedCosineSpectralSimilarityParameters.weight, weights);
+        packedParam.setParameter(PackedCosineSpectralSimilarityParameters.minCosine, 0d);
+        packedParam.setParameter(PackedCosineSpectralSimilarityParameters.handleUnmatched, handle);
+
+        for (int i = 0; i < 300; i++) {
+          final double[] centers = random.doubles(15, 50, 500).toArray();
+          final DataPoint[] library = randomSpectrum(random, centers);
+          final DataPoint[] query = randomSpectrum(random, centers);
+          final int minMatch = random.nextInt(4);
+
+          // the weighted cosine sorts the library in place, pass copies
+          final SpectralSimilarity expected = weighted.getSimilarity(weightedParam, MZ_TOL,
+              minMatch, library.clone(), query.clone());
+          final SpectralSimilarity actual = packed.getSimilarity(packedParam, MZ_TOL, minMatch,
+              library, query);
+
+          if (expected == null || expected.getOverlap() == 0) {
+            Assertions.assertNull(actual);
+            continue;
+          }
+          Assertions.assertNotNull(actual);
+          Assertions.assertEquals(expected.getScore(), actual.getScore(), 1E-9);
+          Assertions.assertEquals(expected.getOverlap(), actual.getOverlap());
+          assertSameAlignment(expected.getAlignedDataPoints(), actual.getAlignedDataPoints());
+          compared++;
+        }
+      }
+    }
+    Assertions.assertTrue(compared > 500);
+  }
+
+  /**
+   * Packed spectra are reused for many comparisons and cropped without copying. Needs to match the
+   * spectra that are cropped by {@link ScanAlignment#cropToOverlap(MZTolerance, DataPoint[],
+   * DataPoint[])} before the weighted cosine.
+   */
+  @Test
+  void testReusedPackedSpectraEqualCroppedWeightedCosine() {
+    final Random random = new Random(42);
+    final WeightedCosineSpectralSimilarity weighted = new WeightedCosineSpectralSimilarity();
+    final PackedCosineSpectralSimilarity packed = new PackedCosineSpectralSimilarity();
+
+    final ParameterSet weightedParam = new WeightedCosineSpectralSimilarityParameters();
+    weightedParam.setParameter(WeightedCosineSpectralSimilarityParameters.weight,
+        Weights.MASSBANK);
+    weightedParam.setParameter(WeightedCosineSpectralSimilarityParameters.minCosine, 0d);
+    weightedParam.setParameter(WeightedCosineSpectralSimilarityParameters.handleUnmatched,
+        HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO);
+    final ParameterSet packedParam = new PackedCosineSpectralSimilarityParameters();
+    packedParam.setParameter(PackedCosineSpectralSimilarityParameters.weight, Weights.MASSBANK);
+    packedParam.setParameter(PackedCosineSpectralSimilarityParameters.minCosine, 0d);
+    packedParam.setParameter(PackedCosineSpectralSimilarityParameters.handleUnmatched,
+        HandleUnmatchedSignalOptions.KEEP_ALL_AND_MATCH_TO_ZERO);
+
+    // shifted m/z ranges, so that cropping removes signals of both spectra
+    final double[] libraryCenters = random.doubles(15, 50, 400).toArray();
+    final double[] queryCenters = new double[libraryCenters.length];
+    for (int i = 0; i < queryCenters.length; i++) {
+      queryCenters[i] = libraryCenters[i] + (i % 3 == 0 ? 100 : 0);
+    }
+    final DataPoint[][] libraries = new DataPoint[30][];
+    final PackedSpectrum[] packedLibraries = new PackedSpectrum[libraries.length];
+    for (int i = 0; i < libraries.length; i++) {
+      libraries[i] = randomSpectrum(random, libraryCenters);
+      packedLibraries[i] = new PackedSpectrum(libraries[i], Weights.MASSBANK);
+    }
+
+    int compared = 0;
+    for (int q = 0; q < 30; q++) {
+      final DataPoint[] query = randomSpectrum(random, queryCenters);
+      final PackedSpectrum packedQuery = new PackedSpectrum(query, Weights.MASSBANK);
+      for (int l = 0; l < libraries.length; l++) {
+        for (boolean crop : new boolean[]{false, true}) {
+          DataPoint[] library = libraries[l].clone();
+          DataPoint[] cropQuery = query.clone();
+          if (crop) {
+            final DataPoint[][] cropped = ScanAlignment.cropToOverlap(MZ_TOL, library, cropQuery);
+            library = cropped[0];
+            cropQuery = cropped[1];
+          }
+          final SpectralSimilarity expected = weighted.getSimilarity(weightedParam, MZ_TOL, 2,
+              library, cropQuery);
+          final SpectralSimilarity actual = packed.getSimilarity(packedParam, MZ_TOL, 2,
+              packedLibraries[l], packedQuery, crop);
+
+          if (expected == null || expected.getOverlap() == 0) {
+            Assertions.assertNull(actual);
+            continue;
+          }
+          Assertions.assertNotNull(actual);
+          Assertions.assertEquals(expected.getScore(), actual.getScore(), 1E-9);
+          Assertions.assertEquals(expected.getOverlap(), actual.getOverlap());
+          assertSameAlignment(expected.getAlignedDataPoints(), actual.getAlignedDataPoints());
+          compared++;
+        }
+      }
+    }
+    Assertions.assertTrue(compared > 500);
+    // spectra packed with other weights than the parameters are rejected
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> packed.getSimilarity(packedParam, MZ_TOL, 2,
+            new PackedSpectrum(libraries[0], Weights.NIST11), packedLibraries[0], false));
+  }
+
+  private static void assertSameAlignment(DataPoint[][] expected, DataPoint[][] actual) {
+    Assertions.assertEquals(expected.length, actual.length);
+    for (int d = 0; d < expected.length; d++) {
+      Assertions.assertEquals(expected[d].length, actual[d].length);
+      for (int i = 0; i < expected[d].length; i++) {
+        Assertions.assertEquals(expected[d][i].getMZ(), actual[d][i].getMZ());
+        Assertions.assertEquals(expected[d][i].getIntensity(), actual[d][i].getIntensity());
+      }
+    }
+  }
+}
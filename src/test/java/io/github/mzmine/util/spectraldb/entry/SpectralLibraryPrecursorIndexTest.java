@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package io.github.mzmine.util.spectraldb.entry;
+
+import io.github.mzmine.datamodel.DataPoint;
+import io.github.mzmine.datamodel.impl.SimpleDataPoint;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpectralLibraryPrecursorIndexTest {
+
+  private static final DataPoint[] SIGNALS = {new SimpleDataPoint(100, 1000)};
+
+  private static SpectralLibraryEntry entry(double precursorMz) {
+    return SpectralLibraryEntry.create(null, precursorMz, SIGNALS);
+  }
+
+  private static List<SpectralLibraryEntry> linearSearch(SpectralLibrary library, double lower,
+      double upper) {
+    return library.getEntries().stream().filter(e -> e.getPrecursorMZ() != null)
+        .filter(e -> lower <= e.getPrecursorMZ() && e.getPrecursorMZ() <= upper).toList();
+  }
+
+  @Test
+  void testRangeQueriesMatchLinearSearch() {
+    final Random random = new Random(7);
+    final SpectralLibrary library = new SpectralLibrary(null, new File("test.msp"));
+    for (int i = 0; i < 2000; i++) {
+      // include duplicates to check the library order of equal precursors
+      library.getEntries().add(entry(Math.round((100 + random.nextDouble() * 900) * 10) / 10d));
+    }
+    library.buildPrecursorIndex();
+
+    for (int i = 0; i < 500; i++) {
+      final double lower = 100 + random.nextDouble() * 900;
+      final double upper = lower + random.nextDouble() * 5;
+      Assertions.assertEquals(linearSearch(library, lower, upper),
+          library.getEntriesInPrecursorRange(lower, upper));
+    }
+    // inclusive bounds
+    final double mz = library.getEntries().get(0).getPrecursorMZ();
+    Assertions.assertEquals(linearSearch(library, mz, mz),
+        library.getEntriesInPrecursorRange(mz, mz));
+    Assertions.assertTrue(library.getEntriesInPrecursorRange(mz, mz)
+        .contains(library.getEntries().get(0)));
+  }
+
+  @Test
+  void testIndexIsRebuiltOnModification() {
+    final SpectralLibrary library = new SpectralLibrary(null, new File("test.msp"));
+    library.getEntries().addAll(List.of(entry(200), entry(300), entry(400)));
+    library.buildPrecursorIndex();
+    Assertions.assertEquals(1, library.getEntriesInPrecursorRange(299, 301).size());
+
+    // same number of entries, but different precursors
+    library.getEntries().remove(1);
+    library.getEntries().add(entry(500));
+    Assertions.assertTrue(library.getEntriesInPrecursorRange(299, 301).isEmpty());
+    Assertions.assertEquals(1, library.getEntriesInPrecursorRange(499, 501).size());
+
+    // replaced entry
+    final SpectralLibraryEntry replacement = entry(300);
+    library.getEntries().set(0, replacement);
+    Assertions.assertEquals(List.of(replacement), library.getEntriesInPrecursorRange(299, 301));
+    Assertions.assertTrue(library.getEntriesInPrecursorRange(199, 201).isEmpty());
+  }
+
+  @Test
+  void testEntriesWithoutPrecursorAreSkipped() {
+    final SpectralLibrary library = new SpectralLibrary(null, new File("test.msp"));
+    final SpectralLibraryEntry withoutPrecursor = SpectralLibraryEntry.create(null,
+        new HashMap<>(), SIGNALS);
+    library.getEntries().addAll(List.of(withoutPrecursor, entry(250)));
+    Assertions.assertEquals(1, library.getEntriesInPrecursorRange(0, 1000).size());
+  }
+}
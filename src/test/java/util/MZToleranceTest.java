@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util;
+
+import com.google.common.collect.Range;
+import io.github.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MZToleranceTest {
+
+  @Test
+  void testReferenceRangeContaining() {
+    final Random random = new Random(42);
+    final MZTolerance[] tolerances = {new MZTolerance(0.005, 10), new MZTolerance(0.0, 20),
+        new MZTolerance(0.02, 0), new MZTolerance(0.001, 5)};
+
+    for (MZTolerance tol : tolerances) {
+      for (int i = 0; i < 10_000; i++) {
+        final double reference = 50 + random.nextDouble() * 1500;
+        final Range<Double> toleranceRange = tol.getToleranceRange(reference);
+        // queries at the borders of the tolerance range and random queries close to them
+        final double[] queries = {toleranceRange.lowerEndpoint(), toleranceRange.upperEndpoint(),
+            reference + (random.nextDouble() - 0.5) * 0.1};
+
+        for (double query : queries) {
+          final Range<Double> window = tol.getReferenceRangeContaining(query);
+          final double lower = window.lowerEndpoint() - Math.ulp(window.lowerEndpoint()) * 4;
+          final double upper = window.upperEndpoint() + Math.ulp(window.upperEndpoint()) * 4;
+          if (tol.checkWithinTolerance(reference, query)) {
+            Assertions.assertTrue(lower <= reference && reference <= upper,
+                () -> "Window " + window + " misses " + reference + " for " + query);
+          } else {
+            // the window is exact apart from rounding
+            Assertions.assertFalse(window.lowerEndpoint() + 1E-9 < reference
+                && reference < window.upperEndpoint() - 1E-9);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void testReferenceRangeIsAsymmetric() {
+    final MZTolerance tol = new MZTolerance(0, 10);
+    final Range<Double> window = tol.getReferenceRangeContaining(1000);
+    // a reference of 1000.01 has a tolerance of 0.0100001, so it matches 1000
+    Assertions.assertTrue(tol.checkWithinTolerance(1000.01, 1000));
+    Assertions.assertTrue(window.contains(1000.01));
+    Assertions.assertEquals(1000 / (1 + 1E-5), window.lowerEndpoint(), 1E-9);
+    Assertions.assertEquals(1000 / (1 - 1E-5), window.upperEndpoint(), 1E-9);
+  }
+}
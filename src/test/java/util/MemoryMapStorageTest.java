@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util;
+
+import io.github.mzmine.util.MemoryMapBackend;
+import io.github.mzmine.util.MemoryMapStorage;
+import io.github.mzmine.util.MemoryMapStorage.SegmentPool;
+import io.github.mzmine.util.MemoryMapStorage.StorageStats;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MemoryMapStorageTest {
+
+  @Test
+  public void testConcurrentStore() {
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+
+    final List<DoubleBuffer> buffers = IntStream.range(0, 1000).parallel().mapToObj(i -> {
+      final double[] data = IntStream.range(0, 100).mapToDouble(j -> i * 1000 + j).toArray();
+      try {
+        return storage.storeData(data);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }).toList();
+
+    for (int i = 0; i < buffers.size(); i++) {
+      final DoubleBuffer buffer = buffers.get(i);
+      Assertions.assertEquals(100, buffer.capacity());
+      for (int j = 0; j < 100; j++) {
+        Assertions.assertEquals(i * 1000 + j, buffer.get(j));
+      }
+    }
+
+    final StorageStats stats = storage.getStats();
+    Assertions.assertEquals(1, stats.numSegments());
+    Assertions.assertEquals(1000L * 100 * Double.BYTES, stats.liveBytes());
+    Assertions.assertEquals(0L, stats.fragmentedBytes());
+  }
+
+  @Test
+  public void testReleaseReusesSegments() throws IOException {
+    final SegmentPool pool = new SegmentPool(2);
+    final MemoryMapStorage first = MemoryMapStorage.create(MemoryMapBackend.FOREIGN_MEMORY, pool);
+    final DoubleBuffer stale = first.storeData(new double[]{1d, 2d, 3d});
+
+    first.release(null);
+    Assertions.assertEquals(0, first.getStats().numSegments());
+    Assertions.assertEquals(1, pool.size());
+    // buffers of the released storage must not read the data of the next storage
+    Assertions.assertThrows(IllegalStateException.class, () -> stale.get(0));
+
+    final MemoryMapStorage second = MemoryMapStorage.create(MemoryMapBackend.FOREIGN_MEMORY, pool);
+    final DoubleBuffer buffer = second.storeData(new double[]{4d, 5d});
+    Assertions.assertEquals(0, pool.size());
+    Assertions.assertEquals(4d, buffer.get(0));
+    Assertions.assertEquals(2L * Double.BYTES, second.getStats().liveBytes());
+    Assertions.assertThrows(IllegalStateException.class, () -> stale.get(0));
+
+    second.release(null);
+    pool.discard(null);
+    Assertions.assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testByteBufferSegmentsAreNotPooled() throws IOException {
+    final SegmentPool pool = new SegmentPool(2);
+    final MemoryMapStorage first = MemoryMapStorage.create(MemoryMapBackend.BYTE_BUFFER, pool);
+    final DoubleBuffer stale = first.storeData(new double[]{1d, 2d, 3d});
+
+    first.release(null);
+    Assertions.assertEquals(0, first.getStats().numSegments());
+    Assertions.assertEquals(0, pool.size());
+
+    // the released segment is not reused, so the stale buffer still holds the old data
+    final MemoryMapStorage second = MemoryMapStorage.create(MemoryMapBackend.BYTE_BUFFER, pool);
+    final DoubleBuffer buffer = second.storeData(new double[]{4d, 5d});
+    Assertions.assertEquals(4d, buffer.get(0));
+    Assertions.assertEquals(1d, stale.get(0));
+    Assertions.assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testReleaseByLastOwner() throws IOException {
+    final MemoryMapStorage storage = MemoryMapStorage.create();
+    storage.storeData(new double[]{1d, 2d, 3d});
+    storage.retain();
+    storage.retain();
+
+    Assertions.assertThrows(IllegalStateException.class, () -> storage.release(null));
+
+    storage.releaseOwner(null);
+    Assertions.assertEquals(1, storage.getNumOwners());
+    Assertions.assertEquals(1, storage.getStats().numSegments());
+
+    storage.releaseOwner(null);
+    Assertions.assertEquals(0, storage.getNumOwners());
+    Assertions.assertEquals(0, storage.getStats().numSegments());
+
+    Assertions.assertThrows(IllegalStateException.class, () -> storage.releaseOwner(null));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2004-2022 The MZmine Development Team
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package util;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import io.github.mzmine.util.collections.SortedRangeIndex;
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SortedRangeIndexTest {
+
+  @Test
+  public void testSameAsTreeRangeMap() {
+    final Random random = new Random(42);
+    final RangeMap<Double, Integer> rangeMap = TreeRangeMap.create();
+    final SortedRangeIndex<Integer> index = new SortedRangeIndex<>();
+
+    for (int i = 0; i < 20_000; i++) {
+      final double lower = random.nextDouble() * 1000;
+      final double upper = lower + random.nextDouble() * 0.5;
+      if (lower < upper) {
+        rangeMap.put(Range.closedOpen(lower, upper), i);
+      }
+      index.put(lower, upper, i);
+    }
+
+    Assertions.assertEquals(rangeMap.asMapOfRanges().size(), index.size());
+    Assertions.assertEquals(new ArrayList<>(rangeMap.asMapOfRanges().values()), index.values());
+
+    for (int i = 0; i < 20_000; i++) {
+      final double value = random.nextDouble() * 1000;
+      final Entry<Range<Double>, Integer> entry = rangeMap.getEntry(value);
+      final long pos = index.find(value);
+      if (entry == null) {
+        Assertions.assertEquals(-1, pos);
+      } else {
+        Assertions.assertEquals(entry.getValue(), index.valueAt(pos));
+        Assertions.assertEquals(entry.getKey().lowerEndpoint(), index.lowerAt(pos));
+        Assertions.assertEquals(entry.getKey().upperEndpoint(), index.upperAt(pos));
+      }
+    }
+  }
+}